@@ -7,6 +7,7 @@ import com.azure.identity.DefaultAzureCredentialBuilder;
 import com.azure.messaging.servicebus.ServiceBusClientBuilder;
 import com.azure.messaging.servicebus.ServiceBusException;
 import com.azure.messaging.servicebus.ServiceBusMessage;
+import com.azure.messaging.servicebus.ServiceBusMessageBatch;
 import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
 import com.azure.messaging.servicebus.ServiceBusReceiverClient;
 import com.azure.messaging.servicebus.ServiceBusSenderClient;
@@ -142,6 +143,40 @@ public class AzureServiceBusQueue implements QueueInterface {
     }
   }
 
+  /**
+   * Sends several messages to the Azure Service Bus queue, in as few message batches as their
+   * size allows.
+   *
+   * @param messages the messages to enqueue
+   * @throws StairwayExecutionException if an unexpected Service Bus exception occurs
+   */
+  @Override
+  public void enqueueMessages(List<String> messages) throws StairwayExecutionException {
+    try {
+      ServiceBusMessageBatch batch = serviceBusSenderClient.createMessageBatch();
+      for (String message : messages) {
+        ServiceBusMessage serviceBusMessage = new ServiceBusMessage(message);
+        if (!batch.tryAddMessage(serviceBusMessage)) {
+          // The batch is full; send it and start the next one
+          serviceBusSenderClient.sendMessages(batch);
+          batch = serviceBusSenderClient.createMessageBatch();
+          if (!batch.tryAddMessage(serviceBusMessage)) {
+            throw new StairwayExecutionException(
+                "Message is too large for an Azure Service Bus message batch");
+          }
+        }
+      }
+      if (batch.getCount() > 0) {
+        serviceBusSenderClient.sendMessages(batch);
+      }
+      logger.info("Successfully sent {} messages", messages.size());
+    } catch (ServiceBusException ex) {
+      logger.error("Unexpected exception sending the messages via Azure Service Bus", ex);
+      throw new StairwayExecutionException(
+          "Unexpected exception sending the messages via Azure Service Bus", ex);
+    }
+  }
+
   @Override
   public void purgeQueueForTesting() {
     throw new NotImplementedException(
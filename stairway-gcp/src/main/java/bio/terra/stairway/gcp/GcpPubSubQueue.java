@@ -175,6 +175,31 @@ public class GcpPubSubQueue implements QueueInterface {
     }
   }
 
+  /**
+   * Publish several messages to the queue. All of the messages are handed to the publisher, which
+   * batches them, before we wait for any of them to be published.
+   *
+   * @param messages the messages to enqueue
+   * @throws InterruptedException is possible from waiting on the pubsub enqueue
+   */
+  @Override
+  public void enqueueMessages(List<String> messages) throws InterruptedException {
+    List<ApiFuture<String>> futures = new ArrayList<>(messages.size());
+    for (String message : messages) {
+      ByteString data = ByteString.copyFromUtf8(message);
+      futures.add(publisher.publish(PubsubMessage.newBuilder().setData(data).build()));
+    }
+
+    try {
+      for (ApiFuture<String> future : futures) {
+        future.get();
+      }
+      logger.info("Queued " + messages.size() + " messages");
+    } catch (ExecutionException ex) {
+      throw new StairwayExecutionException("Publish message failed", ex);
+    }
+  }
+
   /**
    * In tests, we often reuse the same pubsub queue. We want to clean the queue between tests. This
    * method is used to remove all messages from the queue.
@@ -0,0 +1,20 @@
+package bio.terra.stairway;
+
+/**
+ * How the total number of flights in the filtered set is computed for a flight enumeration. See
+ * {@link FlightFilter#totalCountMode(FlightCountMode)}.
+ */
+public enum FlightCountMode {
+  /**
+   * Count the flights that match the filter. The count may be served from a cache when {@link
+   * StairwayBuilder#flightCountCacheTtl(java.time.Duration)} is set.
+   */
+  EXACT,
+  /**
+   * Use the database planner's estimate of the number of matching flights. It is much cheaper than
+   * counting on large flight tables, but may be off, especially with input parameter filters.
+   */
+  ESTIMATED,
+  /** Do not compute the total; {@link FlightEnumeration#getTotalFlights()} returns -1. */
+  NONE
+}
@@ -5,23 +5,41 @@ import java.util.List;
 /** Class that holds the return value of the enhanced getFlights Stairway entrypoint */
 public class FlightEnumeration {
   private final int totalFlights;
+  private final FlightCountMode totalCountMode;
   private final String nextPageToken;
   private final List<FlightState> flightStateList;
 
   public FlightEnumeration(
       int totalFlights, String nextPageToken, List<FlightState> flightStateList) {
+    this(totalFlights, FlightCountMode.EXACT, nextPageToken, flightStateList);
+  }
+
+  public FlightEnumeration(
+      int totalFlights,
+      FlightCountMode totalCountMode,
+      String nextPageToken,
+      List<FlightState> flightStateList) {
     this.totalFlights = totalFlights;
+    this.totalCountMode = totalCountMode;
     this.nextPageToken = nextPageToken;
     this.flightStateList = flightStateList;
   }
 
   /**
-   * @return total number of flights in the filtered set
+   * @return total number of flights in the filtered set, computed as {@link #getTotalCountMode()}
+   *     says; -1 if the total was not computed
    */
   public int getTotalFlights() {
     return totalFlights;
   }
 
+  /**
+   * @return how the total number of flights was computed
+   */
+  public FlightCountMode getTotalCountMode() {
+    return totalCountMode;
+  }
+
   /**
    * @return encoded string describing the start of the next page
    */
@@ -0,0 +1,16 @@
+package bio.terra.stairway;
+
+/** The threads a Stairway instance runs its flights on */
+public enum FlightExecutionMode {
+  /**
+   * Each running flight has a thread of a fixed size pool; the default. The pool size is {@link
+   * StairwayBuilder#maxParallelFlights(int)}.
+   */
+  PLATFORM_THREADS,
+  /**
+   * Each flight runs on its own virtual thread. A flight blocked on I/O does not hold a platform
+   * thread, so many more flights can run at once. {@link StairwayBuilder#maxParallelFlights(int)}
+   * limits the flights running at once. Requires Java 21 or later at run time.
+   */
+  VIRTUAL_THREADS
+}
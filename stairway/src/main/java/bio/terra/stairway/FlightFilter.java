@@ -44,6 +44,7 @@ public class FlightFilter {
   private final List<FlightFilterPredicate> inputPredicates;
   private FlightBooleanOperationExpression booleanOperationExpression;
   private FlightFilterSortDirection submittedTimeSortDirection;
+  private FlightCountMode totalCountMode;
 
   // Mapper should be used to deserialize to generic Postgres JSON
   private static final ObjectMapper pgJsonMapper = new ObjectMapper();
@@ -60,6 +61,7 @@ public class FlightFilter {
     this.flightPredicates = new ArrayList<>();
     this.inputPredicates = new ArrayList<>();
     this.submittedTimeSortDirection = FlightFilterSortDirection.ASC;
+    this.totalCountMode = FlightCountMode.EXACT;
     this.booleanOperationExpression = booleanOperationExpression;
   }
 
@@ -79,6 +81,10 @@ public class FlightFilter {
     return submittedTimeSortDirection;
   }
 
+  public FlightCountMode getTotalCountMode() {
+    return totalCountMode;
+  }
+
   /**
    * Filter by submit time
    *
@@ -224,6 +230,24 @@ public class FlightFilter {
     return this;
   }
 
+  /**
+   * Specify how the total number of flights in the filtered set is computed when enumerating with
+   * a page token. Counting every matching flight can cost more than fetching the page on a large
+   * flight table, so callers that do not need an exact total can ask for an estimate or none.
+   *
+   * @param totalCountMode exact (default), estimated, or no total count
+   * @return {@code this}, for fluent style
+   * @throws FlightFilterException if the specified value is null
+   */
+  public FlightFilter totalCountMode(FlightCountMode totalCountMode) {
+    if (totalCountMode == null) {
+      throw new FlightFilterException("Total count mode cannot be null");
+    }
+
+    this.totalCountMode = totalCountMode;
+    return this;
+  }
+
   public record Value(FlightFilterPredicate predicate, String string, Instant instant) {
     Value(FlightFilterPredicate predicate, String string) {
       this(predicate, string, null);
@@ -0,0 +1,18 @@
+package bio.terra.stairway;
+
+/** The storage engine a Stairway instance keeps its flights in */
+public enum FlightStoreType {
+  /** Flights are stored in the Postgres database passed to initialize; the default */
+  POSTGRES,
+  /**
+   * Flights are kept in memory, shared by the Stairway instances in the same JVM. Nothing survives
+   * a restart of the JVM.
+   */
+  IN_MEMORY,
+  /**
+   * Flights are kept in memory and written to an append-only journal in a local directory, from
+   * which they are recovered on restart. The journal belongs to a single Stairway instance; it
+   * cannot be shared by a cluster.
+   */
+  JOURNAL
+}
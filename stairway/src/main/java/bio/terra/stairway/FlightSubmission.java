@@ -0,0 +1,56 @@
+package bio.terra.stairway;
+
+/** Class that holds one flight of a {@link Stairway#submitBatch} call */
+public class FlightSubmission {
+  private final String flightId;
+  private final Class<? extends Flight> flightClass;
+  private final FlightMap inputParameters;
+  private final boolean shouldQueue;
+  private final FlightDebugInfo debugInfo;
+
+  public FlightSubmission(
+      String flightId, Class<? extends Flight> flightClass, FlightMap inputParameters) {
+    this(flightId, flightClass, inputParameters, false, null);
+  }
+
+  /**
+   * @param flightId id of the flight; must be unique, as for {@link Stairway#submit}
+   * @param flightClass class object of the class derived from Flight; e.g., MyFlight.class
+   * @param inputParameters key-value map of parameters to the flight
+   * @param shouldQueue true to put this flight on the queue; false to try to run it on this
+   *     instance
+   * @param debugInfo optional debug info structure to inject failures at points in the flight
+   */
+  public FlightSubmission(
+      String flightId,
+      Class<? extends Flight> flightClass,
+      FlightMap inputParameters,
+      boolean shouldQueue,
+      FlightDebugInfo debugInfo) {
+    this.flightId = flightId;
+    this.flightClass = flightClass;
+    this.inputParameters = inputParameters;
+    this.shouldQueue = shouldQueue;
+    this.debugInfo = debugInfo;
+  }
+
+  public String getFlightId() {
+    return flightId;
+  }
+
+  public Class<? extends Flight> getFlightClass() {
+    return flightClass;
+  }
+
+  public FlightMap getInputParameters() {
+    return inputParameters;
+  }
+
+  public boolean getShouldQueue() {
+    return shouldQueue;
+  }
+
+  public FlightDebugInfo getDebugInfo() {
+    return debugInfo;
+  }
+}
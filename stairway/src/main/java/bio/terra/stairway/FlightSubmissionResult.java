@@ -0,0 +1,61 @@
+package bio.terra.stairway;
+
+import bio.terra.stairway.exception.StairwayException;
+import java.util.Optional;
+
+/** Class that holds the outcome of one flight of a {@link Stairway#submitBatch} call */
+public class FlightSubmissionResult {
+  private final String flightId;
+  private final boolean queued;
+  private final StairwayException exception;
+
+  private FlightSubmissionResult(String flightId, boolean queued, StairwayException exception) {
+    this.flightId = flightId;
+    this.queued = queued;
+    this.exception = exception;
+  }
+
+  /**
+   * @param flightId id of the submitted flight
+   * @param queued true if the flight was put on the work queue; false if it runs on this instance
+   * @return result of a submitted flight
+   */
+  public static FlightSubmissionResult submitted(String flightId, boolean queued) {
+    return new FlightSubmissionResult(flightId, queued, null);
+  }
+
+  /**
+   * @param flightId id of the flight that was not submitted
+   * @param exception why the flight was not submitted
+   * @return result of a flight that was not submitted
+   */
+  public static FlightSubmissionResult failed(String flightId, StairwayException exception) {
+    return new FlightSubmissionResult(flightId, false, exception);
+  }
+
+  public String getFlightId() {
+    return flightId;
+  }
+
+  /**
+   * @return true if the flight was created and is running or queued
+   */
+  public boolean isSubmitted() {
+    return exception == null;
+  }
+
+  /**
+   * @return true if the flight was put on the work queue
+   */
+  public boolean isQueued() {
+    return queued;
+  }
+
+  /**
+   * @return why the flight was not submitted; e.g., {@link
+   *     bio.terra.stairway.exception.DuplicateFlightIdException}
+   */
+  public Optional<StairwayException> getException() {
+    return Optional.ofNullable(exception);
+  }
+}
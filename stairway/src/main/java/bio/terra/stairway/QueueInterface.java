@@ -1,5 +1,7 @@
 package bio.terra.stairway;
 
+import java.util.List;
+
 /**
  * In a cluster configuration (e.g., Kubernetes), multiple service instances containing Stairway
  * instances cooperate to provide the service. In that configuration, Stairway uses a queue to share
@@ -56,6 +58,19 @@ public interface QueueInterface {
    */
   void enqueueMessage(String message) throws InterruptedException;
 
+  /**
+   * Put several messages on the queue. Implementations should send them together where the queue
+   * allows it; the default puts them on the queue one at a time.
+   *
+   * @param messages the messages to enqueue
+   * @throws InterruptedException allows for queue waits to throw if the calling thread is shutdown
+   */
+  default void enqueueMessages(List<String> messages) throws InterruptedException {
+    for (String message : messages) {
+      enqueueMessage(message);
+    }
+  }
+
   /**
    * Remove all messages from a queue. NOTE: This method is intended for controlled test
    * environments where a cloud platform queue is reused. It should clear all messages from the
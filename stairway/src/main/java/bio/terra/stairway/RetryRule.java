@@ -1,5 +1,8 @@
 package bio.terra.stairway;
 
+import java.time.Duration;
+import java.util.Optional;
+
 /**
  * Implementations of the interface are used to wait between retries and inform the caller when no
  * more retries should be attempted.
@@ -22,4 +25,18 @@ public interface RetryRule {
    * @throws InterruptedException propagated when sleep is interrupted
    */
   boolean retrySleep() throws InterruptedException;
+
+  /**
+   * {@link Flight} calls the {@code retryDelay} method, instead of {@code retrySleep}, after a
+   * retry-able error from a step. It advances the rule as {@code retrySleep} does, but returns the
+   * time to wait instead of sleeping. That lets Stairway release the flight's thread during a long
+   * wait; see {@link StairwayBuilder#retryWaitReleaseThreshold(Duration)}. The default calls {@code
+   * retrySleep} and returns no further wait.
+   *
+   * @return time to wait before the next retry; empty if no more retries should be attempted
+   * @throws InterruptedException propagated when sleep is interrupted
+   */
+  default Optional<Duration> retryDelay() throws InterruptedException {
+    return retrySleep() ? Optional.of(Duration.ZERO) : Optional.empty();
+  }
 }
@@ -2,6 +2,7 @@ package bio.terra.stairway;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,24 +39,34 @@ public class RetryRuleExponentialBackoff implements RetryRule {
 
   @Override
   public boolean retrySleep() throws InterruptedException {
+    Optional<Duration> delay = retryDelay();
+    if (delay.isEmpty()) {
+      return false;
+    }
+    TimeUnit.MILLISECONDS.sleep(delay.get().toMillis());
+    return true;
+  }
+
+  @Override
+  public Optional<Duration> retryDelay() {
     Instant now = Instant.now();
     if (now.isAfter(endTime)) {
       logger.info(
           "Retry rule exponential: now ({}) is past max time {} - not retrying", now, endTime);
-      return false;
+      return Optional.empty();
     }
 
     logger.info(
-        "Retry rule exponential: now ({}) is before {} - retrying after sleep of {} seconds",
+        "Retry rule exponential: now ({}) is before {} - retrying after wait of {} seconds",
         now,
         endTime,
         intervalSeconds);
 
-    TimeUnit.SECONDS.sleep(intervalSeconds);
+    Duration delay = Duration.ofSeconds(intervalSeconds);
     intervalSeconds = intervalSeconds + intervalSeconds;
     if (intervalSeconds > maxIntervalSeconds) {
       intervalSeconds = maxIntervalSeconds;
     }
-    return true;
+    return Optional.of(delay);
   }
 }
@@ -1,5 +1,7 @@
 package bio.terra.stairway;
 
+import java.time.Duration;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,19 +35,28 @@ public class RetryRuleFixedInterval implements RetryRule {
 
   @Override
   public boolean retrySleep() throws InterruptedException {
+    Optional<Duration> delay = retryDelay();
+    if (delay.isEmpty()) {
+      return false;
+    }
+    TimeUnit.MILLISECONDS.sleep(delay.get().toMillis());
+    return true;
+  }
+
+  @Override
+  public Optional<Duration> retryDelay() {
     retryCount++;
     if (retryCount > maxCount) {
       logger.info("Retry rule fixed: retried {} times - not retrying", maxCount);
-      return false;
+      return Optional.empty();
     }
 
     logger.info(
-        "Retry rule fixed: starting retry {} of {} after sleep of {} seconds",
+        "Retry rule fixed: starting retry {} of {} after wait of {} seconds",
         retryCount,
         maxCount,
         intervalSeconds);
 
-    TimeUnit.SECONDS.sleep(intervalSeconds);
-    return true;
+    return Optional.of(Duration.ofSeconds(intervalSeconds));
   }
 }
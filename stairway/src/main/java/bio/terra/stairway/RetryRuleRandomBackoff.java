@@ -1,5 +1,7 @@
 package bio.terra.stairway;
 
+import java.time.Duration;
+import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
@@ -39,21 +41,30 @@ public class RetryRuleRandomBackoff implements RetryRule {
 
   @Override
   public boolean retrySleep() throws InterruptedException {
+    Optional<Duration> delay = retryDelay();
+    if (delay.isEmpty()) {
+      return false;
+    }
+    TimeUnit.MILLISECONDS.sleep(delay.get().toMillis());
+    return true;
+  }
+
+  @Override
+  public Optional<Duration> retryDelay() {
     retryCount++;
     if (retryCount > maxCount) {
       logger.info("Retry rule random: retried {} times - not retrying", maxCount);
-      return false;
+      return Optional.empty();
     }
 
     int sleepUnits = ThreadLocalRandom.current().nextInt(0, maxConcurrency);
     long ms = sleepUnits * operationIncrementMilliseconds;
     logger.info(
-        "Retry rule random: starting retry {} of {} after sleep of {} milliseconds",
+        "Retry rule random: starting retry {} of {} after wait of {} milliseconds",
         retryCount,
         maxCount,
         ms);
 
-    TimeUnit.MILLISECONDS.sleep(ms);
-    return true;
+    return Optional.of(Duration.ofMillis(ms));
   }
 }
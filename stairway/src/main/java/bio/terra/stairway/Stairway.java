@@ -9,7 +9,9 @@ import bio.terra.stairway.exception.StairwayException;
 import bio.terra.stairway.exception.StairwayExecutionException;
 import bio.terra.stairway.exception.StairwayShutdownException;
 import jakarta.annotation.Nullable;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
 
@@ -25,8 +27,8 @@ import javax.sql.DataSource;
  * application come up and do any database configuration.
  *
  * <p>The second step is the 'initialize' call (below) that performs any necessary database
- * initialization and migration. It sets up the flightDao and returns the current list of Stairway
- * instances recorded in the database.
+ * initialization and migration. It sets up the flight store and returns the current list of
+ * Stairway instances recorded in the database.
  *
  * <p>The third step is the 'recover-and-start' call (further below) that performs any requested
  * recovery and opens this Stairway for business. Some flights may already be running depending on
@@ -38,7 +40,8 @@ public interface Stairway {
   /**
    * Second step of initialization
    *
-   * @param dataSource database to be used to store Stairway data
+   * @param dataSource database to be used to store Stairway data; may be null with the in-memory
+   *     flight store
    * @param forceCleanStart true will drop any existing stairway data and purge the work queue.
    *     Otherwise existing flights are recovered.
    * @param migrateUpgrade true will run the migrate to upgrade the database
@@ -196,11 +199,37 @@ public interface Stairway {
           InterruptedException,
           DuplicateFlightIdException;
 
+  /**
+   * Submit many flights at once. The flights are created together, in one transaction with the
+   * database flight store, and then launched on this instance or put on the work queue in one
+   * publish. Each flight is queued or launched as {@link #submitWithDebugInfo} would, except that
+   * flights beyond the room in the local thread pool are queued when there is a work queue.
+   *
+   * <p>Problems with single flights do not fail the batch; they are reported in the results. A
+   * flight whose id already exists, or repeats an earlier id of the batch, fails with {@link
+   * DuplicateFlightIdException}. A flight that cannot be made fails with {@link
+   * bio.terra.stairway.exception.MakeFlightException}.
+   *
+   * @param submissions flights to submit
+   * @return result for each submission, in the order of the submissions
+   * @throws StairwayException other Stairway errors
+   * @throws StairwayShutdownException Stairway is shutting down and there is no work queue
+   * @throws DatabaseOperationException failure persisting the flights to the database
+   * @throws StairwayExecutionException failure queuing the flights
+   * @throws InterruptedException this thread was interrupted
+   */
+  List<FlightSubmissionResult> submitBatch(List<FlightSubmission> submissions)
+      throws StairwayException,
+          StairwayShutdownException,
+          DatabaseOperationException,
+          StairwayExecutionException,
+          InterruptedException;
+
   /**
    * Wait for a flight to complete
    *
    * <p>This is a very simple polling method to help you get started with Stairway. It may not be
-   * what you want for production code.
+   * what you want for production code; see {@link #awaitFlight}.
    *
    * @param flightId the flight to wait for
    * @param pollSeconds sleep time for each poll cycle; if null, defaults to 10 seconds
@@ -219,6 +248,22 @@ public interface Stairway {
           FlightWaitTimedOutException,
           InterruptedException;
 
+  /**
+   * Wait for a flight to complete without polling
+   *
+   * <p>The returned future is completed with the final flight state as soon as the flight
+   * completes on this Stairway instance. A completion on another instance is seen right away when
+   * {@link StairwayBuilder#flightCompletionNotifications} is enabled, and otherwise by a periodic
+   * check. The future is completed exceptionally with {@link FlightNotFoundException} if the
+   * flight does not exist, {@link FlightWaitTimedOutException} if the timeout expires first, and
+   * {@link StairwayShutdownException} if Stairway shuts down first.
+   *
+   * @param flightId the flight to wait for
+   * @param timeout how long to wait
+   * @return future of the final flight state
+   */
+  CompletableFuture<FlightState> awaitFlight(String flightId, Duration timeout);
+
   /**
    * Try to resume a flight. If the flight is unowned and either in QUEUED, WAITING or READY state,
    * then this Stairway takes ownership and executes the rest of the flight. There can be race
@@ -298,8 +343,9 @@ public interface Stairway {
    *     beginning of the result set.
    * @param limit limit the number of rows returned. Null means no limit: return all rows
    * @param filter predicates to apply to filter flights
-   * @return FlightEnumeration including the total flights in the filtered set, the encoded token
-   *     for the next page of results, as well as the list of Flightstate objects.
+   * @return FlightEnumeration including the total flights in the filtered set, computed as {@link
+   *     FlightFilter#totalCountMode(FlightCountMode)} asks, the encoded token for the next page of
+   *     results, as well as the list of Flightstate objects.
    * @throws StairwayException - other Stairway error
    * @throws DatabaseOperationException unexpected database errors
    * @throws InterruptedException on shutdown
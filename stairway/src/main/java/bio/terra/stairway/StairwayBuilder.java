@@ -2,9 +2,11 @@ package bio.terra.stairway;
 
 import bio.terra.stairway.exception.StairwayExecutionException;
 import bio.terra.stairway.impl.StairwayImpl;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import javax.sql.DataSource;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
@@ -29,10 +31,35 @@ public class StairwayBuilder {
   private QueueInterface workQueue;
   private Duration retentionCheckInterval;
   private Duration completedFlightRetention;
+  private Integer retentionCleanupBatchSize;
+  private Duration retentionCleanupBatchPause;
+  private Duration retentionCleanupTimeBudget;
+  private Integer workingMapSnapshotInterval;
+  private Integer stepCheckpointBatchSize;
+  private Duration stepCheckpointLinger;
+  private Boolean partitionedFlightLog;
+  private Integer flightMapCompressionThreshold;
+  private Integer flightMapOffloadThreshold;
+  private FlightStoreType flightStoreType;
+  private FlightExecutionMode flightExecutionMode;
+  private Path journalDirectory;
+  private Integer journalSegmentSize;
+  private DataSource readDataSource;
+  private Duration readReplicaMaxLag;
+  private Duration flightCountCacheTtl;
+  private Boolean indexedInputFilters;
+  private Boolean flightStatusCounters;
+  private Boolean workQueueOutbox;
+  private Boolean flightCompletionNotifications;
+  private Duration retryWaitReleaseThreshold;
+  private Duration flightWakeCheckInterval;
+  private Boolean databaseCircuitBreaker;
 
   /**
    * Determines the size of the thread pool used for running Stairway flights. Default is {@value
-   * DefaultThreadPoolTaskExecutor#DEFAULT_MAX_PARALLEL_FLIGHTS}.
+   * DefaultThreadPoolTaskExecutor#DEFAULT_MAX_PARALLEL_FLIGHTS}. With {@link
+   * FlightExecutionMode#VIRTUAL_THREADS}, it is the number of flights that may run at once, and
+   * defaults to 1000.
    *
    * @param maxParallelFlights maximum parallel flights to run
    * @return this
@@ -192,6 +219,439 @@ public class StairwayBuilder {
     return completedFlightRetention;
   }
 
+  /**
+   * Number of completed flights deleted in each transaction of a retention clean up pass. Defaults
+   * to 500.
+   *
+   * @param retentionCleanupBatchSize maximum flights deleted per transaction
+   * @return this
+   */
+  public StairwayBuilder retentionCleanupBatchSize(int retentionCleanupBatchSize) {
+    this.retentionCleanupBatchSize = retentionCleanupBatchSize;
+    return this;
+  }
+
+  public Integer getRetentionCleanupBatchSize() {
+    return retentionCleanupBatchSize;
+  }
+
+  /**
+   * Pause between the delete transactions of a retention clean up pass. Defaults to one second.
+   *
+   * @param retentionCleanupBatchPause time to wait between batches
+   * @return this
+   */
+  public StairwayBuilder retentionCleanupBatchPause(Duration retentionCleanupBatchPause) {
+    this.retentionCleanupBatchPause = retentionCleanupBatchPause;
+    return this;
+  }
+
+  public Duration getRetentionCleanupBatchPause() {
+    return retentionCleanupBatchPause;
+  }
+
+  /**
+   * Longest time a retention clean up pass keeps deleting batches. Expired flights left over when
+   * the budget is used up are deleted by the next pass. Defaults to ten minutes.
+   *
+   * @param retentionCleanupTimeBudget time budget for each clean up pass
+   * @return this
+   */
+  public StairwayBuilder retentionCleanupTimeBudget(Duration retentionCleanupTimeBudget) {
+    this.retentionCleanupTimeBudget = retentionCleanupTimeBudget;
+    return this;
+  }
+
+  public Duration getRetentionCleanupTimeBudget() {
+    return retentionCleanupTimeBudget;
+  }
+
+  /**
+   * Control how often the full working map is written to the flight log. With an interval of N,
+   * every Nth log record of a flight stores the complete working map and the records in between
+   * store only the keys that changed since the previous record. Reading the working map rebuilds it
+   * from the most recent full snapshot plus at most N-1 deltas. Defaults to 1, which stores the
+   * complete working map on every log record.
+   *
+   * @param workingMapSnapshotInterval number of log records per full working map snapshot
+   * @return this
+   */
+  public StairwayBuilder workingMapSnapshotInterval(int workingMapSnapshotInterval) {
+    this.workingMapSnapshotInterval = workingMapSnapshotInterval;
+    return this;
+  }
+
+  public Integer getWorkingMapSnapshotInterval() {
+    return workingMapSnapshotInterval;
+  }
+
+  /**
+   * Enable group commit of step records. Step records from concurrently running flights are
+   * collected by a single writer and stored in one transaction, up to this many records per
+   * transaction. Each flight still waits until its own record is durable. Defaults to 1, which
+   * stores each step record in its own transaction.
+   *
+   * @param stepCheckpointBatchSize maximum number of step records per transaction
+   * @return this
+   */
+  public StairwayBuilder stepCheckpointBatchSize(int stepCheckpointBatchSize) {
+    this.stepCheckpointBatchSize = stepCheckpointBatchSize;
+    return this;
+  }
+
+  public Integer getStepCheckpointBatchSize() {
+    return stepCheckpointBatchSize;
+  }
+
+  /**
+   * When group commit is enabled, the longest time the writer waits for more step records after
+   * the first record of a batch arrives. Defaults to zero: the writer commits whatever records
+   * queued up while it was committing the previous batch.
+   *
+   * @param stepCheckpointLinger maximum time to hold a batch open
+   * @return this
+   */
+  public StairwayBuilder stepCheckpointLinger(Duration stepCheckpointLinger) {
+    this.stepCheckpointLinger = stepCheckpointLinger;
+    return this;
+  }
+
+  public Duration getStepCheckpointLinger() {
+    return stepCheckpointLinger;
+  }
+
+  /**
+   * Use the partitioned schema for the flight log tables. The flightlog and flightworking tables
+   * are partitioned by log time, one partition per day, and the retention cleaner drops expired
+   * day partitions instead of deleting their rows. The partitioning is applied by the database
+   * migration, so it takes effect when Stairway is initialized with migrateUpgrade or
+   * forceCleanStart. Existing tables become the default partitions and are cleaned up by row as
+   * before. The migration cannot be reversed. Requires PostgreSQL. Defaults to false.
+   *
+   * @param partitionedFlightLog true to partition the flight log tables by day
+   * @return this
+   */
+  public StairwayBuilder partitionedFlightLog(boolean partitionedFlightLog) {
+    this.partitionedFlightLog = partitionedFlightLog;
+    return this;
+  }
+
+  public Boolean getPartitionedFlightLog() {
+    return partitionedFlightLog;
+  }
+
+  /**
+   * Compress working map and persisted state values whose JSON is at least this many characters
+   * long. Compressed values are stored as binary in the flight map tables, with the codec recorded
+   * in each row, so rows written with and without compression can be read either way. Input
+   * parameters are never compressed, since input filters compare their JSON. Requires PostgreSQL.
+   * Default is no compression.
+   *
+   * @param flightMapCompressionThreshold length in characters from which values are compressed
+   * @return this
+   */
+  public StairwayBuilder flightMapCompressionThreshold(int flightMapCompressionThreshold) {
+    this.flightMapCompressionThreshold = flightMapCompressionThreshold;
+    return this;
+  }
+
+  public Integer getFlightMapCompressionThreshold() {
+    return flightMapCompressionThreshold;
+  }
+
+  /**
+   * Offload working map and persisted state values whose JSON is at least this many characters
+   * long. An offloaded value is stored once in a value table, keyed by the hash of its content, and
+   * the map rows refer to it, so a large value carried through every step of a flight, or shared
+   * by many flights, is stored once. Offloaded values are deleted when no remaining flight refers
+   * to them. Input parameters are never offloaded. Requires PostgreSQL. Default is no offloading.
+   *
+   * @param flightMapOffloadThreshold length in characters from which values are offloaded
+   * @return this
+   */
+  public StairwayBuilder flightMapOffloadThreshold(int flightMapOffloadThreshold) {
+    this.flightMapOffloadThreshold = flightMapOffloadThreshold;
+    return this;
+  }
+
+  public Integer getFlightMapOffloadThreshold() {
+    return flightMapOffloadThreshold;
+  }
+
+  /**
+   * Storage engine for flights. {@link FlightStoreType#POSTGRES} stores flights in the database
+   * passed to initialize. {@link FlightStoreType#IN_MEMORY} keeps them in memory, where they are
+   * lost when the JVM exits; it needs no database, and initialize may be passed a null data source.
+   * Stairway instances in the same JVM using the in-memory store share it, so they can recover each
+   * other's flights. {@link FlightStoreType#JOURNAL} also keeps them in memory, but writes every
+   * change to a journal in {@link #journalDirectory(Path)} and recovers them from it on restart; it
+   * needs no database either, but serves a single Stairway instance. Defaults to POSTGRES.
+   *
+   * @param flightStoreType storage engine for flights
+   * @return this
+   */
+  public StairwayBuilder flightStoreType(FlightStoreType flightStoreType) {
+    this.flightStoreType = flightStoreType;
+    return this;
+  }
+
+  public FlightStoreType getFlightStoreType() {
+    return flightStoreType;
+  }
+
+  /**
+   * Threads to run flights on. {@link FlightExecutionMode#PLATFORM_THREADS} runs them on the
+   * {@link #executor(ThreadPoolTaskExecutor)} thread pool. {@link
+   * FlightExecutionMode#VIRTUAL_THREADS} runs each flight on a virtual thread, and admits up to
+   * maxParallelFlights of them at once; the rest wait their turn as local queued flights. Virtual
+   * threads suit flights whose steps spend most of their time waiting on remote calls. They require
+   * Java 21 or later, and cannot be combined with a supplied executor. Defaults to
+   * PLATFORM_THREADS.
+   *
+   * @param flightExecutionMode threads to run flights on
+   * @return this
+   */
+  public StairwayBuilder flightExecutionMode(FlightExecutionMode flightExecutionMode) {
+    this.flightExecutionMode = flightExecutionMode;
+    return this;
+  }
+
+  public FlightExecutionMode getFlightExecutionMode() {
+    return flightExecutionMode;
+  }
+
+  /**
+   * Directory of the journal of the {@link FlightStoreType#JOURNAL} flight store. It is created if
+   * it does not exist. Only one Stairway instance at a time may use a journal directory. Required
+   * with the journal flight store.
+   *
+   * @param journalDirectory directory of the journal files
+   * @return this
+   */
+  public StairwayBuilder journalDirectory(Path journalDirectory) {
+    this.journalDirectory = journalDirectory;
+    return this;
+  }
+
+  public Path getJournalDirectory() {
+    return journalDirectory;
+  }
+
+  /**
+   * Size in bytes of each segment file of the journal. The journal is compacted after a few
+   * segments fill up, so this bounds how much history is kept between compactions. Default is 64
+   * MiB.
+   *
+   * @param journalSegmentSize size of a journal segment file in bytes
+   * @return this
+   */
+  public StairwayBuilder journalSegmentSize(int journalSegmentSize) {
+    this.journalSegmentSize = journalSegmentSize;
+    return this;
+  }
+
+  public Integer getJournalSegmentSize() {
+    return journalSegmentSize;
+  }
+
+  /**
+   * Read-only database, usually a streaming replica of the database passed to initialize, used
+   * for flight state and enumeration reads and the {@link Control} queries, so that polling does
+   * not compete with flight steps on the primary. Those reads go to the replica only while its
+   * replication lag is within {@link #readReplicaMaxLag(Duration)}, and to the primary otherwise.
+   * Reads that must see the latest writes, such as resume and recovery, always use the primary.
+   * Requires PostgreSQL. Default is to read everything from the primary.
+   *
+   * @param readDataSource read replica of the Stairway database
+   * @return this
+   */
+  public StairwayBuilder readDataSource(DataSource readDataSource) {
+    this.readDataSource = readDataSource;
+    return this;
+  }
+
+  public DataSource getReadDataSource() {
+    return readDataSource;
+  }
+
+  /**
+   * Staleness bound of reads from the {@link #readDataSource(DataSource)}. The replication lag is
+   * checked about once a second, so a read may be stale by up to about a second more than this.
+   * Default is 10 seconds.
+   *
+   * @param readReplicaMaxLag largest replication lag at which reads go to the replica
+   * @return this
+   */
+  public StairwayBuilder readReplicaMaxLag(Duration readReplicaMaxLag) {
+    this.readReplicaMaxLag = readReplicaMaxLag;
+    return this;
+  }
+
+  public Duration getReadReplicaMaxLag() {
+    return readReplicaMaxLag;
+  }
+
+  /**
+   * Cache the exact total counts of flight enumerations by filter for this long, so paging through
+   * a large filtered set does not count it again for every page. The total can then be behind by up
+   * to this long. Callers can also ask for an estimated total or none per enumeration; see {@link
+   * FlightFilter#totalCountMode(FlightCountMode)}. Requires PostgreSQL. Default is no caching.
+   *
+   * @param flightCountCacheTtl how long a cached count is used
+   * @return this
+   */
+  public StairwayBuilder flightCountCacheTtl(Duration flightCountCacheTtl) {
+    this.flightCountCacheTtl = flightCountCacheTtl;
+    return this;
+  }
+
+  public Duration getFlightCountCacheTtl() {
+    return flightCountCacheTtl;
+  }
+
+  /**
+   * Search input parameter filters in an indexed JSON column of the flight table. With this option,
+   * every flight also stores its input parameters there as one JSON object when it is submitted.
+   * The option fills in the column for flights submitted before it was turned on, indexes it, and
+   * makes equality filters on input parameters use the index instead of a subquery per filter.
+   * Filling in and indexing are done once by the database migration, so the option takes effect
+   * when Stairway is initialized with migrateUpgrade or forceCleanStart. Flights submitted while
+   * the option was off are still found, by their input parameter rows, so filters return the same
+   * flights either way. Requires PostgreSQL. Defaults to false.
+   *
+   * @param indexedInputFilters true to index input parameters for filtering
+   * @return this
+   */
+  public StairwayBuilder indexedInputFilters(boolean indexedInputFilters) {
+    this.indexedInputFilters = indexedInputFilters;
+    return this;
+  }
+
+  public Boolean getIndexedInputFilters() {
+    return indexedInputFilters;
+  }
+
+  /**
+   * Keep counts of flights by status and flight class in a summary table, updated in the same
+   * transaction as every flight status change. {@link Control#countFlights} and {@link
+   * Control#countOwned} then read the summary instead of counting the flight table. The counts are
+   * rebuilt from the flight table when Stairway starts and every hour after, which corrects drift,
+   * for example from Stairway instances that do not keep the counts. Until the first rebuild
+   * finishes, flights that existed before the counts were kept are not counted. Requires
+   * PostgreSQL. Defaults to false.
+   *
+   * @param flightStatusCounters true to keep flight status counters
+   * @return this
+   */
+  public StairwayBuilder flightStatusCounters(boolean flightStatusCounters) {
+    this.flightStatusCounters = flightStatusCounters;
+    return this;
+  }
+
+  public Boolean getFlightStatusCounters() {
+    return flightStatusCounters;
+  }
+
+  /**
+   * Put flights on the work queue through an outbox table. A flight submitted to the queue, or
+   * yielded to the queue, is written to the outbox in the same transaction that makes it READY.
+   * A relay thread puts the flights in the outbox on the queue in batches and marks them QUEUED,
+   * so the submitting thread does not wait for the queue. Only applies when a work queue is
+   * configured. Requires PostgreSQL. Defaults to false.
+   *
+   * @param workQueueOutbox true to queue flights through the outbox
+   * @return this
+   */
+  public StairwayBuilder workQueueOutbox(boolean workQueueOutbox) {
+    this.workQueueOutbox = workQueueOutbox;
+    return this;
+  }
+
+  public Boolean getWorkQueueOutbox() {
+    return workQueueOutbox;
+  }
+
+  /**
+   * Send flight completions between Stairway instances with Postgres LISTEN/NOTIFY, so a future
+   * from {@link Stairway#awaitFlight} completes right away when the flight completes on another
+   * instance. Without notifications, such completions are seen by a periodic check. Sending a
+   * notification serializes commits across the database, so only enable this when callers await
+   * flights run elsewhere. Requires PostgreSQL. Defaults to false.
+   *
+   * @param flightCompletionNotifications true to send and listen for completion notifications
+   * @return this
+   */
+  public StairwayBuilder flightCompletionNotifications(boolean flightCompletionNotifications) {
+    this.flightCompletionNotifications = flightCompletionNotifications;
+    return this;
+  }
+
+  public Boolean getFlightCompletionNotifications() {
+    return flightCompletionNotifications;
+  }
+
+  /**
+   * Release the flight thread during long step retry waits. When a step's retry rule asks to wait
+   * at least this long, the flight stops, still running and owned by this Stairway instance, and
+   * its thread goes back to the pool. When the wait is over the flight continues with the same
+   * step, and the retry rule continues where it left off. Shorter waits sleep on the flight thread,
+   * as do waits of retry rules that only implement {@link RetryRule#retrySleep()}.
+   *
+   * <p>The waiting flights are held in memory. If this instance fails during a wait, the flight is
+   * recovered like any other running flight, and the step's retry rule starts over.
+   *
+   * <p>Default is null: retry waits always sleep on the flight thread.
+   *
+   * @param retryWaitReleaseThreshold shortest retry wait that releases the flight thread
+   * @return this
+   */
+  public StairwayBuilder retryWaitReleaseThreshold(Duration retryWaitReleaseThreshold) {
+    this.retryWaitReleaseThreshold = retryWaitReleaseThreshold;
+    return this;
+  }
+
+  public Duration getRetryWaitReleaseThreshold() {
+    return retryWaitReleaseThreshold;
+  }
+
+  /**
+   * Interval between checks for waiting flights that are due to wake. A step that returns {@link
+   * StepResult#waitUntil} leaves its flight waiting with a wake time. The wake timer of every
+   * Stairway instance claims due flights, as many as the instance has room to run, and resumes
+   * them. A flight therefore wakes up to one interval after its wake time. Default is 5 seconds.
+   *
+   * @param flightWakeCheckInterval interval between checks for due flights
+   * @return this
+   */
+  public StairwayBuilder flightWakeCheckInterval(Duration flightWakeCheckInterval) {
+    this.flightWakeCheckInterval = flightWakeCheckInterval;
+    return this;
+  }
+
+  public Duration getFlightWakeCheckInterval() {
+    return flightWakeCheckInterval;
+  }
+
+  /**
+   * Fail flight submissions and flight state reads immediately while the database is unreachable.
+   * After a run of consecutive connection or resource failures, the breaker of this Stairway
+   * instance opens, and these calls throw DatabaseOperationException instead of waiting out their
+   * retries. Every few seconds one call is let through to probe the database, and its success
+   * closes the breaker. The database writes of running flights are never refused. Requires
+   * PostgreSQL. Defaults to false.
+   *
+   * @param databaseCircuitBreaker true to fail fast while the database is unreachable
+   * @return this
+   */
+  public StairwayBuilder databaseCircuitBreaker(boolean databaseCircuitBreaker) {
+    this.databaseCircuitBreaker = databaseCircuitBreaker;
+    return this;
+  }
+
+  public Boolean getDatabaseCircuitBreaker() {
+    return databaseCircuitBreaker;
+  }
+
   /**
    * Construct a Stairway instance based on the builder inputs
    *
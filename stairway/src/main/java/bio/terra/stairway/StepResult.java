@@ -1,5 +1,7 @@
 package bio.terra.stairway;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Optional;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -15,6 +17,7 @@ public class StepResult {
 
   private StepStatus stepStatus;
   private Exception exception;
+  private Instant wakeTime;
 
   private static StepResult stepResultSuccess = new StepResult(StepStatus.STEP_RESULT_SUCCESS);
 
@@ -27,6 +30,31 @@ public class StepResult {
     return stepResultSuccess;
   }
 
+  /**
+   * Result of a step that makes the flight wait until a given time. The flight is WAITING, as with
+   * {@link StepStatus#STEP_RESULT_WAIT}, and holds no thread. The wake time is stored with the
+   * flight, and the wake timer of any Stairway instance resumes the flight once it is due. The
+   * flight may still be resumed earlier with {@code Stairway.resume}.
+   *
+   * @param wakeTime time to resume the flight
+   * @return a StepResult of STEP_RESULT_WAIT with the wake time
+   */
+  public static StepResult waitUntil(Instant wakeTime) {
+    StepResult stepResult = new StepResult(StepStatus.STEP_RESULT_WAIT);
+    stepResult.wakeTime = wakeTime;
+    return stepResult;
+  }
+
+  /**
+   * Result of a step that makes the flight wait for a time; see {@link #waitUntil(Instant)}
+   *
+   * @param delay how long the flight waits
+   * @return a StepResult of STEP_RESULT_WAIT with a wake time of now plus the delay
+   */
+  public static StepResult waitFor(Duration delay) {
+    return waitUntil(Instant.now().plus(delay));
+  }
+
   public StepResult(StepStatus stepStatus, Exception exception) {
     this.stepStatus = stepStatus;
     this.exception = exception;
@@ -54,6 +82,13 @@ public class StepResult {
     return Optional.ofNullable(exception);
   }
 
+  /**
+   * @return time a waiting flight is resumed; empty if it waits to be resumed by a caller
+   */
+  public Optional<Instant> getWakeTime() {
+    return Optional.ofNullable(wakeTime);
+  }
+
   public boolean isSuccess() {
     return (stepStatus == StepStatus.STEP_RESULT_SUCCESS
         || stepStatus == StepStatus.STEP_RESULT_RERUN
@@ -67,6 +102,7 @@ public class StepResult {
     return new ToStringBuilder(this, ToStringStyle.JSON_STYLE)
         .append("stepStatus", stepStatus)
         .append("exception", exception)
+        .append("wakeTime", wakeTime)
         .toString();
   }
 }
@@ -1,34 +1,125 @@
 package bio.terra.stairway.impl;
 
 import bio.terra.stairway.exception.DatabaseOperationException;
+import jakarta.annotation.Nullable;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This cleaner threat initiates deletion of completed flights that are older than the retention
  * time set for this stairway.
+ *
+ * <p>Flights are deleted in batches, oldest first, with each batch in its own transaction. The
+ * cleaner pauses between batches and stops when it has used up its time budget for the run, so a
+ * large backlog is worked off over several runs without holding locks for long.
+ *
+ * <p>When the flight log tables are partitioned by day, the cleaner finishes a run by dropping the
+ * day partitions that no longer hold log records of any remaining flight.
  */
 class CompletedFlightCleaner implements Runnable {
   private static final Logger logger = LoggerFactory.getLogger(CompletedFlightCleaner.class);
   private final Duration retention;
-  private final FlightDao flightDao;
+  private final FlightStore flightStore;
+  private final int batchSize;
+  private final Duration batchPause;
+  private final Duration runTimeBudget;
+  private final FlightLogPartitionDao partitionDao;
 
-  CompletedFlightCleaner(Duration retention, FlightDao flightDao) {
+  // Progress metrics across runs
+  private final AtomicLong runCount = new AtomicLong();
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong deletedCount = new AtomicLong();
+  private final AtomicLong budgetExhaustedCount = new AtomicLong();
+  private final AtomicLong droppedPartitionCount = new AtomicLong();
+
+  CompletedFlightCleaner(
+      Duration retention,
+      FlightStore flightStore,
+      int batchSize,
+      Duration batchPause,
+      Duration runTimeBudget,
+      @Nullable FlightLogPartitionDao partitionDao) {
     this.retention = retention;
-    this.flightDao = flightDao;
+    this.flightStore = flightStore;
+    this.batchSize = batchSize;
+    this.batchPause = batchPause;
+    this.runTimeBudget = runTimeBudget;
+    this.partitionDao = partitionDao;
   }
 
   @Override
   public void run() {
-    Instant deleteOlderThan = Instant.now().minus(retention);
+    Instant startTime = Instant.now();
+    Instant deadline = startTime.plus(runTimeBudget);
+    Instant deleteOlderThan = startTime.minus(retention);
     logger.info("Removing flights completed before {}", deleteOlderThan);
+
+    int runDeleted = 0;
+    int runBatches = 0;
+    boolean backlogRemains = false;
     try {
-      int count = flightDao.deleteCompletedFlights(deleteOlderThan);
-      logger.info("Cleaned up {} completed flights", count);
-    } catch (DatabaseOperationException | InterruptedException ex) {
+      while (true) {
+        int count = flightStore.deleteCompletedFlights(deleteOlderThan, batchSize);
+        runBatches++;
+        runDeleted += count;
+        batchCount.incrementAndGet();
+        deletedCount.addAndGet(count);
+        logger.debug("Cleaned up batch of {} completed flights", count);
+
+        if (count < batchSize) {
+          break;
+        }
+        if (!Instant.now().plus(batchPause).isBefore(deadline)) {
+          backlogRemains = true;
+          budgetExhaustedCount.incrementAndGet();
+          break;
+        }
+        TimeUnit.MILLISECONDS.sleep(batchPause.toMillis());
+      }
+
+      if (partitionDao != null) {
+        int dropped = partitionDao.dropExpiredPartitions(deleteOlderThan);
+        droppedPartitionCount.addAndGet(dropped);
+        logger.info("Dropped flight log partitions for {} days", dropped);
+      }
+    } catch (DatabaseOperationException ex) {
       logger.warn("Error removing flights", ex);
+    } catch (InterruptedException ex) {
+      logger.info("Flight cleaner interrupted");
+      Thread.currentThread().interrupt();
+    } finally {
+      runCount.incrementAndGet();
     }
+
+    logger.info(
+        "Cleaned up {} completed flights in {} batches in {} ms{}",
+        runDeleted,
+        runBatches,
+        Duration.between(startTime, Instant.now()).toMillis(),
+        backlogRemains ? "; time budget used up, continuing next run" : "");
+  }
+
+  long getRunCount() {
+    return runCount.get();
+  }
+
+  long getBatchCount() {
+    return batchCount.get();
+  }
+
+  long getDeletedCount() {
+    return deletedCount.get();
+  }
+
+  long getBudgetExhaustedCount() {
+    return budgetExhaustedCount.get();
+  }
+
+  long getDroppedPartitionCount() {
+    return droppedPartitionCount.get();
   }
 }
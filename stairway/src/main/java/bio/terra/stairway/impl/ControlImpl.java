@@ -12,16 +12,36 @@ import java.util.List;
 import java.util.UUID;
 import javax.sql.DataSource;
 
-/** This class provides the implementation of {@link Control}. */
+/**
+ * This class provides the implementation of {@link Control}. The count, list, and map queries
+ * read through the {@link ReadReplicaRouter}, so they may go to a read replica. The forced state
+ * changes, and the reads they depend on, use the primary.
+ *
+ * <p>When Stairway keeps flight status counters, the counts are read from them instead of counted
+ * in the flight table. Every flight that is owned by a Stairway instance is RUNNING, so the owned
+ * count is the RUNNING count.
+ */
 public class ControlImpl implements Control {
   private final DataSource dataSource;
+  private final ReadReplicaRouter readReplicaRouter;
   private final FlightDao flightDao;
   private final StairwayInstanceDao stairwayInstanceDao;
-
-  ControlImpl(DataSource dataSource, FlightDao flightDao, StairwayInstanceDao stairwayInstanceDao) {
+  private final FlightStatusCountDao flightStatusCountDao;
+
+  /**
+   * @param flightStatusCountDao flight status counters; null if Stairway does not keep them
+   */
+  ControlImpl(
+      DataSource dataSource,
+      ReadReplicaRouter readReplicaRouter,
+      FlightDao flightDao,
+      StairwayInstanceDao stairwayInstanceDao,
+      FlightStatusCountDao flightStatusCountDao) {
     this.dataSource = dataSource;
+    this.readReplicaRouter = readReplicaRouter;
     this.flightDao = flightDao;
     this.stairwayInstanceDao = stairwayInstanceDao;
+    this.flightStatusCountDao = flightStatusCountDao;
   }
 
   // -- Flight methods --
@@ -47,13 +67,15 @@ public class ControlImpl implements Control {
 
   public int countFlights(FlightStatus status) throws SQLException {
     String sql;
-    if (status == null) {
+    if (flightStatusCountDao != null) {
+      sql = FlightStatusCountDao.makeCountSql(status != null);
+    } else if (status == null) {
       sql = FLIGHT_SELECT_COUNT;
     } else {
       sql = FLIGHT_SELECT_COUNT + " WHERE status = :status";
     }
 
-    try (var connection = dataSource.getConnection();
+    try (var connection = readReplicaRouter.getReadConnection();
         var statement = new NamedParameterPreparedStatement(connection, sql)) {
       DbUtils.startReadOnlyTransaction(connection);
       if (status != null) {
@@ -67,8 +89,11 @@ public class ControlImpl implements Control {
   }
 
   public int countOwned() throws SQLException {
+    if (flightStatusCountDao != null) {
+      return countFlights(FlightStatus.RUNNING);
+    }
     final String sql = FLIGHT_SELECT_COUNT + " WHERE stairway_id IS NOT NULL";
-    try (var connection = dataSource.getConnection();
+    try (var connection = readReplicaRouter.getReadConnection();
         var statement = new NamedParameterPreparedStatement(connection, sql)) {
       DbUtils.startReadOnlyTransaction(connection);
       int flightCount = countQuery(statement);
@@ -87,7 +112,7 @@ public class ControlImpl implements Control {
     }
     sb.append(FLIGHT_ORDER_PAGE);
 
-    try (var connection = dataSource.getConnection();
+    try (var connection = readReplicaRouter.getReadConnection();
         var statement = new NamedParameterPreparedStatement(connection, sb.toString())) {
       DbUtils.startReadOnlyTransaction(connection);
       if (status != null) {
@@ -105,7 +130,7 @@ public class ControlImpl implements Control {
     sb.append(" WHERE stairway_id IS NOT NULL ");
     sb.append(FLIGHT_ORDER_PAGE);
 
-    try (var connection = dataSource.getConnection();
+    try (var connection = readReplicaRouter.getReadConnection();
         var statement = new NamedParameterPreparedStatement(connection, sb.toString())) {
       DbUtils.startReadOnlyTransaction(connection);
       List<Flight> flightList = flightQuery(statement, offset, limit);
@@ -115,12 +140,18 @@ public class ControlImpl implements Control {
   }
 
   public Flight getFlight(String flightId) throws SQLException {
+    return getFlight(flightId, false);
+  }
+
+  // The forced state changes read from the primary, since they must see the latest state
+  private Flight getFlight(String flightId, boolean fromPrimary) throws SQLException {
     StringBuilder sb = new StringBuilder();
     sb.append("SELECT").append(FLIGHT_SELECT_FROM);
     sb.append(" WHERE flightid = :flightid ");
     sb.append(FLIGHT_ORDER_PAGE);
 
-    try (var connection = dataSource.getConnection();
+    try (var connection =
+            fromPrimary ? dataSource.getConnection() : readReplicaRouter.getReadConnection();
         var statement = new NamedParameterPreparedStatement(connection, sb.toString())) {
       statement.setString("flightid", flightId);
       DbUtils.startReadOnlyTransaction(connection);
@@ -142,8 +173,8 @@ public class ControlImpl implements Control {
         "UPDATE flight SET status = 'READY', stairway_id = NULL WHERE flightid = :flightid";
 
     testFlightState(flightId, FlightStatus.READY);
-    updateFlight(flightId, sql);
-    return getFlight(flightId);
+    updateFlight(flightId, sql, FlightStatus.READY);
+    return getFlight(flightId, true);
   }
 
   public Flight forceFatal(String flightId) throws SQLException {
@@ -159,14 +190,19 @@ public class ControlImpl implements Control {
             + " WHERE flightid = :flightid";
 
     testFlightState(flightId, FlightStatus.FATAL);
-    updateFlight(flightId, sql);
-    return getFlight(flightId);
+    updateFlight(flightId, sql, FlightStatus.FATAL);
+    return getFlight(flightId, true);
   }
 
   public List<FlightMapEntry> inputQuery(String flightId) throws SQLException {
-    final String sql = "SELECT key, value FROM flightinput WHERE flightid = :flightid";
+    final String sql =
+        "SELECT M.key, "
+            + FlightMapCodec.valueColumns("M")
+            + " FROM flightinput M"
+            + FlightMapCodec.valueJoin("M")
+            + " WHERE M.flightid = :flightid";
 
-    try (var connection = dataSource.getConnection();
+    try (var connection = readReplicaRouter.getReadConnection();
         var statement = new NamedParameterPreparedStatement(connection, sql)) {
       DbUtils.startReadOnlyTransaction(connection);
       statement.setString("flightid", flightId);
@@ -181,9 +217,14 @@ public class ControlImpl implements Control {
         "SELECT log_time, step_index, status, serialized_exception,"
             + " rerun, direction, id FROM flightlog WHERE flightid = :flightid";
 
-    final String sqlmap = "SELECT key, value FROM flightworking WHERE flightlog_id = :id";
+    final String sqlmap =
+        "SELECT W.key, "
+            + FlightMapCodec.valueColumns("W")
+            + " FROM flightworking W"
+            + FlightMapCodec.valueJoin("W")
+            + " WHERE W.flightlog_id = :id";
 
-    try (var connection = dataSource.getConnection();
+    try (var connection = readReplicaRouter.getReadConnection();
         var logStatement = new NamedParameterPreparedStatement(connection, sqllog);
         var mapStatement = new NamedParameterPreparedStatement(connection, sqlmap)) {
       DbUtils.startReadOnlyTransaction(connection);
@@ -247,7 +288,7 @@ public class ControlImpl implements Control {
     try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
       while (rs.next()) {
         FlightMapEntry entry = new FlightMapEntry();
-        entry.key(rs.getString("key")).value(rs.getString("value"));
+        entry.key(rs.getString("key")).value(FlightMapCodec.readValue(rs));
         flightMapEntries.add(entry);
       }
     }
@@ -255,19 +296,39 @@ public class ControlImpl implements Control {
   }
 
   private void testFlightState(String flightId, FlightStatus status) throws SQLException {
-    Flight flight = getFlight(flightId);
+    Flight flight = getFlight(flightId, true);
     if (flight.getStatus() == status) {
       throw new IllegalStateException("Flight is already " + status.toString());
     }
   }
 
-  private void updateFlight(String flightId, String sql) throws SQLException {
+  // The prior status is read in the same serializable transaction as the update, so the change
+  // recorded in the flight status counters is exact
+  private void updateFlight(String flightId, String sql, FlightStatus status) throws SQLException {
+    final String sqlPrior = "SELECT class_name, status FROM flight WHERE flightid = :flightid";
     try (var connection = dataSource.getConnection();
+        var priorStatement = new NamedParameterPreparedStatement(connection, sqlPrior);
         var statement = new NamedParameterPreparedStatement(connection, sql)) {
 
       DbUtils.startTransaction(connection);
+      FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+      if (flightStatusCountDao != null) {
+        priorStatement.setString("flightid", flightId);
+        try (ResultSet rs = priorStatement.getPreparedStatement().executeQuery()) {
+          while (rs.next()) {
+            changes.move(
+                rs.getString("class_name"), FlightStatus.valueOf(rs.getString("status")), status);
+          }
+        }
+      }
       statement.setString("flightid", flightId);
       statement.getPreparedStatement().executeUpdate();
+      if (flightStatusCountDao != null) {
+        flightStatusCountDao.record(connection, changes);
+      }
+      if (status == FlightStatus.FATAL) {
+        flightDao.notifyCompleted(connection, flightId);
+      }
       commitTransaction(connection);
     }
   }
@@ -0,0 +1,69 @@
+package bio.terra.stairway.impl;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker over the connection and resource failures of one Stairway instance's database
+ * calls. It is only used when enabled with {@code StairwayBuilder.databaseCircuitBreaker}, and only
+ * by the operations that can be refused without harm: submitting flights and reading flight state.
+ * The writes of running flights always go through {@link DbRetry} without it.
+ *
+ * <p>While closed, every request is allowed. It opens after {@link #FAILURE_THRESHOLD} consecutive
+ * failures. While open, requests are refused; once per cool down, a single probe request is let
+ * through. A success closes the breaker; a failure keeps it open for another cool down.
+ */
+class DbCircuitBreaker {
+  private static final Logger logger = LoggerFactory.getLogger(DbCircuitBreaker.class);
+
+  static final int FAILURE_THRESHOLD = 10;
+  static final Duration COOL_DOWN = Duration.ofSeconds(5);
+
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private final AtomicLong openUntilNanos = new AtomicLong();
+  private final AtomicBoolean open = new AtomicBoolean();
+
+  boolean allowRequest() {
+    if (!open.get()) {
+      return true;
+    }
+    long now = System.nanoTime();
+    long openUntil = openUntilNanos.get();
+    if (now - openUntil < 0) {
+      return false;
+    }
+    // Cool down is over: the thread that moves the deadline is the probe
+    return openUntilNanos.compareAndSet(openUntil, now + COOL_DOWN.toNanos());
+  }
+
+  void recordSuccess() {
+    // Avoid writing the shared counter on every call when there is nothing to reset
+    if (consecutiveFailures.get() != 0) {
+      consecutiveFailures.set(0);
+    }
+    if (open.get() && open.compareAndSet(true, false)) {
+      logger.info("Database circuit breaker closed");
+    }
+  }
+
+  void recordFailure() {
+    int failures = consecutiveFailures.incrementAndGet();
+    if (open.get() || failures >= FAILURE_THRESHOLD) {
+      openUntilNanos.set(System.nanoTime() + COOL_DOWN.toNanos());
+      if (open.compareAndSet(false, true)) {
+        logger.warn(
+            "Database circuit breaker opened after {} consecutive failures; cool down {}",
+            failures,
+            COOL_DOWN);
+      }
+    }
+  }
+
+  boolean isOpen() {
+    return open.get();
+  }
+}
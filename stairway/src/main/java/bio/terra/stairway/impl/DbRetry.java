@@ -2,18 +2,40 @@ package bio.terra.stairway.impl;
 
 import bio.terra.stairway.exception.DatabaseOperationException;
 import bio.terra.stairway.exception.StairwayException;
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.annotation.Nullable;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The DbRetry class provides a common retry framework for the DAOs. A new DbRetry class is
- * constructed at runtime for use wrapping inner database calls. The retry algorithm is random
- * backoff with a maximum number of retries. At this time, there is no use case for setting
- * different retry times for different calls. If there is, then an additional constructor can be
- * added to allow specification of what are coded as statics.
+ * constructed at runtime for use wrapping inner database calls.
+ *
+ * <p>How long to wait before a retry depends on the failure:
+ *
+ * <ul>
+ *   <li>Serialization failures and deadlocks mean the database is healthy but busy with
+ *       conflicting transactions. We back off exponentially with decorrelated jitter, so competing
+ *       transactions spread out instead of colliding again.
+ *   <li>Connection failures are often a single reset connection, so the first retry is immediate.
+ *       Later retries wait as long as they always have, so a database failover has the same time
+ *       to complete.
+ *   <li>Resource failures mean the database is overloaded, so we back off exponentially from a
+ *       larger base.
+ * </ul>
+ *
+ * <p>A caller may pass a {@link DbCircuitBreaker}. Its connection and resource failures then feed
+ * the breaker, and while the breaker is open the call fails immediately instead of waiting out the
+ * retries.
+ *
+ * <p>Call, retry, and wait counts are kept per operation, named by the log string.
  */
 class DbRetry {
   /**
@@ -32,20 +54,46 @@ class DbRetry {
     void apply() throws SQLException, StairwayException, InterruptedException;
   }
 
+  /**
+   * Backoff policy for one kind of failure. The first wait is between zero and firstWaitMs; each
+   * later wait is drawn between baseWaitMs and three times the previous wait, capped at maxWaitMs.
+   */
+  record RetryPolicy(int maxRetries, long firstWaitMs, long baseWaitMs, long maxWaitMs) {
+    long nextWaitMs(int retry, long previousWaitMs) {
+      if (retry == 0) {
+        return (firstWaitMs == 0) ? 0 : ThreadLocalRandom.current().nextLong(firstWaitMs + 1);
+      }
+      long upper = Math.max(baseWaitMs + 1, previousWaitMs * 3);
+      return Math.min(maxWaitMs, ThreadLocalRandom.current().nextLong(baseWaitMs, upper));
+    }
+  }
+
+  /** Retry counts and wait times for one operation */
+  record OperationStatistics(long calls, long retries, long failures, long waitMs) {}
+
   private static final Logger logger = LoggerFactory.getLogger(DbRetry.class);
-  private static final int MAX_RETRIES = 20;
-  private static final int WAIT_MIN_MS = 250;
-  private static final int WAIT_MAX_MS = 1000;
   private static final String PSQL_SERIALIZATION_FAILURE = "40001";
   private static final String PSQL_DEADLOCK_DETECTED = "40P01";
   private static final String PSQL_CONNECTION_ISSUE_PREFIX = "08";
   private static final String PSQL_RESOURCE_ISSUE_PREFIX = "53";
 
+  static final RetryPolicy SERIALIZATION_POLICY = new RetryPolicy(20, 50, 25, 2000);
+  static final RetryPolicy CONNECTION_POLICY = new RetryPolicy(20, 0, 250, 1000);
+  static final RetryPolicy RESOURCE_POLICY = new RetryPolicy(10, 250, 250, 5000);
+
+  private static final Map<String, OperationCounters> operationCounters =
+      new ConcurrentHashMap<>();
+
   /** String used in error messages and log messages */
   private final String logString;
 
-  DbRetry(String logString) {
+  private final OperationCounters counters;
+  private final DbCircuitBreaker circuitBreaker;
+
+  DbRetry(String logString, @Nullable DbCircuitBreaker circuitBreaker) {
     this.logString = logString;
+    this.counters = operationCounters.computeIfAbsent(logString, k -> new OperationCounters());
+    this.circuitBreaker = circuitBreaker;
   }
 
   /**
@@ -62,7 +110,24 @@ class DbRetry {
    */
   static <T> T retry(String logString, DbFunction<T> function)
       throws StairwayException, InterruptedException {
-    DbRetry dbRetry = new DbRetry(logString);
+    return retry(logString, null, function);
+  }
+
+  /**
+   * Retry a value-returning database function, failing fast while the circuit breaker is open
+   *
+   * @param logString string used in error messages and log messages
+   * @param circuitBreaker breaker to check and feed; null to always retry
+   * @param function method to call and retry
+   * @param <T> function return value
+   * @return T
+   * @throws StairwayException general stairway exceptions
+   * @throws InterruptedException thread shutdown
+   */
+  static <T> T retry(
+      String logString, @Nullable DbCircuitBreaker circuitBreaker, DbFunction<T> function)
+      throws StairwayException, InterruptedException {
+    DbRetry dbRetry = new DbRetry(logString, circuitBreaker);
     return dbRetry.perform(function);
   }
 
@@ -78,58 +143,159 @@ class DbRetry {
    */
   static void retryVoid(String logString, DbVoidFunction function)
       throws StairwayException, InterruptedException {
-    DbRetry dbRetry = new DbRetry(logString);
-    dbRetry.performVoid(function);
+    retryVoid(logString, null, function);
+  }
+
+  /**
+   * Retry a void database function, failing fast while the circuit breaker is open
+   *
+   * @param logString string used in error messages and log messages
+   * @param circuitBreaker breaker to check and feed; null to always retry
+   * @param function void method to call and retry
+   * @throws StairwayException general stairway exceptions
+   * @throws InterruptedException thread shutdown
+   */
+  static void retryVoid(
+      String logString, @Nullable DbCircuitBreaker circuitBreaker, DbVoidFunction function)
+      throws StairwayException, InterruptedException {
+    DbRetry dbRetry = new DbRetry(logString, circuitBreaker);
+    dbRetry.perform(
+        () -> {
+          function.apply();
+          return null;
+        });
   }
 
   private <T> T perform(DbFunction<T> function) throws StairwayException, InterruptedException {
-    for (int retry = 0; retry < MAX_RETRIES; retry++) {
+    counters.calls.increment();
+    int retry = 0;
+    int policyRetry = 0;
+    long waitMs = 0;
+    RetryPolicy lastPolicy = null;
+    while (true) {
+      if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+        counters.failures.increment();
+        throw new DatabaseOperationException(
+            "Database circuit breaker is open. Request failed: " + logString);
+      }
       try {
-        return function.apply();
+        T result = function.apply();
+        if (circuitBreaker != null) {
+          circuitBreaker.recordSuccess();
+        }
+        return result;
       } catch (SQLException ex) {
-        if (notRetryable(ex)) {
+        RetryPolicy policy = retryPolicy(ex);
+        if (policy == null) {
+          if (circuitBreaker != null) {
+            circuitBreaker.recordSuccess(); // the database answered
+          }
+          counters.failures.increment();
           throw new DatabaseOperationException("Database operation failed: " + logString, ex);
         }
-        retryWait();
-      }
-    }
-    throw new DatabaseOperationException("Retries exhausted. Request failed:" + logString);
-  }
+        if (circuitBreaker != null && policy != SERIALIZATION_POLICY) {
+          circuitBreaker.recordFailure();
+        }
 
-  private void performVoid(DbVoidFunction function) throws StairwayException, InterruptedException {
-    for (int retry = 0; retry < MAX_RETRIES; retry++) {
-      try {
-        function.apply();
-        return;
-      } catch (SQLException ex) {
-        if (notRetryable(ex)) {
-          throw new DatabaseOperationException("Database operation failed: " + logString, ex);
+        // Start the backoff over when the kind of failure changes. The retry count is not
+        // reset, so alternating failures cannot retry forever.
+        if (policy != lastPolicy) {
+          policyRetry = 0;
+          waitMs = 0;
+          lastPolicy = policy;
+        }
+        if (retry >= policy.maxRetries()) {
+          counters.failures.increment();
+          throw new DatabaseOperationException(
+              "Retries exhausted. Request failed: " + logString, ex);
         }
-        retryWait();
+        waitMs = policy.nextWaitMs(policyRetry, waitMs);
+        policyRetry++;
+        retry++;
+        retryWait(waitMs);
       }
     }
-    throw new DatabaseOperationException("Retries exhausted. Request failed:" + logString);
   }
 
-  private boolean notRetryable(SQLException ex) {
+  /**
+   * Choose the retry policy for a failure
+   *
+   * @param ex exception from the database
+   * @return policy to use; null if the failure should not be retried
+   */
+  private RetryPolicy retryPolicy(SQLException ex) {
     final String ss = ex.getSQLState();
-
+    if (ss == null) {
+      return null;
+    }
     if (ss.equals(PSQL_SERIALIZATION_FAILURE) || ss.equals(PSQL_DEADLOCK_DETECTED)) {
       // Serialization or deadlock
       logger.info("Caught SQL serialization error (" + ss + ") - retrying");
-      return false;
+      return SERIALIZATION_POLICY;
     }
-    if (ss.startsWith(PSQL_CONNECTION_ISSUE_PREFIX) || ss.startsWith(PSQL_RESOURCE_ISSUE_PREFIX)) {
-      // Connection or resource issue
-      logger.info("Caught SQL connection or resource error (" + ss + ") - retrying");
-      return false;
+    if (ss.startsWith(PSQL_CONNECTION_ISSUE_PREFIX)) {
+      logger.info("Caught SQL connection error (" + ss + ") - retrying");
+      return CONNECTION_POLICY;
     }
-    return true;
+    if (ss.startsWith(PSQL_RESOURCE_ISSUE_PREFIX)) {
+      logger.info("Caught SQL resource error (" + ss + ") - retrying");
+      return RESOURCE_POLICY;
+    }
+    return null;
+  }
+
+  private void retryWait(long waitMs) throws InterruptedException {
+    counters.retries.increment();
+    counters.waitMs.add(waitMs);
+    if (waitMs > 0) {
+      TimeUnit.MILLISECONDS.sleep(waitMs);
+    }
+    logger.debug("retrying for {} after {} ms", logString, waitMs);
+  }
+
+  /**
+   * @return retry statistics for each operation, by log string
+   */
+  static Map<String, OperationStatistics> getStatistics() {
+    Map<String, OperationStatistics> statistics = new TreeMap<>();
+    operationCounters.forEach(
+        (operation, counters) ->
+            statistics.put(
+                operation,
+                new OperationStatistics(
+                    counters.calls.sum(),
+                    counters.retries.sum(),
+                    counters.failures.sum(),
+                    counters.waitMs.sum())));
+    return statistics;
+  }
+
+  /** Log the statistics of the operations that have retried */
+  static void logStatistics() {
+    getStatistics()
+        .forEach(
+            (operation, stats) -> {
+              if (stats.retries() > 0 || stats.failures() > 0) {
+                logger.info(
+                    "Database retries for {}: calls={} retries={} failures={} waitMs={}",
+                    operation,
+                    stats.calls(),
+                    stats.retries(),
+                    stats.failures(),
+                    stats.waitMs());
+              }
+            });
+  }
+
+  @VisibleForTesting
+  static void resetForTesting() {
+    operationCounters.clear();
   }
 
-  private void retryWait() throws InterruptedException {
-    int sleepMS = ThreadLocalRandom.current().nextInt(WAIT_MIN_MS, WAIT_MAX_MS);
-    TimeUnit.MILLISECONDS.sleep(sleepMS);
-    logger.debug("retrying for {}", logString);
+  private static class OperationCounters {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder waitMs = new LongAdder();
   }
 }
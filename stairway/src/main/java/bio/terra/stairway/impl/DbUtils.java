@@ -11,12 +11,24 @@ class DbUtils {
     connection.setReadOnly(false);
   }
 
+  static void startReadCommittedTransaction(Connection connection) throws SQLException {
+    connection.setAutoCommit(false);
+    connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    connection.setReadOnly(false);
+  }
+
   static void startReadOnlyTransaction(Connection connection) throws SQLException {
     connection.setAutoCommit(false);
     connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
     connection.setReadOnly(true);
   }
 
+  static void startReadOnlySnapshotTransaction(Connection connection) throws SQLException {
+    connection.setAutoCommit(false);
+    connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+    connection.setReadOnly(true);
+  }
+
   static void commitTransaction(Connection connection) throws SQLException {
     connection.commit();
   }
@@ -0,0 +1,93 @@
+package bio.terra.stairway.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Flights waiting to retry a step without holding a flight thread. A waiting flight stays RUNNING
+ * and owned by this Stairway instance; its {@link FlightRunner}, with the state of the step's retry
+ * rule, is held here until a timer on the scheduled pool resumes it.
+ *
+ * <p>A flight is resumed by exactly one of its timer or {@link #releaseAll}, whichever removes it
+ * from the waiting set first. If this instance fails while flights wait, they are recovered like
+ * any other flight running on a failed instance, and the step's retry rule starts over.
+ */
+class DeferredRetries {
+  private static final Logger logger = LoggerFactory.getLogger(DeferredRetries.class);
+
+  private final ScheduledExecutorService scheduledPool;
+  private final Consumer<FlightRunner> resumer;
+  private final BooleanSupplier quietingDown;
+  private final Set<FlightRunner> waitingFlights = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param scheduledPool pool that runs the retry timers
+   * @param resumer resumes a flight when its wait is over
+   * @param quietingDown true once Stairway is quieting down
+   */
+  DeferredRetries(
+      ScheduledExecutorService scheduledPool,
+      Consumer<FlightRunner> resumer,
+      BooleanSupplier quietingDown) {
+    this.scheduledPool = scheduledPool;
+    this.resumer = resumer;
+    this.quietingDown = quietingDown;
+  }
+
+  /**
+   * Hold a flight until its retry wait is over
+   *
+   * @param flightRunner runner of the flight, positioned at the step to retry
+   * @param delay how long to wait before the retry
+   * @return true if the flight is waiting; false if Stairway is quieting down and did not take it
+   */
+  boolean defer(FlightRunner flightRunner, Duration delay) {
+    waitingFlights.add(flightRunner);
+    // Checked after adding, so the flight is either refused here or released by releaseAll
+    if (quietingDown.getAsBoolean() && waitingFlights.remove(flightRunner)) {
+      return false;
+    }
+    scheduledPool.schedule(() -> resume(flightRunner), delay.toMillis(), TimeUnit.MILLISECONDS);
+    return true;
+  }
+
+  /**
+   * Stop waiting for every waiting flight; Stairway is shutting down
+   *
+   * @return runners of the released flights
+   */
+  List<FlightRunner> releaseAll() {
+    List<FlightRunner> released = new ArrayList<>();
+    for (FlightRunner flightRunner : List.copyOf(waitingFlights)) {
+      if (waitingFlights.remove(flightRunner)) {
+        released.add(flightRunner);
+      }
+    }
+    return released;
+  }
+
+  private void resume(FlightRunner flightRunner) {
+    if (!waitingFlights.remove(flightRunner)) {
+      return;
+    }
+    try {
+      resumer.accept(flightRunner);
+    } catch (Exception ex) {
+      // Recovery only takes flights from failed instances, so the flight must not stay running here
+      logger.error(
+          "Failed to resume flight after retry wait; disowning it: "
+              + flightRunner.getFlightContext().flightDesc(),
+          ex);
+      flightRunner.disownDeferredFlight();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package bio.terra.stairway.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens for flight completions reported by any Stairway instance through Postgres {@code
+ * LISTEN/NOTIFY}. The transaction that completes a flight sends the flight id on {@link #CHANNEL};
+ * Postgres delivers it when the transaction commits. The listener passes the flight id to the
+ * {@link FlightCompletionWaiters}, so a caller waiting on this instance for a flight run by another
+ * instance learns of the completion right away.
+ *
+ * <p>The listener holds one connection from the data source while it runs. If the connection
+ * fails, it reconnects, and then has the waiters recheck every waiting flight, since completions
+ * sent while it was not listening are lost.
+ */
+class FlightCompletionListener implements Runnable {
+  private static final Logger logger = LoggerFactory.getLogger(FlightCompletionListener.class);
+  static final String CHANNEL = "stairway_flight_completed";
+  // Bounds how long a notification wait blocks, so shutdown is noticed
+  private static final int WAIT_MILLIS = 1000;
+  private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+  private final DataSource dataSource;
+  private FlightCompletionWaiters waiters;
+  private volatile boolean running;
+  private Thread listenerThread;
+
+  /**
+   * @param dataSource database the Stairway instances complete flights in
+   */
+  FlightCompletionListener(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * Start listening
+   *
+   * @param waiters waiters to pass completed flights to
+   */
+  void start(FlightCompletionWaiters waiters) {
+    this.waiters = waiters;
+    running = true;
+    listenerThread = new Thread(this, "stairway-completion-listener");
+    listenerThread.setDaemon(true);
+    listenerThread.start();
+    logger.info("Flight completion listener started on channel " + CHANNEL);
+  }
+
+  /**
+   * Stop the listener thread and release its connection
+   *
+   * @throws InterruptedException interrupted waiting for the listener thread to end
+   */
+  void shutdown() throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    listenerThread.join();
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        listen();
+      } catch (SQLException ex) {
+        logger.warn("Flight completion listener failed; reconnecting", ex);
+        try {
+          TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY.toMillis());
+        } catch (InterruptedException interruptedEx) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void listen() throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      // LISTEN takes effect when its transaction commits
+      connection.setAutoCommit(true);
+      statement.execute("LISTEN " + CHANNEL);
+      try {
+        waiters.recheckAll();
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(WAIT_MILLIS);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              waiters.flightCompleted(notification.getParameter());
+            }
+          }
+        }
+      } finally {
+        // The connection goes back to the pool; it should not keep listening there
+        statement.execute("UNLISTEN " + CHANNEL);
+      }
+    }
+  }
+}
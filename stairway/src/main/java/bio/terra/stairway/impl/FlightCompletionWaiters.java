@@ -0,0 +1,176 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.exception.FlightNotFoundException;
+import bio.terra.stairway.exception.FlightWaitTimedOutException;
+import bio.terra.stairway.exception.StairwayException;
+import bio.terra.stairway.exception.StairwayShutdownException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Futures waiting for flights to complete, for {@link StairwayImpl#awaitFlight}. Nothing polls on
+ * behalf of a waiting caller; the flight state is read when there is a reason to think the flight
+ * completed:
+ *
+ * <ul>
+ *   <li>when the wait starts, in case the flight is already complete;
+ *   <li>when a flight run by this instance exits complete;
+ *   <li>when another instance reports a completed flight through the {@link
+ *       FlightCompletionListener};
+ *   <li>every recheck interval, to cover anything missed.
+ * </ul>
+ *
+ * <p>The first check and the checks on a completion signal read the latest state, from the primary
+ * database, so a flight that was just submitted or just completed is seen. The periodic checks may
+ * read from a read replica that is behind; a flight the replica does not have yet keeps waiting.
+ */
+class FlightCompletionWaiters {
+  private static final Logger logger = LoggerFactory.getLogger(FlightCompletionWaiters.class);
+
+  private final FlightStore flightStore;
+  private final ScheduledExecutorService scheduledPool;
+  // Sets are only changed inside compute calls, so adding and removing waiters do not race
+  private final Map<String, Set<CompletableFuture<FlightState>>> waiters =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param flightStore store to read flight states from
+   * @param scheduledPool pool that runs the state checks and timeouts
+   * @param recheckInterval interval between checks of every waiting flight
+   */
+  FlightCompletionWaiters(
+      FlightStore flightStore, ScheduledExecutorService scheduledPool, Duration recheckInterval) {
+    this.flightStore = flightStore;
+    this.scheduledPool = scheduledPool;
+    scheduledPool.scheduleWithFixedDelay(
+        this::recheckAll,
+        recheckInterval.toMillis(),
+        recheckInterval.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Wait for a flight to complete
+   *
+   * @param flightId flight to wait for
+   * @param timeout how long to wait
+   * @return future completed with the state of the completed flight
+   */
+  CompletableFuture<FlightState> await(String flightId, Duration timeout) {
+    CompletableFuture<FlightState> future = new CompletableFuture<>();
+    waiters.compute(
+        flightId,
+        (key, futures) -> {
+          Set<CompletableFuture<FlightState>> result = futures;
+          if (result == null) {
+            result = new HashSet<>();
+          }
+          result.add(future);
+          return result;
+        });
+
+    ScheduledFuture<?> timer =
+        scheduledPool.schedule(
+            () ->
+                future.completeExceptionally(
+                    new FlightWaitTimedOutException(
+                        "Flight " + flightId + " did not complete in the allowed wait time")),
+            timeout.toMillis(),
+            TimeUnit.MILLISECONDS);
+    future.whenComplete(
+        (state, ex) -> {
+          timer.cancel(false);
+          waiters.computeIfPresent(
+              flightId,
+              (key, futures) -> {
+                futures.remove(future);
+                return futures.isEmpty() ? null : futures;
+              });
+        });
+
+    // Registered first, so a completion after this check is not missed
+    scheduledPool.execute(() -> check(flightId, true));
+    return future;
+  }
+
+  /**
+   * Tell the waiters that a flight has completed
+   *
+   * @param flightId flight that completed
+   */
+  void flightCompleted(String flightId) {
+    if (waiters.containsKey(flightId)) {
+      scheduledPool.execute(() -> check(flightId, true));
+    }
+  }
+
+  /** Check every waiting flight; used when completion signals may have been missed */
+  void recheckAll() {
+    for (String flightId : List.copyOf(waiters.keySet())) {
+      check(flightId, false);
+    }
+  }
+
+  /** Fail every waiting future; Stairway is shutting down */
+  void shutdown() {
+    for (String flightId : List.copyOf(waiters.keySet())) {
+      getFutures(flightId)
+          .forEach(
+              future ->
+                  future.completeExceptionally(
+                      new StairwayShutdownException("Stairway is shut down")));
+    }
+  }
+
+  // Complete the futures of a flight if it has completed. Only the latest state shows that a flight
+  // does not exist.
+  private void check(String flightId, boolean latest) {
+    List<CompletableFuture<FlightState>> futures = getFutures(flightId);
+    if (futures.isEmpty()) {
+      return;
+    }
+    try {
+      FlightState state =
+          latest
+              ? flightStore.getLatestFlightState(flightId)
+              : flightStore.getFlightState(flightId);
+      if (!state.isActive()) {
+        futures.forEach(future -> future.complete(state));
+      }
+    } catch (FlightNotFoundException ex) {
+      if (latest) {
+        futures.forEach(future -> future.completeExceptionally(ex));
+      } else {
+        logger.debug("Awaited flight " + flightId + " is not on the read replica yet");
+      }
+    } catch (StairwayException ex) {
+      // Leave the futures waiting; the next check tries again
+      logger.warn("Error checking state of awaited flight " + flightId, ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private List<CompletableFuture<FlightState>> getFutures(String flightId) {
+    List<CompletableFuture<FlightState>> result = new ArrayList<>();
+    waiters.computeIfPresent(
+        flightId,
+        (key, futures) -> {
+          result.addAll(futures);
+          return futures;
+        });
+    return result;
+  }
+}
@@ -14,6 +14,7 @@ import bio.terra.stairway.StairwayHook;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.exception.StairwayExecutionException;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -87,6 +88,9 @@ public class FlightContextImpl implements FlightContext {
   /** State of this flight */
   private FlightStatus flightStatus;
 
+  /** Time a WAITING flight is resumed by the wake timer; null if none */
+  private Instant wakeTime;
+
   // -- log persisted state --
   // Persisted state that changes each time a step is completed and its log record is written.
   private final FlightContextLogState logState;
@@ -118,7 +122,7 @@ public class FlightContextImpl implements FlightContext {
     this.debugInfo = debugInfo;
     this.flightStatus = FlightStatus.RUNNING;
     this.logState = new FlightContextLogState(true); // true = fill in the defaults
-    this.progressMeters = new ProgressMetersImpl(stairway.getFlightDao(), flightId);
+    this.progressMeters = new ProgressMetersImpl(stairway.getFlightStore(), flightId);
   }
 
   /**
@@ -306,6 +310,10 @@ public class FlightContextImpl implements FlightContext {
     return debugInfo;
   }
 
+  FlightContextLogState getLogState() {
+    return logState;
+  }
+
   // Check if we are 'doing' the last step in the flight.
   // Used to implement the DebugInfo last step failure in FlightRunner
   boolean isDoingLastStep() {
@@ -322,6 +330,14 @@ public class FlightContextImpl implements FlightContext {
     this.flightStatus = flightStatus;
   }
 
+  Instant getWakeTime() {
+    return wakeTime;
+  }
+
+  void setWakeTime(Instant wakeTime) {
+    this.wakeTime = wakeTime;
+  }
+
   void setRerun(boolean rerun) {
     logState.rerun(rerun);
   }
@@ -3,6 +3,8 @@ package bio.terra.stairway.impl;
 import bio.terra.stairway.Direction;
 import bio.terra.stairway.FlightMap;
 import bio.terra.stairway.StepResult;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 /**
@@ -28,6 +30,16 @@ public class FlightContextLogState {
   /** Returned status of the current step */
   private StepResult result;
 
+  /**
+   * Copy of the working map as of the most recent log record written or read for this flight. The
+   * DAO compares the working map against it to find the keys to store in a delta log record. It is
+   * null until a log record has been written or read.
+   */
+  private Map<String, String> persistedWorkingMap;
+
+  /** Number of delta log records written since the most recent full working map snapshot */
+  private int deltasSinceSnapshot;
+
   /**
    * Constructor that can optionally set defaults for the log state
    *
@@ -88,6 +100,24 @@ public class FlightContextLogState {
     return this;
   }
 
+  Map<String, String> getPersistedWorkingMap() {
+    return persistedWorkingMap;
+  }
+
+  int getDeltasSinceSnapshot() {
+    return deltasSinceSnapshot;
+  }
+
+  /**
+   * Remember the current working map as the one stored in the database
+   *
+   * @param deltasSinceSnapshot number of delta log records since the last full snapshot
+   */
+  void workingMapPersisted(int deltasSinceSnapshot) {
+    this.persistedWorkingMap = new HashMap<>(workingMap.getMap());
+    this.deltasSinceSnapshot = deltasSinceSnapshot;
+  }
+
   // -- execution methods --
 
   boolean isDoing() {
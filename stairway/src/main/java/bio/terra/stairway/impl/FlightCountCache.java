@@ -0,0 +1,61 @@
+package bio.terra.stairway.impl;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of exact flight counts, keyed by the filter they were counted with. Paging deep into a
+ * large filtered set otherwise repeats the same full count for every page. A cached count is used
+ * for the time to live, so it can be behind the flight table by that much.
+ *
+ * <p>The cache holds at most {@link #MAX_ENTRIES} filters. When it is full, expired entries are
+ * dropped, and if that does not make room, the whole cache is cleared. Enumeration usually pages
+ * through a few filters at a time, so a simple bound is enough.
+ */
+class FlightCountCache {
+  static final int MAX_ENTRIES = 1000;
+
+  private record CachedCount(int count, long expiresNanos) {}
+
+  private final long ttlNanos;
+  private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+  /**
+   * @param ttl how long a count is used
+   */
+  FlightCountCache(Duration ttl) {
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  /**
+   * @param key filter key from {@link FlightFilterAccess#makeCountKey()}
+   * @return cached count; null if there is none or it has expired
+   */
+  Integer get(String key) {
+    CachedCount cached = counts.get(key);
+    if (cached == null) {
+      return null;
+    }
+    if (System.nanoTime() - cached.expiresNanos() >= 0) {
+      counts.remove(key, cached);
+      return null;
+    }
+    return cached.count();
+  }
+
+  /**
+   * @param key filter key from {@link FlightFilterAccess#makeCountKey()}
+   * @param count exact count of the flights matching the filter
+   */
+  void put(String key, int count) {
+    long now = System.nanoTime();
+    if (counts.size() >= MAX_ENTRIES) {
+      counts.values().removeIf(cached -> now - cached.expiresNanos() >= 0);
+      if (counts.size() >= MAX_ENTRIES) {
+        counts.clear();
+      }
+    }
+    counts.put(key, new CachedCount(count, now + ttlNanos));
+  }
+}
@@ -1,11 +1,13 @@
 package bio.terra.stairway.impl;
 
 import static bio.terra.stairway.impl.DbUtils.commitTransaction;
+import static bio.terra.stairway.impl.DbUtils.startReadCommittedTransaction;
 import static bio.terra.stairway.impl.DbUtils.startReadOnlyTransaction;
 import static bio.terra.stairway.impl.DbUtils.startTransaction;
 
 import bio.terra.stairway.Direction;
 import bio.terra.stairway.ExceptionSerializer;
+import bio.terra.stairway.FlightCountMode;
 import bio.terra.stairway.FlightDebugInfo;
 import bio.terra.stairway.FlightEnumeration;
 import bio.terra.stairway.FlightFilter;
@@ -13,6 +15,7 @@ import bio.terra.stairway.FlightInput;
 import bio.terra.stairway.FlightMap;
 import bio.terra.stairway.FlightState;
 import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.StairwayMapper;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.DatabaseOperationException;
@@ -21,14 +24,22 @@ import bio.terra.stairway.exception.FlightFilterException;
 import bio.terra.stairway.exception.FlightNotFoundException;
 import bio.terra.stairway.exception.StairwayException;
 import bio.terra.stairway.exception.StairwayExecutionException;
+import bio.terra.stairway.impl.FlightMapCodec.EncodedValue;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.annotations.VisibleForTesting;
 import jakarta.annotation.Nullable;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import javax.sql.DataSource;
 import org.apache.commons.lang3.StringUtils;
@@ -47,8 +58,8 @@ import org.slf4j.LoggerFactory;
  * This code assumes that the database is created and matches this codes schema expectations. If
  * not, we will crash and burn.
  *
- * <p>May want to split this into an interface and an implementation. This implementation has only
- * been tested on Postgres. It may work on other databases, but who knows?
+ * <p>This is the Postgres implementation of the {@link FlightStore}. It has only been tested on
+ * Postgres. It may work on other databases, but who knows?
  *
  * <p>The practice with transaction code is:
  *
@@ -61,32 +72,187 @@ import org.slf4j.LoggerFactory;
  *       complete.
  * </ul>
  */
-class FlightDao {
+class FlightDao implements FlightStore {
   static final String FLIGHT_TABLE = "flight";
   static final String FLIGHT_LOG_TABLE = "flightlog";
   static final String FLIGHT_INPUT_TABLE = "flightinput";
   static final String FLIGHT_WORKING_TABLE = "flightworking";
   static final String FLIGHT_PERSISTED_TABLE = "flightpersisted";
+  static final String FLIGHT_OUTBOX_TABLE = "flightoutbox";
   private static final Logger logger = LoggerFactory.getLogger(FlightDao.class);
   private static final String UNKNOWN = "<unknown>";
+  // Maximum number of rows sent in one JDBC batch when storing flight map rows
+  static final int MAX_BATCH_ROWS = 500;
 
   private final DataSource dataSource;
   private final StairwayInstanceDao stairwayInstanceDao;
   private final ExceptionSerializer exceptionSerializer;
   private final HookWrapper hookWrapper;
   private final String stairwayId;
+  private final int workingMapSnapshotInterval;
+  private StepCheckpointWriter stepCheckpointWriter;
+  private boolean partitionedFlightLog;
+  private FlightMapCodec flightMapCodec = FlightMapCodec.JSON;
+  private ReadReplicaRouter readReplicaRouter;
+  private FlightCountCache flightCountCache;
+  private boolean indexedInputFilters;
+  private FlightStatusCountDao flightStatusCountDao;
+  private boolean workQueueOutbox;
+  private boolean flightCompletionNotify;
+  private DbCircuitBreaker circuitBreaker;
 
   FlightDao(
       DataSource dataSource,
       StairwayInstanceDao stairwayInstanceDao,
       ExceptionSerializer exceptionSerializer,
       HookWrapper hookWrapper,
-      String stairwayId) {
+      String stairwayId,
+      int workingMapSnapshotInterval) {
     this.dataSource = dataSource;
     this.stairwayInstanceDao = stairwayInstanceDao;
     this.exceptionSerializer = exceptionSerializer;
     this.hookWrapper = hookWrapper;
     this.stairwayId = stairwayId;
+    this.workingMapSnapshotInterval = workingMapSnapshotInterval;
+  }
+
+  /**
+   * Route step records through a group commit writer. Must be called before any flights run.
+   *
+   * @param stepCheckpointWriter writer to use; null to write each step record in its own
+   *     transaction
+   */
+  void setStepCheckpointWriter(StepCheckpointWriter stepCheckpointWriter) {
+    this.stepCheckpointWriter = stepCheckpointWriter;
+  }
+
+  /**
+   * Fail flight submissions and flight state reads fast while the database is unreachable. Only
+   * these calls are refused by the breaker; the step, exit, and disown writes of running flights
+   * always retry in full, so a flight is never left half recorded.
+   *
+   * @param circuitBreaker breaker of this Stairway instance; null to always retry
+   */
+  void setCircuitBreaker(DbCircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Tell the DAO that the flight log tables are partitioned by day. Retention then deletes flight
+   * log rows only from the DEFAULT partitions; the day partitions are dropped whole by the {@link
+   * FlightLogPartitionDao}. Must be called before the retention cleaner runs.
+   *
+   * @param partitionedFlightLog true if the flightlog and flightworking tables are partitioned
+   */
+  void setPartitionedFlightLog(boolean partitionedFlightLog) {
+    this.partitionedFlightLog = partitionedFlightLog;
+  }
+
+  /**
+   * Set the codec used to store working and persisted map values. Rows are read with the codec
+   * recorded in them, so the codec can be changed at any time.
+   *
+   * @param flightMapCodec codec for new rows
+   */
+  void setFlightMapCodec(FlightMapCodec flightMapCodec) {
+    this.flightMapCodec = flightMapCodec;
+  }
+
+  /**
+   * Send flight state and enumeration reads through a router, which may direct them to a read
+   * replica. Everything else, including resume and recovery, reads from the primary.
+   *
+   * @param readReplicaRouter router to use; null to read everything from the primary
+   */
+  void setReadReplicaRouter(ReadReplicaRouter readReplicaRouter) {
+    this.readReplicaRouter = readReplicaRouter;
+  }
+
+  /**
+   * Cache exact flight counts of enumerations by filter.
+   *
+   * @param flightCountCache cache to use; null to count on every enumeration
+   */
+  void setFlightCountCache(FlightCountCache flightCountCache) {
+    this.flightCountCache = flightCountCache;
+  }
+
+  /**
+   * Tell the DAO that the inputs column of the flight table is filled in and indexed, so new
+   * flights store their inputs there and input filters search it. Must be called before flights
+   * are created or enumerated.
+   *
+   * @param indexedInputFilters true if the inputs column is indexed
+   */
+  void setIndexedInputFilters(boolean indexedInputFilters) {
+    this.indexedInputFilters = indexedInputFilters;
+  }
+
+  /**
+   * Keep the flight status counters up to date. Every status change and every insert and delete
+   * of a flight records its change to the counts in the same transaction.
+   *
+   * @param flightStatusCountDao counters to keep; null to keep no counters
+   */
+  void setFlightStatusCountDao(FlightStatusCountDao flightStatusCountDao) {
+    this.flightStatusCountDao = flightStatusCountDao;
+  }
+
+  /**
+   * Write flights that are made READY to go on the work queue to the outbox table, in the same
+   * transaction that makes them READY. The {@link WorkQueueOutboxRelay} puts them on the queue.
+   *
+   * @param workQueueOutbox true to write READY flights to the outbox
+   */
+  void setWorkQueueOutbox(boolean workQueueOutbox) {
+    this.workQueueOutbox = workQueueOutbox;
+  }
+
+  /**
+   * Report completed flights to the {@link FlightCompletionListener} of every Stairway instance.
+   * The transaction that completes a flight sends a notification that is delivered when it
+   * commits.
+   *
+   * @param flightCompletionNotify true to send completion notifications
+   */
+  void setFlightCompletionNotify(boolean flightCompletionNotify) {
+    this.flightCompletionNotify = flightCompletionNotify;
+  }
+
+  /**
+   * Send the completion notification of a flight in the caller's transaction, if we send them.
+   * Used when completing flights and when forcing them to a completed state.
+   *
+   * @param connection connection with an open transaction that completes the flight
+   * @param flightId completed flight
+   * @throws SQLException on database errors
+   */
+  void notifyCompleted(Connection connection, String flightId) throws SQLException {
+    if (!flightCompletionNotify) {
+      return;
+    }
+    final String sql = "SELECT pg_notify(:channel, :flightId)";
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sql)) {
+      statement.setString("channel", FlightCompletionListener.CHANNEL);
+      statement.setString("flightId", flightId);
+      statement.getPreparedStatement().execute();
+    }
+  }
+
+  // Record changes to the flight status counts in the caller's transaction, if we keep counts
+  private void recordStatusCounts(Connection connection, FlightStatusCountDao.Changes changes)
+      throws SQLException {
+    if (flightStatusCountDao != null) {
+      flightStatusCountDao.record(connection, changes);
+    }
+  }
+
+  // Connection for reads that may be slightly stale
+  private Connection getReadConnection() throws SQLException {
+    return (readReplicaRouter == null)
+        ? dataSource.getConnection()
+        : readReplicaRouter.getReadConnection();
   }
 
   /**
@@ -98,12 +264,13 @@ class FlightDao {
    * @throws DuplicateFlightIdException attempt to submit a flight with a duplicate id
    * @throws InterruptedException thread shutdown
    */
-  void create(FlightContextImpl flightContext)
+  @Override
+  public void create(FlightContextImpl flightContext)
       throws StairwayException,
           DatabaseOperationException,
           DuplicateFlightIdException,
           InterruptedException {
-    DbRetry.retryVoid("flight.submit", () -> createInner(flightContext));
+    DbRetry.retryVoid("flight.submit", circuitBreaker, () -> createInner(flightContext));
   }
 
   private void createInner(FlightContextImpl flightContext)
@@ -111,8 +278,9 @@ class FlightDao {
     final String sqlInsertFlight =
         "INSERT INTO "
             + FLIGHT_TABLE
-            + " (flightId, submit_time, class_name, status, stairway_id, debug_info)"
-            + "VALUES (:flightId, CURRENT_TIMESTAMP, :className, :status, :stairwayId, :debugInfo)";
+            + " (flightId, submit_time, class_name, status, stairway_id, debug_info, inputs)"
+            + "VALUES (:flightId, CURRENT_TIMESTAMP, :className, :status, :stairwayId, :debugInfo,"
+            + " CAST(:inputs AS jsonb))";
 
     try (Connection connection = dataSource.getConnection();
         NamedParameterPreparedStatement statement =
@@ -134,10 +302,23 @@ class FlightDao {
       } else {
         statement.setString("debugInfo", "{}");
       }
+      // Indexed input filters search the inputs stored as one JSON object
+      statement.setString(
+          "inputs",
+          indexedInputFilters
+              ? FlightMapUtils.makeJsonObject(flightContext.getInputParameters())
+              : null);
       statement.getPreparedStatement().executeUpdate();
 
       storeInputParameters(
           connection, flightContext.getFlightId(), flightContext.getInputParameters());
+      if (flightContext.getFlightStatus() == FlightStatus.READY) {
+        storeOutbox(connection, List.of(flightContext.getFlightId()));
+      }
+      recordStatusCounts(
+          connection,
+          new FlightStatusCountDao.Changes()
+              .add(flightContext.getFlightClassName(), flightContext.getFlightStatus()));
 
       commitTransaction(connection);
       hookWrapper.stateTransition(flightContext);
@@ -153,6 +334,98 @@ class FlightDao {
     }
   }
 
+  /**
+   * Create the records of several new flights in one transaction. The flight rows are inserted by
+   * one multi-row statement that skips ids that already exist, so a duplicate does not fail the
+   * batch. The inputs of all of the created flights are sent as one JDBC batch.
+   *
+   * @param flightContexts descriptions of the flights; their ids must be distinct
+   * @return ids of the flights that were created
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException database error
+   * @throws InterruptedException thread shutdown
+   */
+  @Override
+  public Set<String> createBatch(List<FlightContextImpl> flightContexts)
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    return DbRetry.retry(
+        "flight.submitBatch", circuitBreaker, () -> createBatchInner(flightContexts));
+  }
+
+  private Set<String> createBatchInner(List<FlightContextImpl> flightContexts)
+      throws SQLException {
+    final String sqlInsertFlights =
+        "INSERT INTO "
+            + FLIGHT_TABLE
+            + " (flightId, submit_time, class_name, status, stairway_id, debug_info, inputs)"
+            + " SELECT T.flightid, CURRENT_TIMESTAMP, T.class_name, T.status,"
+            + " CASE WHEN T.status IN ('READY', 'READY_TO_RESTART') THEN NULL"
+            + " ELSE :stairwayId END, T.debug_info, CAST(T.inputs AS jsonb)"
+            + " FROM unnest(:flightIds, :classNames, :statuses, :debugInfos, :inputs)"
+            + " AS T(flightid, class_name, status, debug_info, inputs)"
+            + " ON CONFLICT (flightid) DO NOTHING RETURNING flightid";
+
+    List<String> flightIds = new ArrayList<>();
+    List<String> classNames = new ArrayList<>();
+    List<String> statuses = new ArrayList<>();
+    List<String> debugInfos = new ArrayList<>();
+    List<String> inputs = new ArrayList<>();
+    for (FlightContextImpl flightContext : flightContexts) {
+      flightIds.add(flightContext.getFlightId());
+      classNames.add(flightContext.getFlightClassName());
+      statuses.add(flightContext.getFlightStatus().name());
+      debugInfos.add(
+          (flightContext.getDebugInfo() != null) ? flightContext.getDebugInfo().toString() : "{}");
+      inputs.add(
+          indexedInputFilters
+              ? FlightMapUtils.makeJsonObject(flightContext.getInputParameters())
+              : null);
+    }
+
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(connection, sqlInsertFlights)) {
+
+      startTransaction(connection);
+      statement.setString("stairwayId", stairwayId);
+      statement.setStringArray("flightIds", flightIds);
+      statement.setStringArray("classNames", classNames);
+      statement.setStringArray("statuses", statuses);
+      statement.setStringArray("debugInfos", debugInfos);
+      statement.setStringArray("inputs", inputs);
+      Set<String> created = new HashSet<>();
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          created.add(rs.getString("flightid"));
+        }
+      }
+
+      Map<String, FlightMap> createdInputs = new LinkedHashMap<>();
+      List<String> readyFlightIds = new ArrayList<>();
+      FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+      for (FlightContextImpl flightContext : flightContexts) {
+        if (created.contains(flightContext.getFlightId())) {
+          createdInputs.put(flightContext.getFlightId(), flightContext.getInputParameters());
+          if (flightContext.getFlightStatus() == FlightStatus.READY) {
+            readyFlightIds.add(flightContext.getFlightId());
+          }
+          changes.add(flightContext.getFlightClassName(), flightContext.getFlightStatus());
+        }
+      }
+      storeInputParameters(connection, createdInputs);
+      storeOutbox(connection, readyFlightIds);
+      recordStatusCounts(connection, changes);
+
+      commitTransaction(connection);
+      for (FlightContextImpl flightContext : flightContexts) {
+        if (created.contains(flightContext.getFlightId())) {
+          hookWrapper.stateTransition(flightContext);
+        }
+      }
+      return created;
+    }
+  }
+
   /**
    * Record the flight state right after a step
    *
@@ -161,12 +434,59 @@ class FlightDao {
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  void step(FlightContextImpl flightContext)
+  @Override
+  public void step(FlightContextImpl flightContext)
       throws StairwayException, DatabaseOperationException, InterruptedException {
-    DbRetry.retryVoid("flight.step", () -> stepInner(flightContext));
+    if (stepCheckpointWriter != null) {
+      stepCheckpointWriter.write(flightContext);
+    } else {
+      DbRetry.retryVoid("flight.step", () -> stepInner(List.of(flightContext)));
+    }
   }
 
-  private void stepInner(FlightContextImpl flightContext) throws SQLException {
+  /**
+   * Record the flight state right after a step for several flights in a single transaction. This
+   * is the group commit used by the {@link StepCheckpointWriter}.
+   *
+   * @param flightContexts descriptions of the flights
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException database error
+   * @throws InterruptedException thread shutdown
+   */
+  void stepBatch(List<FlightContextImpl> flightContexts)
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    DbRetry.retryVoid("flight.stepBatch", () -> stepInner(flightContexts));
+  }
+
+  private void stepInner(List<FlightContextImpl> flightContexts) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      startTransaction(connection);
+      List<Boolean> deltaFlags = new ArrayList<>();
+      for (FlightContextImpl flightContext : flightContexts) {
+        deltaFlags.add(insertStepRecord(connection, flightContext));
+      }
+      commitTransaction(connection);
+
+      // Only once the records are durable do we advance the persisted working map state
+      for (int i = 0; i < flightContexts.size(); i++) {
+        FlightContextLogState logState = flightContexts.get(i).getLogState();
+        logState.workingMapPersisted(
+            deltaFlags.get(i) ? logState.getDeltasSinceSnapshot() + 1 : 0);
+      }
+    }
+  }
+
+  /**
+   * Insert the log record and working map rows for one step of a flight. The caller owns the
+   * transaction.
+   *
+   * @param connection database connection with an open transaction
+   * @param flightContext description of the flight
+   * @return true if the working map was stored as a delta; false if stored as a full snapshot
+   * @throws SQLException on database errors
+   */
+  private boolean insertStepRecord(Connection connection, FlightContextImpl flightContext)
+      throws SQLException {
 
     UUID logId = UUID.randomUUID();
 
@@ -174,17 +494,18 @@ class FlightDao {
         "INSERT INTO "
             + FLIGHT_LOG_TABLE
             + "(id, flightid, log_time, step_index, rerun, direction,"
-            + " succeeded, serialized_exception, status)"
+            + " succeeded, serialized_exception, status, working_delta)"
             + " VALUES (:logId, :flightId, CURRENT_TIMESTAMP, :stepIndex, :rerun, :direction,"
-            + " :succeeded, :serializedException, :status)";
+            + " :succeeded, :serializedException, :status, :workingDelta)";
 
     String serializedException =
         exceptionSerializer.serialize(flightContext.getResult().getException().orElse(null));
 
-    try (Connection connection = dataSource.getConnection();
-        NamedParameterPreparedStatement statement =
-            new NamedParameterPreparedStatement(connection, sqlInsertFlightLog)) {
-      startTransaction(connection);
+    FlightContextLogState logState = flightContext.getLogState();
+    List<FlightInput> deltaList = makeWorkingDelta(logState);
+
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlInsertFlightLog)) {
       statement.setUuid("logId", logId);
       statement.setString("flightId", flightContext.getFlightId());
       statement.setInt("stepIndex", flightContext.getStepIndex());
@@ -195,12 +516,45 @@ class FlightDao {
 
       // TODO: I believe storing this is useless. The status always RUNNING
       statement.setString("status", flightContext.getFlightStatus().name());
+      statement.setBoolean("workingDelta", deltaList != null);
       statement.getPreparedStatement().executeUpdate();
 
-      storeWorkingParameters(connection, logId, flightContext.getWorkingMap());
+      if (deltaList == null) {
+        storeWorkingParameters(connection, logId, flightContext.getWorkingMap());
+      } else {
+        storeWorkingInputs(connection, logId, deltaList);
+      }
+    }
 
-      commitTransaction(connection);
+    final String sqlUpdateLatestLog =
+        "UPDATE " + FLIGHT_TABLE + " SET latest_log_id = :logId WHERE flightid = :flightId";
+
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlUpdateLatestLog)) {
+      statement.setUuid("logId", logId);
+      statement.setString("flightId", flightContext.getFlightId());
+      statement.getPreparedStatement().executeUpdate();
+    }
+    return (deltaList != null);
+  }
+
+  /**
+   * Decide whether the next log record of the flight stores a delta of the working map and, if so,
+   * compute it. We store a full snapshot when deltas are not configured, when we have no record of
+   * what was last persisted, when the snapshot interval is reached, or when the change cannot be
+   * expressed as a delta.
+   *
+   * @param logState log state of the flight
+   * @return list of changed working map entries; null if a full snapshot should be stored
+   */
+  private List<FlightInput> makeWorkingDelta(FlightContextLogState logState) {
+    if (workingMapSnapshotInterval <= 1
+        || logState.getPersistedWorkingMap() == null
+        || logState.getDeltasSinceSnapshot() >= workingMapSnapshotInterval - 1) {
+      return null;
     }
+    return FlightMapUtils.makeDeltaInputList(
+        logState.getPersistedWorkingMap(), logState.getWorkingMap());
   }
 
   /**
@@ -213,7 +567,8 @@ class FlightDao {
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  void exit(FlightContextImpl flightContext)
+  @Override
+  public void exit(FlightContextImpl flightContext)
       throws StairwayException,
           StairwayExecutionException,
           DatabaseOperationException,
@@ -252,7 +607,8 @@ class FlightDao {
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  void queued(FlightContextImpl flightContext)
+  @Override
+  public void queued(FlightContextImpl flightContext)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     final String sqlUpdateFlight =
         "UPDATE "
@@ -260,7 +616,60 @@ class FlightDao {
             + " SET status = :status"
             + " WHERE stairway_id IS NULL AND flightid = :flightId AND status = 'READY'";
     flightContext.setFlightStatus(FlightStatus.QUEUED);
-    DbRetry.retryVoid("flight.queued", () -> updateFlightState(sqlUpdateFlight, flightContext));
+    DbRetry.retryVoid(
+        "flight.queued",
+        () -> updateFlightState(sqlUpdateFlight, flightContext, FlightStatus.READY));
+  }
+
+  /**
+   * Record that several flights have been put in the work queue, in one statement. As for {@link
+   * #queued}, flights that are no longer READY and unowned are left alone.
+   *
+   * @param flightContexts contexts of the flights
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException database error
+   * @throws InterruptedException thread shutdown
+   */
+  @Override
+  public void queuedBatch(List<FlightContextImpl> flightContexts)
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    for (FlightContextImpl flightContext : flightContexts) {
+      flightContext.setFlightStatus(FlightStatus.QUEUED);
+    }
+    DbRetry.retryVoid("flight.queuedBatch", () -> queuedBatchInner(flightContexts));
+  }
+
+  private void queuedBatchInner(List<FlightContextImpl> flightContexts) throws SQLException {
+    final String sqlUpdateFlights =
+        "UPDATE "
+            + FLIGHT_TABLE
+            + " SET status = 'QUEUED'"
+            + " WHERE flightid = ANY(:flightIds) AND stairway_id IS NULL AND status = 'READY'"
+            + " RETURNING class_name";
+
+    List<String> flightIds = new ArrayList<>();
+    for (FlightContextImpl flightContext : flightContexts) {
+      flightIds.add(flightContext.getFlightId());
+    }
+
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(connection, sqlUpdateFlights)) {
+
+      startTransaction(connection);
+      statement.setStringArray("flightIds", flightIds);
+      FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          changes.move(rs.getString("class_name"), FlightStatus.READY, FlightStatus.QUEUED);
+        }
+      }
+      recordStatusCounts(connection, changes);
+      commitTransaction(connection);
+    }
+    for (FlightContextImpl flightContext : flightContexts) {
+      hookWrapper.stateTransition(flightContext);
+    }
   }
 
   /**
@@ -273,16 +682,35 @@ class FlightDao {
    */
   private void disown(FlightContextImpl flightContext)
       throws StairwayException, DatabaseOperationException, InterruptedException {
+    // A flight waiting until a time keeps the time for the wake timer
+    Instant wakeTime =
+        (flightContext.getFlightStatus() == FlightStatus.WAITING)
+            ? flightContext.getWakeTime()
+            : null;
     final String sqlUpdateFlight =
         "UPDATE "
             + FLIGHT_TABLE
             + " SET status = :status,"
+            + ((wakeTime != null) ? " wake_at = :wakeAt," : "")
             + " stairway_id = NULL"
             + " WHERE flightid = :flightId AND status = 'RUNNING'";
-    DbRetry.retryVoid("flight.disown", () -> updateFlightState(sqlUpdateFlight, flightContext));
+    DbRetry.retryVoid(
+        "flight.disown",
+        () -> updateFlightState(sqlUpdateFlight, flightContext, FlightStatus.RUNNING, wakeTime));
   }
 
-  private void updateFlightState(String sql, FlightContextImpl flightContext) throws SQLException {
+  private void updateFlightState(
+      String sql, FlightContextImpl flightContext, FlightStatus priorStatus) throws SQLException {
+    updateFlightState(sql, flightContext, priorStatus, null);
+  }
+
+  // The update only applies to a flight in the prior status
+  private void updateFlightState(
+      String sql,
+      FlightContextImpl flightContext,
+      FlightStatus priorStatus,
+      @Nullable Instant wakeTime)
+      throws SQLException {
     try (Connection connection = dataSource.getConnection();
         NamedParameterPreparedStatement statement =
             new NamedParameterPreparedStatement(connection, sql)) {
@@ -290,7 +718,22 @@ class FlightDao {
       startTransaction(connection);
       statement.setString("status", flightContext.getFlightStatus().name());
       statement.setString("flightId", flightContext.getFlightId());
-      statement.getPreparedStatement().executeUpdate();
+      if (wakeTime != null) {
+        statement.setInstant("wakeAt", wakeTime);
+      }
+      if (statement.getPreparedStatement().executeUpdate() > 0) {
+        recordStatusCounts(
+            connection,
+            new FlightStatusCountDao.Changes()
+                .move(
+                    flightContext.getFlightClassName(),
+                    priorStatus,
+                    flightContext.getFlightStatus()));
+        if (flightContext.getFlightStatus() == FlightStatus.READY
+            || flightContext.getFlightStatus() == FlightStatus.READY_TO_RESTART) {
+          storeOutbox(connection, List.of(flightContext.getFlightId()));
+        }
+      }
       commitTransaction(connection);
       hookWrapper.stateTransition(flightContext);
     }
@@ -306,7 +749,8 @@ class FlightDao {
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  void disownRecovery(String stairwayId)
+  @Override
+  public void disownRecovery(String stairwayId)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     DbRetry.retryVoid("flight.disownRecovery", () -> disownRecoveryInner(stairwayId));
   }
@@ -350,6 +794,12 @@ class FlightDao {
         updateStatement.setString("stairwayId", stairwayId);
         int disownCount = updateStatement.getPreparedStatement().executeUpdate();
         logger.info("Disowned " + disownCount + " flights for stairway: " + stairwayId);
+        FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+        for (FlightContextImpl flightContext : flightList) {
+          changes.move(
+              flightContext.getFlightClassName(), FlightStatus.RUNNING, FlightStatus.READY);
+        }
+        recordStatusCounts(connection, changes);
       }
 
       stairwayInstanceDao.delete(connection, stairwayId);
@@ -363,6 +813,166 @@ class FlightDao {
     }
   }
 
+  // Add a flight to the outbox in the caller's transaction, if we use the outbox
+  private void storeOutbox(Connection connection, List<String> flightIds) throws SQLException {
+    if (!workQueueOutbox || flightIds.isEmpty()) {
+      return;
+    }
+    final String sql =
+        "INSERT INTO "
+            + FLIGHT_OUTBOX_TABLE
+            + " (flightid) SELECT unnest(:flightIds) ON CONFLICT DO NOTHING";
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sql)) {
+      statement.setStringArray("flightIds", flightIds);
+      statement.getPreparedStatement().executeUpdate();
+    }
+  }
+
+  /**
+   * Add all flights in the READY or READY_TO_RESTART state to the outbox. This is the outbox form
+   * of recovering ready flights: flights made READY by recovery, or before the outbox was used,
+   * are put on the work queue by the relay.
+   *
+   * @return number of flights added to the outbox
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException database error
+   * @throws InterruptedException thread shutdown
+   */
+  int storeReadyFlightsInOutbox()
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    return DbRetry.retry("flight.storeReadyFlightsInOutbox", this::storeReadyFlightsInOutboxInner);
+  }
+
+  private int storeReadyFlightsInOutboxInner() throws SQLException {
+    final String sql =
+        "INSERT INTO "
+            + FLIGHT_OUTBOX_TABLE
+            + " (flightid) SELECT flightid FROM "
+            + FLIGHT_TABLE
+            + " WHERE stairway_id IS NULL AND (status = 'READY' OR status = 'READY_TO_RESTART')"
+            + " ON CONFLICT DO NOTHING";
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(connection, sql)) {
+      startTransaction(connection);
+      int count = statement.getPreparedStatement().executeUpdate();
+      commitTransaction(connection);
+      return count;
+    }
+  }
+
+  /** Puts one batch of flights on the work queue for {@link #relayOutbox} */
+  @FunctionalInterface
+  interface OutboxPublisher {
+    void publish(List<String> flightIds) throws StairwayException, InterruptedException;
+  }
+
+  /**
+   * Put one batch of flights from the outbox on the work queue, mark the READY ones QUEUED, and
+   * remove them from the outbox. The oldest flights are relayed first.
+   *
+   * <p>The batch is selected FOR UPDATE SKIP LOCKED under READ COMMITTED, so relays in several
+   * Stairway instances take different batches rather than failing with serialization errors. The
+   * batch is published in one call before the transaction commits, so the outbox rows stay locked
+   * for one round trip to the queue; if the transaction then fails, the flights stay in the outbox
+   * and are published again. Putting a flight on the queue twice is not a problem.
+   *
+   * <p>A published flight may be resumed by another instance right away, and its resume waits for
+   * the flight row. The flight rows are therefore updated last, in one statement just before the
+   * commit, and the flight contexts for the state transition hooks are built after the commit.
+   *
+   * @param batchSize maximum number of flights to relay
+   * @param publisher puts the batch of flights on the work queue
+   * @return number of flights relayed; less than batchSize when the outbox is drained
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException database error
+   * @throws InterruptedException thread shutdown
+   */
+  int relayOutbox(int batchSize, OutboxPublisher publisher)
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    OutboxRelayResult result =
+        DbRetry.retry("flight.relayOutbox", () -> relayOutboxInner(batchSize, publisher));
+    if (hookWrapper.hasHooks()) {
+      for (String flightId : result.queuedFlightIds()) {
+        reportQueued(flightId);
+      }
+    }
+    return result.relayedCount();
+  }
+
+  // The flight may have moved on since it was queued; the hooks are told about the QUEUED state
+  private void reportQueued(String flightId) throws InterruptedException {
+    try {
+      FlightContextImpl flightContext = makeFlightContextById(flightId);
+      if (flightContext != null) {
+        flightContext.setFlightStatus(FlightStatus.QUEUED);
+        hookWrapper.stateTransition(flightContext);
+      }
+    } catch (StairwayException ex) {
+      logger.warn("Failed to report the QUEUED state of flight " + flightId + " to hooks", ex);
+    }
+  }
+
+  private record OutboxRelayResult(int relayedCount, List<String> queuedFlightIds) {}
+
+  private OutboxRelayResult relayOutboxInner(int batchSize, OutboxPublisher publisher)
+      throws SQLException, StairwayException, InterruptedException {
+    final String sqlSelect =
+        "SELECT flightid FROM "
+            + FLIGHT_OUTBOX_TABLE
+            + " ORDER BY created_time LIMIT :batchSize FOR UPDATE SKIP LOCKED";
+    final String sqlQueued =
+        "UPDATE "
+            + FLIGHT_TABLE
+            + " SET status = 'QUEUED'"
+            + " WHERE flightid = ANY(:flightIds) AND stairway_id IS NULL AND status = 'READY'"
+            + " RETURNING flightid, class_name";
+    final String sqlDelete =
+        "DELETE FROM " + FLIGHT_OUTBOX_TABLE + " WHERE flightid = ANY(:flightIds)";
+
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement selectStatement =
+            new NamedParameterPreparedStatement(connection, sqlSelect);
+        NamedParameterPreparedStatement queuedStatement =
+            new NamedParameterPreparedStatement(connection, sqlQueued);
+        NamedParameterPreparedStatement deleteStatement =
+            new NamedParameterPreparedStatement(connection, sqlDelete)) {
+
+      startReadCommittedTransaction(connection);
+      List<String> flightIds = new ArrayList<>();
+      selectStatement.setInt("batchSize", batchSize);
+      try (ResultSet rs = selectStatement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          flightIds.add(rs.getString("flightid"));
+        }
+      }
+      if (flightIds.isEmpty()) {
+        commitTransaction(connection);
+        return new OutboxRelayResult(0, List.of());
+      }
+
+      publisher.publish(flightIds);
+
+      deleteStatement.setStringArray("flightIds", flightIds);
+      deleteStatement.getPreparedStatement().executeUpdate();
+
+      // Flights that were resumed or changed since they went in the outbox are left alone
+      FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+      List<String> queuedFlightIds = new ArrayList<>();
+      queuedStatement.setStringArray("flightIds", flightIds);
+      try (ResultSet rs = queuedStatement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          changes.move(rs.getString("class_name"), FlightStatus.READY, FlightStatus.QUEUED);
+          queuedFlightIds.add(rs.getString("flightid"));
+        }
+      }
+      recordStatusCounts(connection, changes);
+      commitTransaction(connection);
+      return new OutboxRelayResult(flightIds.size(), queuedFlightIds);
+    }
+  }
+
   /**
    * Build a collection of flight ids for all flights in the READY state. This is used as part of
    * recovery. We want to resubmit flights that are in the ready state.
@@ -372,7 +982,8 @@ class FlightDao {
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  List<String> getReadyFlights()
+  @Override
+  public List<String> getReadyFlights()
       throws StairwayException, DatabaseOperationException, InterruptedException {
     return DbRetry.retry("flight.getReadyFlights", this::getReadyFlightsInner);
   }
@@ -446,7 +1057,16 @@ class FlightDao {
       statement.setString("status", flightContext.getFlightStatus().name());
       statement.setString("serializedException", serializedException);
       statement.setString("flightId", flightContext.getFlightId());
-      statement.getPreparedStatement().executeUpdate();
+      if (statement.getPreparedStatement().executeUpdate() > 0) {
+        recordStatusCounts(
+            connection,
+            new FlightStatusCountDao.Changes()
+                .move(
+                    flightContext.getFlightClassName(),
+                    FlightStatus.RUNNING,
+                    flightContext.getFlightStatus()));
+        notifyCompleted(connection, flightContext.getFlightId());
+      }
 
       commitTransaction(connection);
       hookWrapper.stateTransition(flightContext);
@@ -461,7 +1081,8 @@ class FlightDao {
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  void delete(String flightId)
+  @Override
+  public void delete(String flightId)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     DbRetry.retryVoid("flight.delete", () -> deleteInner(flightId));
   }
@@ -469,7 +1090,8 @@ class FlightDao {
   private void deleteInner(String flightId) throws SQLException {
     final String sqlDeleteFlightLog =
         "DELETE FROM " + FLIGHT_LOG_TABLE + " WHERE flightid = :flightId";
-    final String sqlDeleteFlight = "DELETE FROM " + FLIGHT_TABLE + " WHERE flightid = :flightId";
+    final String sqlDeleteFlight =
+        "DELETE FROM " + FLIGHT_TABLE + " WHERE flightid = :flightId RETURNING class_name, status";
 
     final String sqlDeleteFlightWorking =
         "DELETE FROM "
@@ -491,9 +1113,12 @@ class FlightDao {
             new NamedParameterPreparedStatement(connection, sqlDeleteFlightLog)) {
 
       startTransaction(connection);
+      List<String> valueHashes = selectValueHashes(connection, List.of(flightId));
 
       deleteFlightStatement.setString("flightId", flightId);
-      deleteFlightStatement.getPreparedStatement().executeUpdate();
+      FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+      deleteFlights(deleteFlightStatement, changes);
+      recordStatusCounts(connection, changes);
 
       deleteInputStatement.setString("flightId", flightId);
       deleteInputStatement.getPreparedStatement().executeUpdate();
@@ -504,47 +1129,71 @@ class FlightDao {
       deleteLogStatement.setString("flightId", flightId);
       deleteLogStatement.getPreparedStatement().executeUpdate();
 
+      deleteUnreferencedValues(connection, valueHashes);
       commitTransaction(connection);
     }
   }
 
   /**
-   * Remove completed flights from the database that are older than a specific time
+   * Remove one batch of completed flights from the database that are older than a specific time.
+   * The oldest completed flights are removed first. Each batch is its own transaction, so the
+   * caller controls how long locks are held by the batch size.
    *
    * @param deleteOlderThan time before which flights can be removed
+   * @param batchSize maximum number of flights to remove
    * @throws StairwayException other stairway exception
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
-   * @return count of deleted lights
+   * @return count of deleted flights; less than batchSize when no more flights are expired
    */
-  int deleteCompletedFlights(Instant deleteOlderThan)
+  @Override
+  public int deleteCompletedFlights(Instant deleteOlderThan, int batchSize)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     return DbRetry.retry(
-        "flight.deleteCompletedFlights", () -> deleteCompletedFlightsInner(deleteOlderThan));
+        "flight.deleteCompletedFlights",
+        () -> deleteCompletedFlightsInner(deleteOlderThan, batchSize));
   }
 
-  private int deleteCompletedFlightsInner(Instant deleteOlderThan) throws SQLException {
-    final String sqlInClause =
-        " WHERE flightid IN (SELECT flightid FROM "
+  private int deleteCompletedFlightsInner(Instant deleteOlderThan, int batchSize)
+      throws SQLException {
+    final String sqlSelectExpired =
+        "SELECT flightid FROM "
             + FLIGHT_TABLE
-            + " WHERE completed_time < :completed_time)";
+            + " WHERE completed_time < :completed_time"
+            + " ORDER BY completed_time LIMIT :batchSize";
+
+    final String sqlInClause = " WHERE flightid = ANY(:flightIds)";
+
+    // With a partitioned flight log, rows in the day partitions are removed by dropping the
+    // partitions, so we only delete the rows in the DEFAULT partitions.
+    final String logTable =
+        partitionedFlightLog
+            ? FLIGHT_LOG_TABLE + FlightLogPartitionDao.DEFAULT_PARTITION_SUFFIX
+            : FLIGHT_LOG_TABLE;
+    final String workingTable =
+        partitionedFlightLog
+            ? FLIGHT_WORKING_TABLE + FlightLogPartitionDao.DEFAULT_PARTITION_SUFFIX
+            : FLIGHT_WORKING_TABLE;
 
     final String sqlDeleteFlightWorking =
         "DELETE FROM "
-            + FLIGHT_WORKING_TABLE
+            + workingTable
             + " WHERE flightlog_id IN"
-            + " (SELECT id FROM flightlog "
+            + " (SELECT id FROM "
+            + logTable
             + sqlInClause
             + ")";
 
     final String sqlDeleteFlightInput = "DELETE FROM " + FLIGHT_INPUT_TABLE + sqlInClause;
 
-    final String sqlDeleteFlightLog = "DELETE FROM " + FLIGHT_LOG_TABLE + sqlInClause;
+    final String sqlDeleteFlightLog = "DELETE FROM " + logTable + sqlInClause;
 
     final String sqlDeleteFlight =
-        "DELETE FROM " + FLIGHT_TABLE + "  WHERE completed_time < :completed_time";
+        "DELETE FROM " + FLIGHT_TABLE + sqlInClause + " RETURNING class_name, status";
 
     try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement selectExpiredStatement =
+            new NamedParameterPreparedStatement(connection, sqlSelectExpired);
         NamedParameterPreparedStatement deleteFlightStatement =
             new NamedParameterPreparedStatement(connection, sqlDeleteFlight);
         NamedParameterPreparedStatement deleteInputStatement =
@@ -556,91 +1205,214 @@ class FlightDao {
 
       startTransaction(connection);
 
-      deleteWorkingStatement.setInstant("completed_time", deleteOlderThan);
+      List<String> flightIds = new ArrayList<>();
+      selectExpiredStatement.setInstant("completed_time", deleteOlderThan);
+      selectExpiredStatement.setInt("batchSize", batchSize);
+      try (ResultSet rs = selectExpiredStatement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          flightIds.add(rs.getString("flightid"));
+        }
+      }
+
+      if (flightIds.isEmpty()) {
+        commitTransaction(connection);
+        return 0;
+      }
+      List<String> valueHashes = selectValueHashes(connection, flightIds);
+
+      deleteWorkingStatement.setStringArray("flightIds", flightIds);
       deleteWorkingStatement.getPreparedStatement().executeUpdate();
 
-      deleteInputStatement.setInstant("completed_time", deleteOlderThan);
+      deleteInputStatement.setStringArray("flightIds", flightIds);
       deleteInputStatement.getPreparedStatement().executeUpdate();
 
-      deleteLogStatement.setInstant("completed_time", deleteOlderThan);
+      deleteLogStatement.setStringArray("flightIds", flightIds);
       deleteLogStatement.getPreparedStatement().executeUpdate();
 
-      deleteFlightStatement.setInstant("completed_time", deleteOlderThan);
-      int count = deleteFlightStatement.getPreparedStatement().executeUpdate();
+      deleteFlightStatement.setStringArray("flightIds", flightIds);
+      FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+      int count = deleteFlights(deleteFlightStatement, changes);
+      recordStatusCounts(connection, changes);
+
+      // With a partitioned flight log, values still referenced from the day partitions are
+      // kept here and deleted when the partitions are dropped
+      deleteUnreferencedValues(connection, valueHashes);
+      commitTransaction(connection);
+      return count;
+    }
+  }
+
+  // Run a DELETE of flights that returns their class_name and status. The deleted flights are
+  // added to the changes to the flight status counts. Returns the number of deleted flights.
+  private int deleteFlights(
+      NamedParameterPreparedStatement deleteFlightStatement, FlightStatusCountDao.Changes changes)
+      throws SQLException {
+    int count = 0;
+    try (ResultSet rs = deleteFlightStatement.getPreparedStatement().executeQuery()) {
+      while (rs.next()) {
+        changes.remove(rs.getString("class_name"), FlightStatus.valueOf(rs.getString("status")));
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Find one unowned flight, claim ownership, and return its flight context
+   *
+   * <p>Ownership is claimed with a single conditional UPDATE under READ COMMITTED. The flight row is
+   * selected FOR UPDATE, so when several Stairway instances race to resume the same flight, the
+   * instance that locks the row first claims it. The others wait for its commit and then check the
+   * status and owner of the row again, so they find no row rather than failing with serialization
+   * errors and retrying. The lock is not skipped: a row that is locked by some other write, such as
+   * a flight being disowned or queued, may be resumable once that write commits, and callers take a
+   * null result to mean the flight needs no resuming.
+   *
+   * @param stairwayId identifier of stairway to own the resumed flight
+   * @param flightId identifier of flight to resume
+   * @return resumed flight; null if the flight does not exist, is not in the right state to be
+   *     resumed, or was claimed by another Stairway instance
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException database error
+   * @throws InterruptedException thread shutdown
+   */
+  @Override
+  public FlightContextImpl resume(String stairwayId, String flightId)
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    return DbRetry.retry("flight.resume", () -> resumeInner(stairwayId, flightId));
+  }
+
+  private FlightContextImpl resumeInner(String stairwayId, String flightId)
+      throws SQLException, DatabaseOperationException, InterruptedException {
+    final String sqlClaimFlight =
+        "UPDATE "
+            + FLIGHT_TABLE
+            + " F SET status = 'RUNNING',"
+            + " stairway_id = :stairwayId,"
+            + " wake_at = NULL"
+            + " FROM (SELECT flightid, status FROM "
+            + FLIGHT_TABLE
+            + " WHERE (status = 'WAITING' OR status = 'READY' OR status = 'QUEUED' OR status = 'READY_TO_RESTART')"
+            + " AND stairway_id IS NULL AND flightid = :flightId"
+            + " FOR UPDATE) P"
+            + " WHERE F.flightid = P.flightid"
+            + " RETURNING F.class_name, F.debug_info, F.status, P.status AS prior_status";
+
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement claimFlightStatement =
+            new NamedParameterPreparedStatement(connection, sqlClaimFlight)) {
+
+      startReadCommittedTransaction(connection);
+
+      claimFlightStatement.setString("stairwayId", stairwayId);
+      claimFlightStatement.setString("flightId", flightId);
+      FlightContextImpl flightContext = null;
+      FlightStatus priorStatus = null;
+      try (ResultSet rs = claimFlightStatement.getPreparedStatement().executeQuery()) {
+        if (rs.next()) {
+          logger.info("Stairway " + stairwayId + " taking ownership of flight " + flightId);
+          // We hold the row lock, so the rest of the flight state is stable while we read it
+          flightContext = makeFlightContext(connection, flightId, rs);
+          priorStatus = FlightStatus.valueOf(rs.getString("prior_status"));
+        }
+      }
+      if (flightContext != null) {
+        recordStatusCounts(
+            connection,
+            new FlightStatusCountDao.Changes()
+                .move(flightContext.getFlightClassName(), priorStatus, FlightStatus.RUNNING));
+      }
 
       commitTransaction(connection);
-      return count;
+
+      if (flightContext != null) {
+        hookWrapper.stateTransition(flightContext);
+      }
+      return flightContext;
     }
   }
 
   /**
-   * Find one unowned flight, claim ownership, and return its flight context
+   * Claim ownership of unowned waiting flights whose wake time has passed, earliest first, and
+   * return their flight contexts
    *
-   * @param stairwayId identifier of stairway to own the resumed flight
-   * @param flightId identifier of flight to resume
-   * @return resumed flight; null if the flight does not exist or is not in the right state to be
-   *     resumed
+   * <p>The flight rows are selected FOR UPDATE SKIP LOCKED, so the wake timers of several Stairway
+   * instances claim different flights instead of contending for the same ones. A flight skipped
+   * here is still due, so the next pass of the timer picks it up.
+   *
+   * @param stairwayId identifier of stairway to own the resumed flights
+   * @param now current time; flights with a wake time at or before it are due
+   * @param maxFlights maximum number of flights to claim
+   * @return resumed flights; empty if no flights are due
    * @throws StairwayException other stairway exception
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  FlightContextImpl resume(String stairwayId, String flightId)
+  @Override
+  public List<FlightContextImpl> resumeDueFlights(String stairwayId, Instant now, int maxFlights)
       throws StairwayException, DatabaseOperationException, InterruptedException {
-    return DbRetry.retry("flight.resume", () -> resumeInner(stairwayId, flightId));
+    return DbRetry.retry(
+        "flight.resumeDueFlights", () -> resumeDueFlightsInner(stairwayId, now, maxFlights));
   }
 
-  private FlightContextImpl resumeInner(String stairwayId, String flightId)
-      throws SQLException, DatabaseOperationException, InterruptedException {
-    final String sqlUnownedFlight =
-        "SELECT class_name, debug_info, status "
-            + " FROM "
-            + FLIGHT_TABLE
-            + " WHERE (status = 'WAITING' OR status = 'READY' OR status = 'QUEUED' OR status = 'READY_TO_RESTART')"
-            + " AND stairway_id IS NULL AND flightid = :flightId";
-
-    final String sqlTakeOwnership =
+  private List<FlightContextImpl> resumeDueFlightsInner(
+      String stairwayId, Instant now, int maxFlights)
+      throws SQLException, DatabaseOperationException {
+    final String sqlClaimFlights =
         "UPDATE "
             + FLIGHT_TABLE
-            + " SET status = 'RUNNING',"
-            + " stairway_id = :stairwayId"
-            + " WHERE flightid = :flightId";
+            + " F SET status = 'RUNNING',"
+            + " stairway_id = :stairwayId,"
+            + " wake_at = NULL"
+            + " FROM (SELECT flightid FROM "
+            + FLIGHT_TABLE
+            + " WHERE status = 'WAITING' AND stairway_id IS NULL"
+            + " AND wake_at IS NOT NULL AND wake_at <= :now"
+            + " ORDER BY wake_at LIMIT :maxFlights"
+            + " FOR UPDATE SKIP LOCKED) P"
+            + " WHERE F.flightid = P.flightid"
+            + " RETURNING F.flightid, F.class_name, F.debug_info, F.status";
 
     try (Connection connection = dataSource.getConnection();
-        NamedParameterPreparedStatement unownedFlightStatement =
-            new NamedParameterPreparedStatement(connection, sqlUnownedFlight);
-        NamedParameterPreparedStatement takeOwnershipStatement =
-            new NamedParameterPreparedStatement(connection, sqlTakeOwnership)) {
+        NamedParameterPreparedStatement claimFlightsStatement =
+            new NamedParameterPreparedStatement(connection, sqlClaimFlights)) {
 
-      startTransaction(connection);
+      startReadCommittedTransaction(connection);
 
-      unownedFlightStatement.setString("flightId", flightId);
-      FlightContextImpl flightContext = null;
-      try (ResultSet rs = unownedFlightStatement.getPreparedStatement().executeQuery()) {
-        if (rs.next()) {
-          flightContext = makeFlightContext(connection, flightId, rs);
-          // Set the flight status to RUNNING. That anticipates the execution of the
-          // takeOwnership statement that will set the flight status in the database.
-          flightContext.setFlightStatus(FlightStatus.RUNNING);
+      claimFlightsStatement.setString("stairwayId", stairwayId);
+      claimFlightsStatement.setInstant("now", now);
+      claimFlightsStatement.setInt("maxFlights", maxFlights);
+      List<FlightContextImpl> flightContexts = new ArrayList<>();
+      FlightStatusCountDao.Changes changes = new FlightStatusCountDao.Changes();
+      try (ResultSet rs = claimFlightsStatement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          String flightId = rs.getString("flightid");
+          // We hold the row locks, so the rest of the flight state is stable while we read it
+          flightContexts.add(makeFlightContext(connection, flightId, rs));
+          changes.move(rs.getString("class_name"), FlightStatus.WAITING, FlightStatus.RUNNING);
         }
       }
-
-      if (flightContext != null) {
-        logger.info("Stairway " + stairwayId + " taking ownership of flight " + flightId);
-        takeOwnershipStatement.setString("flightId", flightId);
-        takeOwnershipStatement.setString("stairwayId", stairwayId);
-        takeOwnershipStatement.getPreparedStatement().executeUpdate();
-      }
+      recordStatusCounts(connection, changes);
 
       commitTransaction(connection);
 
-      if (flightContext != null) {
+      if (!flightContexts.isEmpty()) {
+        logger.info(
+            "Stairway "
+                + stairwayId
+                + " taking ownership of "
+                + flightContexts.size()
+                + " due flights");
+      }
+      for (FlightContextImpl flightContext : flightContexts) {
         hookWrapper.stateTransition(flightContext);
       }
-      return flightContext;
+      return flightContexts;
     }
   }
 
-  void storePersistedStateMap(String flightId, FlightMap persistedStateMap)
+  @Override
+  public void storePersistedStateMap(String flightId, FlightMap persistedStateMap)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     DbRetry.retryVoid(
         "flight.storePersistedStateMap",
@@ -652,9 +1424,11 @@ class FlightDao {
     final String sqlUpsert =
         "INSERT INTO "
             + FLIGHT_PERSISTED_TABLE
-            + "(flightId, key, value) VALUES (:flightId, :key, :value1) "
-            + "ON CONFLICT ON CONSTRAINT pk_flightpersisted "
-            + "DO UPDATE SET value = :value2";
+            + "(flightId, key, value, codec, value_bytes, value_hash)"
+            + " VALUES (:flightId, :key, :value, :codec, :valueBytes, :valueHash)"
+            + " ON CONFLICT ON CONSTRAINT pk_flightpersisted"
+            + " DO UPDATE SET value = :value, codec = :codec, value_bytes = :valueBytes,"
+            + " value_hash = :valueHash";
 
     List<FlightInput> inputList = FlightMapUtils.makeFlightInputList(persistedStateMap);
 
@@ -664,14 +1438,14 @@ class FlightDao {
       startTransaction(connection);
       statement.setString("flightId", flightId);
 
-      // Note that the unlike the Spring NamedParameterPreparedStatement code, the variant used
-      // in Stairway only allows a single use of a substituted name. That is why we need value1
-      // and value2 and give them the same value.
-      for (FlightInput input : inputList) {
-        statement.setString("key", input.getKey());
-        statement.setString("value1", input.getValue());
-        statement.setString("value2", input.getValue());
-        statement.getPreparedStatement().executeUpdate();
+      List<EncodedValue> encodedValues = encodeValues(connection, inputList, flightMapCodec);
+      for (int i = 0; i < inputList.size(); i++) {
+        statement.setString("key", inputList.get(i).getKey());
+        FlightMapCodec.bind(statement, encodedValues.get(i));
+        statement.getPreparedStatement().addBatch();
+      }
+      if (!inputList.isEmpty()) {
+        statement.getPreparedStatement().executeBatch();
       }
       commitTransaction(connection);
     }
@@ -686,7 +1460,8 @@ class FlightDao {
    * @throws DatabaseOperationException database error
    * @throws InterruptedException thread shutdown
    */
-  FlightContextImpl makeFlightContextById(String flightId)
+  @Override
+  public FlightContextImpl makeFlightContextById(String flightId)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     return DbRetry.retry(
         "flight.makeFlightcontextById", () -> makeFlightContextByIdInner(flightId));
@@ -753,6 +1528,10 @@ class FlightDao {
    * Build the log state of the flight context. The log state comprises the most recent log record
    * stored in FLIGHT_LOG_TABLE and the most recent working map stored in the FLIGHT_WORKING_TABLE.
    *
+   * <p>The most recent log record is found through the latest_log_id pointer on the flight row.
+   * Flights whose most recent log record predates the pointer, or has no id, fall back to finding
+   * the record by its log time.
+   *
    * <p>For a newly created flight, there is no log record or data in the working table. In that
    * case, we return a log state with the initial values set. That will typically happen when the
    * caller has queued the flight on submit.
@@ -765,53 +1544,91 @@ class FlightDao {
   private FlightContextLogState makeLogState(Connection connection, String flightId)
       throws SQLException {
 
+    final String sqlLatestFlightLog =
+        "SELECT L.id, L.working_parameters, L.step_index, L.direction, L.rerun,"
+            + " L.succeeded, L.serialized_exception, L.status, L.working_delta"
+            + " FROM "
+            + FLIGHT_TABLE
+            + " F JOIN "
+            + FLIGHT_LOG_TABLE
+            + " L ON L.id = F.latest_log_id"
+            + " WHERE F.flightid = :flightId";
+
+    try (NamedParameterPreparedStatement latestFlightLogStatement =
+        new NamedParameterPreparedStatement(connection, sqlLatestFlightLog)) {
+
+      latestFlightLogStatement.setString("flightId", flightId);
+
+      try (ResultSet rsflight = latestFlightLogStatement.getPreparedStatement().executeQuery()) {
+        if (rsflight.next()) {
+          return makeLogStateFromRow(connection, flightId, rsflight);
+        }
+      }
+    }
+
     final String sqlLastFlightLog =
         "SELECT id, working_parameters, step_index, direction, rerun,"
-            + " succeeded, serialized_exception, status"
+            + " succeeded, serialized_exception, status, working_delta"
             + " FROM "
             + FLIGHT_LOG_TABLE
             + " WHERE flightid = :flightId AND log_time = "
             + " (SELECT MAX(log_time) FROM "
             + FLIGHT_LOG_TABLE
-            + " WHERE flightid = :flightId2)";
+            + " WHERE flightid = :flightId)";
 
     try (NamedParameterPreparedStatement lastFlightLogStatement =
         new NamedParameterPreparedStatement(connection, sqlLastFlightLog)) {
 
       lastFlightLogStatement.setString("flightId", flightId);
-      lastFlightLogStatement.setString("flightId2", flightId);
 
       try (ResultSet rsflight = lastFlightLogStatement.getPreparedStatement().executeQuery()) {
         if (!rsflight.next()) {
           // There is no row. Return the initial log state.
           return new FlightContextLogState(true); // true = set initial state
         }
+        return makeLogStateFromRow(connection, flightId, rsflight);
+      }
+    }
+  }
 
-        StepResult stepResult;
-        if (rsflight.getBoolean("succeeded")) {
-          stepResult = StepResult.getStepResultSuccess();
-        } else {
-          stepResult =
-              new StepResult(
-                  StepStatus.STEP_RESULT_FAILURE_FATAL,
-                  exceptionSerializer.deserialize(rsflight.getString("serialized_exception")));
-        }
+  // The result set must be positioned at a row from the flight log table
+  private FlightContextLogState makeLogStateFromRow(
+      Connection connection, String flightId, ResultSet rsflight) throws SQLException {
+    StepResult stepResult;
+    if (rsflight.getBoolean("succeeded")) {
+      stepResult = StepResult.getStepResultSuccess();
+    } else {
+      stepResult =
+          new StepResult(
+              StepStatus.STEP_RESULT_FAILURE_FATAL,
+              exceptionSerializer.deserialize(rsflight.getString("serialized_exception")));
+    }
 
-        // TODO(PF-917): We may have JSON from working_parameters, a set of parameters from
-        // flightworking table, neither, or both.  For now, delegate the decision of which to
-        // use to FlightMap class.  PF-917 will remove column working_parameters.
-        final String workingMapJson = rsflight.getString("working_parameters");
-        final List<FlightInput> workingList =
-            retrieveWorkingParameters(connection, rsflight.getObject("id", UUID.class));
+    WorkingMapRebuild workingMapRebuild;
+    if (rsflight.getBoolean("working_delta")) {
+      workingMapRebuild =
+          rebuildWorkingMapChains(connection, List.of(flightId))
+              .getOrDefault(flightId, new WorkingMapRebuild(new FlightMap(), 0));
+    } else {
+      // TODO(PF-917): We may have JSON from working_parameters, a set of parameters from
+      // flightworking table, neither, or both.  For now, delegate the decision of which to
+      // use to FlightMap class.  PF-917 will remove column working_parameters.
+      final String workingMapJson = rsflight.getString("working_parameters");
+      final List<FlightInput> workingList =
+          retrieveWorkingParameters(connection, rsflight.getObject("id", UUID.class));
+      workingMapRebuild =
+          new WorkingMapRebuild(FlightMapUtils.create(workingList, workingMapJson), 0);
+    }
 
-        return new FlightContextLogState(false)
-            .workingMap(FlightMapUtils.create(workingList, workingMapJson))
+    FlightContextLogState logState =
+        new FlightContextLogState(false)
+            .workingMap(workingMapRebuild.workingMap())
             .stepIndex(rsflight.getInt("step_index"))
             .rerun(rsflight.getBoolean("rerun"))
             .direction(Direction.valueOf(rsflight.getString("direction")))
             .result(stepResult);
-      }
-    }
+    logState.workingMapPersisted(workingMapRebuild.deltaCount());
+    return logState;
   }
 
   /**
@@ -825,15 +1642,40 @@ class FlightDao {
    * @throws FlightNotFoundException - flightId is unknown to Stairway
    * @throws InterruptedException - interrupt
    */
-  FlightState getFlightState(String flightId)
+  @Override
+  public FlightState getFlightState(String flightId)
+      throws StairwayException,
+          DatabaseOperationException,
+          FlightNotFoundException,
+          InterruptedException {
+    return DbRetry.retry(
+        "flight.getFlightState", circuitBreaker, () -> getReplicaFlightStateInner(flightId));
+  }
+
+  // A flight submitted moments ago may not have reached the replica yet, so a miss there is
+  // checked on the primary before the flight is reported as not found.
+  private FlightState getReplicaFlightStateInner(String flightId)
+      throws SQLException, FlightNotFoundException, DatabaseOperationException {
+    try {
+      return getFlightStateInner(flightId, false);
+    } catch (FlightNotFoundException ex) {
+      if (readReplicaRouter == null || !readReplicaRouter.hasReplica()) {
+        throw ex;
+      }
+      return getFlightStateInner(flightId, true);
+    }
+  }
+
+  @Override
+  public FlightState getLatestFlightState(String flightId)
       throws StairwayException,
           DatabaseOperationException,
           FlightNotFoundException,
           InterruptedException {
-    return DbRetry.retry("flight.getFlightState", () -> getFlightStateInner(flightId));
+    return DbRetry.retry("flight.getLatestFlightState", () -> getFlightStateInner(flightId, true));
   }
 
-  private FlightState getFlightStateInner(String flightId)
+  private FlightState getFlightStateInner(String flightId, boolean fromPrimary)
       throws SQLException, FlightNotFoundException, DatabaseOperationException {
 
     final String sqlOneFlight =
@@ -843,7 +1685,8 @@ class FlightDao {
             + FLIGHT_TABLE
             + " WHERE flightid = :flightId";
 
-    try (Connection connection = dataSource.getConnection();
+    try (Connection connection =
+            fromPrimary ? dataSource.getConnection() : getReadConnection();
         NamedParameterPreparedStatement oneFlightStatement =
             new NamedParameterPreparedStatement(connection, sqlOneFlight)) {
 
@@ -879,84 +1722,170 @@ class FlightDao {
    * @throws DatabaseOperationException on all database issues
    * @throws InterruptedException thread shutdown
    */
-  List<FlightState> getFlights(int offset, int limit, FlightFilter inFilter)
+  @Override
+  public List<FlightState> getFlights(int offset, int limit, FlightFilter inFilter)
       throws StairwayException, DatabaseOperationException, InterruptedException {
+    // The list form does not return the total, so it never counts
     FlightEnumeration enumeration =
-        DbRetry.retry("flight.getFlights", () -> getFlightsInner(offset, limit, inFilter, null));
+        DbRetry.retry(
+            "flight.getFlights",
+            circuitBreaker,
+            () -> getFlightsInner(offset, limit, inFilter, null, FlightCountMode.NONE));
     return enumeration.getFlightStateList();
   }
 
-  FlightEnumeration getFlights(
+  @Override
+  public FlightEnumeration getFlights(
       @Nullable String nextPageToken, @Nullable Integer limit, @Nullable FlightFilter inFilter)
       throws StairwayException, DatabaseOperationException, InterruptedException {
-
+    FlightCountMode countMode =
+        (inFilter != null) ? inFilter.getTotalCountMode() : FlightCountMode.EXACT;
     return DbRetry.retry(
-        "flight.getFlights", () -> getFlightsInner(null, limit, inFilter, nextPageToken));
+        "flight.getFlights",
+        circuitBreaker,
+        () -> getFlightsInner(null, limit, inFilter, nextPageToken, countMode));
   }
 
   private FlightEnumeration getFlightsInner(
-      Integer offset, Integer limit, FlightFilter inFilter, String nextPageToken)
+      Integer offset,
+      Integer limit,
+      FlightFilter inFilter,
+      String nextPageToken,
+      FlightCountMode countMode)
       throws SQLException, StairwayException {
     // Make an empty filter if one is not provided
     FlightFilter filter = (inFilter != null) ? inFilter : new FlightFilter();
 
     // Make a filter access with no paging controls for the count query
-    var countAccess = new FlightFilterAccess(filter, null, null, null);
+    var countAccess = new FlightFilterAccess(filter, null, null, null, indexedInputFilters);
 
     // Make another filter access including whatever paging controls we got before
-    var stateAccess = new FlightFilterAccess(filter, offset, limit, nextPageToken);
+    var stateAccess =
+        new FlightFilterAccess(filter, offset, limit, nextPageToken, indexedInputFilters);
 
-    String countSql = countAccess.makeCountSql();
     String stateSql = stateAccess.makeSql();
 
-    try (Connection connection = dataSource.getConnection();
-        NamedParameterPreparedStatement flightCountStatement =
-            new NamedParameterPreparedStatement(connection, countSql);
+    try (Connection connection = getReadConnection();
         NamedParameterPreparedStatement flightRangeStatement =
             new NamedParameterPreparedStatement(connection, stateSql)) {
       startReadOnlyTransaction(connection);
 
-      countAccess.storePredicateValues(flightCountStatement);
       stateAccess.storePredicateValues(flightRangeStatement);
 
-      int totalFlights;
-      Instant currentTime;
-      try (ResultSet rs = flightCountStatement.getPreparedStatement().executeQuery()) {
-        rs.next();
-        currentTime = rs.getTimestamp("currenttime").toInstant();
-        totalFlights = rs.getInt("totalflights");
-      }
+      int totalFlights = countFlights(connection, countAccess, countMode);
 
       List<FlightState> flightStateList;
       try (ResultSet rs = flightRangeStatement.getPreparedStatement().executeQuery()) {
         flightStateList = makeFlightStateList(connection, rs);
       }
 
-      // If we found some flights, then the next page token is the last submit time on
-      // the list. If we are at the end of the list, then next page token starts at the
-      // current time. We retrieve the time from the database to avoid skew between the
-      // client time and the database server time.
-      Instant nextPageTokenInstant;
+      // If we found some flights, then the next page token is the submit time and flight id
+      // of the last flight on the list. If we are at the end of the list, then next page token
+      // starts at the current time. We retrieve the time from the database to avoid skew between
+      // the client time and the database server time.
+      PageToken newPageToken;
       int listSize = flightStateList.size();
       if (listSize == 0) {
-        nextPageTokenInstant = currentTime;
+        newPageToken = new PageToken(currentTime(connection));
       } else {
-        nextPageTokenInstant = flightStateList.get(listSize - 1).getSubmitted();
+        FlightState lastFlight = flightStateList.get(listSize - 1);
+        newPageToken = new PageToken(lastFlight.getSubmitted(), lastFlight.getFlightId());
       }
 
       connection.commit();
 
       return new FlightEnumeration(
-          totalFlights, new PageToken(nextPageTokenInstant).makeToken(), flightStateList);
+          totalFlights, countMode, newPageToken.makeToken(), flightStateList);
 
     } catch (FlightFilterException ex) {
       throw new DatabaseOperationException("Failed to get flights", ex);
     }
   }
 
+  /**
+   * Count the flights in a filtered set. Exact counts come from the count cache when there is one
+   * and it holds the filter.
+   *
+   * @return count of the flights; -1 with the NONE count mode
+   */
+  private int countFlights(
+      Connection connection, FlightFilterAccess countAccess, FlightCountMode countMode)
+      throws SQLException, FlightFilterException {
+    switch (countMode) {
+      case NONE -> {
+        return -1;
+      }
+      case ESTIMATED -> {
+        return estimateFlights(connection, countAccess);
+      }
+      default -> {
+        String countKey = (flightCountCache == null) ? null : countAccess.makeCountKey();
+        if (countKey != null) {
+          Integer cachedCount = flightCountCache.get(countKey);
+          if (cachedCount != null) {
+            return cachedCount;
+          }
+        }
+        int totalFlights;
+        try (NamedParameterPreparedStatement flightCountStatement =
+            new NamedParameterPreparedStatement(connection, countAccess.makeCountSql())) {
+          countAccess.storePredicateValues(flightCountStatement);
+          try (ResultSet rs = flightCountStatement.getPreparedStatement().executeQuery()) {
+            rs.next();
+            totalFlights = rs.getInt("totalflights");
+          }
+        }
+        if (countKey != null) {
+          flightCountCache.put(countKey, totalFlights);
+        }
+        return totalFlights;
+      }
+    }
+  }
+
+  // The planner's estimate of the number of rows the count query would count
+  private int estimateFlights(Connection connection, FlightFilterAccess countAccess)
+      throws SQLException, FlightFilterException {
+    try (NamedParameterPreparedStatement estimateStatement =
+        new NamedParameterPreparedStatement(connection, countAccess.makeEstimateSql())) {
+      countAccess.storePredicateValues(estimateStatement);
+      try (ResultSet rs = estimateStatement.getPreparedStatement().executeQuery()) {
+        rs.next();
+        JsonNode plan = StairwayMapper.getObjectMapper().readTree(rs.getString(1));
+        long planRows = plan.path(0).path("Plan").path("Plan Rows").asLong();
+        return (int) Math.min(planRows, Integer.MAX_VALUE);
+      }
+    } catch (JsonProcessingException ex) {
+      throw new DatabaseOperationException("Failed to read flight count estimate", ex);
+    }
+  }
+
+  private Instant currentTime(Connection connection) throws SQLException {
+    try (NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(
+                connection, "SELECT CURRENT_TIMESTAMP AS currenttime");
+        ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+      rs.next();
+      return rs.getTimestamp("currenttime").toInstant();
+    }
+  }
+
+  /**
+   * Build flight states from a result set of flight rows. The flight maps for all of the flights
+   * are loaded with one set-based query per map table, rather than with queries per flight, so the
+   * number of queries does not grow with the number of rows.
+   *
+   * @param connection database connection to use
+   * @param rs result set of flight rows
+   * @return list of flight states in result set order
+   * @throws SQLException on database errors
+   */
   private List<FlightState> makeFlightStateList(Connection connection, ResultSet rs)
       throws SQLException {
     List<FlightState> flightStateList = new ArrayList<>();
+    List<String> flightIds = new ArrayList<>();
+    List<String> completedFlightIds = new ArrayList<>();
+    Map<String, String> outputParamsJsonMap = new HashMap<>();
 
     while (rs.next()) {
       String flightId = rs.getString("flightid");
@@ -968,11 +1897,7 @@ class FlightDao {
       flightState.setSubmitted(rs.getTimestamp("submit_time").toInstant());
       flightState.setStairwayId(rs.getString("stairway_id"));
       flightState.setClassName(rs.getString("class_name"));
-      flightState.setInputParameters(retrieveInputParameters(connection, flightId));
-
-      PersistedStateMap persistedStateMap = retrievePersistedStateMap(connection, flightId);
-      ProgressMetersImpl meters = new ProgressMetersImpl(persistedStateMap);
-      flightState.setProgressMeters(meters);
+      flightIds.add(flightId);
 
       // If the flight is in one of the complete states, then we retrieve the completion data
       if (flightState.getFlightStatus() == FlightStatus.SUCCESS
@@ -981,64 +1906,306 @@ class FlightDao {
         flightState.setCompleted(rs.getTimestamp("completed_time").toInstant());
         flightState.setException(
             exceptionSerializer.deserialize(rs.getString("serialized_exception")));
+        completedFlightIds.add(flightId);
+        outputParamsJsonMap.put(flightId, rs.getString("output_parameters"));
+      }
+
+      flightStateList.add(flightState);
+    }
+
+    if (flightStateList.isEmpty()) {
+      return flightStateList;
+    }
 
+    Map<String, List<FlightInput>> inputMap =
+        retrieveFlightInputs(FLIGHT_INPUT_TABLE, connection, flightIds);
+    Map<String, List<FlightInput>> persistedMap =
+        retrieveFlightInputs(FLIGHT_PERSISTED_TABLE, connection, flightIds);
+    Map<String, WorkingMapRebuild> workingMapRebuilds =
+        completedFlightIds.isEmpty()
+            ? Map.of()
+            : rebuildLatestWorkingMaps(connection, completedFlightIds);
+
+    for (FlightState flightState : flightStateList) {
+      String flightId = flightState.getFlightId();
+      flightState.setInputParameters(
+          FlightMapUtils.makeFlightMap(inputMap.getOrDefault(flightId, List.of())));
+
+      var persistedStateMap = new PersistedStateMap(this, flightId);
+      FlightMapUtils.fillInFlightMap(
+          persistedStateMap, persistedMap.getOrDefault(flightId, List.of()));
+      flightState.setProgressMeters(new ProgressMetersImpl(persistedStateMap));
+
+      if (outputParamsJsonMap.containsKey(flightId)) {
         // TODO(PF-917): We may have JSON from output_parameters, a set of parameters from
         // flightworking table, neither, or both.  For now, delegate the decision of which to use to
         // FlightMap class.  PF-917 will remove column output_parameters.
-
-        String outputParamsJson = rs.getString("output_parameters");
-        final List<FlightInput> workingList = retrieveLatestWorkingParameters(connection, flightId);
-        flightState.setResultMap(FlightMapUtils.create(workingList, outputParamsJson));
+        WorkingMapRebuild workingMapRebuild = workingMapRebuilds.get(flightId);
+        List<FlightInput> workingList =
+            (workingMapRebuild == null)
+                ? List.of()
+                : FlightMapUtils.makeFlightInputList(workingMapRebuild.workingMap());
+        flightState.setResultMap(
+            FlightMapUtils.create(workingList, outputParamsJsonMap.get(flightId)));
       }
-
-      flightStateList.add(flightState);
     }
 
     return flightStateList;
   }
 
-  private void storeInputParameters(
+  @VisibleForTesting
+  void storeInputParameters(
       Connection connection, String flightId, FlightMap inputParameters) throws SQLException {
-    List<FlightInput> inputList = FlightMapUtils.makeFlightInputList(inputParameters);
+    storeInputParameters(connection, Map.of(flightId, inputParameters));
+  }
 
+  /**
+   * Store the input parameters of several flights. The rows of all of the flights share the JDBC
+   * batch, so a batch of small flights costs one round trip per chunk, not one per flight.
+   *
+   * @param connection connection with an open transaction
+   * @param inputsByFlight input parameters keyed by flight id
+   * @throws SQLException on database errors
+   */
+  @VisibleForTesting
+  void storeInputParameters(Connection connection, Map<String, FlightMap> inputsByFlight)
+      throws SQLException {
     final String sqlInsertInput =
         "INSERT INTO "
             + FLIGHT_INPUT_TABLE
-            + " (flightId, key, value) VALUES (:flightId, :key, :value)";
+            + " (flightId, key, value, codec, value_bytes, value_hash)"
+            + " VALUES (:flightId, :key, :value, :codec, :valueBytes, :valueHash)";
 
     try (NamedParameterPreparedStatement statement =
         new NamedParameterPreparedStatement(connection, sqlInsertInput)) {
 
-      statement.setString("flightId", flightId);
-
-      for (FlightInput input : inputList) {
-        statement.setString("key", input.getKey());
-        statement.setString("value", input.getValue());
-        statement.getPreparedStatement().executeUpdate();
+      int batchRows = 0;
+      for (Map.Entry<String, FlightMap> entry : inputsByFlight.entrySet()) {
+        statement.setString("flightId", entry.getKey());
+        // Inputs stay JSON text so that input filters can compare them
+        batchRows =
+            addFlightInputRows(
+                connection,
+                statement,
+                FlightMapUtils.makeFlightInputList(entry.getValue()),
+                FlightMapCodec.JSON,
+                batchRows);
+      }
+      if (batchRows > 0) {
+        statement.getPreparedStatement().executeBatch();
       }
     }
   }
 
-  private void storeWorkingParameters(
+  @VisibleForTesting
+  void storeWorkingParameters(
       Connection connection, UUID logId, FlightMap workingParameters) throws SQLException {
-    List<FlightInput> inputList = FlightMapUtils.makeFlightInputList(workingParameters);
+    storeWorkingInputs(connection, logId, FlightMapUtils.makeFlightInputList(workingParameters));
+  }
 
+  private void storeWorkingInputs(Connection connection, UUID logId, List<FlightInput> inputList)
+      throws SQLException {
     final String sqlInsertInput =
         "INSERT INTO "
             + FLIGHT_WORKING_TABLE
-            + " (flightlog_id, key, value) VALUES (:logId, :key, :value)";
+            + " (flightlog_id, key, value, codec, value_bytes, value_hash)"
+            + " VALUES (:logId, :key, :value, :codec, :valueBytes, :valueHash)";
 
     try (NamedParameterPreparedStatement statement =
         new NamedParameterPreparedStatement(connection, sqlInsertInput)) {
 
       statement.setUuid("logId", logId);
+      batchInsertFlightInputs(connection, statement, inputList, flightMapCodec);
+    }
+  }
+
+  /**
+   * Insert the key/value rows of a flight map using JDBC batching. The caller sets any parameters
+   * that are the same for every row before calling; this method sets "key" and the encoded value
+   * parameters for each row. The batch is sent every {@link #MAX_BATCH_ROWS} rows, so a map costs
+   * one round trip per chunk rather than one per entry. With the Postgres driver property {@code
+   * reWriteBatchedInserts=true}, each chunk is also rewritten into multi-row INSERT statements.
+   *
+   * @param connection connection of the statement
+   * @param statement prepared insert statement with :key, :value, :codec, :valueBytes, and
+   *     :valueHash parameters
+   * @param inputList rows to insert
+   * @param codec codec to encode the values with
+   * @throws SQLException on database errors
+   */
+  private void batchInsertFlightInputs(
+      Connection connection,
+      NamedParameterPreparedStatement statement,
+      List<FlightInput> inputList,
+      FlightMapCodec codec)
+      throws SQLException {
+    int batchRows = addFlightInputRows(connection, statement, inputList, codec, 0);
+    if (batchRows > 0) {
+      statement.getPreparedStatement().executeBatch();
+    }
+  }
+
+  // Add rows to the statement's batch, sending the batch when it reaches MAX_BATCH_ROWS. Returns
+  // the number of rows in the batch that have not been sent.
+  private int addFlightInputRows(
+      Connection connection,
+      NamedParameterPreparedStatement statement,
+      List<FlightInput> inputList,
+      FlightMapCodec codec,
+      int batchRows)
+      throws SQLException {
+    List<EncodedValue> encodedValues = encodeValues(connection, inputList, codec);
+    for (int i = 0; i < inputList.size(); i++) {
+      statement.setString("key", inputList.get(i).getKey());
+      FlightMapCodec.bind(statement, encodedValues.get(i));
+      statement.getPreparedStatement().addBatch();
+      batchRows++;
+      if (batchRows == MAX_BATCH_ROWS) {
+        statement.getPreparedStatement().executeBatch();
+        batchRows = 0;
+      }
+    }
+    return batchRows;
+  }
+
+  /**
+   * Encode the values of flight map rows for storage. Values the codec offloads are stored once in
+   * the value table, keyed by the hash of their content, and their rows get a reference. Values
+   * already in the table are not sent again, so a large value carried from step to step crosses
+   * the wire and is stored only once.
+   *
+   * @param connection connection to store offloaded values with
+   * @param inputList rows to encode
+   * @param codec codec to encode the values with
+   * @return encoded values, in the order of the rows
+   * @throws SQLException on database errors
+   */
+  private List<EncodedValue> encodeValues(
+      Connection connection, List<FlightInput> inputList, FlightMapCodec codec)
+      throws SQLException {
+    List<EncodedValue> encodedValues = new ArrayList<>(inputList.size());
+    Map<String, String> offloadedValues = new HashMap<>();
+    for (FlightInput input : inputList) {
+      String value = input.getValue();
+      if (codec.isOffloaded(value)) {
+        String hash = FlightMapCodec.hash(value);
+        offloadedValues.putIfAbsent(hash, value);
+        encodedValues.add(EncodedValue.reference(hash));
+      } else {
+        encodedValues.add(codec.encode(value));
+      }
+    }
+    if (!offloadedValues.isEmpty()) {
+      storeOffloadedValues(connection, offloadedValues, codec);
+    }
+    return encodedValues;
+  }
+
+  private void storeOffloadedValues(
+      Connection connection, Map<String, String> offloadedValues, FlightMapCodec codec)
+      throws SQLException {
+    final String sqlSelectStored =
+        "SELECT hash FROM " + FlightMapCodec.FLIGHT_VALUE_TABLE + " WHERE hash = ANY(:hashes)";
+    final String sqlInsertValue =
+        "INSERT INTO "
+            + FlightMapCodec.FLIGHT_VALUE_TABLE
+            + " (hash, codec, value, value_bytes)"
+            + " VALUES (:hash, :codec, :value, :valueBytes)"
+            + " ON CONFLICT ON CONSTRAINT pk_flightvalue DO NOTHING";
+
+    Map<String, String> newValues = new HashMap<>(offloadedValues);
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlSelectStored)) {
+      statement.setStringArray("hashes", List.copyOf(offloadedValues.keySet()));
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          newValues.remove(rs.getString("hash"));
+        }
+      }
+    }
+    if (newValues.isEmpty()) {
+      return;
+    }
+
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlInsertValue)) {
+      for (Map.Entry<String, String> entry : newValues.entrySet()) {
+        EncodedValue encoded = codec.encode(entry.getValue());
+        statement.setString("hash", entry.getKey());
+        statement.setInt("codec", encoded.codec());
+        statement.setString("value", encoded.text());
+        statement.setBytes("valueBytes", encoded.bytes());
+        statement.getPreparedStatement().addBatch();
+      }
+      statement.getPreparedStatement().executeBatch();
+    }
+  }
+
+  /**
+   * Find the offloaded values referenced by the working and persisted maps of a set of flights.
+   * Called before the flights are deleted, to find the values that may be left unreferenced.
+   *
+   * @param connection database connection to use
+   * @param flightIds flights to search
+   * @return hashes of the referenced values
+   * @throws SQLException on database errors
+   */
+  private List<String> selectValueHashes(Connection connection, List<String> flightIds)
+      throws SQLException {
+    final String sqlSelectHashes =
+        "SELECT W.value_hash FROM "
+            + FLIGHT_WORKING_TABLE
+            + " W JOIN "
+            + FLIGHT_LOG_TABLE
+            + " L ON L.id = W.flightlog_id"
+            + " WHERE L.flightid = ANY(:flightIds) AND W.value_hash IS NOT NULL"
+            + " UNION SELECT P.value_hash FROM "
+            + FLIGHT_PERSISTED_TABLE
+            + " P WHERE P.flightid = ANY(:flightIds) AND P.value_hash IS NOT NULL";
 
-      for (FlightInput input : inputList) {
-        statement.setString("key", input.getKey());
-        statement.setString("value", input.getValue());
-        statement.getPreparedStatement().executeUpdate();
+    List<String> hashes = new ArrayList<>();
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlSelectHashes)) {
+      statement.setStringArray("flightIds", flightIds);
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          hashes.add(rs.getString("value_hash"));
+        }
       }
     }
+    return hashes;
+  }
+
+  /**
+   * Delete the offloaded values among a set that no working or persisted map row references any
+   * more. Called after deleting the rows that referenced them, in the same transaction.
+   *
+   * @param connection database connection to use
+   * @param hashes candidate values
+   * @return number of values deleted
+   * @throws SQLException on database errors
+   */
+  static int deleteUnreferencedValues(Connection connection, List<String> hashes)
+      throws SQLException {
+    if (hashes.isEmpty()) {
+      return 0;
+    }
+    final String sqlDeleteValues =
+        "DELETE FROM "
+            + FlightMapCodec.FLIGHT_VALUE_TABLE
+            + " V WHERE V.hash = ANY(:hashes)"
+            + " AND NOT EXISTS (SELECT 1 FROM "
+            + FLIGHT_WORKING_TABLE
+            + " W WHERE W.value_hash = V.hash)"
+            + " AND NOT EXISTS (SELECT 1 FROM "
+            + FLIGHT_PERSISTED_TABLE
+            + " P WHERE P.value_hash = V.hash)";
+
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlDeleteValues)) {
+      statement.setStringArray("hashes", hashes);
+      return statement.getPreparedStatement().executeUpdate();
+    }
   }
 
   private FlightMap retrieveInputParameters(Connection connection, String flightId)
@@ -1058,11 +2225,46 @@ class FlightDao {
     return persistedStateMap;
   }
 
+  // Set-based version of reading out flight map storage for input params and persisted state
+  private Map<String, List<FlightInput>> retrieveFlightInputs(
+      String tableName, Connection connection, List<String> flightIds) throws SQLException {
+    final String sqlSelectInput =
+        "SELECT M.flightid, M.key, "
+            + FlightMapCodec.valueColumns("M")
+            + " FROM "
+            + tableName
+            + " M"
+            + FlightMapCodec.valueJoin("M")
+            + " WHERE M.flightid = ANY(:flightIds)";
+
+    Map<String, List<FlightInput>> inputMap = new HashMap<>();
+
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlSelectInput)) {
+      statement.setStringArray("flightIds", flightIds);
+
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          FlightInput input = new FlightInput(rs.getString("key"), FlightMapCodec.readValue(rs));
+          inputMap.computeIfAbsent(rs.getString("flightid"), k -> new ArrayList<>()).add(input);
+        }
+      }
+    }
+
+    return inputMap;
+  }
+
   // Common method for reading out flight map storage for input params and persisted state
   private List<FlightInput> retrieveFlightInputs(
       String tableName, Connection connection, String flightId) throws SQLException {
     final String sqlSelectInput =
-        "SELECT flightId, key, value FROM " + tableName + " WHERE flightId = :flightId";
+        "SELECT M.key, "
+            + FlightMapCodec.valueColumns("M")
+            + " FROM "
+            + tableName
+            + " M"
+            + FlightMapCodec.valueJoin("M")
+            + " WHERE M.flightid = :flightId";
 
     List<FlightInput> inputList = new ArrayList<>();
 
@@ -1072,7 +2274,7 @@ class FlightDao {
 
       try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
         while (rs.next()) {
-          FlightInput input = new FlightInput(rs.getString("key"), rs.getString("value"));
+          FlightInput input = new FlightInput(rs.getString("key"), FlightMapCodec.readValue(rs));
           inputList.add(input);
         }
       }
@@ -1081,36 +2283,161 @@ class FlightDao {
     return inputList;
   }
 
-  private List<FlightInput> retrieveLatestWorkingParameters(Connection connection, String flightId)
-      throws SQLException {
-    final String sqlSelectInput =
-        "SELECT key, value FROM "
+  /** Working map rebuilt from the log, along with the number of deltas applied to the snapshot */
+  private record WorkingMapRebuild(FlightMap workingMap, int deltaCount) {}
+
+  /** Accumulates the rows of one flight while rebuilding working maps */
+  private static class WorkingMapAccumulator {
+    private final List<FlightInput> snapshotList = new ArrayList<>();
+    private String snapshotJson;
+    private FlightMap workingMap;
+    private UUID currentLogId;
+    private int deltaCount;
+
+    void addRow(ResultSet rs) throws SQLException {
+      UUID logId = rs.getObject("id", UUID.class);
+      if (!logId.equals(currentLogId)) {
+        currentLogId = logId;
+        if (rs.getBoolean("working_delta")) {
+          // First row of a delta record: the snapshot rows are complete
+          if (workingMap == null) {
+            workingMap = FlightMapUtils.create(snapshotList, snapshotJson);
+          }
+          deltaCount++;
+        } else {
+          // TODO(PF-917): the snapshot may predate the flightworking table
+          snapshotJson = rs.getString("working_parameters");
+        }
+      }
+
+      String key = rs.getString("key");
+      if (key != null) {
+        if (workingMap == null) {
+          snapshotList.add(new FlightInput(key, FlightMapCodec.readValue(rs)));
+        } else {
+          workingMap.putRaw(key, FlightMapCodec.readValue(rs));
+        }
+      }
+    }
+
+    WorkingMapRebuild finish() {
+      if (workingMap == null) {
+        workingMap = FlightMapUtils.create(snapshotList, snapshotJson);
+      }
+      return new WorkingMapRebuild(workingMap, deltaCount);
+    }
+  }
+
+  /**
+   * Rebuild the working maps as of the most recent log record of a set of flights. We read the
+   * working map rows of the record the latest_log_id pointer refers to, for all flights in one
+   * query. Flights whose most recent record is a delta, or that have no pointer, are rebuilt from
+   * their log by {@link #rebuildWorkingMapChains}.
+   *
+   * @param connection database connection to use
+   * @param flightIds flights to rebuild
+   * @return map from flight id to rebuilt working map; flights with no log records are absent
+   * @throws SQLException on database errors
+   */
+  private Map<String, WorkingMapRebuild> rebuildLatestWorkingMaps(
+      Connection connection, List<String> flightIds) throws SQLException {
+    final String sqlSelectLatest =
+        "SELECT F.flightid, L.id, L.working_delta, L.working_parameters, W.key, "
+            + FlightMapCodec.valueColumns("W")
+            + " FROM "
+            + FLIGHT_TABLE
+            + " F JOIN "
+            + FLIGHT_LOG_TABLE
+            + " L ON L.id = F.latest_log_id LEFT JOIN "
             + FLIGHT_WORKING_TABLE
-            + " WHERE flightlog_id="
-            + "(SELECT id FROM flightlog WHERE (flightid = :flightId) AND log_time="
-            + "   (SELECT MAX(log_time) FROM flightlog WHERE flightid = :flightId2))";
+            + " W ON W.flightlog_id = L.id"
+            + FlightMapCodec.valueJoin("W")
+            + " WHERE F.flightid = ANY(:flightIds)";
 
-    List<FlightInput> inputList = new ArrayList<>();
+    Map<String, WorkingMapAccumulator> accumulators = new HashMap<>();
+    Set<String> chainFlightIds = new HashSet<>(flightIds);
 
     try (NamedParameterPreparedStatement statement =
-        new NamedParameterPreparedStatement(connection, sqlSelectInput)) {
+        new NamedParameterPreparedStatement(connection, sqlSelectLatest)) {
 
-      statement.setString("flightId", flightId);
-      statement.setString("flightId2", flightId);
+      statement.setStringArray("flightIds", flightIds);
       try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
         while (rs.next()) {
-          FlightInput input = new FlightInput(rs.getString("key"), rs.getString("value"));
-          inputList.add(input);
+          if (!rs.getBoolean("working_delta")) {
+            String flightId = rs.getString("flightid");
+            chainFlightIds.remove(flightId);
+            accumulators.computeIfAbsent(flightId, k -> new WorkingMapAccumulator()).addRow(rs);
+          }
         }
       }
     }
-    return inputList;
+
+    Map<String, WorkingMapRebuild> workingMapRebuilds = new HashMap<>();
+    accumulators.forEach((flightId, acc) -> workingMapRebuilds.put(flightId, acc.finish()));
+    if (!chainFlightIds.isEmpty()) {
+      workingMapRebuilds.putAll(rebuildWorkingMapChains(connection, List.copyOf(chainFlightIds)));
+    }
+    return workingMapRebuilds;
+  }
+
+  /**
+   * Rebuild the working maps of a set of flights from their logs. For each flight, we read the
+   * most recent full snapshot and every delta logged after it, all flights in one query, ordered by
+   * flight and log time, and apply the deltas to the snapshot in order. The snapshot time of each
+   * flight is found once and joined to its log, rather than looked up again for every log row.
+   *
+   * @param connection database connection to use
+   * @param flightIds flights to rebuild
+   * @return map from flight id to rebuilt working map; flights with no log records are absent
+   * @throws SQLException on database errors
+   */
+  private Map<String, WorkingMapRebuild> rebuildWorkingMapChains(
+      Connection connection, List<String> flightIds) throws SQLException {
+    final String sqlSelectChain =
+        "WITH snapshot AS (SELECT flightid, MAX(log_time) AS log_time FROM "
+            + FLIGHT_LOG_TABLE
+            + " WHERE flightid = ANY(:flightIds) AND NOT working_delta GROUP BY flightid)"
+            + " SELECT L.flightid, L.id, L.working_delta, L.working_parameters, W.key, "
+            + FlightMapCodec.valueColumns("W")
+            + " FROM snapshot S JOIN "
+            + FLIGHT_LOG_TABLE
+            + " L ON L.flightid = S.flightid AND L.log_time >= S.log_time"
+            + " LEFT JOIN "
+            + FLIGHT_WORKING_TABLE
+            + " W ON W.flightlog_id = L.id"
+            + FlightMapCodec.valueJoin("W")
+            + " ORDER BY L.flightid, L.log_time";
+
+    Map<String, WorkingMapAccumulator> accumulators = new HashMap<>();
+
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlSelectChain)) {
+
+      statement.setStringArray("flightIds", flightIds);
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          accumulators
+              .computeIfAbsent(rs.getString("flightid"), k -> new WorkingMapAccumulator())
+              .addRow(rs);
+        }
+      }
+    }
+
+    Map<String, WorkingMapRebuild> workingMapRebuilds = new HashMap<>();
+    accumulators.forEach((flightId, acc) -> workingMapRebuilds.put(flightId, acc.finish()));
+    return workingMapRebuilds;
   }
 
   private List<FlightInput> retrieveWorkingParameters(Connection connection, UUID logId)
       throws SQLException {
     final String sqlSelectInput =
-        "SELECT key, value FROM " + FLIGHT_WORKING_TABLE + " WHERE flightlog_id = :logId";
+        "SELECT W.key, "
+            + FlightMapCodec.valueColumns("W")
+            + " FROM "
+            + FLIGHT_WORKING_TABLE
+            + " W"
+            + FlightMapCodec.valueJoin("W")
+            + " WHERE W.flightlog_id = :logId";
 
     List<FlightInput> inputList = new ArrayList<>();
 
@@ -1120,7 +2447,7 @@ class FlightDao {
 
       try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
         while (rs.next()) {
-          FlightInput input = new FlightInput(rs.getString("key"), rs.getString("value"));
+          FlightInput input = new FlightInput(rs.getString("key"), FlightMapCodec.readValue(rs));
           inputList.add(input);
         }
       }
@@ -5,6 +5,7 @@ import bio.terra.stairway.FlightFilter.FlightBooleanOperationExpression;
 import bio.terra.stairway.FlightFilter.FlightFilterPredicate;
 import bio.terra.stairway.FlightFilter.FlightFilterPredicate.Datatype;
 import bio.terra.stairway.FlightFilter.FlightFilterPredicateInterface;
+import bio.terra.stairway.FlightFilterOp;
 import bio.terra.stairway.FlightFilterSortDirection;
 import bio.terra.stairway.exception.FlightFilterException;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -30,16 +31,31 @@ class FlightFilterAccess {
   private final Integer offset;
   private final Integer limit;
   private final PageToken pageToken;
+  private final boolean indexedInputs;
   private final Map<FlightFilterPredicate, String> predicateToParameterName = new HashMap<>();
 
   private int parameterId;
 
   public FlightFilterAccess(
       FlightFilter filter, Integer offset, Integer limit, String pageTokenString) {
+    this(filter, offset, limit, pageTokenString, false);
+  }
+
+  /**
+   * @param indexedInputs true to compare input parameters with the {@code inputs} column of the
+   *     flight table where its index helps; false to always compare the flightinput rows
+   */
+  public FlightFilterAccess(
+      FlightFilter filter,
+      Integer offset,
+      Integer limit,
+      String pageTokenString,
+      boolean indexedInputs) {
     this.filter = filter;
     this.offset = offset;
     this.limit = limit;
     this.pageToken = Optional.ofNullable(pageTokenString).map(PageToken::new).orElse(null);
+    this.indexedInputs = indexedInputs;
   }
 
   private String getParameterName(FlightFilterPredicate predicate) {
@@ -66,6 +82,9 @@ class FlightFilterAccess {
       // Add any values for paging controls we have
       if (pageToken != null) {
         statement.setInstant("pagetoken", pageToken.getTimestamp());
+        if (pageToken.getFlightId() != null) {
+          statement.setString("pagetokenid", pageToken.getFlightId());
+        }
       }
       if (limit != null) {
         statement.setInt("limit", limit);
@@ -116,9 +135,10 @@ class FlightFilterAccess {
    *             AND I.value = 'json-of-object3)
    * }</pre>
    *
-   * <p>The result is sorted like this: {@code ORDER BY submit_time ASC|DESC}. If limit is present,
-   * then the {@code LIMIT :limit} is included. If offset is present, then the {@code OFFSET
-   * :offset} is included.
+   * <p>The result is sorted like this: {@code ORDER BY submit_time ASC|DESC, flightid ASC|DESC}.
+   * A page token adds {@code (F.submit_time, F.flightid) > (:pagetoken, :pagetokenid)}, or {@code
+   * <} in descending order, to the flight predicates. If limit is present, then the {@code LIMIT
+   * :limit} is included. If offset is present, then the {@code OFFSET :offset} is included.
    */
   String makeSql() {
     StringBuilder sb = new StringBuilder();
@@ -130,10 +150,14 @@ class FlightFilterAccess {
 
     makeSqlForm(sb);
 
-    // All forms end with the same order by with the variance being ascending or descending order
-    sb.append(" ORDER BY submit_time")
-        .append(" ")
-        .append(filter.getSubmittedTimeSortDirection().getSql());
+    // All forms end with the same order by with the variance being ascending or descending order.
+    // The flight id breaks ties between flights submitted at the same time, so the order is total
+    // and page tokens can resume after any flight.
+    String direction = filter.getSubmittedTimeSortDirection().getSql();
+    sb.append(" ORDER BY submit_time ")
+        .append(direction)
+        .append(", flightid ")
+        .append(direction);
 
     // Add the paging controls if present
     if (limit != null) {
@@ -159,6 +183,39 @@ class FlightFilterAccess {
     return sb.toString();
   }
 
+  /**
+   * The estimate query asks the planner how many rows the count query would count, without
+   * running it. Its result is one row holding the JSON plan; the estimate is the "Plan Rows" of the
+   * top plan node.
+   *
+   * @return SQL string returning the plan
+   */
+  String makeEstimateSql() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("EXPLAIN (FORMAT JSON) SELECT 1 FROM ");
+    makeSqlForm(sb);
+    return sb.toString();
+  }
+
+  /**
+   * Make a key identifying the filtered set, for caching its count. It is the count query along
+   * with the values of its parameters.
+   *
+   * @return key of the filtered set
+   * @throws FlightFilterException on JSON failures
+   */
+  String makeCountKey() throws FlightFilterException {
+    StringBuilder sb = new StringBuilder(makeCountSql());
+    try {
+      for (FlightFilter.Value value : filter.getValues()) {
+        sb.append('\u0000').append(value.string()).append('\u0000').append(value.instant());
+      }
+    } catch (JsonProcessingException ex) {
+      throw new FlightFilterException("Failure making count key", ex);
+    }
+    return sb.toString();
+  }
+
   private void makeSqlForm(StringBuilder sb) {
     sb.append(FlightDao.FLIGHT_TABLE).append(" F WHERE (1=1)");
 
@@ -190,12 +247,18 @@ class FlightFilterAccess {
         inter = " AND ";
       }
 
-      // Add the page token paging control if present
+      // Add the page token paging control if present. A token with a flight id resumes right
+      // after that flight, comparing the (submit_time, flightid) row so that the seek uses the
+      // composite index.
       if (pageToken != null) {
-        if (filter.getSubmittedTimeSortDirection() == FlightFilterSortDirection.ASC) {
-          sb.append(inter).append("F.submit_time > :pagetoken");
+        boolean ascending =
+            (filter.getSubmittedTimeSortDirection() == FlightFilterSortDirection.ASC);
+        String op = ascending ? " > " : " < ";
+        if (pageToken.getFlightId() != null) {
+          sb.append(inter).append("(F.submit_time, F.flightid)").append(op);
+          sb.append("(:pagetoken, :pagetokenid)");
         } else {
-          sb.append(inter).append("F.submit_time < :pagetoken");
+          sb.append(inter).append("F.submit_time").append(op).append(":pagetoken");
         }
       }
     }
@@ -246,10 +309,41 @@ class FlightFilterAccess {
    * Make a SQL predicate to apply to the flight input table. The predicate looks like: {@code
    * (I.key = 'key name' AND I.value OP [placeholder])}
    *
+   * <p>With indexed inputs, an equality predicate is made on the {@code inputs} column of the
+   * flight table instead, so that its GIN index finds the candidate flights. The containment test
+   * uses the index; the comparison of the one key makes the match exact, since containment of an
+   * object or array value is looser than equality. Flights whose {@code inputs} is null, such as
+   * those written by an older Stairway during a rolling upgrade, are matched on their flightinput
+   * rows; a partial index on the null rows lets both arms use an index. It looks like: {@code
+   * ((F.inputs @> jsonb_build_object('key name', CAST([placeholder] AS jsonb)) AND F.inputs -> 'key
+   * name' = CAST([placeholder] AS jsonb)) OR (F.inputs IS NULL AND EXISTS (SELECT 0 FROM
+   * flightinput I WHERE F.flightid = I.flightid AND I.key = 'key name' AND I.value =
+   * [placeholder])))}. The index does not help the other comparisons, so they keep the flightinput
+   * form.
+   *
    * @return the SQL predicate
    */
   @VisibleForTesting
   String makeInputPredicateSql(FlightFilterPredicate predicate) {
+    if (indexedInputs
+        && predicate.op() == FlightFilterOp.EQUAL
+        && predicate.datatype() != Datatype.NULL
+        && predicate.datatype() != Datatype.LIST) {
+      String parameter = "CAST(:" + getParameterName(predicate) + " AS jsonb)";
+      return "((F.inputs @> jsonb_build_object('"
+          + predicate.key()
+          + "', "
+          + parameter
+          + ") AND F.inputs -> '"
+          + predicate.key()
+          + "' = "
+          + parameter
+          + ") OR (F.inputs IS NULL AND "
+          + makeInputExistsSql(
+              predicate, "I.value" + predicate.op().getSql() + ":" + getParameterName(predicate))
+          + "))";
+    }
+
     String valuePredicate = "";
     if (predicate.datatype() == Datatype.NULL) {
       return "(EXISTS (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = "
@@ -270,7 +364,10 @@ class FlightFilterAccess {
     } else {
       valuePredicate = "I.value" + predicate.op().getSql() + ":" + getParameterName(predicate);
     }
+    return makeInputExistsSql(predicate, valuePredicate);
+  }
 
+  private String makeInputExistsSql(FlightFilterPredicate predicate, String valuePredicate) {
     return "EXISTS (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = "
         + "'"
         + predicate.key()
@@ -0,0 +1,150 @@
+package bio.terra.stairway.impl;
+
+import static bio.terra.stairway.StairwayMapper.getObjectMapper;
+
+import bio.terra.stairway.FlightFilter;
+import bio.terra.stairway.FlightFilter.FlightBooleanOperationExpression;
+import bio.terra.stairway.FlightFilter.FlightFilterPredicate;
+import bio.terra.stairway.FlightFilter.FlightFilterPredicate.Datatype;
+import bio.terra.stairway.FlightFilter.FlightFilterPredicateInterface;
+import bio.terra.stairway.FlightFilterOp;
+import bio.terra.stairway.FlightFilterSortDirection;
+import bio.terra.stairway.exception.FlightFilterException;
+import bio.terra.stairway.impl.InMemoryDatabase.FlightRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A FlightFilterMatcher applies a FlightFilter to the flight records of the in-memory flight store.
+ * It is the in-memory counterpart of {@link FlightFilterAccess} and gives the same answers as the
+ * SQL that class generates: input parameters are compared as their JSON strings, flight columns
+ * that are null never match a comparison, and the page token selects flights submitted after
+ * (ascending) or before (descending) the token time.
+ */
+class FlightFilterMatcher {
+  private final FlightFilter filter;
+  private final PageToken pageToken;
+
+  FlightFilterMatcher(FlightFilter filter, String pageTokenString) {
+    this.filter = filter;
+    this.pageToken = Optional.ofNullable(pageTokenString).map(PageToken::new).orElse(null);
+  }
+
+  /**
+   * @param flightRecord flight to test
+   * @return true if the flight passes the filter and the page token
+   * @throws FlightFilterException on an unknown flight column or a JSON failure
+   */
+  boolean matches(FlightRecord flightRecord) throws FlightFilterException {
+    for (FlightFilterPredicate predicate : filter.getInputPredicates()) {
+      if (!matchesInput(predicate, flightRecord)) {
+        return false;
+      }
+    }
+    if (filter.getBooleanOperationExpression() != null
+        && !matchesExpression(filter.getBooleanOperationExpression(), flightRecord)) {
+      return false;
+    }
+    for (FlightFilterPredicate predicate : filter.getFlightPredicates()) {
+      if (!matchesFlight(predicate, flightRecord)) {
+        return false;
+      }
+    }
+    if (pageToken != null) {
+      int compare = flightRecord.submitTime().compareTo(pageToken.getTimestamp());
+      if (compare == 0 && pageToken.getFlightId() != null) {
+        compare = flightRecord.flightId().compareTo(pageToken.getFlightId());
+      }
+      if (filter.getSubmittedTimeSortDirection() == FlightFilterSortDirection.ASC) {
+        return compare > 0;
+      }
+      return compare < 0;
+    }
+    return true;
+  }
+
+  private boolean matchesExpression(
+      FlightFilterPredicateInterface expression, FlightRecord flightRecord) {
+    if (expression instanceof FlightFilterPredicate expressionAsPredicate) {
+      return switch (expressionAsPredicate.type()) {
+        case INPUT -> matchesInput(expressionAsPredicate, flightRecord);
+        case FLIGHT -> matchesFlight(expressionAsPredicate, flightRecord);
+      };
+    } else if (expression instanceof FlightBooleanOperationExpression expressionAsBooleanOp) {
+      return switch (expressionAsBooleanOp.operation()) {
+        case AND -> expressionAsBooleanOp.expressions().stream()
+            .allMatch(e -> matchesExpression(e, flightRecord));
+        case OR -> expressionAsBooleanOp.expressions().stream()
+            .anyMatch(e -> matchesExpression(e, flightRecord));
+      };
+    } else {
+      throw new FlightFilterException(
+          "Unrecognized filter class: %s".formatted(expression.getClass().getName()));
+    }
+  }
+
+  private boolean matchesFlight(FlightFilterPredicate predicate, FlightRecord flightRecord) {
+    Object column =
+        switch (predicate.key()) {
+          case "flightid" -> flightRecord.flightId();
+          case "submit_time" -> flightRecord.submitTime();
+          case "completed_time" -> flightRecord.completedTime();
+          case "class_name" -> flightRecord.className();
+          case "status" -> flightRecord.status().name();
+          default -> throw new FlightFilterException(
+              "Unrecognized flight filter key: " + predicate.key());
+        };
+
+    if (predicate.datatype() == Datatype.NULL) {
+      return column == null;
+    }
+    if (column == null) {
+      return false;
+    }
+    if (predicate.datatype() == Datatype.LIST) {
+      return ((List<?>) predicate.value()).contains(column);
+    }
+    if (column instanceof Instant instant) {
+      return compare(predicate.op(), instant.compareTo((Instant) predicate.value()));
+    }
+    return compare(predicate.op(), ((String) column).compareTo((String) predicate.value()));
+  }
+
+  private boolean matchesInput(FlightFilterPredicate predicate, FlightRecord flightRecord) {
+    String value = flightRecord.inputs().get(predicate.key());
+    if (predicate.datatype() == Datatype.NULL) {
+      return value == null;
+    }
+    if (value == null) {
+      return false;
+    }
+    try {
+      if (predicate.datatype() == Datatype.LIST) {
+        for (Object element : (List<?>) predicate.value()) {
+          if (value.equals(getObjectMapper().writeValueAsString(element))) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return compare(
+          predicate.op(), value.compareTo(getObjectMapper().writeValueAsString(predicate.value())));
+    } catch (JsonProcessingException ex) {
+      throw new FlightFilterException("Failure converting predicate value", ex);
+    }
+  }
+
+  private static boolean compare(FlightFilterOp op, int compare) {
+    return switch (op) {
+      case EQUAL -> compare == 0;
+      case NOT_EQUAL -> compare != 0;
+      case GREATER_THAN -> compare > 0;
+      case LESS_THAN -> compare < 0;
+      case GREATER_EQUAL -> compare >= 0;
+      case LESS_EQUAL -> compare <= 0;
+      case IN -> throw new FlightFilterException("IN requires a list of values");
+    };
+  }
+}
@@ -0,0 +1,574 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.Direction;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.impl.InMemoryDatabase.FlightRecord;
+import bio.terra.stairway.impl.InMemoryDatabase.LogRecord;
+import jakarta.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The journal of the journal flight store. It makes an {@link InMemoryDatabase} durable by writing
+ * every change to the database into an append-only journal of {@link JournalSegment} files, and it
+ * rebuilds the database from the journal when Stairway starts. The flights are then run by the same
+ * {@link InMemoryFlightStore} code as the in-memory store, so they pause, resume, and recover the
+ * same way; the journal only adds durability.
+ *
+ * <p>Each change is one entry, forced to disk before the change is made visible in memory. The
+ * entries are:
+ *
+ * <ul>
+ *   <li>FLIGHT - the whole record of a flight, with its latest log record; written when a flight is
+ *       created and when the journal is compacted
+ *   <li>UPDATE - the parts of a flight record that changed: its state, its wake time, its
+ *       persisted map, or a new log record
+ *   <li>DELETE - removal of a flight
+ *   <li>STAIRWAY and STAIRWAY_DELETE - creation and removal of a Stairway instance
+ * </ul>
+ *
+ * <p>When a segment fills up, a new one is started. Once enough full segments pile up, the journal
+ * is compacted: the current state of every flight and Stairway instance is written to a new
+ * segment as FLIGHT and STAIRWAY entries, and the older segments are deleted. Compaction keeps only
+ * the latest log record of each flight, which is all that recovery needs, so the journal shrinks as
+ * flights complete and as completed flights are removed by retention. A crash during compaction is
+ * harmless: the old segments are deleted only after the snapshot is on disk, and replaying a
+ * snapshot after the entries it summarizes gives the same state.
+ *
+ * <p>The journal is for a single Stairway instance. It locks its directory, so a second instance
+ * pointed at the same directory fails to initialize. Recovery works as it does with Postgres: the
+ * flights the previous run of the instance owned come back RUNNING and owned by it, and the
+ * instance is reported by initialize so that recoverAndStart can disown and restart them.
+ */
+class FlightJournal implements InMemoryDatabase.ChangeListener {
+  private static final Logger logger = LoggerFactory.getLogger(FlightJournal.class);
+
+  static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+  // Number of new segments written since the last compaction that triggers the next one
+  private static final int COMPACTION_SEGMENTS = 4;
+  private static final String LOCK_FILE = "journal.lock";
+
+  private static final byte ENTRY_FLIGHT = 1;
+  private static final byte ENTRY_UPDATE = 2;
+  private static final byte ENTRY_DELETE = 3;
+  private static final byte ENTRY_STAIRWAY = 4;
+  private static final byte ENTRY_STAIRWAY_DELETE = 5;
+
+  private static final byte UPDATE_STATE = 1;
+  private static final byte UPDATE_PERSISTED = 2;
+  private static final byte UPDATE_STEP = 4;
+  private static final byte UPDATE_WAKE = 8;
+
+  // Lock files of the journals open in this JVM
+  private static final Set<Path> lockedPaths = ConcurrentHashMap.newKeySet();
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final List<JournalSegment> segments = new ArrayList<>();
+  private InMemoryDatabase database;
+  private FileChannel lockChannel;
+  private FileLock lock;
+  private Path lockPath;
+  private JournalSegment active;
+  private int segmentsAtCompaction;
+  private boolean compacting;
+  private boolean closed;
+
+  /**
+   * @param directory directory holding the journal files; created if it does not exist
+   * @param segmentBytes size of each segment file
+   */
+  FlightJournal(Path directory, int segmentBytes) {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+  }
+
+  /**
+   * Open the journal and rebuild the database from it
+   *
+   * @param forceCleanStart true to delete the existing journal and start empty
+   * @return the database; its changes are written to this journal
+   * @throws DatabaseOperationException if the journal cannot be opened or is in use
+   */
+  synchronized InMemoryDatabase open(boolean forceCleanStart) throws DatabaseOperationException {
+    try {
+      Files.createDirectories(directory);
+      lockDirectory();
+
+      TreeMap<Long, Path> segmentFiles = listSegmentFiles();
+      if (forceCleanStart) {
+        for (Path path : segmentFiles.values()) {
+          Files.delete(path);
+        }
+        segmentFiles.clear();
+      }
+
+      database = new InMemoryDatabase(this);
+      int entryCount = 0;
+      for (Map.Entry<Long, Path> segmentFile : segmentFiles.entrySet()) {
+        JournalSegment segment = JournalSegment.open(segmentFile.getValue(), segmentFile.getKey());
+        segments.add(segment);
+        entryCount += segment.read(this::replay);
+      }
+      logger.info(
+          "Replayed " + entryCount + " journal entries from " + segments.size() + " segments");
+
+      if (segments.isEmpty()) {
+        startSegment(0);
+        segmentsAtCompaction = 1;
+      } else {
+        // Start the run with a compact journal; this also seals the segments we replayed
+        active = segments.get(segments.size() - 1);
+        compact();
+      }
+      return database;
+    } catch (IOException | UncheckedIOException ex) {
+      close();
+      throw new DatabaseOperationException("Failed to open journal in " + directory, ex);
+    }
+  }
+
+  /** Close the journal. Changes to the database fail from now on. */
+  synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      for (JournalSegment segment : segments) {
+        segment.close();
+      }
+      if (lock != null) {
+        lockedPaths.remove(lockPath);
+        lock.release();
+        lockChannel.close();
+      }
+    } catch (IOException ex) {
+      logger.warn("Error closing journal in " + directory, ex);
+    }
+  }
+
+  // -- change listener --
+
+  @Override
+  public void flightInserted(FlightRecord flightRecord) {
+    append(encodeFlight(flightRecord));
+  }
+
+  @Override
+  public void flightUpdated(FlightRecord previous, FlightRecord current) {
+    append(encodeUpdate(previous, current));
+  }
+
+  @Override
+  public void flightDeleted(String flightId) {
+    append(encode(ENTRY_DELETE, out -> writeString(out, flightId)));
+  }
+
+  @Override
+  public void stairwayCreated(String stairwayName) {
+    append(encode(ENTRY_STAIRWAY, out -> writeString(out, stairwayName)));
+  }
+
+  @Override
+  public void stairwayDeleted(String stairwayId) {
+    append(encode(ENTRY_STAIRWAY_DELETE, out -> writeString(out, stairwayId)));
+  }
+
+  // -- segment management --
+
+  private synchronized void append(byte[] payload) {
+    if (closed) {
+      throw new DatabaseOperationException("Journal is closed");
+    }
+    try {
+      while (!active.append(payload)) {
+        if (!compacting && segments.size() >= segmentsAtCompaction + COMPACTION_SEGMENTS) {
+          compact();
+        } else {
+          startSegment(payload.length);
+        }
+      }
+    } catch (IOException ex) {
+      throw new DatabaseOperationException("Failed to write journal in " + directory, ex);
+    }
+  }
+
+  private void startSegment(int payloadLength) throws IOException {
+    long sequence = segments.isEmpty() ? 0 : active.getSequence() + 1;
+    int size = Math.max(segmentBytes, JournalSegment.minimumSize(payloadLength));
+    active = JournalSegment.create(directory, sequence, size);
+    segments.add(active);
+  }
+
+  /**
+   * Write the current state of the database to a new segment and delete the older segments. Called
+   * with the database lock held, from within a change listener call, so the snapshot is the state
+   * before the change being appended. That change is appended after the snapshot.
+   */
+  private void compact() throws IOException {
+    compacting = true;
+    try {
+      List<JournalSegment> obsolete = new ArrayList<>(segments);
+      startSegment(0);
+      int flightCount = 0;
+      for (String stairwayName : database.getStairwayNames()) {
+        append(encode(ENTRY_STAIRWAY, out -> writeString(out, stairwayName)));
+      }
+      for (FlightRecord flightRecord : database.getAll()) {
+        append(encodeFlight(flightRecord));
+        flightCount++;
+      }
+      for (JournalSegment segment : obsolete) {
+        segment.delete();
+      }
+      segments.removeAll(obsolete);
+      segmentsAtCompaction = segments.size();
+      logger.info(
+          "Compacted journal to "
+              + flightCount
+              + " flights; deleted "
+              + obsolete.size()
+              + " segments");
+    } finally {
+      compacting = false;
+    }
+  }
+
+  private TreeMap<Long, Path> listSegmentFiles() throws IOException {
+    TreeMap<Long, Path> segmentFiles = new TreeMap<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.forEach(
+          path -> {
+            long sequence = JournalSegment.parseSequence(path.getFileName().toString());
+            if (sequence >= 0) {
+              segmentFiles.put(sequence, path);
+            }
+          });
+    }
+    return segmentFiles;
+  }
+
+  // The file lock keeps out other processes. Directories in use in this JVM are also tracked
+  // separately, because on some platforms closing a second channel to the lock file would release
+  // the lock held through the first.
+  private void lockDirectory() throws IOException {
+    Path lockPath = directory.resolve(LOCK_FILE).toAbsolutePath().normalize();
+    if (!lockedPaths.add(lockPath)) {
+      throw new DatabaseOperationException(
+          "Journal in " + directory + " is in use by another Stairway instance");
+    }
+    try {
+      lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      lock = lockChannel.tryLock();
+    } catch (IOException | OverlappingFileLockException ex) {
+      lock = null;
+    }
+    if (lock == null) {
+      if (lockChannel != null) {
+        lockChannel.close();
+      }
+      lockedPaths.remove(lockPath);
+      throw new DatabaseOperationException(
+          "Journal in " + directory + " is in use by another Stairway instance");
+    }
+    this.lockPath = lockPath;
+  }
+
+  // -- replay --
+
+  private void replay(byte[] payload) {
+    try (var in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      byte type = in.readByte();
+      switch (type) {
+        case ENTRY_FLIGHT -> database.loadFlight(readFlight(in));
+        case ENTRY_UPDATE -> replayUpdate(in);
+        case ENTRY_DELETE -> database.unloadFlight(readString(in));
+        case ENTRY_STAIRWAY -> database.loadStairway(readString(in));
+        case ENTRY_STAIRWAY_DELETE -> database.unloadStairway(readString(in));
+        default -> throw new IOException("Unknown journal entry type " + type);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private void replayUpdate(DataInputStream in) throws IOException {
+    FlightRecord flightRecord = database.get(readString(in));
+    byte parts = in.readByte();
+    if (flightRecord == null) {
+      // Updates always follow the flight entry; nothing to apply to
+      return;
+    }
+    if ((parts & UPDATE_STATE) != 0) {
+      flightRecord =
+          new FlightRecord(
+              flightRecord.flightId(),
+              flightRecord.className(),
+              FlightStatus.valueOf(readString(in)),
+              readString(in),
+              flightRecord.submitTime(),
+              readInstant(in),
+              flightRecord.wakeTime(),
+              readString(in),
+              flightRecord.debugInfo(),
+              flightRecord.inputs(),
+              flightRecord.persisted(),
+              flightRecord.latestLog());
+    }
+    if ((parts & UPDATE_PERSISTED) != 0) {
+      flightRecord = flightRecord.withPersisted(readMap(in));
+    }
+    if ((parts & UPDATE_STEP) != 0) {
+      flightRecord = flightRecord.withLatestLog(readLog(in, flightRecord.latestLog()));
+    }
+    if ((parts & UPDATE_WAKE) != 0) {
+      flightRecord = withWakeTime(flightRecord, readInstant(in));
+    }
+    database.loadFlight(flightRecord);
+  }
+
+  // -- encoding --
+
+  private interface EntryWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private static byte[] encode(byte type, EntryWriter writer) {
+    try (var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes)) {
+      out.writeByte(type);
+      writer.write(out);
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static byte[] encodeFlight(FlightRecord flightRecord) {
+    return encode(
+        ENTRY_FLIGHT,
+        out -> {
+          writeString(out, flightRecord.flightId());
+          writeString(out, flightRecord.className());
+          writeString(out, flightRecord.status().name());
+          writeString(out, flightRecord.stairwayId());
+          writeInstant(out, flightRecord.submitTime());
+          writeInstant(out, flightRecord.completedTime());
+          writeString(out, flightRecord.serializedException());
+          writeString(out, flightRecord.debugInfo());
+          writeMap(out, flightRecord.inputs());
+          writeMap(out, flightRecord.persisted());
+          out.writeBoolean(flightRecord.latestLog() != null);
+          if (flightRecord.latestLog() != null) {
+            writeLog(out, flightRecord.latestLog());
+          }
+          // Last, so that flight entries written before wake times existed still read
+          writeInstant(out, flightRecord.wakeTime());
+        });
+  }
+
+  private static byte[] encodeUpdate(FlightRecord previous, FlightRecord current) {
+    byte parts = 0;
+    if (previous.status() != current.status()
+        || !Objects.equals(previous.stairwayId(), current.stairwayId())
+        || !Objects.equals(previous.completedTime(), current.completedTime())
+        || !Objects.equals(previous.serializedException(), current.serializedException())) {
+      parts |= UPDATE_STATE;
+    }
+    if (previous.persisted() != current.persisted()) {
+      parts |= UPDATE_PERSISTED;
+    }
+    if (previous.latestLog() != current.latestLog()) {
+      parts |= UPDATE_STEP;
+    }
+    if (!Objects.equals(previous.wakeTime(), current.wakeTime())) {
+      parts |= UPDATE_WAKE;
+    }
+    final byte updateParts = parts;
+    return encode(
+        ENTRY_UPDATE,
+        out -> {
+          writeString(out, current.flightId());
+          out.writeByte(updateParts);
+          if ((updateParts & UPDATE_STATE) != 0) {
+            writeString(out, current.status().name());
+            writeString(out, current.stairwayId());
+            writeInstant(out, current.completedTime());
+            writeString(out, current.serializedException());
+          }
+          if ((updateParts & UPDATE_PERSISTED) != 0) {
+            writeMap(out, current.persisted());
+          }
+          if ((updateParts & UPDATE_STEP) != 0) {
+            writeLog(out, current.latestLog());
+          }
+          if ((updateParts & UPDATE_WAKE) != 0) {
+            writeInstant(out, current.wakeTime());
+          }
+        });
+  }
+
+  private static FlightRecord readFlight(DataInputStream in) throws IOException {
+    String flightId = readString(in);
+    String className = readString(in);
+    FlightStatus status = FlightStatus.valueOf(readString(in));
+    String stairwayId = readString(in);
+    Instant submitTime = readInstant(in);
+    Instant completedTime = readInstant(in);
+    String serializedException = readString(in);
+    String debugInfo = readString(in);
+    Map<String, String> inputs = readMap(in);
+    Map<String, String> persisted = readMap(in);
+    LogRecord latestLog = in.readBoolean() ? readLog(in, null) : null;
+    Instant wakeTime = (in.available() > 0) ? readInstant(in) : null;
+    return new FlightRecord(
+        flightId,
+        className,
+        status,
+        stairwayId,
+        submitTime,
+        completedTime,
+        wakeTime,
+        serializedException,
+        debugInfo,
+        inputs,
+        persisted,
+        latestLog);
+  }
+
+  private static FlightRecord withWakeTime(FlightRecord flightRecord, @Nullable Instant wakeTime) {
+    return new FlightRecord(
+        flightRecord.flightId(),
+        flightRecord.className(),
+        flightRecord.status(),
+        flightRecord.stairwayId(),
+        flightRecord.submitTime(),
+        flightRecord.completedTime(),
+        wakeTime,
+        flightRecord.serializedException(),
+        flightRecord.debugInfo(),
+        flightRecord.inputs(),
+        flightRecord.persisted(),
+        flightRecord.latestLog());
+  }
+
+  private static void writeLog(DataOutputStream out, LogRecord logRecord) throws IOException {
+    out.writeLong(logRecord.id().getMostSignificantBits());
+    out.writeLong(logRecord.id().getLeastSignificantBits());
+    writeInstant(out, logRecord.logTime());
+    out.writeInt(logRecord.stepIndex());
+    out.writeBoolean(logRecord.rerun());
+    writeString(out, logRecord.direction().name());
+    out.writeBoolean(logRecord.succeeded());
+    writeString(out, logRecord.serializedException());
+    writeString(out, logRecord.status().name());
+    writeMap(out, logRecord.workingMap());
+  }
+
+  private static LogRecord readLog(DataInputStream in, @Nullable LogRecord previous)
+      throws IOException {
+    UUID id = new UUID(in.readLong(), in.readLong());
+    Instant logTime = readInstant(in);
+    int stepIndex = in.readInt();
+    boolean rerun = in.readBoolean();
+    Direction direction = Direction.valueOf(readString(in));
+    boolean succeeded = in.readBoolean();
+    String serializedException = readString(in);
+    FlightStatus status = FlightStatus.valueOf(readString(in));
+    Map<String, String> workingMap = readMap(in);
+    return new LogRecord(
+        id,
+        logTime,
+        stepIndex,
+        rerun,
+        direction,
+        succeeded,
+        serializedException,
+        status,
+        workingMap,
+        previous);
+  }
+
+  private static void writeString(DataOutputStream out, @Nullable String value)
+      throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  @Nullable
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeInstant(DataOutputStream out, @Nullable Instant value)
+      throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(ChronoUnit.MICROS.between(Instant.EPOCH, value));
+    }
+  }
+
+  @Nullable
+  private static Instant readInstant(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    return Instant.EPOCH.plus(in.readLong(), ChronoUnit.MICROS);
+  }
+
+  private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+    out.writeInt(map.size());
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+  }
+
+  private static Map<String, String> readMap(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      map.put(readString(in), readString(in));
+    }
+    return InMemoryDatabase.copyMap(map);
+  }
+}
@@ -0,0 +1,264 @@
+package bio.terra.stairway.impl;
+
+import static bio.terra.stairway.impl.DbUtils.commitTransaction;
+import static bio.terra.stairway.impl.DbUtils.startReadOnlyTransaction;
+import static bio.terra.stairway.impl.DbUtils.startTransaction;
+
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.exception.StairwayException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Database operations on the daily partitions of the flight log tables. These are only used when
+ * Stairway runs with the partitioned flight log schema (see the partitionedlog changeset).
+ *
+ * <p>The flightlog and flightworking tables are partitioned by log time, one partition per day,
+ * named with the table name and the day; for example, flightlog_p20261018. Partitions are created
+ * a few days ahead of time. Rows that arrive when there is no partition for their day land in the
+ * DEFAULT partition, as do the rows that existed when the schema was partitioned. Rows in the
+ * DEFAULT partitions are removed by the retention cleaner with DELETE like the other tables.
+ *
+ * <p>Day partitions are detached and dropped once they are older than the retention time and no
+ * remaining flight has log records in them. Dropping a partition removes its rows without leaving
+ * dead tuples behind for vacuum. Offloaded flight map values that only the dropped rows referenced
+ * are deleted in the same transaction.
+ */
+class FlightLogPartitionDao {
+  private static final Logger logger = LoggerFactory.getLogger(FlightLogPartitionDao.class);
+  static final String DEFAULT_PARTITION_SUFFIX = "_default";
+  private static final String PARTITION_PREFIX = "_p";
+  private static final DateTimeFormatter PARTITION_DAY_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd");
+
+  private final DataSource dataSource;
+
+  /**
+   * @param dataSource database where the stairway tables live
+   */
+  FlightLogPartitionDao(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * Create the day partitions of the flight log tables from today through daysAhead days from
+   * today. Partitions that already exist are left alone. Today is the database's current date, so
+   * partition bounds match the log times the database assigns.
+   *
+   * @param daysAhead number of days after today to create partitions for
+   * @throws StairwayException other Stairway errors
+   * @throws DatabaseOperationException on database errors
+   * @throws InterruptedException on thread shutdown
+   */
+  void createPartitions(int daysAhead)
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    LocalDate today = DbRetry.retry("flightLogPartition.currentDate", this::currentDateInner);
+    for (int day = 0; day <= daysAhead; day++) {
+      LocalDate partitionDay = today.plusDays(day);
+      DbRetry.retryVoid("flightLogPartition.create", () -> createPartitionsInner(partitionDay));
+    }
+  }
+
+  private LocalDate currentDateInner() throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(connection, "SELECT CURRENT_DATE AS today")) {
+      startReadOnlyTransaction(connection);
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        rs.next();
+        LocalDate today = rs.getObject("today", LocalDate.class);
+        commitTransaction(connection);
+        return today;
+      }
+    }
+  }
+
+  private void createPartitionsInner(LocalDate partitionDay) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      startTransaction(connection);
+      for (String tableName : List.of(FlightDao.FLIGHT_LOG_TABLE, FlightDao.FLIGHT_WORKING_TABLE)) {
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS "
+                + partitionName(tableName, partitionDay)
+                + " PARTITION OF "
+                + tableName
+                + " FOR VALUES FROM ('"
+                + partitionDay
+                + "') TO ('"
+                + partitionDay.plusDays(1)
+                + "')");
+      }
+      commitTransaction(connection);
+    }
+  }
+
+  /**
+   * Detach and drop the day partitions of the flight log tables that hold only expired data. A day
+   * is expired when it ends before deleteOlderThan and no flight remaining in the flight table has
+   * log records in it. The caller is expected to have deleted the expired flights first.
+   *
+   * @param deleteOlderThan time before which flights can be removed
+   * @return number of days whose partitions were dropped
+   * @throws StairwayException other Stairway errors
+   * @throws DatabaseOperationException on database errors
+   * @throws InterruptedException on thread shutdown
+   */
+  int dropExpiredPartitions(Instant deleteOlderThan)
+      throws StairwayException, DatabaseOperationException, InterruptedException {
+    LocalDateTime cutoff =
+        DbRetry.retry("flightLogPartition.cutoff", () -> cutoffInner(deleteOlderThan));
+
+    int droppedCount = 0;
+    for (LocalDate partitionDay :
+        DbRetry.retry("flightLogPartition.list", this::listPartitionDaysInner)) {
+      if (partitionDay.plusDays(1).atStartOfDay().isAfter(cutoff)) {
+        continue;
+      }
+      boolean dropped =
+          DbRetry.retry("flightLogPartition.drop", () -> dropPartitionsInner(partitionDay));
+      if (dropped) {
+        droppedCount++;
+      }
+    }
+    return droppedCount;
+  }
+
+  /**
+   * Convert the retention cutoff to the local time the log_time column holds. Log times are the
+   * database's CURRENT_TIMESTAMP in its session time zone, so the conversion is done there, too,
+   * whatever the time zone of this JVM.
+   */
+  private LocalDateTime cutoffInner(Instant deleteOlderThan) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(
+                connection,
+                "SELECT CAST(CAST(:deleteOlderThan AS timestamptz) AS timestamp) AS cutoff")) {
+      startReadOnlyTransaction(connection);
+      statement.setInstant("deleteOlderThan", deleteOlderThan);
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        rs.next();
+        LocalDateTime cutoff = rs.getObject("cutoff", LocalDateTime.class);
+        commitTransaction(connection);
+        return cutoff;
+      }
+    }
+  }
+
+  /**
+   * List the days that have a flightlog partition, oldest first. Partitions whose names do not
+   * follow the day naming, including the DEFAULT partition, are not listed.
+   */
+  private List<LocalDate> listPartitionDaysInner() throws SQLException {
+    final String sqlListPartitions =
+        "SELECT C.relname FROM pg_inherits I JOIN pg_class C ON C.oid = I.inhrelid"
+            + " WHERE I.inhparent = to_regclass(:tableName)"
+            + " ORDER BY C.relname";
+
+    String prefix = FlightDao.FLIGHT_LOG_TABLE + PARTITION_PREFIX;
+    List<LocalDate> partitionDays = new ArrayList<>();
+
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(connection, sqlListPartitions)) {
+      startReadOnlyTransaction(connection);
+      statement.setString("tableName", FlightDao.FLIGHT_LOG_TABLE);
+      try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+        while (rs.next()) {
+          String name = rs.getString("relname");
+          if (name.startsWith(prefix)) {
+            try {
+              partitionDays.add(
+                  LocalDate.parse(name.substring(prefix.length()), PARTITION_DAY_FORMAT));
+            } catch (DateTimeParseException ex) {
+              logger.warn("Ignoring flight log partition with unexpected name: {}", name);
+            }
+          }
+        }
+      }
+      commitTransaction(connection);
+    }
+    return partitionDays;
+  }
+
+  /**
+   * Drop the partitions of one day, unless a remaining flight still has log records in them. Only
+   * flights submitted before the end of the day can have log records in its partition, so the
+   * check probes the partition's primary key for just those flights.
+   *
+   * @return true if the partitions were dropped
+   */
+  private boolean dropPartitionsInner(LocalDate partitionDay) throws SQLException {
+    String logPartition = partitionName(FlightDao.FLIGHT_LOG_TABLE, partitionDay);
+    String workingPartition = partitionName(FlightDao.FLIGHT_WORKING_TABLE, partitionDay);
+
+    final String sqlLiveFlight =
+        "SELECT F.flightid FROM "
+            + FlightDao.FLIGHT_TABLE
+            + " F WHERE F.submit_time < CAST(:dayEnd AS timestamp)"
+            + " AND EXISTS (SELECT 1 FROM "
+            + logPartition
+            + " L WHERE L.flightid = F.flightid) LIMIT 1";
+
+    try (Connection connection = dataSource.getConnection();
+        NamedParameterPreparedStatement liveFlightStatement =
+            new NamedParameterPreparedStatement(connection, sqlLiveFlight);
+        Statement ddlStatement = connection.createStatement()) {
+      startTransaction(connection);
+
+      liveFlightStatement.setString("dayEnd", partitionDay.plusDays(1).toString());
+      try (ResultSet rs = liveFlightStatement.getPreparedStatement().executeQuery()) {
+        if (rs.next()) {
+          logger.info(
+              "Keeping flight log partitions for {}: flight {} still has log records there",
+              partitionDay,
+              rs.getString("flightid"));
+          commitTransaction(connection);
+          return false;
+        }
+      }
+
+      List<String> valueHashes = new ArrayList<>();
+      try (ResultSet rs =
+          ddlStatement.executeQuery(
+              "SELECT DISTINCT value_hash FROM "
+                  + workingPartition
+                  + " WHERE value_hash IS NOT NULL")) {
+        while (rs.next()) {
+          valueHashes.add(rs.getString("value_hash"));
+        }
+      }
+
+      ddlStatement.executeUpdate(
+          "ALTER TABLE "
+              + FlightDao.FLIGHT_WORKING_TABLE
+              + " DETACH PARTITION "
+              + workingPartition);
+      ddlStatement.executeUpdate("DROP TABLE " + workingPartition);
+      ddlStatement.executeUpdate(
+          "ALTER TABLE " + FlightDao.FLIGHT_LOG_TABLE + " DETACH PARTITION " + logPartition);
+      ddlStatement.executeUpdate("DROP TABLE " + logPartition);
+      FlightDao.deleteUnreferencedValues(connection, valueHashes);
+      commitTransaction(connection);
+      logger.info("Dropped flight log partitions for {}", partitionDay);
+      return true;
+    }
+  }
+
+  private static String partitionName(String tableName, LocalDate partitionDay) {
+    return tableName + PARTITION_PREFIX + PARTITION_DAY_FORMAT.format(partitionDay);
+  }
+}
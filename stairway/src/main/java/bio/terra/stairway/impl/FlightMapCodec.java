@@ -0,0 +1,234 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.exception.DatabaseOperationException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage encoding of flight map values. A value is the JSON text made by the Stairway object
+ * mapper. It is stored in the map tables in one of three forms, recorded per row in the {@code
+ * codec} column:
+ *
+ * <ul>
+ *   <li>{@link #CODEC_JSON} - the JSON text in the {@code value} column. Every row written before
+ *       the codec column existed has this form.
+ *   <li>{@link #CODEC_DEFLATE} - the UTF-8 bytes of the JSON text compressed with deflate, in the
+ *       {@code value_bytes} column; {@code value} is null.
+ *   <li>{@link #CODEC_REFERENCE} - the value is offloaded to the {@code flightvalue} table, where
+ *       it is stored once in one of the forms above, keyed by the SHA-256 hash of its JSON text.
+ *       The row holds the hash in the {@code value_hash} column.
+ * </ul>
+ *
+ * <p>Values at least as long as the compression threshold are compressed, if that makes them
+ * smaller. The JSON of a typed object repeats its class names, so large values usually compress
+ * several times over, and the compressed form stays out of the Postgres TOAST compression path.
+ * Decoding gives back exactly the stored JSON text, so {@code FlightMap.getRaw} is unaffected.
+ *
+ * <p>Values at least as long as the offload threshold are offloaded. A flight usually carries its
+ * large values unchanged from step to step, and each step stores its whole working map, so
+ * offloading stores each such value once rather than once per step. Queries read offloaded values
+ * by joining the value table with {@link #valueJoin} and selecting {@link #valueColumns}.
+ *
+ * <p>Input parameters are always stored as JSON text, because input filters compare it in SQL.
+ */
+final class FlightMapCodec {
+  static final int CODEC_JSON = 0;
+  static final int CODEC_DEFLATE = 1;
+  static final int CODEC_REFERENCE = 2;
+
+  static final String FLIGHT_VALUE_TABLE = "flightvalue";
+
+  /** Codec that stores every value as JSON text */
+  static final FlightMapCodec JSON = new FlightMapCodec(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+  private final int compressionThreshold;
+  private final int offloadThreshold;
+
+  /**
+   * @param compressionThreshold length in characters from which values are compressed
+   * @param offloadThreshold length in characters from which values are offloaded
+   */
+  FlightMapCodec(int compressionThreshold, int offloadThreshold) {
+    this.compressionThreshold = compressionThreshold;
+    this.offloadThreshold = offloadThreshold;
+  }
+
+  int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  int getOffloadThreshold() {
+    return offloadThreshold;
+  }
+
+  /**
+   * @param value JSON text of a value
+   * @return true if the value is to be offloaded to the value table
+   */
+  boolean isOffloaded(String value) {
+    return value != null && value.length() >= offloadThreshold;
+  }
+
+  /**
+   * Encode a value for storage
+   *
+   * @param value JSON text of the value
+   * @return stored form of the value
+   */
+  EncodedValue encode(String value) {
+    if (value == null || value.length() < compressionThreshold) {
+      return new EncodedValue(CODEC_JSON, value, null, null);
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    byte[] compressed = deflate(bytes);
+    if (compressed.length >= bytes.length) {
+      return new EncodedValue(CODEC_JSON, value, null, null);
+    }
+    return new EncodedValue(CODEC_DEFLATE, null, compressed, null);
+  }
+
+  /**
+   * @param value JSON text of a value
+   * @return hex SHA-256 hash of the value; the key of the value in the value table
+   */
+  static String hash(String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-256 is not available", ex);
+    }
+  }
+
+  /**
+   * Bind an encoded value to the {@code :codec}, {@code :value}, {@code :valueBytes}, and {@code
+   * :valueHash} parameters of a statement
+   *
+   * @param statement statement to bind
+   * @param encoded encoded value
+   * @throws SQLException on database errors
+   */
+  static void bind(NamedParameterPreparedStatement statement, EncodedValue encoded)
+      throws SQLException {
+    statement.setInt("codec", encoded.codec());
+    statement.setString("value", encoded.text());
+    statement.setBytes("valueBytes", encoded.bytes());
+    statement.setString("valueHash", encoded.hash());
+  }
+
+  /**
+   * Select list of the stored form of a value, resolving offloaded values. It selects {@code
+   * codec}, {@code value}, and {@code value_bytes}, as {@link #readValue} expects.
+   *
+   * @param alias alias of the map table in the query
+   * @return select list
+   */
+  static String valueColumns(String alias) {
+    return String.format(
+        "COALESCE(V.codec, %1$s.codec) AS codec, COALESCE(V.value, %1$s.value) AS value,"
+            + " COALESCE(V.value_bytes, %1$s.value_bytes) AS value_bytes",
+        alias);
+  }
+
+  /**
+   * Join of the value table that goes with {@link #valueColumns}
+   *
+   * @param alias alias of the map table in the query
+   * @return join clause
+   */
+  static String valueJoin(String alias) {
+    return " LEFT JOIN " + FLIGHT_VALUE_TABLE + " V ON V.hash = " + alias + ".value_hash";
+  }
+
+  /**
+   * Read the value of the current row of a result set that selects the {@code value}, {@code
+   * codec}, and {@code value_bytes} columns of a map table, usually by way of {@link
+   * #valueColumns}
+   *
+   * @param rs result set
+   * @return JSON text of the value
+   * @throws SQLException on database errors
+   */
+  static String readValue(ResultSet rs) throws SQLException {
+    return decode(rs.getInt("codec"), rs.getString("value"), rs.getBytes("value_bytes"));
+  }
+
+  /**
+   * Decode a stored value
+   *
+   * @param codec codec of the stored value
+   * @param text value column
+   * @param bytes value_bytes column
+   * @return JSON text of the value
+   * @throws DatabaseOperationException if the codec is unknown, the bytes are corrupt, or an
+   *     offloaded value is missing
+   */
+  static String decode(int codec, String text, byte[] bytes) {
+    return switch (codec) {
+      case CODEC_JSON -> text;
+      case CODEC_DEFLATE -> new String(inflate(bytes), StandardCharsets.UTF_8);
+      case CODEC_REFERENCE -> throw new DatabaseOperationException(
+          "Offloaded flight map value is missing from " + FLIGHT_VALUE_TABLE);
+      default -> throw new DatabaseOperationException("Unknown flight map codec " + codec);
+    };
+  }
+
+  private static byte[] deflate(byte[] bytes) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      var out = new ByteArrayOutputStream(bytes.length / 4 + 16);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] bytes) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes);
+      var out = new ByteArrayOutputStream(bytes.length * 4);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DatabaseOperationException("Truncated compressed flight map value");
+        }
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    } catch (DataFormatException ex) {
+      throw new DatabaseOperationException("Corrupt compressed flight map value", ex);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Stored form of a value
+   *
+   * @param codec codec of the value
+   * @param text JSON text; null unless the codec is {@link #CODEC_JSON}
+   * @param bytes encoded bytes; null unless the codec is {@link #CODEC_DEFLATE}
+   * @param hash hash of the offloaded value; null unless the codec is {@link #CODEC_REFERENCE}
+   */
+  record EncodedValue(int codec, String text, byte[] bytes, String hash) {
+    static EncodedValue reference(String hash) {
+      return new EncodedValue(CODEC_REFERENCE, null, null, hash);
+    }
+  }
+}
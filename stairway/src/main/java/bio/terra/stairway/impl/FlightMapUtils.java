@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * FlightMapUtils provides methods to create a flight map from data pulled from the database and
@@ -55,6 +56,56 @@ public class FlightMapUtils {
     return inputList;
   }
 
+  /**
+   * Convert a flight map into one JSON object, with each key holding its JSON value. Used by the
+   * DAO to store the input parameters in the inputs column of the flight table.
+   *
+   * @return JSON object text
+   */
+  static String makeJsonObject(FlightMap flightMap) {
+    StringBuilder sb = new StringBuilder("{");
+    String separator = "";
+    try {
+      for (Map.Entry<String, String> entry : flightMap.getMap().entrySet()) {
+        sb.append(separator)
+            .append(getObjectMapper().writeValueAsString(entry.getKey()))
+            .append(':')
+            .append((entry.getValue() == null) ? "null" : entry.getValue());
+        separator = ",";
+      }
+    } catch (IOException ex) {
+      throw new JsonConversionException("Failed to convert flight map to a json object", ex);
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Compute the entries of a flight map that were added or changed relative to an earlier copy of
+   * the map. Used by the DAO to store a working map delta. A delta cannot express removal, so if a
+   * key of the earlier map is missing from the current map, null is returned and the caller must
+   * store the full map instead.
+   *
+   * @param previousMap earlier contents of the flight map
+   * @param flightMap current flight map
+   * @return list of changed FlightInput; null if the change cannot be expressed as a delta
+   */
+  @Nullable
+  static List<FlightInput> makeDeltaInputList(
+      Map<String, String> previousMap, FlightMap flightMap) {
+    Map<String, String> map = flightMap.getMap();
+    if (!map.keySet().containsAll(previousMap.keySet())) {
+      return null;
+    }
+    ArrayList<FlightInput> inputList = new ArrayList<>();
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      if (!Objects.equals(entry.getValue(), previousMap.get(entry.getKey()))
+          || !previousMap.containsKey(entry.getKey())) {
+        inputList.add(new FlightInput(entry.getKey(), entry.getValue()));
+      }
+    }
+    return inputList;
+  }
+
   /**
    * Depending on what version of code a Flight log was written with, we may have a JSON Map, a
    * {@code List<FlightInput>}, both, or neither at deserialization time. This method is used to
@@ -2,6 +2,7 @@ package bio.terra.stairway.impl;
 
 import static bio.terra.stairway.FlightStatus.READY;
 import static bio.terra.stairway.FlightStatus.READY_TO_RESTART;
+import static bio.terra.stairway.FlightStatus.RUNNING;
 import static bio.terra.stairway.FlightStatus.WAITING;
 
 import bio.terra.stairway.Direction;
@@ -14,8 +15,11 @@ import bio.terra.stairway.StepStatus;
 import bio.terra.stairway.exception.RetryException;
 import bio.terra.stairway.exception.StairwayException;
 import bio.terra.stairway.exception.StairwayExecutionException;
+import java.time.Duration;
 import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,7 +30,7 @@ public class FlightRunner implements Runnable {
   private final FlightContextImpl flightContext;
   private final StairwayImpl stairway;
   private final HookWrapper hookWrapper;
-  private final FlightDao flightDao;
+  private final FlightStore flightStore;
 
   // Debug State
   // These sets will only be populated if the corresponding debugInfo field is populated.
@@ -36,12 +40,16 @@ public class FlightRunner implements Runnable {
   private final Set<String> debugDoStepsFailed;
   private final Set<String> debugUndoStepsFailed;
 
+  // Set when the current step's retry wait is deferred: the flight stops running, positioned at
+  // the step, and Stairway runs it again when the wait is over. The retry rule keeps its state.
+  private Duration deferredRetryDelay;
+
   public FlightRunner(FlightContextImpl flightContext) {
     this.flightContext = flightContext;
     // Dereference some commonly used objects
     stairway = flightContext.getStairwayImpl();
     hookWrapper = stairway.getHookWrapper();
-    flightDao = stairway.getFlightDao();
+    flightStore = stairway.getFlightStore();
     debugStepsFailed = new HashSet<>();
     debugDoStepsFailed = new HashSet<>();
     debugUndoStepsFailed = new HashSet<>();
@@ -56,18 +64,31 @@ public class FlightRunner implements Runnable {
    * direction.
    */
   public void run() {
+    // A flight resuming after a deferred retry wait never stopped running, so the flight hooks see
+    // one flight from the first start to the final exit
+    boolean resumed = (deferredRetryDelay != null);
+    boolean deferred = false;
     try {
-      hookWrapper.startFlight(flightContext);
+      if (!resumed) {
+        hookWrapper.startFlight(flightContext);
+      }
       if (stairway.isQuietingDown()) {
         logger.info("Disowning flight starting during quietDown: " + flightContext.getFlightId());
         flightExit(READY);
+        if (resumed) {
+          endFlight();
+        }
         return;
       }
 
       logger.debug("Executing: " + flightContext.toString());
       FlightStatus flightStatus = fly();
 
-      flightExit(flightStatus);
+      // A deferred retry stays running; Stairway resumes the flight when the wait is over
+      deferred = (flightStatus == RUNNING);
+      if (!deferred) {
+        flightExit(flightStatus);
+      }
     } catch (InterruptedException ex) {
       // Shutdown - try disowning the flight
       logger.warn("Flight interrupted: " + flightContext.getFlightId());
@@ -75,6 +96,28 @@ public class FlightRunner implements Runnable {
     } catch (Exception ex) {
       logger.error("Flight failed with exception", ex);
     }
+    // Hand the flight over last, since it may resume on another thread right away
+    if (deferred) {
+      if (!stairway.deferRetry(this, deferredRetryDelay)) {
+        logger.info(
+            "Disowning flight waiting to retry during quietDown: " + flightContext.getFlightId());
+        disownDeferredFlight();
+      }
+      return;
+    }
+    endFlight();
+  }
+
+  /**
+   * Give up a flight waiting for a deferred retry that this instance will not resume. The flight
+   * becomes READY, so it can be queued or resumed, and its flight hooks end.
+   */
+  void disownDeferredFlight() {
+    flightExit(READY);
+    endFlight();
+  }
+
+  private void endFlight() {
     try {
       hookWrapper.endFlight(flightContext);
     } catch (Exception ex) {
@@ -82,6 +125,16 @@ public class FlightRunner implements Runnable {
     }
   }
 
+  /**
+   * Tell the flight hooks that a flight Stairway took back without running it has ended. Only a
+   * flight that was waiting for a deferred retry had started.
+   */
+  void endUnrunFlight() {
+    if (deferredRetryDelay != null) {
+      endFlight();
+    }
+  }
+
   /**
    * Common exit method that sets the flight state in the context and tells stairway to perform
    * state-related exit processing.
@@ -102,17 +155,24 @@ public class FlightRunner implements Runnable {
    */
   private FlightStatus fly() throws InterruptedException {
     try {
-      flightContext.nextStepIndex(); // position the flight to execute the next thing
+      // A resumed retry is already positioned at the step to retry
+      if (deferredRetryDelay == null) {
+        flightContext.nextStepIndex(); // position the flight to execute the next thing
+      }
 
       // Part 1 - running forward (doing). We either succeed or we record the failure and
       // fall through to running backward (undoing)
       if (flightContext.isDoing()) {
         StepResult doResult = runSteps();
+        if (deferredRetryDelay != null) {
+          return RUNNING;
+        }
         if (doResult.isSuccess()) {
           if (doResult.getStepStatus() == StepStatus.STEP_RESULT_STOP) {
             return READY;
           }
           if (doResult.getStepStatus() == StepStatus.STEP_RESULT_WAIT) {
+            flightContext.setWakeTime(doResult.getWakeTime().orElse(null));
             return WAITING;
           }
           if (doResult.getStepStatus() == StepStatus.STEP_RESULT_RESTART_FLIGHT) {
@@ -127,12 +187,15 @@ public class FlightRunner implements Runnable {
         flightContext.setDirection(Direction.SWITCH);
 
         // Record the step failure and direction change in the database
-        flightDao.step(flightContext);
+        flightStore.step(flightContext);
       }
 
       // Part 2 - running backwards. We either succeed and return the original failure
       // status or we have a 'dismal failure'
       StepResult undoResult = runSteps();
+      if (deferredRetryDelay != null) {
+        return RUNNING;
+      }
       if (undoResult.isSuccess()) {
         // Return the error from the doResult - that is why we failed
         return FlightStatus.ERROR;
@@ -142,7 +205,7 @@ public class FlightRunner implements Runnable {
       // The call to "step" will record the undo failure on the step.
       // We do not overwrite the original failure from the DO that triggered
       // the UNDO in the first place.
-      flightDao.step(flightContext);
+      flightStore.step(flightContext);
       logger.error(
           "{} (index {}) experienced DISMAL FAILURE: non-retryable error on undo",
           flightContext.getStepClassName(),
@@ -191,32 +254,32 @@ public class FlightRunner implements Runnable {
         StepResult newResult =
             new StepResult(
                 StepStatus.STEP_RESULT_RESTART_FLIGHT, result.getException().orElse(null));
-        flightDao.step(flightContext);
+        flightStore.step(flightContext);
         return newResult;
       }
       switch (result.getStepStatus()) {
         case STEP_RESULT_SUCCESS:
           // Finished a step; run the next one
           flightContext.setRerun(false);
-          flightDao.step(flightContext);
+          flightStore.step(flightContext);
           flightContext.nextStepIndex();
           break;
 
         case STEP_RESULT_RERUN:
           // Rerun the same step
           flightContext.setRerun(true);
-          flightDao.step(flightContext);
+          flightStore.step(flightContext);
           break;
 
         case STEP_RESULT_WAIT:
           // Finished a step; yield execution
           flightContext.setRerun(false);
-          flightDao.step(flightContext);
+          flightStore.step(flightContext);
           return result;
 
         case STEP_RESULT_STOP:
           // Stop executing - leave rerun setting as is; we'll need to pick up where we left off
-          flightDao.step(flightContext);
+          flightStore.step(flightContext);
           return result;
 
         case STEP_RESULT_FAILURE_RETRY:
@@ -233,12 +296,17 @@ public class FlightRunner implements Runnable {
 
     Step step = flightContext.getCurrentStep();
     RetryRule retryRule = flightContext.getCurrentRetryRule();
-    retryRule.initialize();
+    if (deferredRetryDelay != null) {
+      // Resuming after a deferred retry wait; continue with the retry rule where it left off
+      deferredRetryDelay = null;
+    } else {
+      retryRule.initialize();
+    }
 
     StepResult result;
 
     // Retry loop
-    do {
+    while (true) {
       try {
         MdcUtils.addStepContextToMdc(flightContext);
         // Do or undo based on direction we are headed
@@ -305,8 +373,19 @@ public class FlightRunner implements Runnable {
       }
 
       // Retry case: the retry rule decides if we should try again or not.
-    } while (retryRule.retrySleep());
-    return result;
+      Optional<Duration> retryDelay = retryRule.retryDelay();
+      if (retryDelay.isEmpty()) {
+        return result;
+      }
+      // A long wait does not hold this thread: Stairway resumes the flight when it is over
+      if (stairway.shouldDeferRetry(retryDelay.get())) {
+        logger.info(
+            "Deferring retry for " + retryDelay.get() + ": " + flightContext.prettyStepState());
+        deferredRetryDelay = retryDelay.get();
+        return result;
+      }
+      TimeUnit.MILLISECONDS.sleep(retryDelay.get().toMillis());
+    }
   }
 
   // -- Debug Support methods --
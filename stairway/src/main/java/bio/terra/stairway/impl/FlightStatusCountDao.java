@@ -0,0 +1,258 @@
+package bio.terra.stairway.impl;
+
+import static bio.terra.stairway.impl.DbUtils.commitTransaction;
+import static bio.terra.stairway.impl.DbUtils.startReadCommittedTransaction;
+import static bio.terra.stairway.impl.DbUtils.startReadOnlySnapshotTransaction;
+
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.exception.StairwayException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Database operations on the flight status counters. The flightstatuscount table holds the number
+ * of flights in each status by flight class, so counting flights reads a few rows instead of
+ * scanning the flight table. These are only used when Stairway is built with flight status
+ * counters.
+ *
+ * <p>Every change to the status of a flight, and every insert or delete of a flight, records its
+ * change to the counts in the same transaction. A single row per status and class would be updated
+ * by nearly every transaction and make them conflict, so each transaction adds its changes to one
+ * of {@link #SLOTS} rows per status and class, picked at random, and a count is the sum of the
+ * rows. Transactions pick one slot for all of their changes and update the rows in the same order,
+ * so they do not deadlock on them.
+ *
+ * <p>The counts can drift from the flight table, for example when Stairway instances without
+ * counters change flights. {@link #reconcile()} measures the drift against the flight table,
+ * corrects it, and folds the slots back into one row.
+ */
+class FlightStatusCountDao {
+  private static final Logger logger = LoggerFactory.getLogger(FlightStatusCountDao.class);
+  static final String FLIGHT_STATUS_COUNT_TABLE = "flightstatuscount";
+  static final int SLOTS = 16;
+  // Advisory lock held while the counts are reconciled, so one instance at a time does it
+  private static final long RECONCILE_LOCK_KEY = 0x5374616972436e74L;
+
+  private final DataSource dataSource;
+
+  /**
+   * @param dataSource database where the stairway tables live
+   */
+  FlightStatusCountDao(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /** Changes to the flight counts made by one transaction, by status and flight class. */
+  static class Changes {
+    private record Key(String status, String className) {}
+
+    // Sorted, so that every transaction updates the count rows in the same order
+    private final Map<Key, Integer> deltas =
+        new TreeMap<>(Comparator.comparing(Key::status).thenComparing(Key::className));
+
+    /** Count a flight inserted with the given status */
+    Changes add(String className, FlightStatus status) {
+      deltas.merge(new Key(status.name(), className), 1, Integer::sum);
+      return this;
+    }
+
+    /** Count a flight deleted while in the given status */
+    Changes remove(String className, FlightStatus status) {
+      deltas.merge(new Key(status.name(), className), -1, Integer::sum);
+      return this;
+    }
+
+    /** Count a flight that moved from one status to another */
+    Changes move(String className, FlightStatus fromStatus, FlightStatus toStatus) {
+      if (fromStatus != toStatus) {
+        remove(className, fromStatus);
+        add(className, toStatus);
+      }
+      return this;
+    }
+
+    private void addCounts(ResultSet rs, int sign) throws SQLException {
+      while (rs.next()) {
+        deltas.merge(
+            new Key(rs.getString("status"), rs.getString("class_name")),
+            sign * Math.toIntExact(rs.getLong("flight_count")),
+            Integer::sum);
+      }
+    }
+  }
+
+  /**
+   * Apply changes to the counts in the caller's transaction.
+   *
+   * @param connection connection with an open transaction that made the changes
+   * @param changes changes to apply
+   * @throws SQLException on database errors
+   */
+  void record(Connection connection, Changes changes) throws SQLException {
+    record(connection, changes, ThreadLocalRandom.current().nextInt(SLOTS));
+  }
+
+  private void record(Connection connection, Changes changes, int slot) throws SQLException {
+    final String sqlUpsert =
+        "INSERT INTO "
+            + FLIGHT_STATUS_COUNT_TABLE
+            + " (status, class_name, slot, flight_count)"
+            + " VALUES (:status, :className, :slot, :delta)"
+            + " ON CONFLICT (status, class_name, slot) DO UPDATE"
+            + " SET flight_count = "
+            + FLIGHT_STATUS_COUNT_TABLE
+            + ".flight_count + EXCLUDED.flight_count";
+
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(connection, sqlUpsert)) {
+      boolean batched = false;
+      for (Map.Entry<Changes.Key, Integer> entry : changes.deltas.entrySet()) {
+        if (entry.getValue() != 0) {
+          statement.setString("status", entry.getKey().status());
+          statement.setString("className", entry.getKey().className());
+          statement.setInt("slot", slot);
+          statement.setInt("delta", entry.getValue());
+          statement.getPreparedStatement().addBatch();
+          batched = true;
+        }
+      }
+      if (batched) {
+        statement.getPreparedStatement().executeBatch();
+      }
+    }
+  }
+
+  /**
+   * SQL to count flights from the counters. It has a :status parameter when a status is given.
+   *
+   * @param byStatus true to count the flights in one status; false to count all flights
+   * @return the SQL query; the count is in the total column
+   */
+  static String makeCountSql(boolean byStatus) {
+    return "SELECT CAST(COALESCE(SUM(flight_count), 0) AS bigint) AS total FROM "
+        + FLIGHT_STATUS_COUNT_TABLE
+        + (byStatus ? " WHERE status = :status" : "");
+  }
+
+  /**
+   * Correct the counts from the flight table. If another Stairway instance is already doing it,
+   * this does nothing.
+   *
+   * @throws StairwayException other Stairway errors
+   * @throws DatabaseOperationException on database errors
+   * @throws InterruptedException on thread shutdown
+   */
+  void reconcile() throws StairwayException, DatabaseOperationException, InterruptedException {
+    DbRetry.retryVoid("flightStatusCount.reconcile", this::reconcileInner);
+  }
+
+  // Every transaction that changes flights with counters changes the counts by the same amount,
+  // so the drift between the flight table and the counts only changes when flights are changed
+  // without counters. The drift is measured by counting both in one snapshot, which takes no locks
+  // however long the scan of the flight table runs, and then added to the counts in a short
+  // transaction. Two instances correcting the same drift would apply it twice, so reconciling is
+  // done under a session advisory lock.
+  private void reconcileInner() throws SQLException {
+    final String sqlTryLock = "SELECT pg_try_advisory_lock(:lockKey) AS locked";
+    final String sqlUnlock = "SELECT pg_advisory_unlock(:lockKey)";
+
+    try (Connection connection = dataSource.getConnection()) {
+      connection.setAutoCommit(true);
+      try (NamedParameterPreparedStatement statement =
+          new NamedParameterPreparedStatement(connection, sqlTryLock)) {
+        statement.setLong("lockKey", RECONCILE_LOCK_KEY);
+        try (ResultSet rs = statement.getPreparedStatement().executeQuery()) {
+          rs.next();
+          if (!rs.getBoolean("locked")) {
+            logger.debug("Flight status counts are being reconciled by another Stairway instance");
+            return;
+          }
+        }
+      }
+      try {
+        Changes corrections = measureDrift(connection);
+        int rowCount = correctCounts(connection, corrections);
+        logger.info("Reconciled flight status counts: " + rowCount + " status and class counts");
+      } finally {
+        // A session lock outlives transactions; release it before returning the connection
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+          connection.setAutoCommit(true);
+        }
+        try (NamedParameterPreparedStatement statement =
+            new NamedParameterPreparedStatement(connection, sqlUnlock)) {
+          statement.setLong("lockKey", RECONCILE_LOCK_KEY);
+          statement.getPreparedStatement().execute();
+        }
+      }
+    }
+  }
+
+  // Flight counts minus the counters, as of one snapshot
+  private Changes measureDrift(Connection connection) throws SQLException {
+    final String sqlCountFlights =
+        "SELECT status, class_name, COUNT(*) AS flight_count FROM "
+            + FlightDao.FLIGHT_TABLE
+            + " WHERE status IS NOT NULL GROUP BY status, class_name";
+    final String sqlSumCounts =
+        "SELECT status, class_name, SUM(flight_count) AS flight_count FROM "
+            + FLIGHT_STATUS_COUNT_TABLE
+            + " GROUP BY status, class_name";
+
+    Changes drift = new Changes();
+    startReadOnlySnapshotTransaction(connection);
+    try (Statement statement = connection.createStatement()) {
+      try (ResultSet rs = statement.executeQuery(sqlCountFlights)) {
+        drift.addCounts(rs, 1);
+      }
+      try (ResultSet rs = statement.executeQuery(sqlSumCounts)) {
+        drift.addCounts(rs, -1);
+      }
+    }
+    commitTransaction(connection);
+    return drift;
+  }
+
+  // Fold the slots into slot 0 and apply the corrections. The slot rows are locked in the order
+  // record() updates them, so the fold does not deadlock with concurrent changes to the counts.
+  private int correctCounts(Connection connection, Changes corrections) throws SQLException {
+    final String sqlLockSlots =
+        "SELECT 1 FROM "
+            + FLIGHT_STATUS_COUNT_TABLE
+            + " WHERE slot <> 0 ORDER BY status, class_name, slot FOR UPDATE";
+    final String sqlDeleteSlots =
+        "DELETE FROM "
+            + FLIGHT_STATUS_COUNT_TABLE
+            + " WHERE slot <> 0 RETURNING status, class_name, flight_count";
+    final String sqlDeleteZeros =
+        "DELETE FROM " + FLIGHT_STATUS_COUNT_TABLE + " WHERE slot = 0 AND flight_count = 0";
+    final String sqlCount = "SELECT COUNT(*) AS row_count FROM " + FLIGHT_STATUS_COUNT_TABLE;
+
+    startReadCommittedTransaction(connection);
+    try (Statement statement = connection.createStatement()) {
+      statement.executeQuery(sqlLockSlots).close();
+      try (ResultSet rs = statement.executeQuery(sqlDeleteSlots)) {
+        corrections.addCounts(rs, 1);
+      }
+      record(connection, corrections, 0);
+      statement.executeUpdate(sqlDeleteZeros);
+      int rowCount;
+      try (ResultSet rs = statement.executeQuery(sqlCount)) {
+        rs.next();
+        rowCount = rs.getInt("row_count");
+      }
+      commitTransaction(connection);
+      return rowCount;
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.FlightEnumeration;
+import bio.terra.stairway.FlightFilter;
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.exception.DuplicateFlightIdException;
+import bio.terra.stairway.exception.FlightNotFoundException;
+import bio.terra.stairway.exception.StairwayException;
+import bio.terra.stairway.exception.StairwayExecutionException;
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage engine for the state of flights. Stairway keeps everything it needs to run, recover, and
+ * report on flights behind this interface. {@link FlightDao} stores flights in Postgres and is the
+ * default; {@link InMemoryFlightStore} keeps them in memory.
+ *
+ * <p>Implementations must be safe for concurrent use by all of the flight threads of a Stairway
+ * instance, and, when several Stairway instances share the same storage, must let exactly one of
+ * them claim a flight in {@link #resume}. Each state change is atomic. The state transition hook
+ * is called after a change is stored.
+ */
+interface FlightStore {
+
+  /**
+   * Create the record of a new flight
+   *
+   * @param flightContext description of the flight
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws DuplicateFlightIdException attempt to submit a flight with a duplicate id
+   * @throws InterruptedException thread shutdown
+   */
+  void create(FlightContextImpl flightContext)
+      throws StairwayException,
+          DatabaseOperationException,
+          DuplicateFlightIdException,
+          InterruptedException;
+
+  /**
+   * Create the records of several new flights. Flights whose ids already exist are not created;
+   * the rest are. The flight ids of the batch must be distinct.
+   *
+   * @param flightContexts descriptions of the flights
+   * @return ids of the flights that were created
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  Set<String> createBatch(List<FlightContextImpl> flightContexts)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Record the flight state right after a step
+   *
+   * @param flightContext description of the flight
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  void step(FlightContextImpl flightContext)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Record the exiting of the flight. The flight status is the target status for the flight. A
+   * WAITING flight is stored with the wake time of its context, if any.
+   *
+   * @param flightContext context object for the flight
+   * @throws StairwayException other stairway exception
+   * @throws StairwayExecutionException invalid flight state for exit
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  void exit(FlightContextImpl flightContext)
+      throws StairwayException,
+          StairwayExecutionException,
+          DatabaseOperationException,
+          InterruptedException;
+
+  /**
+   * Record that a flight has been put in the work queue
+   *
+   * @param flightContext context for this flight
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  void queued(FlightContextImpl flightContext)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Record that several flights have been put in the work queue
+   *
+   * @param flightContexts contexts of the flights
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  void queuedBatch(List<FlightContextImpl> flightContexts)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Disown the running flights of an obsolete Stairway instance, putting them in the READY state,
+   * and remove the instance.
+   *
+   * @param stairwayId the id of the, presumably deleted, stairway instance
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  void disownRecovery(String stairwayId)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * @return ids of the unowned flights in the READY or READY_TO_RESTART state
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  List<String> getReadyFlights()
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Remove all record of this flight
+   *
+   * @param flightId flight to remove
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  void delete(String flightId)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Remove one batch of completed flights that are older than a specific time, oldest first
+   *
+   * @param deleteOlderThan time before which flights can be removed
+   * @param batchSize maximum number of flights to remove
+   * @return count of deleted flights; less than batchSize when no more flights are expired
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  int deleteCompletedFlights(Instant deleteOlderThan, int batchSize)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Claim ownership of an unowned flight that is waiting, ready, or queued, and return its flight
+   * context
+   *
+   * @param stairwayId identifier of stairway to own the resumed flight
+   * @param flightId identifier of flight to resume
+   * @return resumed flight; null if the flight does not exist, is not in the right state to be
+   *     resumed, or is being claimed by another Stairway instance
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  FlightContextImpl resume(String stairwayId, String flightId)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Claim ownership of unowned waiting flights whose wake time has passed, earliest first, and
+   * return their flight contexts. Flights being claimed by another Stairway instance are skipped.
+   *
+   * @param stairwayId identifier of stairway to own the resumed flights
+   * @param now current time; flights with a wake time at or before it are due
+   * @param maxFlights maximum number of flights to claim
+   * @return resumed flights; empty if no flights are due
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  List<FlightContextImpl> resumeDueFlights(String stairwayId, Instant now, int maxFlights)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Store the entries of the persisted state map of a flight. Existing keys are overwritten; keys
+   * that are not in the map are left alone.
+   *
+   * @param flightId flight that owns the map
+   * @param persistedStateMap map to store
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  void storePersistedStateMap(String flightId, FlightMap persistedStateMap)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Given a flightId build the flight context from storage
+   *
+   * @param flightId identifier of the flight
+   * @return constructed flight context; null if the flight does not exist
+   * @throws StairwayException other stairway exception
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  FlightContextImpl makeFlightContextById(String flightId)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Return flight state for a single flight
+   *
+   * @param flightId flight to get
+   * @return FlightState for the flight
+   * @throws StairwayException other Stairway error
+   * @throws DatabaseOperationException storage error
+   * @throws FlightNotFoundException flightId is unknown to Stairway
+   * @throws InterruptedException interrupt
+   */
+  FlightState getFlightState(String flightId)
+      throws StairwayException,
+          DatabaseOperationException,
+          FlightNotFoundException,
+          InterruptedException;
+
+  /**
+   * Return flight state for a single flight as of the latest write. Unlike {@link
+   * #getFlightState}, this is never read from a read replica that may be behind.
+   *
+   * @param flightId flight to get
+   * @return FlightState for the flight
+   * @throws StairwayException other Stairway error
+   * @throws DatabaseOperationException storage error
+   * @throws FlightNotFoundException flightId is unknown to Stairway
+   * @throws InterruptedException interrupt
+   */
+  FlightState getLatestFlightState(String flightId)
+      throws StairwayException,
+          DatabaseOperationException,
+          FlightNotFoundException,
+          InterruptedException;
+
+  /**
+   * Get a page of flights and their states, selected by offset
+   *
+   * @param offset offset into the result set to start returning
+   * @param limit max number of results to return
+   * @param inFilter filters to apply to the flights
+   * @return list of FlightState objects for the filtered, paged flights
+   * @throws StairwayException other Stairway error
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  List<FlightState> getFlights(int offset, int limit, FlightFilter inFilter)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Get a page of flights and their states, selected by page token
+   *
+   * @param nextPageToken token from the previous page; null for the first page
+   * @param limit max number of results to return
+   * @param inFilter filters to apply to the flights
+   * @return enumeration of the filtered, paged flights
+   * @throws StairwayException other Stairway error
+   * @throws DatabaseOperationException storage error
+   * @throws InterruptedException thread shutdown
+   */
+  FlightEnumeration getFlights(
+      @Nullable String nextPageToken, @Nullable Integer limit, @Nullable FlightFilter inFilter)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+}
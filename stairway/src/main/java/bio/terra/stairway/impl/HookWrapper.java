@@ -81,6 +81,11 @@ class HookWrapper {
     this.stairwayHooks = stairwayHooks;
   }
 
+  // Lets callers skip building flight contexts that only hooks would see
+  boolean hasHooks() {
+    return !stairwayHooks.isEmpty();
+  }
+
   void startFlight(FlightContextImpl flightContext) throws InterruptedException {
     // First handle plain flight hooks
     handleHookList(flightContext, HookOperation.START_FLIGHT);
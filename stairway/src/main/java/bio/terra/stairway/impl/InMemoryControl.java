@@ -0,0 +1,143 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.Control;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.impl.InMemoryDatabase.FlightRecord;
+import bio.terra.stairway.impl.InMemoryDatabase.LogRecord;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/** This class provides the implementation of {@link Control} for the in-memory flight store. */
+public class InMemoryControl implements Control {
+  private final InMemoryDatabase database;
+  private final InMemoryFlightStore flightStore;
+
+  InMemoryControl(InMemoryDatabase database, InMemoryFlightStore flightStore) {
+    this.database = database;
+    this.flightStore = flightStore;
+  }
+
+  // -- Flight methods --
+
+  public int countFlights(FlightStatus status) {
+    return (int)
+        database.getAll().stream().filter(r -> status == null || r.status() == status).count();
+  }
+
+  public int countOwned() {
+    return (int) database.getAll().stream().filter(r -> r.stairwayId() != null).count();
+  }
+
+  public List<Flight> listFlightsSimple(int offset, int limit, FlightStatus status) {
+    return flightQuery(r -> status == null || r.status() == status, offset, limit);
+  }
+
+  public List<Flight> listOwned(int offset, int limit) {
+    return flightQuery(r -> r.stairwayId() != null, offset, limit);
+  }
+
+  public Flight getFlight(String flightId) {
+    FlightRecord flightRecord = database.get(flightId);
+    if (flightRecord == null) {
+      throw new IllegalArgumentException("Unknown flight id " + flightId);
+    }
+    return makeFlight(flightRecord);
+  }
+
+  // We cannot use the regular disown code path, because it will only transition
+  // from RUNNING --> READY. We want to force a transition from other states.
+  public Flight forceReady(String flightId) {
+    testFlightState(flightId, FlightStatus.READY);
+    database.update(flightId, current -> current.withOwnership(FlightStatus.READY, null));
+    return getFlight(flightId);
+  }
+
+  public Flight forceFatal(String flightId) {
+    // We do not assume anything about the current state. We just force to a FATAL
+    // disowned state so no attempt will be made to recover.
+    testFlightState(flightId, FlightStatus.FATAL);
+    Instant completedTime = Instant.now();
+    database.update(
+        flightId,
+        current ->
+            current.withCompletion(
+                FlightStatus.FATAL, completedTime, current.serializedException()));
+    return getFlight(flightId);
+  }
+
+  public List<FlightMapEntry> inputQuery(String flightId) {
+    FlightRecord flightRecord = database.get(flightId);
+    return (flightRecord == null) ? List.of() : makeFlightMapEntries(flightRecord.inputs());
+  }
+
+  public List<LogEntry> logQuery(String flightId) {
+    List<LogEntry> logList = new ArrayList<>();
+    for (LogRecord logRecord : flightStore.getLog(flightId)) {
+      LogEntry logEntry = new LogEntry();
+      logEntry
+          .flightId(flightId)
+          .logTime(logRecord.logTime())
+          .stepIndex(logRecord.stepIndex())
+          .exception(logRecord.serializedException())
+          .rerun(logRecord.rerun())
+          .direction(logRecord.direction())
+          .id(logRecord.id())
+          .workingMap(makeFlightMapEntries(logRecord.workingMap()));
+      logList.add(logEntry);
+    }
+    return logList;
+  }
+
+  private List<Flight> flightQuery(Predicate<FlightRecord> predicate, int offset, int limit) {
+    return database.getAll().stream()
+        .filter(predicate)
+        .sorted(Comparator.comparing(FlightRecord::submitTime).reversed())
+        .skip(offset)
+        .limit(limit)
+        .map(this::makeFlight)
+        .toList();
+  }
+
+  private Flight makeFlight(FlightRecord flightRecord) {
+    Flight flight = new Flight();
+    flight
+        .flightId(flightRecord.flightId())
+        .className(flightRecord.className())
+        .status(flightRecord.status())
+        .submitted(flightRecord.submitTime())
+        .completed(
+            Optional.ofNullable(flightRecord.completedTime()).map(Timestamp::from).orElse(null))
+        .exception(flightRecord.serializedException())
+        .stairwayId(flightRecord.stairwayId());
+    return flight;
+  }
+
+  private List<FlightMapEntry> makeFlightMapEntries(Map<String, String> map) {
+    List<FlightMapEntry> flightMapEntries = new ArrayList<>();
+    for (Map.Entry<String, String> mapEntry : map.entrySet()) {
+      FlightMapEntry entry = new FlightMapEntry();
+      entry.key(mapEntry.getKey()).value(mapEntry.getValue());
+      flightMapEntries.add(entry);
+    }
+    return flightMapEntries;
+  }
+
+  private void testFlightState(String flightId, FlightStatus status) {
+    Flight flight = getFlight(flightId);
+    if (flight.getStatus() == status) {
+      throw new IllegalStateException("Flight is already " + status.toString());
+    }
+  }
+
+  // -- Stairway methods --
+
+  public List<String> listStairways() {
+    return database.getStairwayNames();
+  }
+}
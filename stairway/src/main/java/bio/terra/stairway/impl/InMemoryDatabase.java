@@ -0,0 +1,409 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.Direction;
+import bio.terra.stairway.FlightStatus;
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * The flights and Stairway instances of the in-memory flight store. There is one shared in-memory
+ * database per JVM. Every Stairway instance configured with the in-memory store shares it, just as
+ * Stairway instances configured with the same Postgres database share its tables, so instances in
+ * one process can recover each other's flights. Nothing in it survives the JVM.
+ *
+ * <p>The database is lock-free. Flights are kept in a concurrent map. The state of each flight is
+ * an immutable {@link FlightRecord} held in an atomic reference. A change builds a new record from
+ * the current one and installs it with compare-and-set, trying again if another thread changed the
+ * flight first. Readers never block and always see a whole record.
+ *
+ * <p>A database made with a {@link ChangeListener} reports every change to it before the change is
+ * installed; the {@link FlightJournal} uses this to make the database durable. Writers then take
+ * the database lock, so the listener sees the changes in the order they are applied. Readers still
+ * never block. The load methods change the database without reporting, for rebuilding it from the
+ * journal.
+ */
+final class InMemoryDatabase {
+  private static final InMemoryDatabase instance = new InMemoryDatabase(null);
+
+  private final ConcurrentMap<String, AtomicReference<FlightRecord>> flights =
+      new ConcurrentHashMap<>();
+  // Map from stairway name to stairway id
+  private final ConcurrentMap<String, String> stairwayInstances = new ConcurrentHashMap<>();
+  private final AtomicLong lastSubmitMicros = new AtomicLong();
+  private final ChangeListener changeListener;
+
+  /**
+   * @param changeListener listener told of every change before it is installed; null for none
+   */
+  InMemoryDatabase(@Nullable ChangeListener changeListener) {
+    this.changeListener = changeListener;
+  }
+
+  static InMemoryDatabase getInstance() {
+    return instance;
+  }
+
+  /** Remove all flights and Stairway instances; the in-memory version of a clean start */
+  void clear() {
+    flights.clear();
+    stairwayInstances.clear();
+  }
+
+  /**
+   * Make a submit time for a new flight. Submit times have the microsecond precision of Postgres
+   * timestamps and are strictly increasing, so flights sort in submission order and page tokens
+   * never split flights submitted at the same time.
+   *
+   * @return submit time
+   */
+  Instant nextSubmitTime() {
+    long nowMicros = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    long micros = lastSubmitMicros.updateAndGet(last -> Math.max(last + 1, nowMicros));
+    return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+  }
+
+  /**
+   * Insert the record of a new flight
+   *
+   * @param flightRecord record to insert
+   * @return false if there is already a flight with the same id
+   */
+  boolean insert(FlightRecord flightRecord) {
+    if (changeListener == null) {
+      return flights.putIfAbsent(flightRecord.flightId(), new AtomicReference<>(flightRecord))
+          == null;
+    }
+    synchronized (this) {
+      if (flights.containsKey(flightRecord.flightId())) {
+        return false;
+      }
+      changeListener.flightInserted(flightRecord);
+      flights.put(flightRecord.flightId(), new AtomicReference<>(flightRecord));
+      return true;
+    }
+  }
+
+  /**
+   * Atomically change the record of a flight. The update function may be called more than once,
+   * so it must not have side effects.
+   *
+   * @param flightId flight to change
+   * @param update function from the current record to the new record; it returns null to leave
+   *     the record unchanged
+   * @return the new record; null if the flight does not exist or the record was left unchanged
+   */
+  @Nullable
+  FlightRecord update(String flightId, UnaryOperator<FlightRecord> update) {
+    AtomicReference<FlightRecord> reference = flights.get(flightId);
+    if (reference == null) {
+      return null;
+    }
+    if (changeListener != null) {
+      synchronized (this) {
+        FlightRecord current = reference.get();
+        FlightRecord next = update.apply(current);
+        if (next == null || flights.get(flightId) != reference) {
+          return null;
+        }
+        changeListener.flightUpdated(current, next);
+        reference.set(next);
+        return next;
+      }
+    }
+    while (true) {
+      FlightRecord current = reference.get();
+      FlightRecord next = update.apply(current);
+      if (next == null) {
+        return null;
+      }
+      if (reference.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  @Nullable
+  FlightRecord get(String flightId) {
+    AtomicReference<FlightRecord> reference = flights.get(flightId);
+    return (reference == null) ? null : reference.get();
+  }
+
+  /**
+   * @return snapshot of the current record of every flight, in no particular order
+   */
+  List<FlightRecord> getAll() {
+    List<FlightRecord> flightRecords = new ArrayList<>(flights.size());
+    for (AtomicReference<FlightRecord> reference : flights.values()) {
+      flightRecords.add(reference.get());
+    }
+    return flightRecords;
+  }
+
+  /**
+   * @param flightId flight to remove
+   * @return true if the flight was removed
+   */
+  boolean delete(String flightId) {
+    if (changeListener == null) {
+      return flights.remove(flightId) != null;
+    }
+    synchronized (this) {
+      if (!flights.containsKey(flightId)) {
+        return false;
+      }
+      changeListener.flightDeleted(flightId);
+      flights.remove(flightId);
+      return true;
+    }
+  }
+
+  /**
+   * Find or create a Stairway instance. The stairway id is the stairway name.
+   *
+   * @param stairwayName name of the instance
+   * @return id of the instance
+   */
+  String findOrCreateStairway(String stairwayName) {
+    if (changeListener == null) {
+      String stairwayId = stairwayInstances.putIfAbsent(stairwayName, stairwayName);
+      return (stairwayId == null) ? stairwayName : stairwayId;
+    }
+    synchronized (this) {
+      String stairwayId = stairwayInstances.get(stairwayName);
+      if (stairwayId != null) {
+        return stairwayId;
+      }
+      changeListener.stairwayCreated(stairwayName);
+      stairwayInstances.put(stairwayName, stairwayName);
+      return stairwayName;
+    }
+  }
+
+  @Nullable
+  String lookupStairwayId(String stairwayName) {
+    return stairwayInstances.get(stairwayName);
+  }
+
+  List<String> getStairwayNames() {
+    return new ArrayList<>(stairwayInstances.keySet());
+  }
+
+  void deleteStairway(String stairwayId) {
+    if (changeListener == null) {
+      stairwayInstances.values().remove(stairwayId);
+      return;
+    }
+    synchronized (this) {
+      if (stairwayInstances.containsValue(stairwayId)) {
+        changeListener.stairwayDeleted(stairwayId);
+        stairwayInstances.values().remove(stairwayId);
+      }
+    }
+  }
+
+  // -- load methods; these do not report to the change listener --
+
+  /**
+   * Insert or replace the record of a flight
+   *
+   * @param flightRecord record to load
+   */
+  void loadFlight(FlightRecord flightRecord) {
+    flights.put(flightRecord.flightId(), new AtomicReference<>(flightRecord));
+    long submitMicros = ChronoUnit.MICROS.between(Instant.EPOCH, flightRecord.submitTime());
+    lastSubmitMicros.accumulateAndGet(submitMicros, Math::max);
+  }
+
+  void unloadFlight(String flightId) {
+    flights.remove(flightId);
+  }
+
+  void loadStairway(String stairwayName) {
+    stairwayInstances.put(stairwayName, stairwayName);
+  }
+
+  void unloadStairway(String stairwayId) {
+    stairwayInstances.values().remove(stairwayId);
+  }
+
+  /**
+   * Listener for the changes to a database. It is called with the database lock held and before
+   * the change is installed; if it throws, the change is not made.
+   */
+  interface ChangeListener {
+    void flightInserted(FlightRecord flightRecord);
+
+    void flightUpdated(FlightRecord previous, FlightRecord current);
+
+    void flightDeleted(String flightId);
+
+    void stairwayCreated(String stairwayName);
+
+    void stairwayDeleted(String stairwayId);
+  }
+
+  /** Make an unmodifiable copy of a raw flight map for storing in a record */
+  static Map<String, String> copyMap(Map<String, String> map) {
+    return Collections.unmodifiableMap(new HashMap<>(map));
+  }
+
+  /**
+   * The state of one flight; the in-memory form of a row of the flight table along with its
+   * inputs, persisted state, and log.
+   *
+   * @param flightId id of the flight
+   * @param className name of the flight class
+   * @param status status of the flight
+   * @param stairwayId owning Stairway instance; null if unowned
+   * @param submitTime time the flight was submitted
+   * @param completedTime time the flight completed; null if it has not
+   * @param wakeTime time a waiting flight is resumed by the wake timer; null if none
+   * @param serializedException exception the flight completed with; null if none
+   * @param debugInfo JSON of the flight debug info
+   * @param inputs raw input parameters
+   * @param persisted raw persisted state map
+   * @param latestLog most recent log record; null if no step has been logged
+   */
+  record FlightRecord(
+      String flightId,
+      String className,
+      FlightStatus status,
+      @Nullable String stairwayId,
+      Instant submitTime,
+      @Nullable Instant completedTime,
+      @Nullable Instant wakeTime,
+      @Nullable String serializedException,
+      String debugInfo,
+      Map<String, String> inputs,
+      Map<String, String> persisted,
+      @Nullable LogRecord latestLog) {
+
+    FlightRecord withOwnership(FlightStatus status, @Nullable String stairwayId) {
+      return new FlightRecord(
+          flightId,
+          className,
+          status,
+          stairwayId,
+          submitTime,
+          completedTime,
+          null,
+          serializedException,
+          debugInfo,
+          inputs,
+          persisted,
+          latestLog);
+    }
+
+    // Unowned and WAITING until the wake time
+    FlightRecord withWaiting(Instant wakeTime) {
+      return new FlightRecord(
+          flightId,
+          className,
+          FlightStatus.WAITING,
+          null,
+          submitTime,
+          completedTime,
+          wakeTime,
+          serializedException,
+          debugInfo,
+          inputs,
+          persisted,
+          latestLog);
+    }
+
+    FlightRecord withCompletion(
+        FlightStatus status, Instant completedTime, @Nullable String serializedException) {
+      return new FlightRecord(
+          flightId,
+          className,
+          status,
+          null,
+          submitTime,
+          completedTime,
+          null,
+          serializedException,
+          debugInfo,
+          inputs,
+          persisted,
+          latestLog);
+    }
+
+    FlightRecord withPersisted(Map<String, String> persisted) {
+      return new FlightRecord(
+          flightId,
+          className,
+          status,
+          stairwayId,
+          submitTime,
+          completedTime,
+          wakeTime,
+          serializedException,
+          debugInfo,
+          inputs,
+          persisted,
+          latestLog);
+    }
+
+    FlightRecord withLatestLog(LogRecord latestLog) {
+      return new FlightRecord(
+          flightId,
+          className,
+          status,
+          stairwayId,
+          submitTime,
+          completedTime,
+          wakeTime,
+          serializedException,
+          debugInfo,
+          inputs,
+          persisted,
+          latestLog);
+    }
+
+    boolean isCompleted() {
+      return status == FlightStatus.SUCCESS
+          || status == FlightStatus.ERROR
+          || status == FlightStatus.FATAL;
+    }
+  }
+
+  /**
+   * One step record of a flight log; the in-memory form of a row of the flight log table with its
+   * working map. Log records are chained newest to oldest, so logging a step does not copy the
+   * earlier records.
+   *
+   * @param id id of the record
+   * @param logTime time the record was logged
+   * @param stepIndex index of the step
+   * @param rerun true if the step is to be rerun
+   * @param direction direction of the flight
+   * @param succeeded true if the step succeeded
+   * @param serializedException exception of a failed step; null if none
+   * @param status status of the flight when the step was logged
+   * @param workingMap raw working map after the step
+   * @param previous previous log record; null for the first record
+   */
+  record LogRecord(
+      UUID id,
+      Instant logTime,
+      int stepIndex,
+      boolean rerun,
+      Direction direction,
+      boolean succeeded,
+      @Nullable String serializedException,
+      FlightStatus status,
+      Map<String, String> workingMap,
+      @Nullable LogRecord previous) {}
+}
@@ -0,0 +1,578 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.ExceptionSerializer;
+import bio.terra.stairway.FlightCountMode;
+import bio.terra.stairway.FlightDebugInfo;
+import bio.terra.stairway.FlightEnumeration;
+import bio.terra.stairway.FlightFilter;
+import bio.terra.stairway.FlightFilterSortDirection;
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.StepResult;
+import bio.terra.stairway.StepStatus;
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.exception.DuplicateFlightIdException;
+import bio.terra.stairway.exception.FlightFilterException;
+import bio.terra.stairway.exception.FlightNotFoundException;
+import bio.terra.stairway.exception.StairwayExecutionException;
+import bio.terra.stairway.impl.InMemoryDatabase.FlightRecord;
+import bio.terra.stairway.impl.InMemoryDatabase.LogRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory implementation of the {@link FlightStore}. It keeps flights in an {@link
+ * InMemoryDatabase} and follows the same state transitions as the {@link FlightDao}, so flights
+ * run, pause, resume, and recover the same way they do on Postgres. With the JVM-wide database it
+ * is meant for tests and for deployments that do not need flights to survive a restart; nothing is
+ * durable. With a database backed by a {@link FlightJournal}, every change is on disk before it is
+ * visible.
+ *
+ * <p>Every change to a flight is a compare-and-set of its immutable record, so there are no locks
+ * to take and no transactions to retry. The conditional updates of the DAO, like "only complete a
+ * RUNNING flight", are expressed as update functions that leave the record unchanged when the
+ * condition does not hold.
+ */
+class InMemoryFlightStore implements FlightStore {
+  private static final Logger logger = LoggerFactory.getLogger(InMemoryFlightStore.class);
+
+  private final InMemoryDatabase database;
+  private final ExceptionSerializer exceptionSerializer;
+  private final HookWrapper hookWrapper;
+  private final String stairwayId;
+
+  InMemoryFlightStore(
+      InMemoryDatabase database,
+      ExceptionSerializer exceptionSerializer,
+      HookWrapper hookWrapper,
+      String stairwayId) {
+    this.database = database;
+    this.exceptionSerializer = exceptionSerializer;
+    this.hookWrapper = hookWrapper;
+    this.stairwayId = stairwayId;
+  }
+
+  @Override
+  public void create(FlightContextImpl flightContext) throws DuplicateFlightIdException {
+    // If we are submitting to ready, then we don't own the flight
+    String owner =
+        (flightContext.getFlightStatus() == FlightStatus.READY
+                || flightContext.getFlightStatus() == FlightStatus.READY_TO_RESTART)
+            ? null
+            : stairwayId;
+    String debugInfo =
+        (flightContext.getDebugInfo() != null) ? flightContext.getDebugInfo().toString() : "{}";
+
+    FlightRecord flightRecord =
+        new FlightRecord(
+            flightContext.getFlightId(),
+            flightContext.getFlightClassName(),
+            flightContext.getFlightStatus(),
+            owner,
+            database.nextSubmitTime(),
+            null,
+            null,
+            null,
+            debugInfo,
+            InMemoryDatabase.copyMap(flightContext.getInputParameters().getMap()),
+            Map.of(),
+            null);
+
+    if (!database.insert(flightRecord)) {
+      throw new DuplicateFlightIdException("Duplicate flightID " + flightContext.getFlightId());
+    }
+    hookWrapper.stateTransition(flightContext);
+  }
+
+  @Override
+  public Set<String> createBatch(List<FlightContextImpl> flightContexts) {
+    Set<String> created = new HashSet<>();
+    for (FlightContextImpl flightContext : flightContexts) {
+      try {
+        create(flightContext);
+        created.add(flightContext.getFlightId());
+      } catch (DuplicateFlightIdException ex) {
+        // Reported by the caller for each flight that was not created
+      }
+    }
+    return created;
+  }
+
+  @Override
+  public void step(FlightContextImpl flightContext) {
+    String serializedException =
+        exceptionSerializer.serialize(flightContext.getResult().getException().orElse(null));
+    Map<String, String> workingMap =
+        InMemoryDatabase.copyMap(flightContext.getWorkingMap().getMap());
+
+    database.update(
+        flightContext.getFlightId(),
+        current ->
+            current.withLatestLog(
+                new LogRecord(
+                    UUID.randomUUID(),
+                    Instant.now(),
+                    flightContext.getStepIndex(),
+                    flightContext.isRerun(),
+                    flightContext.getDirection(),
+                    flightContext.getResult().isSuccess(),
+                    serializedException,
+                    flightContext.getFlightStatus(),
+                    workingMap,
+                    current.latestLog())));
+  }
+
+  @Override
+  public void exit(FlightContextImpl flightContext) throws StairwayExecutionException {
+    switch (flightContext.getFlightStatus()) {
+      case SUCCESS:
+      case ERROR:
+      case FATAL:
+        complete(flightContext);
+        break;
+
+      case READY_TO_RESTART:
+      case WAITING:
+      case READY:
+        disown(flightContext);
+        break;
+
+      case QUEUED:
+        queued(flightContext);
+        break;
+
+      case RUNNING:
+      default:
+        // invalid states
+        throw new StairwayExecutionException("Attempt to exit a flight in the running state");
+    }
+  }
+
+  @Override
+  public void queued(FlightContextImpl flightContext) {
+    flightContext.setFlightStatus(FlightStatus.QUEUED);
+    database.update(
+        flightContext.getFlightId(),
+        current ->
+            (current.stairwayId() == null && current.status() == FlightStatus.READY)
+                ? current.withOwnership(FlightStatus.QUEUED, null)
+                : null);
+    hookWrapper.stateTransition(flightContext);
+  }
+
+  @Override
+  public void queuedBatch(List<FlightContextImpl> flightContexts) {
+    flightContexts.forEach(this::queued);
+  }
+
+  // Record that a flight is paused and no longer owned by this Stairway instance. A flight
+  // waiting until a time keeps the time for the wake timer.
+  private void disown(FlightContextImpl flightContext) {
+    Instant wakeTime =
+        (flightContext.getFlightStatus() == FlightStatus.WAITING)
+            ? flightContext.getWakeTime()
+            : null;
+    database.update(
+        flightContext.getFlightId(),
+        current -> {
+          if (current.status() != FlightStatus.RUNNING) {
+            return null;
+          }
+          return (wakeTime != null)
+              ? current.withWaiting(wakeTime)
+              : current.withOwnership(flightContext.getFlightStatus(), null);
+        });
+    hookWrapper.stateTransition(flightContext);
+  }
+
+  // Record completion of a flight; only a RUNNING flight can complete
+  private void complete(FlightContextImpl flightContext) {
+    String serializedException =
+        exceptionSerializer.serialize(flightContext.getResult().getException().orElse(null));
+    Instant completedTime = Instant.now();
+    database.update(
+        flightContext.getFlightId(),
+        current ->
+            (current.status() == FlightStatus.RUNNING)
+                ? current.withCompletion(
+                    flightContext.getFlightStatus(), completedTime, serializedException)
+                : null);
+    hookWrapper.stateTransition(flightContext);
+  }
+
+  @Override
+  public void disownRecovery(String stairwayId) throws DatabaseOperationException {
+    List<FlightContextImpl> flightList = new ArrayList<>();
+    for (FlightRecord flightRecord : database.getAll()) {
+      if (!stairwayId.equals(flightRecord.stairwayId())) {
+        continue;
+      }
+      FlightRecord disowned =
+          database.update(
+              flightRecord.flightId(),
+              current ->
+                  (stairwayId.equals(current.stairwayId())
+                          && current.status() == FlightStatus.RUNNING)
+                      ? current.withOwnership(FlightStatus.READY, null)
+                      : null);
+      if (disowned != null) {
+        flightList.add(makeFlightContext(disowned));
+      }
+    }
+    if (!flightList.isEmpty()) {
+      logger.info("Disowned " + flightList.size() + " flights for stairway: " + stairwayId);
+    }
+
+    database.deleteStairway(stairwayId);
+
+    // Call the state hook for each of the flights we disowned
+    for (FlightContextImpl flightContext : flightList) {
+      hookWrapper.stateTransition(flightContext);
+    }
+  }
+
+  @Override
+  public List<String> getReadyFlights() {
+    List<String> flightList = new ArrayList<>();
+    for (FlightRecord flightRecord : database.getAll()) {
+      if (flightRecord.stairwayId() == null
+          && (flightRecord.status() == FlightStatus.READY
+              || flightRecord.status() == FlightStatus.READY_TO_RESTART)) {
+        flightList.add(flightRecord.flightId());
+      }
+    }
+    logger.info("Found ready flights: " + flightList.size());
+    return flightList;
+  }
+
+  @Override
+  public void delete(String flightId) {
+    database.delete(flightId);
+  }
+
+  @Override
+  public int deleteCompletedFlights(Instant deleteOlderThan, int batchSize) {
+    List<FlightRecord> expired =
+        database.getAll().stream()
+            .filter(
+                r -> r.completedTime() != null && r.completedTime().isBefore(deleteOlderThan))
+            .sorted(Comparator.comparing(FlightRecord::completedTime))
+            .limit(batchSize)
+            .toList();
+
+    int count = 0;
+    for (FlightRecord flightRecord : expired) {
+      if (database.delete(flightRecord.flightId())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public FlightContextImpl resume(String stairwayId, String flightId)
+      throws DatabaseOperationException {
+    FlightRecord claimed =
+        database.update(
+            flightId,
+            current ->
+                (current.stairwayId() == null
+                        && (current.status() == FlightStatus.WAITING
+                            || current.status() == FlightStatus.READY
+                            || current.status() == FlightStatus.QUEUED
+                            || current.status() == FlightStatus.READY_TO_RESTART))
+                    ? current.withOwnership(FlightStatus.RUNNING, stairwayId)
+                    : null);
+    if (claimed == null) {
+      return null;
+    }
+
+    logger.info("Stairway " + stairwayId + " taking ownership of flight " + flightId);
+    FlightContextImpl flightContext = makeFlightContext(claimed);
+    hookWrapper.stateTransition(flightContext);
+    return flightContext;
+  }
+
+  @Override
+  public List<FlightContextImpl> resumeDueFlights(String stairwayId, Instant now, int maxFlights)
+      throws DatabaseOperationException {
+    List<FlightRecord> dueFlights =
+        database.getAll().stream()
+            .filter(r -> isDue(r, now))
+            .sorted(Comparator.comparing(FlightRecord::wakeTime))
+            .limit(maxFlights)
+            .toList();
+
+    List<FlightContextImpl> flightContexts = new ArrayList<>();
+    for (FlightRecord flightRecord : dueFlights) {
+      // Another instance may have claimed the flight since we looked
+      FlightRecord claimed =
+          database.update(
+              flightRecord.flightId(),
+              current ->
+                  isDue(current, now)
+                      ? current.withOwnership(FlightStatus.RUNNING, stairwayId)
+                      : null);
+      if (claimed != null) {
+        flightContexts.add(makeFlightContext(claimed));
+      }
+    }
+
+    if (!flightContexts.isEmpty()) {
+      logger.info(
+          "Stairway "
+              + stairwayId
+              + " taking ownership of "
+              + flightContexts.size()
+              + " due flights");
+    }
+    for (FlightContextImpl flightContext : flightContexts) {
+      hookWrapper.stateTransition(flightContext);
+    }
+    return flightContexts;
+  }
+
+  private static boolean isDue(FlightRecord flightRecord, Instant now) {
+    return flightRecord.stairwayId() == null
+        && flightRecord.status() == FlightStatus.WAITING
+        && flightRecord.wakeTime() != null
+        && !flightRecord.wakeTime().isAfter(now);
+  }
+
+  @Override
+  public void storePersistedStateMap(String flightId, FlightMap persistedStateMap) {
+    Map<String, String> entries = persistedStateMap.getMap();
+    database.update(
+        flightId,
+        current -> {
+          Map<String, String> persisted = new HashMap<>(current.persisted());
+          persisted.putAll(entries);
+          return current.withPersisted(InMemoryDatabase.copyMap(persisted));
+        });
+  }
+
+  @Override
+  public FlightContextImpl makeFlightContextById(String flightId)
+      throws DatabaseOperationException {
+    FlightRecord flightRecord = database.get(flightId);
+    return (flightRecord == null) ? null : makeFlightContext(flightRecord);
+  }
+
+  private FlightContextImpl makeFlightContext(FlightRecord flightRecord)
+      throws DatabaseOperationException {
+    FlightMap inputParameters = new FlightMap();
+    flightRecord.inputs().forEach(inputParameters::putRaw);
+
+    PersistedStateMap persistedStateMap = new PersistedStateMap(this, flightRecord.flightId());
+    flightRecord.persisted().forEach(persistedStateMap::putRaw);
+
+    // Make debug info, if any
+    FlightDebugInfo debugInfo = null;
+    if (StringUtils.isNotEmpty(flightRecord.debugInfo())) {
+      try {
+        debugInfo =
+            FlightDebugInfo.getObjectMapper()
+                .readValue(flightRecord.debugInfo(), FlightDebugInfo.class);
+      } catch (JsonProcessingException e) {
+        throw new DatabaseOperationException(e);
+      }
+    }
+
+    return new FlightContextImpl(
+        flightRecord.flightId(),
+        flightRecord.className(),
+        inputParameters,
+        debugInfo,
+        flightRecord.status(),
+        makeLogState(flightRecord.latestLog()),
+        new ProgressMetersImpl(persistedStateMap));
+  }
+
+  private FlightContextLogState makeLogState(@Nullable LogRecord logRecord) {
+    if (logRecord == null) {
+      // There is no step record. Return the initial log state.
+      return new FlightContextLogState(true); // true = set initial state
+    }
+
+    StepResult stepResult;
+    if (logRecord.succeeded()) {
+      stepResult = StepResult.getStepResultSuccess();
+    } else {
+      stepResult =
+          new StepResult(
+              StepStatus.STEP_RESULT_FAILURE_FATAL,
+              exceptionSerializer.deserialize(logRecord.serializedException()));
+    }
+
+    FlightMap workingMap = new FlightMap();
+    logRecord.workingMap().forEach(workingMap::putRaw);
+
+    return new FlightContextLogState(false)
+        .workingMap(workingMap)
+        .stepIndex(logRecord.stepIndex())
+        .rerun(logRecord.rerun())
+        .direction(logRecord.direction())
+        .result(stepResult);
+  }
+
+  @Override
+  public FlightState getFlightState(String flightId) throws FlightNotFoundException {
+    FlightRecord flightRecord = database.get(flightId);
+    if (flightRecord == null) {
+      throw new FlightNotFoundException("Flight not found: " + flightId);
+    }
+    return makeFlightState(flightRecord);
+  }
+
+  @Override
+  public FlightState getLatestFlightState(String flightId) throws FlightNotFoundException {
+    return getFlightState(flightId);
+  }
+
+  @Override
+  public List<FlightState> getFlights(int offset, int limit, FlightFilter inFilter)
+      throws DatabaseOperationException {
+    return getFlightsInner(offset, limit, inFilter, null, FlightCountMode.NONE)
+        .getFlightStateList();
+  }
+
+  @Override
+  public FlightEnumeration getFlights(
+      @Nullable String nextPageToken, @Nullable Integer limit, @Nullable FlightFilter inFilter)
+      throws DatabaseOperationException {
+    FlightCountMode countMode =
+        (inFilter != null) ? inFilter.getTotalCountMode() : FlightCountMode.EXACT;
+    return getFlightsInner(null, limit, inFilter, nextPageToken, countMode);
+  }
+
+  // Counting is a scan we make anyway, so an estimate is an exact count
+  private FlightEnumeration getFlightsInner(
+      Integer offset,
+      Integer limit,
+      FlightFilter inFilter,
+      String nextPageToken,
+      FlightCountMode countMode)
+      throws DatabaseOperationException {
+    // Make an empty filter if one is not provided
+    FlightFilter filter = (inFilter != null) ? inFilter : new FlightFilter();
+
+    try {
+      // Make a matcher with no paging controls for the count, like the DAO count query
+      var countMatcher = new FlightFilterMatcher(filter, null);
+      var stateMatcher = new FlightFilterMatcher(filter, nextPageToken);
+
+      Comparator<FlightRecord> order =
+          Comparator.comparing(FlightRecord::submitTime).thenComparing(FlightRecord::flightId);
+      if (filter.getSubmittedTimeSortDirection() == FlightFilterSortDirection.DESC) {
+        order = order.reversed();
+      }
+
+      Instant currentTime = Instant.now();
+      List<FlightRecord> flightRecords = database.getAll();
+      int totalFlights = 0;
+      List<FlightRecord> selected = new ArrayList<>();
+      for (FlightRecord flightRecord : flightRecords) {
+        if (countMatcher.matches(flightRecord)) {
+          totalFlights++;
+        }
+        if (stateMatcher.matches(flightRecord)) {
+          selected.add(flightRecord);
+        }
+      }
+
+      List<FlightState> flightStateList =
+          selected.stream()
+              .sorted(order)
+              .skip((offset != null) ? offset : 0)
+              .limit((limit != null) ? limit : Long.MAX_VALUE)
+              .map(this::makeFlightState)
+              .toList();
+
+      // If we found some flights, then the next page token is the submit time and flight id
+      // of the last flight on the list. If we are at the end of the list, then next page token
+      // starts at the current time.
+      PageToken newPageToken;
+      int listSize = flightStateList.size();
+      if (listSize == 0) {
+        newPageToken = new PageToken(currentTime);
+      } else {
+        FlightState lastFlight = flightStateList.get(listSize - 1);
+        newPageToken = new PageToken(lastFlight.getSubmitted(), lastFlight.getFlightId());
+      }
+
+      if (countMode == FlightCountMode.NONE) {
+        return new FlightEnumeration(-1, countMode, newPageToken.makeToken(), flightStateList);
+      }
+      return new FlightEnumeration(
+          totalFlights, FlightCountMode.EXACT, newPageToken.makeToken(), flightStateList);
+
+    } catch (FlightFilterException ex) {
+      throw new DatabaseOperationException("Failed to get flights", ex);
+    }
+  }
+
+  private FlightState makeFlightState(FlightRecord flightRecord) {
+    FlightState flightState = new FlightState();
+
+    // Flight data that is always present
+    flightState.setFlightId(flightRecord.flightId());
+    flightState.setFlightStatus(flightRecord.status());
+    flightState.setSubmitted(flightRecord.submitTime());
+    flightState.setStairwayId(flightRecord.stairwayId());
+    flightState.setClassName(flightRecord.className());
+
+    FlightMap inputParameters = new FlightMap();
+    flightRecord.inputs().forEach(inputParameters::putRaw);
+    flightState.setInputParameters(inputParameters);
+
+    var persistedStateMap = new PersistedStateMap(this, flightRecord.flightId());
+    flightRecord.persisted().forEach(persistedStateMap::putRaw);
+    flightState.setProgressMeters(new ProgressMetersImpl(persistedStateMap));
+
+    // If the flight is in one of the complete states, then we fill in the completion data
+    if (flightRecord.isCompleted()) {
+      flightState.setCompleted(flightRecord.completedTime());
+      flightState.setException(
+          exceptionSerializer.deserialize(flightRecord.serializedException()));
+      FlightMap resultMap = new FlightMap();
+      if (flightRecord.latestLog() != null) {
+        flightRecord.latestLog().workingMap().forEach(resultMap::putRaw);
+      }
+      flightState.setResultMap(resultMap);
+    }
+
+    return flightState;
+  }
+
+  /**
+   * @param flightId flight to read
+   * @return the log records of the flight, oldest first
+   */
+  List<LogRecord> getLog(String flightId) {
+    List<LogRecord> log = new ArrayList<>();
+    FlightRecord flightRecord = database.get(flightId);
+    if (flightRecord != null) {
+      for (LogRecord logRecord = flightRecord.latestLog();
+          logRecord != null;
+          logRecord = logRecord.previous()) {
+        log.add(logRecord);
+      }
+    }
+    Collections.reverse(log);
+    return log;
+  }
+}
@@ -0,0 +1,27 @@
+package bio.terra.stairway.impl;
+
+import java.util.List;
+
+/** In-memory implementation of the {@link StairwayInstanceStore} */
+class InMemoryStairwayInstanceStore implements StairwayInstanceStore {
+  private final InMemoryDatabase database;
+
+  InMemoryStairwayInstanceStore(InMemoryDatabase database) {
+    this.database = database;
+  }
+
+  @Override
+  public String findOrCreate(String stairwayName) {
+    return database.findOrCreateStairway(stairwayName);
+  }
+
+  @Override
+  public String lookupId(String stairwayName) {
+    return database.lookupStairwayId(stairwayName);
+  }
+
+  @Override
+  public List<String> getList() {
+    return database.getStairwayNames();
+  }
+}
@@ -0,0 +1,194 @@
+package bio.terra.stairway.impl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the {@link FlightJournal}. A segment is a fixed-size file mapped into memory. It
+ * starts with a header holding a magic number; entries follow it back to back. Each entry is its
+ * payload length, the CRC32 of the payload, and the payload. The unused end of the file is zero, so
+ * a zero length marks the end of the entries.
+ *
+ * <p>An entry is appended by copying it into the mapped buffer and forcing the written range to
+ * disk. A crash can leave a torn entry at the end of the last segment; reading stops at the first
+ * entry whose length or checksum is wrong, and that entry and anything after it are zeroed before
+ * appending resumes.
+ */
+final class JournalSegment {
+  private static final int MAGIC = 0x53544A31; // "STJ1"
+  private static final int HEADER_BYTES = 8;
+  static final int ENTRY_HEADER_BYTES = 8;
+
+  private final long sequence;
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+
+  private JournalSegment(long sequence, Path path, FileChannel channel, MappedByteBuffer buffer) {
+    this.sequence = sequence;
+    this.path = path;
+    this.channel = channel;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Create a new, empty segment file
+   *
+   * @param directory journal directory
+   * @param sequence sequence number of the segment
+   * @param size size of the segment file in bytes
+   * @return the segment, positioned for appending
+   * @throws IOException on file errors
+   */
+  static JournalSegment create(Path directory, long sequence, int size) throws IOException {
+    Path path = directory.resolve(fileName(sequence));
+    FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    buffer.putInt(MAGIC);
+    buffer.putInt(0);
+    buffer.force(0, HEADER_BYTES);
+    return new JournalSegment(sequence, path, channel, buffer);
+  }
+
+  /**
+   * Open an existing segment file
+   *
+   * @param path path of the segment file
+   * @param sequence sequence number of the segment
+   * @return the segment, positioned at its first entry
+   * @throws IOException on file errors or if the file is not a journal segment
+   */
+  static JournalSegment open(Path path, long sequence) throws IOException {
+    FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+      channel.close();
+      throw new IOException("Not a journal segment: " + path);
+    }
+    buffer.getInt();
+    return new JournalSegment(sequence, path, channel, buffer);
+  }
+
+  static String fileName(long sequence) {
+    return String.format("journal-%020d.seg", sequence);
+  }
+
+  /**
+   * @param fileName name of a file in the journal directory
+   * @return sequence number of the segment; -1 if the file is not a segment
+   */
+  static long parseSequence(String fileName) {
+    if (!fileName.startsWith("journal-") || !fileName.endsWith(".seg")) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(fileName.substring("journal-".length(), fileName.length() - 4));
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  /**
+   * @param payloadLength length of an entry payload
+   * @return smallest segment size that holds an entry of that length
+   */
+  static int minimumSize(int payloadLength) {
+    return HEADER_BYTES + ENTRY_HEADER_BYTES + payloadLength;
+  }
+
+  /**
+   * Read the entries of the segment from the first, handing each payload to the consumer. Leaves
+   * the segment positioned after the last good entry, with the rest of the file zeroed.
+   *
+   * @param consumer consumer of entry payloads
+   * @return number of entries read
+   */
+  int read(Consumer<byte[]> consumer) {
+    buffer.position(HEADER_BYTES);
+    int count = 0;
+    while (buffer.remaining() >= ENTRY_HEADER_BYTES) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        buffer.position(start);
+        break;
+      }
+      byte[] payload = new byte[length];
+      buffer.get(payload);
+      if (checksum(payload) != checksum) {
+        buffer.position(start);
+        break;
+      }
+      consumer.accept(payload);
+      count++;
+    }
+    zeroTail();
+    return count;
+  }
+
+  /**
+   * Append an entry and force it to disk
+   *
+   * @param payload entry payload
+   * @return false if the entry does not fit in the segment
+   */
+  boolean append(byte[] payload) {
+    if (buffer.remaining() < ENTRY_HEADER_BYTES + payload.length) {
+      return false;
+    }
+    int start = buffer.position();
+    buffer.putInt(payload.length);
+    buffer.putInt(checksum(payload));
+    buffer.put(payload);
+    buffer.force(start, ENTRY_HEADER_BYTES + payload.length);
+    return true;
+  }
+
+  long getSequence() {
+    return sequence;
+  }
+
+  void close() throws IOException {
+    buffer.force();
+    channel.close();
+  }
+
+  void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(path);
+  }
+
+  // Clear a torn entry, if any, so it cannot be mistaken for part of a later entry
+  private void zeroTail() {
+    int start = buffer.position();
+    boolean dirty = false;
+    for (int i = start; i < buffer.limit(); i++) {
+      if (buffer.get(i) != 0) {
+        buffer.put(i, (byte) 0);
+        dirty = true;
+      }
+    }
+    if (dirty) {
+      buffer.force(start, buffer.limit() - start);
+    }
+  }
+
+  private static int checksum(byte[] payload) {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+}
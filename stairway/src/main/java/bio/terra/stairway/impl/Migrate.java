@@ -13,7 +13,27 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 class Migrate {
+  /** Liquibase context of the changesets that partition the flight log tables by time */
+  static final String PARTITIONED_CONTEXT = "partitioned";
+  /** Liquibase context used when the flight log tables are not partitioned */
+  static final String UNPARTITIONED_CONTEXT = "unpartitioned";
+  /** Liquibase context of the changesets that fill in and index the flight inputs column */
+  static final String INPUT_INDEX_CONTEXT = "inputindex";
+
   private final Logger logger = LoggerFactory.getLogger(Migrate.class);
+  private final boolean partitionedFlightLog;
+  private final boolean indexedInputFilters;
+
+  /**
+   * @param partitionedFlightLog true to apply the changesets that partition the flightlog and
+   *     flightworking tables by time
+   * @param indexedInputFilters true to apply the changesets that fill in and index the inputs
+   *     column of the flight table
+   */
+  Migrate(boolean partitionedFlightLog, boolean indexedInputFilters) {
+    this.partitionedFlightLog = partitionedFlightLog;
+    this.indexedInputFilters = indexedInputFilters;
+  }
 
   /**
    * Initialize drops existing tables in the database and reinitializes it with the changeset. This
@@ -53,7 +73,15 @@ class Migrate {
       }
 
       logger.info("Upgrading the database schema");
-      liquibase.update(new Contexts()); // Run all migrations - no context filtering
+      // Changesets without a context always run. We always name a context, because Liquibase
+      // runs every changeset, including the partitioning ones, when no context is given.
+      String partitionContext =
+          partitionedFlightLog ? PARTITIONED_CONTEXT : UNPARTITIONED_CONTEXT;
+      if (indexedInputFilters) {
+        liquibase.update(new Contexts(partitionContext, INPUT_INDEX_CONTEXT));
+      } else {
+        liquibase.update(new Contexts(partitionContext));
+      }
     } catch (LiquibaseException | SQLException ex) {
       throw new MigrateException("Failed to migrate database from " + changesetFile, ex);
     }
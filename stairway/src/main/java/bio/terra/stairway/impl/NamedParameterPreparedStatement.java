@@ -1,31 +1,50 @@
 package bio.terra.stairway.impl;
 
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import org.apache.commons.lang3.StringUtils;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A wrapper around SQL prepared statements that handles named parameters. It implements
  * AutoCloseable so it can be used in try-with-resources. The constructor parses a SQL string with
  * embedded <code>:name</code> parameters. The name string is terminated with one of a set of
- * characters: space, comma, close paren.
+ * characters: space, comma, close paren, colon. A double colon is a Postgres cast, not a
+ * parameter.
  *
- * <p>The class maintains a map of the name to the parameter index and replaces the <code>:name
- * </code> with a <code>?</code> parameter marker.
+ * <p>The class maintains a map of the name to the parameter indexes and replaces the <code>:name
+ * </code> with a <code>?</code> parameter marker. A name may be used more than once in the SQL;
+ * setting it sets every occurrence.
+ *
+ * <p>The DAOs build the same SQL strings over and over, so the result of parsing is kept in a
+ * cache keyed by the SQL text. Each SQL string is parsed once per JVM.
  *
  * <p>The class provides a subset of the setters used to give values to parameters in the prepared
  * statement. It handles only the types needed by Stairway, but can easily be extended for more
  * types.
  */
 public class NamedParameterPreparedStatement implements AutoCloseable {
+  // Bound on the number of cached templates. The SQL that Stairway builds comes from a small set
+  // of shapes, so this is only a guard against unexpected growth; beyond it we parse every time.
+  private static final int MAX_CACHED_TEMPLATES = 1000;
+  private static final Map<String, SqlTemplate> templateCache = new ConcurrentHashMap<>();
+
   private final PreparedStatement preparedStatement; // prepared statement object
-  private final Map<String, Integer> nameIndexMap; // mapping between parameter names and indexes
+  private final SqlTemplate template; // rewritten SQL and parameter name mapping
+
+  /**
+   * The result of parsing a SQL string: the SQL with parameter markers and the mapping from each
+   * parameter name to its marker indexes.
+   */
+  record SqlTemplate(String sql, Map<String, int[]> nameIndexMap) {}
 
   /**
    * Construct a prepared statement, extracts named parameters and inserts parameter markers (?
@@ -36,25 +55,68 @@ public class NamedParameterPreparedStatement implements AutoCloseable {
    * @throws SQLException obviously
    */
   public NamedParameterPreparedStatement(Connection connection, String sql) throws SQLException {
-    nameIndexMap = new HashMap<>();
-    final String nameTerminators = " ,)"; // characters that will terminate a parameter name.
+    template = getTemplate(sql);
+    preparedStatement = connection.prepareStatement(template.sql());
+  }
 
+  /**
+   * Get the parsed template for a SQL string, from the cache if we have seen the string before.
+   *
+   * @param sql SQL with named parameters
+   * @return parsed template
+   */
+  static SqlTemplate getTemplate(String sql) {
+    SqlTemplate template = templateCache.get(sql);
+    if (template == null) {
+      template = parse(sql);
+      if (templateCache.size() < MAX_CACHED_TEMPLATES) {
+        templateCache.putIfAbsent(sql, template);
+      }
+    }
+    return template;
+  }
+
+  /**
+   * Parse a SQL string in one pass, copying it into a builder with each <code>:name</code>
+   * replaced by a parameter marker.
+   *
+   * @param sql SQL with named parameters
+   * @return parsed template
+   */
+  static SqlTemplate parse(String sql) {
+    final String nameTerminators = " ,):"; // characters that will terminate a parameter name.
+
+    StringBuilder builder = new StringBuilder(sql.length());
+    Map<String, List<Integer>> nameIndexes = new HashMap<>();
     int index = 1;
-    int pos;
-    while ((pos = StringUtils.indexOf(sql, ":")) != -1) {
-      int end = StringUtils.indexOfAny(sql.substring(pos), nameTerminators);
-      if (end == -1) {
-        end = sql.length();
+    int pos = 0;
+    int length = sql.length();
+    while (pos < length) {
+      char c = sql.charAt(pos);
+      if (c != ':') {
+        builder.append(c);
+        pos++;
+      } else if (pos + 1 < length && sql.charAt(pos + 1) == ':') {
+        builder.append("::");
+        pos += 2;
       } else {
-        end += pos;
+        int end = pos + 1;
+        while (end < length && nameTerminators.indexOf(sql.charAt(end)) == -1) {
+          end++;
+        }
+        String name = sql.substring(pos + 1, end);
+        nameIndexes.computeIfAbsent(name, k -> new ArrayList<>()).add(index);
+        index++;
+        builder.append('?');
+        pos = end;
       }
-      String name = sql.substring(pos + 1, end);
-      nameIndexMap.put(name, index);
-      index++;
-
-      sql = sql.substring(0, pos) + "?" + sql.substring(end);
     }
-    preparedStatement = connection.prepareStatement(sql);
+
+    Map<String, int[]> nameIndexMap = new HashMap<>();
+    nameIndexes.forEach(
+        (name, indexes) ->
+            nameIndexMap.put(name, indexes.stream().mapToInt(Integer::intValue).toArray()));
+    return new SqlTemplate(builder.toString(), nameIndexMap);
   }
 
   /**
@@ -71,35 +133,73 @@ public class NamedParameterPreparedStatement implements AutoCloseable {
     return preparedStatement;
   }
 
-  private int getIndex(String name) {
-    Integer index = nameIndexMap.get(name);
-    if (index == null) {
+  private int[] getIndexes(String name) {
+    int[] indexes = template.nameIndexMap().get(name);
+    if (indexes == null) {
       throw new IllegalArgumentException(
           "Parameter name '" + name + "' is not a valid parameter in the prepared statement");
     }
-    return index;
+    return indexes;
   }
 
   // Type-specific parameter setters
   // I included all of the ones Stairway needs. If we need other datatypes,
   // they are trivial to add here.
   public void setBoolean(String name, boolean value) throws SQLException {
-    preparedStatement.setBoolean(getIndex(name), value);
+    for (int index : getIndexes(name)) {
+      preparedStatement.setBoolean(index, value);
+    }
   }
 
   public void setInt(String name, int value) throws SQLException {
-    preparedStatement.setInt(getIndex(name), value);
+    for (int index : getIndexes(name)) {
+      preparedStatement.setInt(index, value);
+    }
+  }
+
+  public void setLong(String name, long value) throws SQLException {
+    for (int index : getIndexes(name)) {
+      preparedStatement.setLong(index, value);
+    }
   }
 
   public void setString(String name, String value) throws SQLException {
-    preparedStatement.setString(getIndex(name), value);
+    for (int index : getIndexes(name)) {
+      preparedStatement.setString(index, value);
+    }
+  }
+
+  public void setBytes(String name, byte[] value) throws SQLException {
+    for (int index : getIndexes(name)) {
+      preparedStatement.setBytes(index, value);
+    }
   }
 
   public void setInstant(String name, Instant value) throws SQLException {
-    preparedStatement.setTimestamp(getIndex(name), Timestamp.from(value));
+    Timestamp timestamp = Timestamp.from(value);
+    for (int index : getIndexes(name)) {
+      preparedStatement.setTimestamp(index, timestamp);
+    }
   }
 
   public void setUuid(String name, UUID uuid) throws SQLException {
-    preparedStatement.setObject(getIndex(name), uuid);
+    for (int index : getIndexes(name)) {
+      preparedStatement.setObject(index, uuid);
+    }
+  }
+
+  public void setStringArray(String name, List<String> values) throws SQLException {
+    setArray(name, "text", values.toArray());
+  }
+
+  public void setUuidArray(String name, List<UUID> values) throws SQLException {
+    setArray(name, "uuid", values.toArray());
+  }
+
+  private void setArray(String name, String typeName, Object[] values) throws SQLException {
+    Array array = preparedStatement.getConnection().createArrayOf(typeName, values);
+    for (int index : getIndexes(name)) {
+      preparedStatement.setArray(index, array);
+    }
   }
 }
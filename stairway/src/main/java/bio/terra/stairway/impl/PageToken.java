@@ -1,6 +1,7 @@
 package bio.terra.stairway.impl;
 
 import bio.terra.stairway.exception.InvalidPageToken;
+import jakarta.annotation.Nullable;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -9,40 +10,85 @@ import java.time.format.DateTimeParseException;
 import java.util.Base64;
 import org.apache.commons.lang3.StringUtils;
 
-/** Container/converter for a page token */
+/**
+ * Container/converter for a page token. A page token is the sort key of the last flight of a page:
+ * its submit time and flight id. The next page starts after that flight in the sort order, so
+ * flights submitted at the same time are neither skipped nor repeated.
+ *
+ * <p>Version {@value #PAGE_TOKEN_VERSION} tokens hold both parts. Version {@value
+ * #PAGE_TOKEN_VERSION_1} tokens hold only the submit time; they are still accepted, and the next
+ * page starts after every flight submitted at that time. Tokens without a flight id, such as the
+ * token at the end of the list, are made in version {@value #PAGE_TOKEN_VERSION_1}.
+ */
 public class PageToken {
-  public static final String PAGE_TOKEN_VERSION = "v01";
+  public static final String PAGE_TOKEN_VERSION = "v02";
+  public static final String PAGE_TOKEN_VERSION_1 = "v01";
+  // Separates the submit time from the flight id; the text of an Instant has no spaces
+  private static final String SEPARATOR = " ";
+
   private final Instant timestamp;
+  private final String flightId;
 
   public PageToken(Instant timestamp) {
+    this(timestamp, null);
+  }
+
+  public PageToken(Instant timestamp, @Nullable String flightId) {
     this.timestamp = timestamp;
+    this.flightId = flightId;
   }
 
   public PageToken(String token) {
-    if (!StringUtils.startsWith(token, PAGE_TOKEN_VERSION)) {
+    String version;
+    if (StringUtils.startsWith(token, PAGE_TOKEN_VERSION)) {
+      version = PAGE_TOKEN_VERSION;
+    } else if (StringUtils.startsWith(token, PAGE_TOKEN_VERSION_1)) {
+      version = PAGE_TOKEN_VERSION_1;
+    } else {
       throw new InvalidPageToken("Invalid page token");
     }
 
     try {
-      String encodedInstant = StringUtils.removeStart(token, PAGE_TOKEN_VERSION);
-      String base64String = URLDecoder.decode(encodedInstant, StandardCharsets.UTF_8);
-      String instantString =
+      String encodedToken = StringUtils.removeStart(token, version);
+      String base64String = URLDecoder.decode(encodedToken, StandardCharsets.UTF_8);
+      String tokenString =
           new String(Base64.getDecoder().decode(base64String), StandardCharsets.UTF_8);
-      timestamp = Instant.parse(instantString);
+      if (version.equals(PAGE_TOKEN_VERSION)) {
+        String[] parts = tokenString.split(SEPARATOR, 2);
+        if (parts.length != 2) {
+          throw new InvalidPageToken("Invalid page token");
+        }
+        timestamp = Instant.parse(parts[0]);
+        flightId = parts[1];
+      } else {
+        timestamp = Instant.parse(tokenString);
+        flightId = null;
+      }
     } catch (IllegalArgumentException | DateTimeParseException e) {
       throw new InvalidPageToken("Invalid page token");
     }
   }
 
   public String makeToken() {
+    String version = (flightId == null) ? PAGE_TOKEN_VERSION_1 : PAGE_TOKEN_VERSION;
+    String tokenString =
+        (flightId == null) ? timestamp.toString() : timestamp + SEPARATOR + flightId;
     String base64String =
         new String(
-            Base64.getEncoder().encode(timestamp.toString().getBytes(StandardCharsets.UTF_8)),
+            Base64.getEncoder().encode(tokenString.getBytes(StandardCharsets.UTF_8)),
             StandardCharsets.UTF_8);
-    return PAGE_TOKEN_VERSION + URLEncoder.encode(base64String, StandardCharsets.UTF_8);
+    return version + URLEncoder.encode(base64String, StandardCharsets.UTF_8);
   }
 
   public Instant getTimestamp() {
     return timestamp;
   }
+
+  /**
+   * @return flight id of the last flight of the page; null in version {@value
+   *     #PAGE_TOKEN_VERSION_1} tokens
+   */
+  public @Nullable String getFlightId() {
+    return flightId;
+  }
 }
@@ -11,15 +11,15 @@ import bio.terra.stairway.FlightMap;
  * progress. However, if other use cases arise, we may expose it directly to flights.
  */
 public class PersistedStateMap extends FlightMap {
-  private final FlightDao flightDao;
+  private final FlightStore flightStore;
   private final String flightId;
 
   /**
-   * @param flightDao DAO for persisting the map
+   * @param flightStore store for persisting the map
    * @param flightId flightId associated with the state
    */
-  public PersistedStateMap(FlightDao flightDao, String flightId) {
-    this.flightDao = flightDao;
+  public PersistedStateMap(FlightStore flightStore, String flightId) {
+    this.flightStore = flightStore;
     this.flightId = flightId;
   }
 
@@ -29,6 +29,6 @@ public class PersistedStateMap extends FlightMap {
    * @throws InterruptedException on interrupted database wait
    */
   public void flush() throws InterruptedException {
-    flightDao.storePersistedStateMap(flightId, this);
+    flightStore.storePersistedStateMap(flightId, this);
   }
 }
@@ -27,11 +27,11 @@ public class ProgressMetersImpl implements ProgressMeterReader {
   /**
    * Constructor for new flight context creation: create the map
    *
-   * @param flightDao Address of the DAO object for writing the map
+   * @param flightStore store for writing the map
    * @param flightId Flight id for this flight
    */
-  ProgressMetersImpl(FlightDao flightDao, String flightId) {
-    this.persistedStateMap = new PersistedStateMap(flightDao, flightId);
+  ProgressMetersImpl(FlightStore flightStore, String flightId) {
+    this.persistedStateMap = new PersistedStateMap(flightStore, flightId);
   }
 
   /**
@@ -0,0 +1,137 @@
+package bio.terra.stairway.impl;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the database for reads that may be slightly stale: flight enumeration, flight state, and
+ * the {@link bio.terra.stairway.Control} queries. Those reads go to the read replica when one is
+ * configured and its replication lag is within the staleness bound; otherwise they go to the
+ * primary. Reads that must see the latest writes, such as resume and recovery, always use the
+ * primary and do not go through the router.
+ *
+ * <p>The replica's lag is measured with a query on the replica and remembered for a short interval,
+ * so the check costs at most one extra query per interval. The read that finds the result expired
+ * runs the check; reads that arrive while it runs use the previous result instead of waiting for a
+ * replica that may be slow to answer. A replica that is streaming WAL from the primary and has
+ * replayed all of it counts as having no lag, even when the primary has been idle for a while. A
+ * replica that is not streaming, or whose streaming status cannot be read because the user lacks
+ * {@code pg_read_all_stats}, is as old as the last transaction it replayed. If the replica cannot
+ * be reached or its lag cannot be measured, reads go to the primary until the next check.
+ */
+class ReadReplicaRouter {
+  private static final Logger logger = LoggerFactory.getLogger(ReadReplicaRouter.class);
+  static final Duration DEFAULT_MAX_LAG = Duration.ofSeconds(10);
+  static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(1);
+
+  // Lag in seconds; null if the replica has not replayed any transaction yet. When the WAL
+  // receiver is stopped, receive and replay positions are equal however old the data is, so they
+  // only show the replica is caught up while it is streaming.
+  private static final String LAG_QUERY =
+      "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0"
+          + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn()"
+          + " AND EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN 0"
+          + " ELSE EXTRACT(EPOCH FROM clock_timestamp() - pg_last_xact_replay_timestamp())"
+          + " END AS lag_seconds";
+
+  private final DataSource primary;
+  private final DataSource replica;
+  private final long maxLagNanos;
+  private final long checkIntervalNanos;
+
+  // Result of the last lag check. Only the thread that set checkRunning updates them.
+  private volatile boolean replicaFresh;
+  private volatile long nextCheckNanos;
+  private final AtomicBoolean checkRunning = new AtomicBoolean();
+
+  /**
+   * @param primary primary database
+   * @param replica read replica; null to send every read to the primary
+   * @param maxLag largest replication lag at which reads go to the replica
+   * @param checkInterval how long the result of a lag check is used
+   */
+  ReadReplicaRouter(
+      DataSource primary, DataSource replica, Duration maxLag, Duration checkInterval) {
+    this.primary = primary;
+    this.replica = replica;
+    this.maxLagNanos = maxLag.toNanos();
+    this.checkIntervalNanos = checkInterval.toNanos();
+    this.nextCheckNanos = System.nanoTime();
+  }
+
+  /**
+   * @return true if reads may be sent to a replica
+   */
+  boolean hasReplica() {
+    return replica != null;
+  }
+
+  /**
+   * Get a connection for a read that may be stale by up to the staleness bound. The caller starts
+   * a read-only transaction on it, as for any read.
+   *
+   * @return connection to the replica if it is fresh enough; otherwise to the primary
+   * @throws SQLException on failure to connect to the primary
+   */
+  Connection getReadConnection() throws SQLException {
+    if (replica != null && isReplicaFresh()) {
+      try {
+        return replica.getConnection();
+      } catch (SQLException ex) {
+        logger.warn("Failed to connect to the read replica; reading from the primary", ex);
+        markReplicaStale();
+      }
+    }
+    return primary.getConnection();
+  }
+
+  private boolean isReplicaFresh() {
+    if (System.nanoTime() - nextCheckNanos >= 0 && checkRunning.compareAndSet(false, true)) {
+      try {
+        boolean fresh = checkReplicaLag();
+        if (fresh != replicaFresh) {
+          logger.info(fresh ? "Reading from the read replica" : "Reading from the primary");
+        }
+        replicaFresh = fresh;
+        nextCheckNanos = System.nanoTime() + checkIntervalNanos;
+      } finally {
+        checkRunning.set(false);
+      }
+    }
+    return replicaFresh;
+  }
+
+  private void markReplicaStale() {
+    replicaFresh = false;
+    nextCheckNanos = System.nanoTime() + checkIntervalNanos;
+  }
+
+  private boolean checkReplicaLag() {
+    try (Connection connection = replica.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+      rs.next();
+      double lagSeconds = rs.getDouble("lag_seconds");
+      if (rs.wasNull()) {
+        logger.debug("Read replica has not replayed any transactions");
+        return false;
+      }
+      long lagNanos = (long) (lagSeconds * 1_000_000_000L);
+      if (lagNanos > maxLagNanos) {
+        logger.debug("Read replica is " + lagSeconds + "s behind");
+        return false;
+      }
+      return true;
+    } catch (SQLException ex) {
+      logger.warn("Failed to check the read replica lag", ex);
+      return false;
+    }
+  }
+}
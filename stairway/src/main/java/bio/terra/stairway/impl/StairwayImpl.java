@@ -6,10 +6,14 @@ import bio.terra.stairway.ExceptionSerializer;
 import bio.terra.stairway.Flight;
 import bio.terra.stairway.FlightDebugInfo;
 import bio.terra.stairway.FlightEnumeration;
+import bio.terra.stairway.FlightExecutionMode;
 import bio.terra.stairway.FlightFilter;
 import bio.terra.stairway.FlightMap;
 import bio.terra.stairway.FlightState;
 import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.FlightStoreType;
+import bio.terra.stairway.FlightSubmission;
+import bio.terra.stairway.FlightSubmissionResult;
 import bio.terra.stairway.ShortUUID;
 import bio.terra.stairway.Stairway;
 import bio.terra.stairway.StairwayBuilder;
@@ -24,18 +28,23 @@ import bio.terra.stairway.exception.StairwayExecutionException;
 import bio.terra.stairway.exception.StairwayShutdownException;
 import bio.terra.stairway.queue.WorkQueueManager;
 import jakarta.annotation.Nullable;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
  * StairwayImpl holds the implementation of the Stairway library. This class is not intended for
@@ -46,34 +55,80 @@ public class StairwayImpl implements Stairway {
   private static final int DEFAULT_MAX_QUEUED_FLIGHTS = 2;
   private static final int MIN_QUEUED_FLIGHTS = 0;
   private static final int SCHEDULED_POOL_CORE_THREADS = 5;
+  private static final int DEFAULT_WORKING_MAP_SNAPSHOT_INTERVAL = 1;
+  private static final int DEFAULT_STEP_CHECKPOINT_BATCH_SIZE = 1;
+  private static final int DEFAULT_RETENTION_CLEANUP_BATCH_SIZE = 500;
+  private static final Duration DEFAULT_RETENTION_CLEANUP_BATCH_PAUSE = Duration.ofSeconds(1);
+  private static final Duration DEFAULT_RETENTION_CLEANUP_TIME_BUDGET = Duration.ofMinutes(10);
+  private static final Duration STEP_CHECKPOINT_STATISTICS_INTERVAL = Duration.ofMinutes(5);
+  private static final Duration DB_RETRY_STATISTICS_INTERVAL = Duration.ofMinutes(5);
+  private static final int FLIGHT_LOG_PARTITION_DAYS_AHEAD = 3;
+  private static final Duration FLIGHT_LOG_PARTITION_CHECK_INTERVAL = Duration.ofHours(6);
+  private static final Duration FLIGHT_STATUS_COUNT_RECONCILE_INTERVAL = Duration.ofHours(1);
+  // Awaited flights are checked this often in case a completion signal was missed. Without
+  // completion notifications, that is how completions on other instances are seen.
+  private static final Duration AWAIT_RECHECK_INTERVAL = Duration.ofSeconds(10);
+  private static final Duration AWAIT_RECHECK_INTERVAL_NOTIFIED = Duration.ofMinutes(1);
+  private static final Duration DEFAULT_FLIGHT_WAKE_CHECK_INTERVAL = Duration.ofSeconds(5);
+  // Most due flights claimed by one statement of the wake timer
+  private static final int FLIGHT_WAKE_BATCH_SIZE = 100;
+  private static final int MIN_JOURNAL_SEGMENT_BYTES = 64 * 1024;
 
   // Constructor parameters
   private final Object applicationContext;
   private final ExceptionSerializer exceptionSerializer;
   private final String stairwayName; // always identical to stairwayId
   private final int maxQueuedFlights;
-  private final ThreadPoolTaskExecutor executor;
+  private final StairwayThreadPool threadPool;
   private final WorkQueueManager queueManager;
   private final HookWrapper hookWrapper;
   private final Duration retentionCheckInterval;
   private final Duration completedFlightRetention;
+  private final int retentionCleanupBatchSize;
+  private final Duration retentionCleanupBatchPause;
+  private final Duration retentionCleanupTimeBudget;
+  private final int workingMapSnapshotInterval;
+  private final int stepCheckpointBatchSize;
+  private final Duration stepCheckpointLinger;
+  private final boolean partitionedFlightLog;
+  private final boolean databaseCircuitBreaker;
+  private final FlightMapCodec flightMapCodec;
+  private final FlightStoreType flightStoreType;
+  private final Path journalDirectory;
+  private final int journalSegmentSize;
+  private final DataSource readDataSource;
+  private final Duration readReplicaMaxLag;
+  private final Duration flightCountCacheTtl;
+  private final boolean indexedInputFilters;
+  private final boolean flightStatusCounters;
+  private final boolean workQueueOutbox;
+  private final boolean flightCompletionNotifications;
+  private final Duration retryWaitReleaseThreshold;
+  private final Duration flightWakeCheckInterval;
   private final AtomicBoolean quietingDown;
 
   // Initialized state
-  private StairwayThreadPool threadPool;
-  private StairwayInstanceDao stairwayInstanceDao;
-  private FlightDao flightDao;
+  private StairwayInstanceStore stairwayInstanceStore;
+  private FlightStore flightStore;
+  private FlightLogPartitionDao flightLogPartitionDao;
+  private FlightStatusCountDao flightStatusCountDao;
+  private WorkQueueOutboxRelay workQueueOutboxRelay;
+  private FlightCompletionListener flightCompletionListener;
+  private FlightCompletionWaiters flightCompletionWaiters;
+  private DeferredRetries deferredRetries;
   private ScheduledExecutorService scheduledPool;
+  private StepCheckpointWriter stepCheckpointWriter;
+  private FlightJournal flightJournal;
   private Control control;
 
   /**
    * We do initialization in three steps. The constructor does the first step of constructing the
-   * object and remembering the inputs. It does not do any flightDao activity. That lets the rest of
-   * the application come up and do any database configuration.
+   * object and remembering the inputs. It does not do any flight store activity. That lets the rest
+   * of the application come up and do any database configuration.
    *
    * <p>The second step is the 'initialize' call (below) that performs any necessary database
-   * initialization and migration. It sets up the flightDao and returns the current list of Stairway
-   * instances recorded in the database.
+   * initialization and migration. It sets up the flight store and returns the current list of
+   * Stairway instances recorded in the database.
    *
    * <p>The third step is the 'recover-and-start' call (further below) that performs any requested
    * recovery and opens this Stairway for business. Some flights may already be running depending on
@@ -101,10 +156,23 @@ public class StairwayImpl implements Stairway {
             ? "stairway" + UUID.randomUUID().toString()
             : builder.getStairwayName();
 
-    this.executor =
-        (builder.getExecutor() == null)
-            ? new DefaultThreadPoolTaskExecutor(builder.getMaxParallelFlights())
-            : builder.getExecutor();
+    FlightExecutionMode flightExecutionMode =
+        (builder.getFlightExecutionMode() == null)
+            ? FlightExecutionMode.PLATFORM_THREADS
+            : builder.getFlightExecutionMode();
+    if (flightExecutionMode == FlightExecutionMode.VIRTUAL_THREADS) {
+      if (builder.getExecutor() != null) {
+        throw new StairwayExecutionException(
+            "An executor cannot be supplied with virtual thread flight execution");
+      }
+      this.threadPool = new VirtualThreadPool(builder.getMaxParallelFlights());
+    } else {
+      this.threadPool =
+          new StairwayThreadPool(
+              (builder.getExecutor() == null)
+                  ? new DefaultThreadPoolTaskExecutor(builder.getMaxParallelFlights())
+                  : builder.getExecutor());
+    }
 
     this.queueManager = new WorkQueueManager(this, builder.getWorkQueue());
 
@@ -116,12 +184,81 @@ public class StairwayImpl implements Stairway {
         (builder.getRetentionCheckInterval() == null)
             ? Duration.ofDays(1)
             : builder.getRetentionCheckInterval();
+    this.retentionCleanupBatchSize =
+        (builder.getRetentionCleanupBatchSize() == null)
+            ? DEFAULT_RETENTION_CLEANUP_BATCH_SIZE
+            : Math.max(builder.getRetentionCleanupBatchSize(), 1);
+    this.retentionCleanupBatchPause =
+        (builder.getRetentionCleanupBatchPause() == null)
+            ? DEFAULT_RETENTION_CLEANUP_BATCH_PAUSE
+            : builder.getRetentionCleanupBatchPause();
+    this.retentionCleanupTimeBudget =
+        (builder.getRetentionCleanupTimeBudget() == null)
+            ? DEFAULT_RETENTION_CLEANUP_TIME_BUDGET
+            : builder.getRetentionCleanupTimeBudget();
+    this.workingMapSnapshotInterval =
+        (builder.getWorkingMapSnapshotInterval() == null)
+            ? DEFAULT_WORKING_MAP_SNAPSHOT_INTERVAL
+            : Math.max(builder.getWorkingMapSnapshotInterval(), 1);
+    this.stepCheckpointBatchSize =
+        (builder.getStepCheckpointBatchSize() == null)
+            ? DEFAULT_STEP_CHECKPOINT_BATCH_SIZE
+            : builder.getStepCheckpointBatchSize();
+    this.stepCheckpointLinger =
+        (builder.getStepCheckpointLinger() == null)
+            ? Duration.ZERO
+            : builder.getStepCheckpointLinger();
+    this.partitionedFlightLog =
+        (builder.getPartitionedFlightLog() != null) && builder.getPartitionedFlightLog();
+    this.databaseCircuitBreaker =
+        (builder.getDatabaseCircuitBreaker() != null) && builder.getDatabaseCircuitBreaker();
+    this.flightMapCodec =
+        new FlightMapCodec(
+            (builder.getFlightMapCompressionThreshold() == null)
+                ? Integer.MAX_VALUE
+                : Math.max(builder.getFlightMapCompressionThreshold(), 0),
+            (builder.getFlightMapOffloadThreshold() == null)
+                ? Integer.MAX_VALUE
+                : Math.max(builder.getFlightMapOffloadThreshold(), 1));
+    this.flightStoreType =
+        (builder.getFlightStoreType() == null)
+            ? FlightStoreType.POSTGRES
+            : builder.getFlightStoreType();
+    this.journalDirectory = builder.getJournalDirectory();
+    if (flightStoreType == FlightStoreType.JOURNAL && journalDirectory == null) {
+      throw new StairwayExecutionException("The journal flight store requires a journal directory");
+    }
+    this.journalSegmentSize =
+        (builder.getJournalSegmentSize() == null)
+            ? FlightJournal.DEFAULT_SEGMENT_BYTES
+            : Math.max(builder.getJournalSegmentSize(), MIN_JOURNAL_SEGMENT_BYTES);
+    this.readDataSource = builder.getReadDataSource();
+    this.readReplicaMaxLag =
+        (builder.getReadReplicaMaxLag() == null)
+            ? ReadReplicaRouter.DEFAULT_MAX_LAG
+            : builder.getReadReplicaMaxLag();
+    this.flightCountCacheTtl = builder.getFlightCountCacheTtl();
+    this.indexedInputFilters =
+        (builder.getIndexedInputFilters() != null) && builder.getIndexedInputFilters();
+    this.flightStatusCounters =
+        (builder.getFlightStatusCounters() != null) && builder.getFlightStatusCounters();
+    this.workQueueOutbox =
+        (builder.getWorkQueueOutbox() != null) && builder.getWorkQueueOutbox();
+    this.flightCompletionNotifications =
+        (builder.getFlightCompletionNotifications() != null)
+            && builder.getFlightCompletionNotifications();
+    this.retryWaitReleaseThreshold = builder.getRetryWaitReleaseThreshold();
+    this.flightWakeCheckInterval =
+        (builder.getFlightWakeCheckInterval() == null)
+            ? DEFAULT_FLIGHT_WAKE_CHECK_INTERVAL
+            : builder.getFlightWakeCheckInterval();
   }
 
   /**
    * Second step of initialization
    *
-   * @param dataSource database to be used to store Stairway data
+   * @param dataSource database to be used to store Stairway data; may be null with the in-memory
+   *     flight store
    * @param forceCleanStart true will drop any existing stairway data and purge the work queue.
    *     Otherwise existing flights are recovered.
    * @param migrateUpgrade true will run the migrate to upgrade the database
@@ -145,25 +282,132 @@ public class StairwayImpl implements Stairway {
       throw new StairwayShutdownException("Stairway is shut down and cannot be initialized");
     }
 
-    stairwayInstanceDao = new StairwayInstanceDao(dataSource);
-    flightDao =
+    switch (flightStoreType) {
+      case IN_MEMORY -> initializeInMemory(forceCleanStart);
+      case JOURNAL -> initializeJournal(forceCleanStart);
+      default -> initializePostgres(dataSource, forceCleanStart, migrateUpgrade);
+    }
+
+    configureThreadPools();
+    queueManager.initialize(forceCleanStart);
+    return stairwayInstanceStore.getList();
+  }
+
+  private void initializePostgres(
+      DataSource dataSource, boolean forceCleanStart, boolean migrateUpgrade)
+      throws DatabaseOperationException, MigrateException {
+    StairwayInstanceDao stairwayInstanceDao = new StairwayInstanceDao(dataSource);
+    FlightDao flightDao =
         new FlightDao(
-            dataSource, stairwayInstanceDao, exceptionSerializer, hookWrapper, stairwayName);
-    control = new ControlImpl(dataSource, flightDao, stairwayInstanceDao);
+            dataSource,
+            stairwayInstanceDao,
+            exceptionSerializer,
+            hookWrapper,
+            stairwayName,
+            workingMapSnapshotInterval);
+    flightDao.setFlightMapCodec(flightMapCodec);
+    ReadReplicaRouter readReplicaRouter =
+        new ReadReplicaRouter(
+            dataSource,
+            readDataSource,
+            readReplicaMaxLag,
+            ReadReplicaRouter.DEFAULT_CHECK_INTERVAL);
+    flightDao.setReadReplicaRouter(readReplicaRouter);
+    if (flightCountCacheTtl != null && flightCountCacheTtl.compareTo(Duration.ZERO) > 0) {
+      flightDao.setFlightCountCache(new FlightCountCache(flightCountCacheTtl));
+    }
+    flightDao.setIndexedInputFilters(indexedInputFilters);
+    if (databaseCircuitBreaker) {
+      flightDao.setCircuitBreaker(new DbCircuitBreaker());
+    }
+    if (flightStatusCounters) {
+      flightStatusCountDao = new FlightStatusCountDao(dataSource);
+      flightDao.setFlightStatusCountDao(flightStatusCountDao);
+    }
+    if (workQueueOutbox && queueManager.isWorkQueueEnabled()) {
+      flightDao.setWorkQueueOutbox(true);
+      workQueueOutboxRelay = new WorkQueueOutboxRelay(flightDao, queueManager);
+    }
+    if (flightCompletionNotifications) {
+      flightDao.setFlightCompletionNotify(true);
+      flightCompletionListener = new FlightCompletionListener(dataSource);
+    }
+    stairwayInstanceStore = stairwayInstanceDao;
+    flightStore = flightDao;
+    control =
+        new ControlImpl(
+            dataSource, readReplicaRouter, flightDao, stairwayInstanceDao, flightStatusCountDao);
 
     if (forceCleanStart) {
       // Drop all tables and recreate the database
-      Migrate migrate = new Migrate();
+      Migrate migrate = new Migrate(partitionedFlightLog, indexedInputFilters);
       migrate.initialize("stairway/db/changelog.xml", dataSource);
     } else if (migrateUpgrade) {
       // Migrate the database to a revised schema, if needed
-      Migrate migrate = new Migrate();
+      Migrate migrate = new Migrate(partitionedFlightLog, indexedInputFilters);
       migrate.upgrade("stairway/db/changelog.xml", dataSource);
     }
 
-    configureThreadPools();
-    queueManager.initialize(forceCleanStart);
-    return stairwayInstanceDao.getList();
+    if (partitionedFlightLog) {
+      flightLogPartitionDao = new FlightLogPartitionDao(dataSource);
+      flightDao.setPartitionedFlightLog(true);
+      createFlightLogPartitions();
+    }
+  }
+
+  // The in-memory store has no schema to migrate. A clean start empties it.
+  private void initializeInMemory(boolean forceCleanStart) {
+    InMemoryDatabase database = InMemoryDatabase.getInstance();
+    if (forceCleanStart) {
+      database.clear();
+    }
+    if (partitionedFlightLog) {
+      logger.warn("Partitioned flight log requires Postgres; ignored by the in-memory store");
+    }
+    if (readDataSource != null) {
+      logger.warn("Read data source requires Postgres; ignored by the in-memory store");
+    }
+    if (flightStatusCounters) {
+      logger.warn("Flight status counters require Postgres; ignored by the in-memory store");
+    }
+    if (workQueueOutbox) {
+      logger.warn("Work queue outbox requires Postgres; ignored by the in-memory store");
+    }
+    if (flightCompletionNotifications) {
+      logger.warn("Completion notifications require Postgres; ignored by the in-memory store");
+    }
+    InMemoryFlightStore inMemoryFlightStore =
+        new InMemoryFlightStore(database, exceptionSerializer, hookWrapper, stairwayName);
+    stairwayInstanceStore = new InMemoryStairwayInstanceStore(database);
+    flightStore = inMemoryFlightStore;
+    control = new InMemoryControl(database, inMemoryFlightStore);
+  }
+
+  // The journal store is the in-memory store over a database rebuilt from the journal. A clean
+  // start deletes the journal.
+  private void initializeJournal(boolean forceCleanStart) throws DatabaseOperationException {
+    flightJournal = new FlightJournal(journalDirectory, journalSegmentSize);
+    InMemoryDatabase database = flightJournal.open(forceCleanStart);
+    if (partitionedFlightLog) {
+      logger.warn("Partitioned flight log requires Postgres; ignored by the journal store");
+    }
+    if (readDataSource != null) {
+      logger.warn("Read data source requires Postgres; ignored by the journal store");
+    }
+    if (flightStatusCounters) {
+      logger.warn("Flight status counters require Postgres; ignored by the journal store");
+    }
+    if (workQueueOutbox) {
+      logger.warn("Work queue outbox requires Postgres; ignored by the journal store");
+    }
+    if (flightCompletionNotifications) {
+      logger.warn("Completion notifications require Postgres; ignored by the journal store");
+    }
+    InMemoryFlightStore inMemoryFlightStore =
+        new InMemoryFlightStore(database, exceptionSerializer, hookWrapper, stairwayName);
+    stairwayInstanceStore = new InMemoryStairwayInstanceStore(database);
+    flightStore = inMemoryFlightStore;
+    control = new InMemoryControl(database, inMemoryFlightStore);
   }
 
   /**
@@ -187,14 +431,14 @@ public class StairwayImpl implements Stairway {
 
     if (obsoleteStairways != null) {
       for (String instance : obsoleteStairways) {
-        String stairwayId = stairwayInstanceDao.lookupId(instance);
+        String stairwayId = stairwayInstanceStore.lookupId(instance);
         logger.info("Recovering stairway " + instance);
-        flightDao.disownRecovery(stairwayId);
+        flightStore.disownRecovery(stairwayId);
       }
     }
 
     // Start this Stairway instance up!
-    stairwayInstanceDao.findOrCreate(stairwayName);
+    stairwayInstanceStore.findOrCreate(stairwayName);
 
     // Recover any flights in the READY state
     recoverReady();
@@ -210,23 +454,204 @@ public class StairwayImpl implements Stairway {
    * @throws InterruptedException interruption during recovery
    */
   public void recoverStairway(String stairwayName) throws InterruptedException {
-    String stairwayId = stairwayInstanceDao.lookupId(stairwayName);
-    flightDao.disownRecovery(stairwayId);
+    String stairwayId = stairwayInstanceStore.lookupId(stairwayName);
+    flightStore.disownRecovery(stairwayId);
     recoverReady();
   }
 
   private void configureThreadPools() {
-    threadPool = new StairwayThreadPool(executor);
-
     scheduledPool = new ScheduledThreadPoolExecutor(SCHEDULED_POOL_CORE_THREADS);
     // If we have retention settings then set up the regular flight cleaner
     if (retentionCheckInterval != null && completedFlightRetention != null) {
       scheduledPool.scheduleWithFixedDelay(
-          new CompletedFlightCleaner(completedFlightRetention, flightDao),
+          new CompletedFlightCleaner(
+              completedFlightRetention,
+              flightStore,
+              retentionCleanupBatchSize,
+              retentionCleanupBatchPause,
+              retentionCleanupTimeBudget,
+              flightLogPartitionDao),
           retentionCheckInterval.toSeconds(),
           retentionCheckInterval.toSeconds(),
           TimeUnit.SECONDS);
     }
+
+    scheduledPool.scheduleWithFixedDelay(
+        DbRetry::logStatistics,
+        DB_RETRY_STATISTICS_INTERVAL.toSeconds(),
+        DB_RETRY_STATISTICS_INTERVAL.toSeconds(),
+        TimeUnit.SECONDS);
+
+    // If the flight log is partitioned, keep creating the partitions ahead of time
+    if (flightLogPartitionDao != null) {
+      scheduledPool.scheduleWithFixedDelay(
+          this::createFlightLogPartitions,
+          FLIGHT_LOG_PARTITION_CHECK_INTERVAL.toSeconds(),
+          FLIGHT_LOG_PARTITION_CHECK_INTERVAL.toSeconds(),
+          TimeUnit.SECONDS);
+    }
+
+    // If we keep flight status counters, correct any drift now and then. The first run counts the
+    // flights that existed before the counters were kept. A run is skipped while another instance
+    // is reconciling.
+    if (flightStatusCountDao != null) {
+      scheduledPool.scheduleWithFixedDelay(
+          this::reconcileFlightStatusCounts,
+          0,
+          FLIGHT_STATUS_COUNT_RECONCILE_INTERVAL.toSeconds(),
+          TimeUnit.SECONDS);
+    }
+
+    if (workQueueOutboxRelay != null) {
+      workQueueOutboxRelay.start();
+    }
+
+    // Resume flights waiting until a time once they are due
+    scheduledPool.scheduleWithFixedDelay(
+        this::wakeDueFlights,
+        flightWakeCheckInterval.toMillis(),
+        flightWakeCheckInterval.toMillis(),
+        TimeUnit.MILLISECONDS);
+
+    flightCompletionWaiters =
+        new FlightCompletionWaiters(
+            flightStore,
+            scheduledPool,
+            (flightCompletionListener != null)
+                ? AWAIT_RECHECK_INTERVAL_NOTIFIED
+                : AWAIT_RECHECK_INTERVAL);
+    if (flightCompletionListener != null) {
+      flightCompletionListener.start(flightCompletionWaiters);
+    }
+
+    // If long retry waits release their threads, the scheduled pool resumes the waiting flights
+    if (retryWaitReleaseThreshold != null) {
+      deferredRetries =
+          new DeferredRetries(scheduledPool, this::resumeFlight, this::isQuietingDown);
+    }
+
+    // If group commit is requested, start the step checkpoint writer. Group commit batches
+    // Postgres transactions, so the in-memory store does not use it.
+    if (stepCheckpointBatchSize > 1 && flightStore instanceof FlightDao flightDao) {
+      stepCheckpointWriter =
+          new StepCheckpointWriter(flightDao, stepCheckpointBatchSize, stepCheckpointLinger);
+      flightDao.setStepCheckpointWriter(stepCheckpointWriter);
+      stepCheckpointWriter.start();
+      scheduledPool.scheduleWithFixedDelay(
+          stepCheckpointWriter::logStatistics,
+          STEP_CHECKPOINT_STATISTICS_INTERVAL.toSeconds(),
+          STEP_CHECKPOINT_STATISTICS_INTERVAL.toSeconds(),
+          TimeUnit.SECONDS);
+    }
+  }
+
+  // Failing to create partitions is not fatal: until they exist, log rows go to the default
+  // partitions and are cleaned up by row.
+  private void createFlightLogPartitions() {
+    try {
+      flightLogPartitionDao.createPartitions(FLIGHT_LOG_PARTITION_DAYS_AHEAD);
+    } catch (DatabaseOperationException ex) {
+      logger.warn("Error creating flight log partitions", ex);
+    } catch (InterruptedException ex) {
+      logger.info("Flight log partition creation interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Failing to reconcile is not fatal: the counts keep being updated and the next run corrects them
+  private void reconcileFlightStatusCounts() {
+    try {
+      flightStatusCountDao.reconcile();
+    } catch (DatabaseOperationException ex) {
+      logger.warn("Error reconciling flight status counts", ex);
+    } catch (InterruptedException ex) {
+      logger.info("Flight status count reconciliation interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Claim and run waiting flights whose wake time has passed, as many as there is room for.
+  // Failing to claim them is not fatal: they are still due at the next check. Nothing may escape,
+  // since an exception would cancel the scheduled checks.
+  private void wakeDueFlights() {
+    try {
+      while (!isQuietingDown()) {
+        int room = Math.min(localRoom(), FLIGHT_WAKE_BATCH_SIZE);
+        if (room == 0) {
+          return;
+        }
+        List<FlightContextImpl> flightContexts =
+            flightStore.resumeDueFlights(stairwayName, Instant.now(), room);
+        for (FlightContextImpl flightContext : flightContexts) {
+          try {
+            launchResumedFlight(flightContext);
+          } catch (RuntimeException ex) {
+            // The rest of the claimed flights still have to run
+            logger.error("Failed to launch due flight " + flightContext.flightDesc(), ex);
+            disownDueFlight(flightContext);
+          }
+        }
+        if (flightContexts.size() < room) {
+          return;
+        }
+      }
+    } catch (RuntimeException ex) {
+      logger.warn("Error waking due flights", ex);
+    } catch (InterruptedException ex) {
+      logger.info("Waking due flights interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Give a claimed flight that could not be launched back to the wake timers, due again after one
+  // check interval, so this or another instance can try it again.
+  private void disownDueFlight(FlightContextImpl flightContext) throws InterruptedException {
+    flightContext.setFlightStatus(FlightStatus.WAITING);
+    flightContext.setWakeTime(Instant.now().plus(flightWakeCheckInterval));
+    try {
+      flightStore.exit(flightContext);
+    } catch (StairwayException ex) {
+      // The flight stays claimed by this instance until it is recovered
+      logger.error("Failed to disown due flight " + flightContext.flightDesc(), ex);
+    }
+  }
+
+  // Stop the step checkpoint writer once the flight threads are done with it
+  private void shutdownStepCheckpointWriter() throws InterruptedException {
+    if (stepCheckpointWriter != null) {
+      stepCheckpointWriter.shutdown();
+    }
+  }
+
+  // Stop the outbox relay once the flight threads can no longer yield flights to the queue
+  private void shutdownWorkQueueOutboxRelay() throws InterruptedException {
+    if (workQueueOutboxRelay != null) {
+      workQueueOutboxRelay.shutdown();
+    }
+  }
+
+  // Fail the remaining flight waits and stop listening for completions
+  private void shutdownFlightCompletionWaiters() throws InterruptedException {
+    if (flightCompletionListener != null) {
+      flightCompletionListener.shutdown();
+    }
+    if (flightCompletionWaiters != null) {
+      flightCompletionWaiters.shutdown();
+    }
+  }
+
+  // Stop the retry waits; the flights must be disowned before the thread pool stops
+  private List<FlightRunner> releaseDeferredRetries() {
+    if (deferredRetries == null) {
+      return List.of();
+    }
+    return deferredRetries.releaseAll();
+  }
+
+  private void closeFlightJournal() {
+    if (flightJournal != null) {
+      flightJournal.close();
+    }
   }
 
   /**
@@ -252,10 +677,20 @@ public class StairwayImpl implements Stairway {
     quietingDown.set(true);
     queueManager.shutdown(workQueueWaitSeconds);
 
-    ThreadPoolExecutor threadPoolExecutor = executor.getThreadPoolExecutor();
-    threadPoolExecutor.shutdown();
+    // Flights waiting to retry run once more, to be disowned at their start like any other flight
+    for (FlightRunner flightRunner : releaseDeferredRetries()) {
+      resumeFlight(flightRunner);
+    }
+    threadPool.shutdown();
     try {
-      return threadPoolExecutor.awaitTermination(threadPoolWaitSeconds, unit);
+      boolean quieted = threadPool.awaitTermination(threadPoolWaitSeconds, unit);
+      if (quieted) {
+        shutdownStepCheckpointWriter();
+        shutdownWorkQueueOutboxRelay();
+        shutdownFlightCompletionWaiters();
+        closeFlightJournal();
+      }
+      return quieted;
     } catch (InterruptedException ex) {
       return false;
     }
@@ -275,8 +710,8 @@ public class StairwayImpl implements Stairway {
       throws StairwayException, InterruptedException {
     quietingDown.set(true);
     queueManager.shutdownNow();
-    ThreadPoolExecutor threadPoolExecutor = executor.getThreadPoolExecutor();
-    List<Runnable> neverStartedFlights = threadPoolExecutor.shutdownNow();
+    List<Runnable> neverStartedFlights = new ArrayList<>(threadPool.shutdownNow());
+    neverStartedFlights.addAll(releaseDeferredRetries());
     for (Runnable flightRunnable : neverStartedFlights) {
       FlightRunner flightRunner = (FlightRunner) flightRunnable;
       FlightContextImpl flightContext = flightRunner.getFlightContext();
@@ -284,13 +719,21 @@ public class StairwayImpl implements Stairway {
       try {
         logger.info("Requeue never-started flight: " + flightDesc);
         flightContext.setFlightStatus(FlightStatus.READY);
-        flightDao.exit(flightContext);
+        flightStore.exit(flightContext);
       } catch (DatabaseOperationException | StairwayExecutionException ex) {
         // Not much to do on termination
         logger.warn("Unable to requeue never-started flight: " + flightDesc, ex);
       }
+      flightRunner.endUnrunFlight();
     }
-    return threadPoolExecutor.awaitTermination(waitTimeout, unit);
+    boolean terminated = threadPool.awaitTermination(waitTimeout, unit);
+    shutdownStepCheckpointWriter();
+    shutdownWorkQueueOutboxRelay();
+    shutdownFlightCompletionWaiters();
+    if (terminated) {
+      closeFlightJournal();
+    }
+    return terminated;
   }
 
   /**
@@ -355,7 +798,7 @@ public class StairwayImpl implements Stairway {
     if (queueManager.isWorkQueueEnabled() && shouldQueue) {
       // Submit to the queue
       context.setFlightStatus(FlightStatus.READY);
-      flightDao.create(context);
+      flightStore.create(context);
       queueFlight(context);
     } else {
       // Submit directly - not allowed if we are shutting down
@@ -365,7 +808,7 @@ public class StairwayImpl implements Stairway {
       }
 
       // Give the flight context the public stairway object
-      flightDao.create(context);
+      flightStore.create(context);
       launchFlight(context);
     }
   }
@@ -399,6 +842,127 @@ public class StairwayImpl implements Stairway {
     submit(flightId, flightClass, inputParameters, shouldQueue, debugInfo);
   }
 
+  /**
+   * Submit many flights at once. The flights are made first; a flight that cannot be made, or
+   * repeats an id earlier in the batch, fails on its own. The rest are created in the flight store
+   * together. The created flights that go on the queue are published together, and the others are
+   * launched on this instance.
+   *
+   * <p>Each flight is queued or launched as in {@link #submit}. Instead of asking whether there is
+   * space for each flight, we count the room in the thread pool and queue the flights beyond it.
+   *
+   * @param submissions flights to submit
+   * @return result for each submission, in the order of the submissions
+   * @throws StairwayException other Stairway errors
+   * @throws StairwayShutdownException Stairway is shutting down and there is no work queue
+   * @throws DatabaseOperationException failure persisting the flights to the database
+   * @throws StairwayExecutionException failure queuing the flights
+   * @throws InterruptedException this thread was interrupted
+   */
+  @Override
+  public List<FlightSubmissionResult> submitBatch(List<FlightSubmission> submissions)
+      throws StairwayException,
+          StairwayShutdownException,
+          DatabaseOperationException,
+          StairwayExecutionException,
+          InterruptedException {
+    boolean quietingDown = isQuietingDown();
+    if (quietingDown && !queueManager.isWorkQueueEnabled()) {
+      throw new StairwayShutdownException(
+          "Stairway is shutting down and cannot accept a new flight");
+    }
+
+    FlightSubmissionResult[] results = new FlightSubmissionResult[submissions.size()];
+    List<FlightContextImpl> contexts = new ArrayList<>();
+    List<Integer> positions = new ArrayList<>();
+    Set<String> batchFlightIds = new HashSet<>();
+    int localRoom = localRoom();
+    for (int i = 0; i < submissions.size(); i++) {
+      FlightSubmission submission = submissions.get(i);
+      String flightId = submission.getFlightId();
+      if (!batchFlightIds.add(flightId)) {
+        results[i] =
+            FlightSubmissionResult.failed(
+                flightId, new DuplicateFlightIdException("Duplicate flightID " + flightId));
+        continue;
+      }
+      if (submission.getFlightClass() == null || submission.getInputParameters() == null) {
+        results[i] =
+            FlightSubmissionResult.failed(
+                flightId,
+                new MakeFlightException(
+                    "Must supply non-null flightClass and inputParameters to submit"));
+        continue;
+      }
+
+      FlightContextImpl context;
+      try {
+        Flight flight =
+            FlightFactory.makeFlight(
+                submission.getFlightClass(),
+                submission.getInputParameters(),
+                applicationContext);
+        context = new FlightContextImpl(this, flight, flightId, submission.getDebugInfo());
+      } catch (MakeFlightException ex) {
+        results[i] = FlightSubmissionResult.failed(flightId, ex);
+        continue;
+      }
+
+      if (queueManager.isWorkQueueEnabled()
+          && (submission.getShouldQueue() || quietingDown || localRoom <= 0)) {
+        context.setFlightStatus(FlightStatus.READY);
+      } else {
+        localRoom--;
+      }
+      contexts.add(context);
+      positions.add(i);
+    }
+
+    Set<String> created = contexts.isEmpty() ? Set.of() : flightStore.createBatch(contexts);
+
+    List<FlightContextImpl> queueContexts = new ArrayList<>();
+    List<FlightContextImpl> launchContexts = new ArrayList<>();
+    for (int i = 0; i < contexts.size(); i++) {
+      FlightContextImpl context = contexts.get(i);
+      String flightId = context.getFlightId();
+      boolean queued = (context.getFlightStatus() == FlightStatus.READY);
+      if (!created.contains(flightId)) {
+        results[positions.get(i)] =
+            FlightSubmissionResult.failed(
+                flightId, new DuplicateFlightIdException("Duplicate flightID " + flightId));
+      } else {
+        results[positions.get(i)] = FlightSubmissionResult.submitted(flightId, queued);
+        if (queued) {
+          queueContexts.add(context);
+        } else {
+          launchContexts.add(context);
+        }
+      }
+    }
+
+    logger.info(
+        "Submitted batch of "
+            + submissions.size()
+            + " flights: "
+            + launchContexts.size()
+            + " launched, "
+            + queueContexts.size()
+            + " queued");
+    if (!queueContexts.isEmpty()) {
+      queueFlights(queueContexts);
+    }
+    for (FlightContextImpl context : launchContexts) {
+      launchFlight(context);
+    }
+    return Arrays.asList(results);
+  }
+
+  // The number of flights the thread pool can take before spaceAvailable() says there is no room
+  private int localRoom() {
+    return Math.max(0, threadPool.getMaxPoolSize() - threadPool.getActiveCount())
+        + Math.max(0, maxQueuedFlights - threadPool.getQueueSize());
+  }
+
   /**
    * This code trinket is used by submit and WorkQueueListener to decide if there is room It is
    * public so WorkQueueListener can use it.
@@ -408,15 +972,15 @@ public class StairwayImpl implements Stairway {
   public boolean spaceAvailable() {
     logger.debug(
         "Space available? active: "
-            + executor.getActiveCount()
+            + threadPool.getActiveCount()
             + " of max: "
-            + executor.getMaxPoolSize()
+            + threadPool.getMaxPoolSize()
             + " queueSize: "
-            + executor.getQueueSize()
+            + threadPool.getQueueSize()
             + " of max: "
             + maxQueuedFlights);
-    return ((executor.getActiveCount() < executor.getMaxPoolSize())
-        || (executor.getQueueSize() < maxQueuedFlights));
+    return ((threadPool.getActiveCount() < threadPool.getMaxPoolSize())
+        || (threadPool.getQueueSize() < maxQueuedFlights));
   }
 
   /**
@@ -443,11 +1007,17 @@ public class StairwayImpl implements Stairway {
     }
 
     // The DAO fills in the persistent fields in the flightContext
-    FlightContextImpl flightContext = flightDao.resume(stairwayName, flightId);
+    FlightContextImpl flightContext = flightStore.resume(stairwayName, flightId);
     if (flightContext == null) {
       return false;
     }
 
+    launchResumedFlight(flightContext);
+    return true;
+  }
+
+  // Run a flight this instance has claimed
+  private void launchResumedFlight(FlightContextImpl flightContext) {
     Flight flight =
         FlightFactory.makeFlightFromName(
             flightContext.getFlightClassName(),
@@ -457,8 +1027,6 @@ public class StairwayImpl implements Stairway {
     // With the flight, we can complete building the flight context
     flightContext.setDynamicContext(this, flight);
     launchFlight(flightContext);
-
-    return true;
   }
 
   /**
@@ -477,13 +1045,13 @@ public class StairwayImpl implements Stairway {
       throws StairwayException, InterruptedException {
 
     if (!forceDelete) {
-      FlightState state = flightDao.getFlightState(flightId);
+      FlightState state = flightStore.getFlightState(flightId);
       if (state.getFlightStatus() == FlightStatus.RUNNING) {
         throw new DatabaseOperationException("Cannot delete an active flight");
       }
     }
 
-    flightDao.delete(flightId);
+    flightStore.delete(flightId);
   }
 
   /**
@@ -525,6 +1093,20 @@ public class StairwayImpl implements Stairway {
     throw new FlightWaitTimedOutException("Flight did not complete in the allowed wait time");
   }
 
+  /**
+   * Wait for a flight to complete. The returned future is completed when the flight completes on
+   * this instance or, with completion notifications, on any instance. Otherwise, completions on
+   * other instances are seen by a periodic check.
+   *
+   * @param flightId the flight to wait for
+   * @param timeout how long to wait
+   * @return future of the final flight state
+   */
+  @Override
+  public CompletableFuture<FlightState> awaitFlight(String flightId, Duration timeout) {
+    return flightCompletionWaiters.await(flightId, timeout);
+  }
+
   public Control getControl() {
     return control;
   }
@@ -544,7 +1126,7 @@ public class StairwayImpl implements Stairway {
           FlightNotFoundException,
           DatabaseOperationException,
           InterruptedException {
-    return flightDao.getFlightState(flightId);
+    return flightStore.getFlightState(flightId);
   }
 
   /**
@@ -553,7 +1135,7 @@ public class StairwayImpl implements Stairway {
    */
   public List<FlightState> getFlights(int offset, int limit, FlightFilter filter)
       throws StairwayException, DatabaseOperationException, InterruptedException {
-    return flightDao.getFlights(offset, limit, filter);
+    return flightStore.getFlights(offset, limit, filter);
   }
 
   /**
@@ -563,7 +1145,7 @@ public class StairwayImpl implements Stairway {
   public FlightEnumeration getFlights(
       @Nullable String nextPageToken, @Nullable Integer limit, @Nullable FlightFilter filter)
       throws StairwayException, DatabaseOperationException, InterruptedException {
-    return flightDao.getFlights(nextPageToken, limit, filter);
+    return flightStore.getFlights(nextPageToken, limit, filter);
   }
 
   /**
@@ -579,8 +1161,8 @@ public class StairwayImpl implements Stairway {
   }
 
   // Exposed for unit testing
-  FlightDao getFlightDao() {
-    return flightDao;
+  FlightStore getFlightStore() {
+    return flightStore;
   }
 
   void exitFlight(FlightContextImpl context)
@@ -589,7 +1171,14 @@ public class StairwayImpl implements Stairway {
           StairwayExecutionException,
           InterruptedException {
     // save the flight state in the database
-    flightDao.exit(context);
+    flightStore.exit(context);
+
+    FlightStatus exitStatus = context.getFlightStatus();
+    if (exitStatus == FlightStatus.SUCCESS
+        || exitStatus == FlightStatus.ERROR
+        || exitStatus == FlightStatus.FATAL) {
+      flightCompletionWaiters.flightCompleted(context.getFlightId());
+    }
 
     if (context.getFlightStatus() == FlightStatus.READY && queueManager.isWorkQueueEnabled()) {
       queueFlight(context);
@@ -617,8 +1206,33 @@ public class StairwayImpl implements Stairway {
     // Then we queue, then we mark as queued. Another Stairway looking for orphans, will find the
     // READY and queue it. Putting a flight on the queue twice is not a problem. Stairway
     // instances race to see who gets to run it.
+    //
+    // With the outbox, the flight store wrote the flight to the outbox in the transaction that
+    // made it READY, and the relay does the queueing and marking.
+    if (workQueueOutboxRelay != null) {
+      workQueueOutboxRelay.wakeUp();
+      return;
+    }
     queueManager.queueReadyFlight(flightContext.getFlightId());
-    flightDao.queued(flightContext);
+    flightStore.queued(flightContext);
+  }
+
+  // The batch form of queueFlight: the flights are published together and marked queued together
+  private void queueFlights(List<FlightContextImpl> flightContexts)
+      throws StairwayException,
+          DatabaseOperationException,
+          StairwayExecutionException,
+          InterruptedException {
+    if (workQueueOutboxRelay != null) {
+      workQueueOutboxRelay.wakeUp();
+      return;
+    }
+    List<String> flightIds = new ArrayList<>(flightContexts.size());
+    for (FlightContextImpl flightContext : flightContexts) {
+      flightIds.add(flightContext.getFlightId());
+    }
+    queueManager.queueReadyFlights(flightIds);
+    flightStore.queuedBatch(flightContexts);
   }
 
   /**
@@ -639,10 +1253,16 @@ public class StairwayImpl implements Stairway {
    * @throws StairwayExecutionException stairway error
    */
   void recoverReady() throws StairwayException, InterruptedException {
-    List<String> readyFlightList = flightDao.getReadyFlights();
+    if (workQueueOutboxRelay != null && flightStore instanceof FlightDao flightDao) {
+      int count = flightDao.storeReadyFlightsInOutbox();
+      logger.info("Recovering " + count + " ready flights through the outbox");
+      workQueueOutboxRelay.wakeUp();
+      return;
+    }
+    List<String> readyFlightList = flightStore.getReadyFlights();
     for (String flightId : readyFlightList) {
       if (queueManager.isWorkQueueEnabled()) {
-        FlightContextImpl flightContext = flightDao.makeFlightContextById(flightId);
+        FlightContextImpl flightContext = flightStore.makeFlightContextById(flightId);
         queueFlight(flightContext);
       } else {
         resume(flightId);
@@ -660,14 +1280,46 @@ public class StairwayImpl implements Stairway {
     if (logger.isDebugEnabled()) {
       logger.debug(
           "Stairway thread pool: "
-              + executor.getActiveCount()
+              + threadPool.getActiveCount()
               + " active from pool of "
-              + executor.getPoolSize());
+              + threadPool.getPoolSize());
     }
     logger.info("Launching flight " + flightContext.flightDesc());
     threadPool.submitWithMdcAndFlightContext(runner, flightContext);
   }
 
+  /**
+   * Decide whether a flight waiting to retry a step should release its thread for the wait
+   *
+   * @param delay time until the retry
+   * @return true if the flight should stop and be handed to {@link #deferRetry}
+   */
+  boolean shouldDeferRetry(Duration delay) {
+    return deferredRetries != null
+        && delay.compareTo(retryWaitReleaseThreshold) >= 0
+        && !isQuietingDown();
+  }
+
+  /**
+   * Hold a flight that stopped to wait for a step retry, and resume it when the wait is over. The
+   * flight remains running and owned by this instance while it waits.
+   *
+   * @param flightRunner runner of the flight, positioned at the step to retry
+   * @param delay time until the retry
+   * @return true if the flight is waiting; false if Stairway is quieting down and the caller must
+   *     disown the flight
+   */
+  boolean deferRetry(FlightRunner flightRunner, Duration delay) {
+    return deferredRetries != null && deferredRetries.defer(flightRunner, delay);
+  }
+
+  // Run a flight again with the runner that stopped it, so it continues where it left off
+  private void resumeFlight(FlightRunner flightRunner) {
+    FlightContextImpl flightContext = flightRunner.getFlightContext();
+    logger.info("Resuming flight " + flightContext.flightDesc());
+    threadPool.submitWithMdcAndFlightContext(flightRunner, flightContext);
+  }
+
   HookWrapper getHookWrapper() {
     return hookWrapper;
   }
@@ -16,7 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** Database operations on the Stairway instance table */
-class StairwayInstanceDao {
+class StairwayInstanceDao implements StairwayInstanceStore {
   private static final Logger logger = LoggerFactory.getLogger(StairwayInstanceDao.class);
   private static final String STAIRWAY_INSTANCE_TABLE = "stairwayinstance";
 
@@ -42,7 +42,8 @@ class StairwayInstanceDao {
    * @throws DatabaseOperationException on database errors
    * @throws InterruptedException on thread shutdown
    */
-  String findOrCreate(String stairwayName)
+  @Override
+  public String findOrCreate(String stairwayName)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     return DbRetry.retry("stairwayInstance.findOrCreate", () -> findOrCreateInner(stairwayName));
   }
@@ -88,7 +89,8 @@ class StairwayInstanceDao {
    * @throws DatabaseOperationException if the stairway instance was not found
    * @throws InterruptedException on thread shutdown
    */
-  String lookupId(String stairwayName)
+  @Override
+  public String lookupId(String stairwayName)
       throws StairwayException, DatabaseOperationException, InterruptedException {
     return DbRetry.retry("stairwayInstance.lookupId", () -> lookupIdInner(stairwayName));
   }
@@ -116,7 +118,8 @@ class StairwayInstanceDao {
    * @throws DatabaseOperationException on SQL exception
    * @throws InterruptedException on thread shutdown
    */
-  List<String> getList()
+  @Override
+  public List<String> getList()
       throws StairwayException, DatabaseOperationException, InterruptedException {
     return DbRetry.retry("stairwayInstance.getList", this::getListInner);
   }
@@ -0,0 +1,45 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.exception.StairwayException;
+import java.util.List;
+
+/**
+ * Storage for the Stairway instances that share a flight store. {@link StairwayInstanceDao} stores
+ * them in Postgres; {@link InMemoryStairwayInstanceStore} keeps them in memory.
+ */
+interface StairwayInstanceStore {
+
+  /**
+   * Find or create a stairway instance
+   *
+   * @param stairwayName string name of this stairway instance; must be unique across stairways
+   *     sharing the store
+   * @return id for this stairway instance
+   * @throws StairwayException other Stairway errors
+   * @throws DatabaseOperationException on storage errors
+   * @throws InterruptedException on thread shutdown
+   */
+  String findOrCreate(String stairwayName)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * Given a stairway name, return the stairway id.
+   *
+   * @param stairwayName a string name for a stairway instance
+   * @return the String id of the stairway instance; null if there is no such instance
+   * @throws StairwayException other Stairway errors
+   * @throws DatabaseOperationException on storage errors
+   * @throws InterruptedException on thread shutdown
+   */
+  String lookupId(String stairwayName)
+      throws StairwayException, DatabaseOperationException, InterruptedException;
+
+  /**
+   * @return list of the names of the stairway instances known to the store
+   * @throws StairwayException other Stairway errors
+   * @throws DatabaseOperationException on storage errors
+   * @throws InterruptedException on thread shutdown
+   */
+  List<String> getList() throws StairwayException, DatabaseOperationException, InterruptedException;
+}
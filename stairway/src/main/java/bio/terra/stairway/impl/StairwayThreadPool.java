@@ -1,11 +1,18 @@
 package bio.terra.stairway.impl;
 
 import bio.terra.stairway.FlightContext;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.MDC;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+/**
+ * The threads Stairway runs flights on. This class runs them on a {@link ThreadPoolTaskExecutor};
+ * {@link VirtualThreadPool} runs them on virtual threads. Either way, a flight runs with the MDC of
+ * the thread that launched it, plus its flight context.
+ */
 class StairwayThreadPool {
 
   private final ThreadPoolTaskExecutor executor;
@@ -36,9 +43,74 @@ class StairwayThreadPool {
             MdcUtils.overwriteContext(initialContext);
           }
         };
+    return submit(flightRunner, flightRunnerWithMdc);
+  }
+
+  /**
+   * Run a flight on the pool
+   *
+   * @param flightRunner the flight
+   * @param flightRunnerWithMdc the flight, wrapped to run with its MDC
+   * @return Future of the flight
+   */
+  protected Future<?> submit(Runnable flightRunner, Runnable flightRunnerWithMdc) {
     return executor.submit(flightRunnerWithMdc);
   }
 
+  /**
+   * @return number of flights running
+   */
+  int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return number of threads in the pool
+   */
+  int getPoolSize() {
+    return executor.getPoolSize();
+  }
+
+  /**
+   * @return maximum number of flights that run at once
+   */
+  int getMaxPoolSize() {
+    return executor.getMaxPoolSize();
+  }
+
+  /**
+   * @return number of flights waiting for a thread
+   */
+  int getQueueSize() {
+    return executor.getQueueSize();
+  }
+
+  /** Stop taking flights; the flights already submitted still run */
+  void shutdown() {
+    executor.getThreadPoolExecutor().shutdown();
+  }
+
+  /**
+   * Stop taking flights and interrupt the running ones
+   *
+   * @return the flights that never started
+   */
+  List<Runnable> shutdownNow() {
+    return executor.getThreadPoolExecutor().shutdownNow();
+  }
+
+  /**
+   * Wait for the flights to end after a shutdown
+   *
+   * @param timeout how long to wait
+   * @param unit unit of the timeout
+   * @return true if the flights ended; false if the wait timed out
+   * @throws InterruptedException interrupted while waiting
+   */
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.getThreadPoolExecutor().awaitTermination(timeout, unit);
+  }
+
   private void initializeFlightMdc(
       Map<String, String> callingThreadContext, FlightContext flightContext) {
     // Any leftover context on the thread will be fully overwritten:
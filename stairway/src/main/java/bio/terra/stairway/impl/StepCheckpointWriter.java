@@ -0,0 +1,233 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.exception.StairwayException;
+import bio.terra.stairway.exception.StairwayExecutionException;
+import bio.terra.stairway.exception.StairwayShutdownException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The StepCheckpointWriter implements group commit of step records. Flight runner threads hand
+ * their flight context to {@link #write} and block until the step record is durable. A single
+ * writer thread collects the pending records from all flights and stores them in one transaction.
+ *
+ * <p>A batch is closed when it reaches the maximum batch size or when the maximum linger time has
+ * passed since its first record arrived. With a linger of zero, the writer takes whatever has
+ * queued up while the previous batch was committing; under load that is already a useful batch.
+ *
+ * <p>If a batch fails, the writer stores its records one at a time, so a problem with one flight
+ * does not fail the other flights in the batch. Whatever goes wrong with a batch, every flight in
+ * it is told the outcome, so no flight runner is left waiting on the writer.
+ */
+class StepCheckpointWriter implements Runnable {
+  private static final Logger logger = LoggerFactory.getLogger(StepCheckpointWriter.class);
+
+  private final FlightDao flightDao;
+  private final int maxBatchSize;
+  private final Duration maxLinger;
+  private final BlockingQueue<PendingCheckpoint> queue = new LinkedBlockingQueue<>();
+  private volatile boolean running;
+  private Thread writerThread;
+
+  // Throughput metrics
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong recordCount = new AtomicLong();
+  private final AtomicLong fallbackBatchCount = new AtomicLong();
+  private final AtomicLong commitNanos = new AtomicLong();
+  private final AtomicInteger largestBatch = new AtomicInteger();
+
+  /** A step record waiting for the writer, and the future its flight runner is waiting on */
+  private record PendingCheckpoint(
+      FlightContextImpl flightContext, CompletableFuture<Void> future) {}
+
+  StepCheckpointWriter(FlightDao flightDao, int maxBatchSize, Duration maxLinger) {
+    this.flightDao = flightDao;
+    this.maxBatchSize = maxBatchSize;
+    this.maxLinger = maxLinger;
+  }
+
+  void start() {
+    running = true;
+    writerThread = new Thread(this, "stairway-checkpoint-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    logger.info(
+        "Step checkpoint group commit started: maxBatchSize={} maxLinger={}",
+        maxBatchSize,
+        maxLinger);
+  }
+
+  /**
+   * Stop the writer thread. Records that are still queued fail with a shutdown exception. Records
+   * written after shutdown are written directly by the calling thread.
+   *
+   * @throws InterruptedException interrupted waiting for the writer thread to end
+   */
+  void shutdown() throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    writerThread.interrupt();
+    writerThread.join();
+
+    List<PendingCheckpoint> abandoned = new ArrayList<>();
+    queue.drainTo(abandoned);
+    failBatch(abandoned, new StairwayShutdownException("Step checkpoint writer is shut down"));
+    logStatistics();
+  }
+
+  /**
+   * Write the step record of a flight and wait until it is durable
+   *
+   * @param flightContext description of the flight
+   * @throws StairwayException failure writing the record
+   * @throws InterruptedException thread shutdown
+   */
+  void write(FlightContextImpl flightContext) throws StairwayException, InterruptedException {
+    if (!running) {
+      flightDao.stepBatch(List.of(flightContext));
+      return;
+    }
+
+    PendingCheckpoint pending = new PendingCheckpoint(flightContext, new CompletableFuture<>());
+    queue.put(pending);
+    // Cover the race with shutdown: if we can take our record back, nobody else will write it
+    if (!running && queue.remove(pending)) {
+      flightDao.stepBatch(List.of(flightContext));
+      return;
+    }
+
+    try {
+      pending.future().get();
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof StairwayException stairwayException) {
+        throw stairwayException;
+      }
+      throw new StairwayExecutionException("Step checkpoint write failed", ex.getCause());
+    }
+  }
+
+  @Override
+  public void run() {
+    List<PendingCheckpoint> batch = new ArrayList<>(maxBatchSize);
+    while (running) {
+      try {
+        fillBatch(batch);
+        writeBatch(batch);
+      } catch (InterruptedException ex) {
+        failBatch(batch, new StairwayShutdownException("Step checkpoint writer is shut down"));
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException ex) {
+        // Fail this batch and keep writing later ones
+        logger.error("Unexpected failure writing step checkpoints", ex);
+        failBatch(batch, ex);
+      } catch (Error err) {
+        // The writer cannot go on; flights write their own records from now on
+        running = false;
+        failBatch(batch, err);
+        List<PendingCheckpoint> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        failBatch(abandoned, err);
+        throw err;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  // Wait for the first record, then collect more until the batch is full or the linger expires
+  private void fillBatch(List<PendingCheckpoint> batch) throws InterruptedException {
+    batch.add(queue.take());
+    long deadline = System.nanoTime() + maxLinger.toNanos();
+    while (batch.size() < maxBatchSize) {
+      if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return;
+      }
+      PendingCheckpoint next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+    }
+  }
+
+  private void writeBatch(List<PendingCheckpoint> batch) throws InterruptedException {
+    List<FlightContextImpl> flightContexts =
+        batch.stream().map(PendingCheckpoint::flightContext).toList();
+    long startNanos = System.nanoTime();
+    try {
+      flightDao.stepBatch(flightContexts);
+      commitNanos.addAndGet(System.nanoTime() - startNanos);
+      batchCount.incrementAndGet();
+      recordCount.addAndGet(batch.size());
+      largestBatch.accumulateAndGet(batch.size(), Math::max);
+      logger.debug("Committed {} step checkpoints", batch.size());
+      batch.forEach(pending -> pending.future().complete(null));
+    } catch (RuntimeException ex) {
+      logger.warn(
+          "Group commit of {} step checkpoints failed; writing them one at a time",
+          batch.size(),
+          ex);
+      fallbackBatchCount.incrementAndGet();
+      for (PendingCheckpoint pending : batch) {
+        try {
+          flightDao.stepBatch(List.of(pending.flightContext()));
+          recordCount.incrementAndGet();
+          pending.future().complete(null);
+        } catch (RuntimeException singleEx) {
+          pending.future().completeExceptionally(singleEx);
+        }
+      }
+    }
+  }
+
+  private void failBatch(List<PendingCheckpoint> batch, Throwable ex) {
+    batch.forEach(pending -> pending.future().completeExceptionally(ex));
+  }
+
+  /** Log the throughput of the writer since it started */
+  void logStatistics() {
+    long batches = batchCount.get();
+    logger.info(
+        "Step checkpoint group commit: batches={} records={} averageBatch={} largestBatch={}"
+            + " averageCommitMs={} fallbackBatches={}",
+        batches,
+        recordCount.get(),
+        (batches == 0) ? 0 : recordCount.get() / batches,
+        largestBatch.get(),
+        (batches == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(commitNanos.get() / batches),
+        fallbackBatchCount.get());
+  }
+
+  long getBatchCount() {
+    return batchCount.get();
+  }
+
+  long getRecordCount() {
+    return recordCount.get();
+  }
+
+  long getFallbackBatchCount() {
+    return fallbackBatchCount.get();
+  }
+
+  int getLargestBatch() {
+    return largestBatch.get();
+  }
+}
@@ -0,0 +1,116 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.exception.StairwayExecutionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each flight on its own virtual thread. There is no pool to size; a fair semaphore admits
+ * up to maxParallelFlights flights at once, in the order they were submitted. A flight waiting for
+ * admission is parked on its virtual thread, and counts as queued.
+ *
+ * <p>Stairway is built for Java 17, so the virtual thread executor is looked up at run time.
+ */
+class VirtualThreadPool extends StairwayThreadPool {
+  static final int DEFAULT_MAX_PARALLEL_FLIGHTS = 1000;
+
+  private final ExecutorService executorService;
+  private final int maxParallelFlights;
+  private final Semaphore admission;
+  // Flights submitted and not yet admitted
+  private final Set<Runnable> waitingFlights = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param maxParallelFlights flights that may run at once; if null or not positive, defaults to
+   *     {@link #DEFAULT_MAX_PARALLEL_FLIGHTS}
+   * @throws StairwayExecutionException virtual threads are not available in this JVM
+   */
+  VirtualThreadPool(Integer maxParallelFlights) throws StairwayExecutionException {
+    super(null);
+    this.maxParallelFlights =
+        (maxParallelFlights == null || maxParallelFlights <= 0)
+            ? DEFAULT_MAX_PARALLEL_FLIGHTS
+            : maxParallelFlights;
+    this.admission = new Semaphore(this.maxParallelFlights, true);
+    this.executorService = makeVirtualThreadExecutor();
+  }
+
+  private static ExecutorService makeVirtualThreadExecutor() throws StairwayExecutionException {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException ex) {
+      throw new StairwayExecutionException(
+          "Virtual thread flight execution requires Java 21 or later", ex);
+    } catch (ReflectiveOperationException ex) {
+      throw new StairwayExecutionException("Unable to make a virtual thread executor", ex);
+    }
+  }
+
+  @Override
+  protected Future<?> submit(Runnable flightRunner, Runnable flightRunnerWithMdc) {
+    waitingFlights.add(flightRunner);
+    return executorService.submit(
+        () -> {
+          admission.acquire();
+          try {
+            // A flight handed back by shutdownNow must not run
+            if (waitingFlights.remove(flightRunner)) {
+              flightRunnerWithMdc.run();
+            }
+          } finally {
+            admission.release();
+          }
+          return null;
+        });
+  }
+
+  @Override
+  int getActiveCount() {
+    return maxParallelFlights - admission.availablePermits();
+  }
+
+  @Override
+  int getPoolSize() {
+    return getActiveCount();
+  }
+
+  @Override
+  int getMaxPoolSize() {
+    return maxParallelFlights;
+  }
+
+  @Override
+  int getQueueSize() {
+    return waitingFlights.size();
+  }
+
+  @Override
+  void shutdown() {
+    executorService.shutdown();
+  }
+
+  @Override
+  List<Runnable> shutdownNow() {
+    List<Runnable> neverStartedFlights = new ArrayList<>();
+    for (Runnable flightRunner : List.copyOf(waitingFlights)) {
+      if (waitingFlights.remove(flightRunner)) {
+        neverStartedFlights.add(flightRunner);
+      }
+    }
+    executorService.shutdownNow();
+    return neverStartedFlights;
+  }
+
+  @Override
+  boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executorService.awaitTermination(timeout, unit);
+  }
+}
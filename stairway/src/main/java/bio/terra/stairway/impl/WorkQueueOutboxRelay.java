@@ -0,0 +1,120 @@
+package bio.terra.stairway.impl;
+
+import bio.terra.stairway.queue.WorkQueueManager;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The WorkQueueOutboxRelay puts flights on the work queue from the outbox table. Submitting a
+ * flight to the queue, or yielding it to the queue, writes the READY state and the outbox row in
+ * one transaction and wakes the relay; the caller does not wait for the queue. A single relay
+ * thread then publishes the outbox in batches and marks the flights QUEUED in bulk.
+ *
+ * <p>A flight in the outbox is never lost: if this instance stops before relaying it, the relay
+ * of any other instance finds it when it next polls the outbox. The relay polls at {@link
+ * #POLL_INTERVAL} when it is not woken. On shutdown, the relay drains the outbox one last time.
+ */
+class WorkQueueOutboxRelay implements Runnable {
+  private static final Logger logger = LoggerFactory.getLogger(WorkQueueOutboxRelay.class);
+  static final int BATCH_SIZE = 100;
+  static final Duration POLL_INTERVAL = Duration.ofSeconds(5);
+
+  private final FlightDao flightDao;
+  private final WorkQueueManager queueManager;
+  private final Semaphore wakeUp = new Semaphore(0);
+  private volatile boolean running;
+  private Thread relayThread;
+
+  // Throughput metrics
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong flightCount = new AtomicLong();
+
+  WorkQueueOutboxRelay(FlightDao flightDao, WorkQueueManager queueManager) {
+    this.flightDao = flightDao;
+    this.queueManager = queueManager;
+  }
+
+  void start() {
+    running = true;
+    relayThread = new Thread(this, "stairway-outbox-relay");
+    relayThread.setDaemon(true);
+    relayThread.start();
+    logger.info("Work queue outbox relay started: batchSize={}", BATCH_SIZE);
+  }
+
+  /**
+   * Stop the relay thread once it has drained the outbox.
+   *
+   * @throws InterruptedException interrupted waiting for the relay thread to end
+   */
+  void shutdown() throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    wakeUp.release();
+    relayThread.join();
+    logStatistics();
+  }
+
+  /** Tell the relay that there are new flights in the outbox */
+  void wakeUp() {
+    wakeUp.release();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        if (wakeUp.tryAcquire(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS)) {
+          // One pass relays everything written before it started
+          wakeUp.drainPermits();
+        }
+        relayAll();
+      }
+      relayAll();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Failures are not fatal: the flights stay in the outbox and are relayed on a later pass
+  private void relayAll() throws InterruptedException {
+    try {
+      int relayed;
+      do {
+        relayed = flightDao.relayOutbox(BATCH_SIZE, queueManager::queueReadyFlights);
+        if (relayed > 0) {
+          batchCount.incrementAndGet();
+          flightCount.addAndGet(relayed);
+          logger.debug("Relayed {} flights to the work queue", relayed);
+        }
+      } while (relayed == BATCH_SIZE);
+    } catch (RuntimeException ex) {
+      // Includes StairwayException; anything else would end the relay thread
+      logger.warn("Error relaying flights from the outbox to the work queue", ex);
+    }
+  }
+
+  /** Log the throughput of the relay since it started */
+  void logStatistics() {
+    long batches = batchCount.get();
+    logger.info(
+        "Work queue outbox relay: batches={} flights={} averageBatch={}",
+        batches,
+        flightCount.get(),
+        (batches == 0) ? 0 : flightCount.get() / batches);
+  }
+
+  long getBatchCount() {
+    return batchCount.get();
+  }
+
+  long getFlightCount() {
+    return flightCount.get();
+  }
+}
@@ -3,6 +3,8 @@ package bio.terra.stairway.queue;
 import bio.terra.stairway.QueueInterface;
 import bio.terra.stairway.exception.StairwayExecutionException;
 import bio.terra.stairway.impl.StairwayImpl;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +70,22 @@ public class WorkQueueManager {
     workQueue.enqueueMessage(message);
   }
 
+  /**
+   * Put several ready flights on the work queue in one publish
+   *
+   * @param flightIds flights to queue
+   * @throws StairwayExecutionException failure queuing the flights
+   * @throws InterruptedException thread shutdown
+   */
+  public void queueReadyFlights(List<String> flightIds)
+      throws StairwayExecutionException, InterruptedException {
+    List<String> messages = new ArrayList<>(flightIds.size());
+    for (String flightId : flightIds) {
+      messages.add(queueProcessor.serialize(new QueueMessageReady(flightId)));
+    }
+    workQueue.enqueueMessages(messages);
+  }
+
   /**
    * Getter for work queue enabled.
    *
@@ -36,6 +36,7 @@ public class FlightCleanerTest {
             .stairwayName(stairwayName)
             .completedFlightRetention(Duration.ofSeconds(RETENTION))
             .retentionCheckInterval(Duration.ofSeconds(CHECK_INTERVAL))
+            .flightStoreType(TestUtil.getFlightStoreType())
             .build();
 
     List<String> recordedStairways = stairway.initialize(TestUtil.makeDataSource(), true, true);
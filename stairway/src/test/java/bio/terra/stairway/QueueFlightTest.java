@@ -1,8 +1,10 @@
 package bio.terra.stairway;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import bio.terra.stairway.exception.DuplicateFlightIdException;
 import bio.terra.stairway.fixtures.FileQueue;
 import bio.terra.stairway.fixtures.MapKey;
 import bio.terra.stairway.fixtures.TestPauseController;
@@ -114,6 +116,7 @@ public class QueueFlightTest {
             .workQueue(workQueue)
             .maxParallelFlights(1)
             .maxQueuedFlights(1)
+            .flightStoreType(TestUtil.getFlightStoreType())
             .build();
     List<String> recordedStairways = stairway.initialize(dataSource, true, true);
     assertThat("no stairway to recover", recordedStairways.size(), equalTo(0));
@@ -196,6 +199,7 @@ public class QueueFlightTest {
             .workQueue(workQueue)
             .maxParallelFlights(1)
             .maxQueuedFlights(1)
+            .flightStoreType(TestUtil.getFlightStoreType())
             .build();
     List<String> recordedStairways = stairway.initialize(dataSource, true, true);
     assertThat("no stairway to recover", recordedStairways.size(), equalTo(0));
@@ -262,4 +266,51 @@ public class QueueFlightTest {
     assertThat(
         "1st flight succeeded", flightState.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
   }
+
+  @Test
+  public void submitBatchTest() throws Exception {
+    stairway =
+        new TestStairwayBuilder().name("submitBatchTest").useQueue(UseQueue.MAKE_QUEUE).build();
+
+    FlightMap inputs = new FlightMap();
+    int controlValue = 1;
+    inputs.put(MapKey.CONTROLLER_VALUE, controlValue);
+
+    TestPauseController.setControl(0);
+    String existingFlightId = "existingFlight";
+    stairway.submit(existingFlightId, TestFlightControlledSleep.class, inputs);
+
+    String localFlightId = "batchLocalFlight";
+    String queuedFlightId = "batchQueuedFlight";
+    List<FlightSubmissionResult> results =
+        stairway.submitBatch(
+            List.of(
+                new FlightSubmission(localFlightId, TestFlightControlledSleep.class, inputs),
+                new FlightSubmission(
+                    queuedFlightId, TestFlightControlledSleep.class, inputs, true, null),
+                new FlightSubmission(localFlightId, TestFlightControlledSleep.class, inputs),
+                new FlightSubmission(existingFlightId, TestFlightControlledSleep.class, inputs)));
+
+    assertThat("one result per submission", results.size(), equalTo(4));
+    assertThat("local flight submitted", results.get(0).isSubmitted(), equalTo(true));
+    assertThat("local flight not queued", results.get(0).isQueued(), equalTo(false));
+    assertThat("queued flight submitted", results.get(1).isSubmitted(), equalTo(true));
+    assertThat("queued flight queued", results.get(1).isQueued(), equalTo(true));
+    assertThat(
+        "repeated id fails",
+        results.get(2).getException().orElseThrow(),
+        instanceOf(DuplicateFlightIdException.class));
+    assertThat(
+        "existing id fails",
+        results.get(3).getException().orElseThrow(),
+        instanceOf(DuplicateFlightIdException.class));
+
+    // Free the paused flights
+    TestPauseController.setControl(controlValue);
+    for (String flightId : List.of(existingFlightId, localFlightId, queuedFlightId)) {
+      FlightState flightState = stairway.waitForFlight(flightId, 1, null);
+      assertThat(
+          "batch flight succeeded", flightState.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+    }
+  }
 }
@@ -6,10 +6,15 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import bio.terra.stairway.fixtures.TestHook;
 import bio.terra.stairway.fixtures.TestStairwayBuilder;
 import bio.terra.stairway.flights.TestFlightRetry;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -129,6 +134,78 @@ public class RetryTest {
     assertFalse(result.getException().isPresent());
   }
 
+  @Test
+  public void deferredRetryReleasesThreadTest() throws Exception {
+    // Four flights each wait twice for 2 seconds. Sleeping on the two flight threads, they would
+    // run two at a time and take at least 8 seconds; with the waits deferred they overlap.
+    Stairway deferringStairway =
+        new TestStairwayBuilder().retryWaitReleaseThreshold(Duration.ofSeconds(1)).build();
+    FlightMap inputParameters = new FlightMap();
+    inputParameters.put("retryType", "fixed");
+    inputParameters.put("failCount", 2);
+    inputParameters.put("intervalSeconds", 2);
+    inputParameters.put("maxCount", 4);
+
+    LocalDateTime startTime = LocalDateTime.now();
+    List<CompletableFuture<FlightState>> results = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      String flightId = "deferredTest" + i;
+      deferringStairway.submit(flightId, TestFlightRetry.class, inputParameters);
+      results.add(deferringStairway.awaitFlight(flightId, Duration.ofSeconds(30)));
+    }
+    for (CompletableFuture<FlightState> result : results) {
+      assertThat(result.get().getFlightStatus(), is(equalTo(FlightStatus.SUCCESS)));
+    }
+    LocalDateTime endTime = LocalDateTime.now();
+
+    assertTrue(endTime.isBefore(startTime.plus(Duration.ofSeconds(7))));
+  }
+
+  @Test
+  public void deferredRetryFailureTest() throws Exception {
+    // The retry rule keeps its count across deferred waits, so the flight still runs out of tries
+    Stairway deferringStairway =
+        new TestStairwayBuilder().retryWaitReleaseThreshold(Duration.ofSeconds(1)).build();
+    FlightMap inputParameters = new FlightMap();
+    inputParameters.put("retryType", "fixed");
+    inputParameters.put("failCount", 100);
+    inputParameters.put("intervalSeconds", 1);
+    inputParameters.put("maxCount", 3);
+
+    String flightId = "deferredFailureTest";
+    deferringStairway.submit(flightId, TestFlightRetry.class, inputParameters);
+    FlightState result = deferringStairway.waitForFlight(flightId, 1, 30);
+    assertThat(result.getFlightStatus(), is(FlightStatus.ERROR));
+  }
+
+  @Test
+  public void deferredRetryFlightHooksTest() throws Exception {
+    // The flight does not end while it waits, so its flight hooks run once
+    Stairway deferringStairway =
+        new TestStairwayBuilder()
+            .retryWaitReleaseThreshold(Duration.ofSeconds(1))
+            .testHookCount(1)
+            .build();
+    FlightMap inputParameters = new FlightMap();
+    inputParameters.put("retryType", "fixed");
+    inputParameters.put("failCount", 2);
+    inputParameters.put("intervalSeconds", 1);
+    inputParameters.put("maxCount", 4);
+
+    String flightId = "deferredHooksTest";
+    deferringStairway.submit(flightId, TestFlightRetry.class, inputParameters);
+    FlightState result = deferringStairway.awaitFlight(flightId, Duration.ofSeconds(30)).get();
+    assertThat(result.getFlightStatus(), is(FlightStatus.SUCCESS));
+
+    List<String> hookLog = List.copyOf(TestHook.getHookLog());
+    List<String> flightHooks =
+        List.of(
+            "1:startFlight", "1:endFlight", "1:flightHook:startFlight", "1:flightHook:endFlight");
+    for (String hook : flightHooks) {
+      assertThat(hook, Collections.frequency(hookLog, hook), equalTo(1));
+    }
+  }
+
   @Test
   public void randomFailureTest() throws Exception {
     // Should fail by running out of tries, like fixed
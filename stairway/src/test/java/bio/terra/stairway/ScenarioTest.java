@@ -337,6 +337,31 @@ public class ScenarioTest {
             "1:flightHook:endFlight"));
   }
 
+  @Test
+  public void testWaitUntil() throws Exception {
+    String inResult = "woken and merged";
+    FlightMap inputParameters = new FlightMap();
+    inputParameters.put(MapKey.RESULT, inResult);
+    inputParameters.put(MapKey.WAIT_SECONDS, 3);
+
+    String flightId = stairway.createFlightId();
+    stairway.submit(flightId, TestFlightWait.class, inputParameters);
+    // Allow time for the flight thread to start up and yield
+    TimeUnit.SECONDS.sleep(1);
+
+    FlightState state = stairway.getFlightState(flightId);
+    assertThat("State is waiting", state.getFlightStatus(), equalTo(FlightStatus.WAITING));
+    assertNull(state.getStairwayId(), "Flight is unowned");
+
+    // The wake timer resumes the flight; nothing calls resume
+    state = stairway.waitForFlight(flightId, 1, 30);
+    assertThat("State is success", state.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+    FlightMap resultMap = state.getResultMap().orElse(null);
+    assertNotNull(resultMap, "result map is present");
+    String outResult = resultMap.get(MapKey.RESULT, String.class);
+    assertThat("result set properly", outResult, equalTo(inResult));
+  }
+
   @Test
   public void testTerminate() throws Exception {
     String inResult = "terminated cleanly";
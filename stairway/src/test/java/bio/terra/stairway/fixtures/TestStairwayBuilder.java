@@ -11,6 +11,7 @@ import bio.terra.stairway.QueueInterface;
 import bio.terra.stairway.ShortUUID;
 import bio.terra.stairway.Stairway;
 import bio.terra.stairway.StairwayBuilder;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -32,6 +33,10 @@ public class TestStairwayBuilder {
   private boolean doRecoveryCheck;
   private boolean existingStairwaysAreAlive;
   private String flightId;
+  private Integer workingMapSnapshotInterval;
+  private Integer stepCheckpointBatchSize;
+  private boolean partitionedFlightLog;
+  private Duration retryWaitReleaseThreshold;
 
   /** Set stairway name. If not present, a random name is generated */
   public TestStairwayBuilder name(String name) {
@@ -87,6 +92,30 @@ public class TestStairwayBuilder {
     return this;
   }
 
+  /** Number of log records per full working map snapshot. Defaults to the Stairway default. */
+  public TestStairwayBuilder workingMapSnapshotInterval(int workingMapSnapshotInterval) {
+    this.workingMapSnapshotInterval = workingMapSnapshotInterval;
+    return this;
+  }
+
+  /** Maximum step records per group commit. Defaults to the Stairway default of no batching. */
+  public TestStairwayBuilder stepCheckpointBatchSize(int stepCheckpointBatchSize) {
+    this.stepCheckpointBatchSize = stepCheckpointBatchSize;
+    return this;
+  }
+
+  /** Partition the flight log tables by day. Defaults to false. */
+  public TestStairwayBuilder partitionedFlightLog(boolean partitionedFlightLog) {
+    this.partitionedFlightLog = partitionedFlightLog;
+    return this;
+  }
+
+  /** Shortest retry wait that releases the flight thread. Defaults to never releasing it. */
+  public TestStairwayBuilder retryWaitReleaseThreshold(Duration retryWaitReleaseThreshold) {
+    this.retryWaitReleaseThreshold = retryWaitReleaseThreshold;
+    return this;
+  }
+
   /** build, initialize, and recover the stairway instance */
   public Stairway build() throws Exception {
     // Set default values
@@ -114,7 +143,21 @@ public class TestStairwayBuilder {
         new StairwayBuilder()
             .stairwayName(buildName)
             .maxParallelFlights(2)
-            .workQueue(buildWorkQueue);
+            .workQueue(buildWorkQueue)
+            .flightStoreType(TestUtil.getFlightStoreType())
+            .flightExecutionMode(TestUtil.getFlightExecutionMode());
+    if (workingMapSnapshotInterval != null) {
+      builder.workingMapSnapshotInterval(workingMapSnapshotInterval);
+    }
+    if (stepCheckpointBatchSize != null) {
+      builder.stepCheckpointBatchSize(stepCheckpointBatchSize);
+    }
+    if (partitionedFlightLog) {
+      builder.partitionedFlightLog(true);
+    }
+    if (retryWaitReleaseThreshold != null) {
+      builder.retryWaitReleaseThreshold(retryWaitReleaseThreshold);
+    }
 
     for (int i = 0; i < testHookCount; i++) {
       int hookId = i + 1;
@@ -3,7 +3,9 @@ package bio.terra.stairway.fixtures;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import bio.terra.stairway.FlightExecutionMode;
 import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.FlightStoreType;
 import bio.terra.stairway.Stairway;
 import bio.terra.stairway.exception.StairwayException;
 import java.util.List;
@@ -40,6 +42,17 @@ public final class TestUtil {
     return bds;
   }
 
+  // The flight store the tests run against; the testInMemory task sets IN_MEMORY
+  public static FlightStoreType getFlightStoreType() {
+    return FlightStoreType.valueOf(getEnvVar("STAIRWAY_FLIGHT_STORE", "POSTGRES"));
+  }
+
+  // The threads the tests run flights on; the testJava21 task sets VIRTUAL_THREADS
+  public static FlightExecutionMode getFlightExecutionMode() {
+    return FlightExecutionMode.valueOf(
+        getEnvVar("STAIRWAY_FLIGHT_EXECUTION_MODE", "PLATFORM_THREADS"));
+  }
+
   public static String getEnvVar(String name, String defaultValue) {
     String value = System.getenv(name);
     if (value == null) {
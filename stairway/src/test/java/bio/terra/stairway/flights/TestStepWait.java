@@ -4,6 +4,8 @@ import bio.terra.stairway.FlightContext;
 import bio.terra.stairway.Step;
 import bio.terra.stairway.StepResult;
 import bio.terra.stairway.StepStatus;
+import bio.terra.stairway.fixtures.MapKey;
+import java.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +14,11 @@ public class TestStepWait implements Step {
 
   @Override
   public StepResult doStep(FlightContext context) throws InterruptedException {
+    // With a wait time, the flight wakes by itself; otherwise it waits to be resumed
+    Integer waitSeconds = context.getInputParameters().get(MapKey.WAIT_SECONDS, Integer.class);
+    if (waitSeconds != null) {
+      return StepResult.waitFor(Duration.ofSeconds(waitSeconds));
+    }
     return new StepResult(StepStatus.STEP_RESULT_WAIT);
   }
 
@@ -0,0 +1,92 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@Tag("unit")
+@ExtendWith(MockitoExtension.class)
+public class CompletedFlightCleanerTest {
+  private static final int BATCH_SIZE = 10;
+
+  @Mock private FlightDao flightDao;
+  @Mock private FlightLogPartitionDao partitionDao;
+
+  @Test
+  public void stopsOnPartialBatch() throws Exception {
+    when(flightDao.deleteCompletedFlights(any(Instant.class), eq(BATCH_SIZE)))
+        .thenReturn(BATCH_SIZE, BATCH_SIZE, 3);
+
+    CompletedFlightCleaner cleaner =
+        new CompletedFlightCleaner(
+            Duration.ofDays(1),
+            flightDao,
+            BATCH_SIZE,
+            Duration.ZERO,
+            Duration.ofMinutes(1),
+            null);
+    cleaner.run();
+
+    verify(flightDao, times(3)).deleteCompletedFlights(any(Instant.class), eq(BATCH_SIZE));
+    assertThat(cleaner.getRunCount(), equalTo(1L));
+    assertThat(cleaner.getBatchCount(), equalTo(3L));
+    assertThat(cleaner.getDeletedCount(), equalTo((long) BATCH_SIZE * 2 + 3));
+    assertThat(cleaner.getBudgetExhaustedCount(), equalTo(0L));
+  }
+
+  @Test
+  public void stopsWhenBudgetUsedUp() throws Exception {
+    // There is always a full batch to delete, so only the time budget ends the run
+    when(flightDao.deleteCompletedFlights(any(Instant.class), eq(BATCH_SIZE)))
+        .thenReturn(BATCH_SIZE);
+
+    CompletedFlightCleaner cleaner =
+        new CompletedFlightCleaner(
+            Duration.ofDays(1),
+            flightDao,
+            BATCH_SIZE,
+            Duration.ofMillis(100),
+            Duration.ZERO,
+            null);
+    cleaner.run();
+
+    verify(flightDao, times(1)).deleteCompletedFlights(any(Instant.class), eq(BATCH_SIZE));
+    assertThat(cleaner.getDeletedCount(), equalTo((long) BATCH_SIZE));
+    assertThat(cleaner.getBudgetExhaustedCount(), equalTo(1L));
+  }
+
+  @Test
+  public void dropsPartitionsAfterDeletingFlights() throws Exception {
+    when(flightDao.deleteCompletedFlights(any(Instant.class), eq(BATCH_SIZE))).thenReturn(3);
+    when(partitionDao.dropExpiredPartitions(any(Instant.class))).thenReturn(2);
+
+    CompletedFlightCleaner cleaner =
+        new CompletedFlightCleaner(
+            Duration.ofDays(1),
+            flightDao,
+            BATCH_SIZE,
+            Duration.ZERO,
+            Duration.ofMinutes(1),
+            partitionDao);
+    cleaner.run();
+
+    InOrder inOrder = inOrder(flightDao, partitionDao);
+    inOrder.verify(flightDao).deleteCompletedFlights(any(Instant.class), eq(BATCH_SIZE));
+    inOrder.verify(partitionDao).dropExpiredPartitions(any(Instant.class));
+    assertThat(cleaner.getDroppedPartitionCount(), equalTo(2L));
+  }
+}
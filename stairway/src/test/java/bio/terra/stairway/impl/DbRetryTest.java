@@ -0,0 +1,111 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.stairway.exception.DatabaseOperationException;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class DbRetryTest {
+
+  @BeforeEach
+  void beforeEach() {
+    DbRetry.resetForTesting();
+  }
+
+  @AfterEach
+  void afterEach() {
+    DbRetry.resetForTesting();
+  }
+
+  @Test
+  public void retriesSerializationFailures() throws Exception {
+    DbCircuitBreaker circuitBreaker = new DbCircuitBreaker();
+    AtomicInteger attempts = new AtomicInteger();
+    int result =
+        DbRetry.retry(
+            "test.serialization",
+            circuitBreaker,
+            () -> {
+              if (attempts.incrementAndGet() < 3) {
+                throw new SQLException("conflict", "40001");
+              }
+              return 42;
+            });
+
+    assertThat(result, equalTo(42));
+    DbRetry.OperationStatistics stats = DbRetry.getStatistics().get("test.serialization");
+    assertThat(stats.calls(), equalTo(1L));
+    assertThat(stats.retries(), equalTo(2L));
+    assertThat(stats.failures(), equalTo(0L));
+    assertFalse(circuitBreaker.isOpen(), "serialization failures do not open the breaker");
+  }
+
+  @Test
+  public void doesNotRetryOtherFailures() {
+    AtomicInteger attempts = new AtomicInteger();
+    assertThrows(
+        DatabaseOperationException.class,
+        () ->
+            DbRetry.retryVoid(
+                "test.syntax",
+                () -> {
+                  attempts.incrementAndGet();
+                  throw new SQLException("bad sql", "42601");
+                }));
+
+    assertThat(attempts.get(), equalTo(1));
+    assertThat(DbRetry.getStatistics().get("test.syntax").failures(), equalTo(1L));
+  }
+
+  @Test
+  public void connectionFailuresOpenTheBreaker() {
+    DbCircuitBreaker circuitBreaker = new DbCircuitBreaker();
+    AtomicInteger attempts = new AtomicInteger();
+    assertThrows(
+        DatabaseOperationException.class,
+        () ->
+            DbRetry.retryVoid(
+                "test.connection",
+                circuitBreaker,
+                () -> {
+                  attempts.incrementAndGet();
+                  throw new SQLException("connection reset", "08006");
+                }));
+
+    // The breaker opens at the threshold, before the retries are used up
+    assertThat(attempts.get(), lessThanOrEqualTo(DbCircuitBreaker.FAILURE_THRESHOLD));
+    assertTrue(circuitBreaker.isOpen(), "breaker is open");
+
+    // While the breaker is open, calls fail without reaching the database
+    AtomicInteger blockedAttempts = new AtomicInteger();
+    assertThrows(
+        DatabaseOperationException.class,
+        () -> DbRetry.retry("test.blocked", circuitBreaker, blockedAttempts::incrementAndGet));
+    assertThat(blockedAttempts.get(), equalTo(0));
+
+    // Calls made without the breaker, like the writes of running flights, still go through
+    AtomicInteger unbrokenAttempts = new AtomicInteger();
+    DbRetry.retry("test.unbroken", unbrokenAttempts::incrementAndGet);
+    assertThat(unbrokenAttempts.get(), equalTo(1));
+  }
+
+  @Test
+  public void connectionRetryBudget() {
+    // A database failover needs as long as the original 20 retries of 250 to 1000 ms
+    assertThat(DbRetry.CONNECTION_POLICY.maxRetries(), greaterThanOrEqualTo(20));
+    assertThat(DbRetry.CONNECTION_POLICY.baseWaitMs(), greaterThanOrEqualTo(250L));
+    assertThat(DbRetry.CONNECTION_POLICY.maxWaitMs(), greaterThanOrEqualTo(1000L));
+  }
+}
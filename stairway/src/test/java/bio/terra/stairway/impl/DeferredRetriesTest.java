@@ -0,0 +1,58 @@
+package bio.terra.stairway.impl;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@Tag("unit")
+@ExtendWith(MockitoExtension.class)
+class DeferredRetriesTest {
+  @Mock private FlightRunner flightRunner;
+  @Mock private FlightContextImpl flightContext;
+  @Mock private Consumer<FlightRunner> resumer;
+  private ScheduledExecutorService scheduledPool;
+
+  @BeforeEach
+  void setup() {
+    scheduledPool = new ScheduledThreadPoolExecutor(1);
+  }
+
+  @AfterEach
+  void teardown() {
+    scheduledPool.shutdownNow();
+  }
+
+  @Test
+  void resumeTest() {
+    DeferredRetries deferredRetries = new DeferredRetries(scheduledPool, resumer, () -> false);
+
+    deferredRetries.defer(flightRunner, Duration.ofMillis(10));
+    verify(resumer, timeout(5000)).accept(flightRunner);
+  }
+
+  @Test
+  void failedResumeDisownsFlightTest() {
+    when(flightRunner.getFlightContext()).thenReturn(flightContext);
+    when(flightContext.flightDesc()).thenReturn("deferredFlight");
+    doThrow(new RejectedExecutionException("pool is shut down")).when(resumer).accept(flightRunner);
+    DeferredRetries deferredRetries = new DeferredRetries(scheduledPool, resumer, () -> false);
+
+    deferredRetries.defer(flightRunner, Duration.ofMillis(10));
+    // The flight is not left running on this instance with nothing to run it
+    verify(flightRunner, timeout(5000)).disownDeferredFlight();
+  }
+}
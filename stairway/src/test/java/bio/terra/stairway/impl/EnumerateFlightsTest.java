@@ -13,6 +13,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 
 import bio.terra.stairway.Flight;
+import bio.terra.stairway.FlightCountMode;
 import bio.terra.stairway.FlightEnumeration;
 import bio.terra.stairway.FlightFilter;
 import bio.terra.stairway.FlightFilterOp;
@@ -37,12 +38,12 @@ import org.junit.jupiter.api.Test;
 public class EnumerateFlightsTest {
 
   private StairwayImpl stairway;
-  private FlightDao flightDao;
+  private FlightStore flightStore;
 
   @BeforeEach
   public void setup() throws Exception {
     stairway = (StairwayImpl) new TestStairwayBuilder().build();
-    flightDao = stairway.getFlightDao();
+    flightStore = stairway.getFlightStore();
   }
 
   @Test
@@ -79,7 +80,7 @@ public class EnumerateFlightsTest {
         new FlightFilter()
             .addFilterSubmitTime(FlightFilterOp.GREATER_THAN, minSubmit)
             .addFilterSubmitTime(FlightFilterOp.LESS_THAN, maxSubmit);
-    List<FlightState> flightList = flightDao.getFlights(0, 100, filter);
+    List<FlightState> flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 1", flightList, List.of("1", "2", "3", "4"));
 
     // Case 2: date range
@@ -87,17 +88,17 @@ public class EnumerateFlightsTest {
         new FlightFilter()
             .addFilterSubmitTime(FlightFilterOp.GREATER_EQUAL, minSubmit)
             .addFilterSubmitTime(FlightFilterOp.LESS_EQUAL, maxSubmit);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 2", flightList, List.of("0", "1", "2", "3", "4", "5"));
 
     // Case 3.1: date with values
     filter = new FlightFilter().addFilterCompletedTime(FlightFilterOp.GREATER_THAN, minSubmit);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 3.1", flightList, List.of("0", "1", "2"));
 
     // Case 3.2: date with null values
     filter = new FlightFilter().addFilterCompletedTime(FlightFilterOp.EQUAL, null);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 3.2", flightList, List.of("3", "4", "5"));
 
     // Case 4: status and flight class
@@ -105,12 +106,12 @@ public class EnumerateFlightsTest {
         new FlightFilter()
             .addFilterFlightStatus(FlightFilterOp.EQUAL, FlightStatus.RUNNING)
             .addFilterFlightClass(FlightFilterOp.EQUAL, TestFlightEnum2.class);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 4", flightList, List.of("3", "4"));
 
     // Case 5: one in param
     filter = new FlightFilter().addFilterInputParameter("in0", FlightFilterOp.NOT_EQUAL, 5);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 5", flightList, List.of("2", "4"));
 
     // Case 6: class and one in param
@@ -118,12 +119,12 @@ public class EnumerateFlightsTest {
         new FlightFilter()
             .addFilterFlightClass(FlightFilterOp.EQUAL, TestFlightEnum2.class)
             .addFilterInputParameter("in1", FlightFilterOp.EQUAL, "5");
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 6", flightList, List.of("1", "4"));
 
     // Case 7: pojo param
     filter = new FlightFilter().addFilterInputParameter("in2", FlightFilterOp.EQUAL, pojo2);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 7", flightList, List.of("2", "3"));
 
     // Case 8: three params
@@ -132,7 +133,7 @@ public class EnumerateFlightsTest {
             .addFilterInputParameter("in0", FlightFilterOp.EQUAL, int2)
             .addFilterInputParameter("in1", FlightFilterOp.EQUAL, string1)
             .addFilterInputParameter("in2", FlightFilterOp.EQUAL, pojo1);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 8", flightList, Collections.singletonList("4"));
 
     // Case 9: submit data and two params
@@ -141,36 +142,47 @@ public class EnumerateFlightsTest {
             .addFilterSubmitTime(FlightFilterOp.GREATER_THAN, minSubmit)
             .addFilterInputParameter("in0", FlightFilterOp.EQUAL, int1)
             .addFilterInputParameter("in2", FlightFilterOp.EQUAL, pojo2);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 9", flightList, Collections.singletonList("3"));
 
     // Case 10: page token
-    String pageTokenString = new PageToken(midSubmit).makeToken();
+    String pageTokenString = new PageToken(midSubmit, "2").makeToken();
     filter = new FlightFilter();
-    FlightEnumeration flightEnum = flightDao.getFlights(null, 3, filter);
+    FlightEnumeration flightEnum = flightStore.getFlights(null, 3, filter);
     checkResults("case 10", flightEnum.getFlightStateList(), List.of("0", "1", "2"));
     assertThat(flightEnum.getTotalFlights(), equalTo(6));
     assertThat(flightEnum.getNextPageToken(), equalTo(pageTokenString));
 
-    flightEnum = flightDao.getFlights(pageTokenString, 3, filter);
+    flightEnum = flightStore.getFlights(pageTokenString, 3, filter);
     checkResults("case 10", flightEnum.getFlightStateList(), List.of("3", "4", "5"));
     assertThat(flightEnum.getTotalFlights(), equalTo(6));
 
+    // Case 10a: page token without a total count
+    filter = new FlightFilter().totalCountMode(FlightCountMode.NONE);
+    flightEnum = flightStore.getFlights(pageTokenString, 3, filter);
+    checkResults("case 10a", flightEnum.getFlightStateList(), List.of("3", "4", "5"));
+    assertThat(flightEnum.getTotalFlights(), equalTo(-1));
+    assertThat(flightEnum.getTotalCountMode(), equalTo(FlightCountMode.NONE));
+
+    // Case 10b: version 1 page token, holding only the submit time
+    flightEnum = flightStore.getFlights(new PageToken(midSubmit).makeToken(), 3, filter);
+    checkResults("case 10b", flightEnum.getFlightStateList(), List.of("3", "4", "5"));
+
     // Case 11: page token in descending order
-    pageTokenString = new PageToken(flights.get(3).getSubmitted()).makeToken();
+    pageTokenString = new PageToken(flights.get(3).getSubmitted(), "3").makeToken();
     filter = new FlightFilter().submittedTimeSortDirection(FlightFilterSortDirection.DESC);
-    flightEnum = flightDao.getFlights(null, 3, filter);
+    flightEnum = flightStore.getFlights(null, 3, filter);
     checkResults("case 11", flightEnum.getFlightStateList(), List.of("5", "4", "3"));
     assertThat(flightEnum.getTotalFlights(), equalTo(6));
     assertThat(flightEnum.getNextPageToken(), equalTo(pageTokenString));
 
-    flightEnum = flightDao.getFlights(pageTokenString, 3, filter);
+    flightEnum = flightStore.getFlights(pageTokenString, 3, filter);
     checkResults("case 11", flightEnum.getFlightStateList(), List.of("2", "1", "0"));
     assertThat(flightEnum.getTotalFlights(), equalTo(6));
 
     // Case 12: sorting in ascending order
     filter = new FlightFilter().submittedTimeSortDirection(FlightFilterSortDirection.ASC);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 12", flightList, List.of("0", "1", "2", "3", "4", "5"));
     // explicitly verify that classnames are returned as expected (note that the flights list is in
     // ascending order)
@@ -181,18 +193,18 @@ public class EnumerateFlightsTest {
 
     // Case 13: sorting in descending order
     filter = new FlightFilter().submittedTimeSortDirection(FlightFilterSortDirection.DESC);
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 13", flightList, List.of("5", "4", "3", "2", "1", "0"));
 
     // Case 14: filter input on an in clause
     filter =
         new FlightFilter().addFilterInputParameter("in0", FlightFilterOp.IN, List.of(int1, int2));
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 14", flightList, List.of("1", "2", "3", "4"));
 
     // Case 15: filter flight on an in clause
     filter = new FlightFilter().addFilterFlightIds(List.of("0", "1", "3"));
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 15", flightList, List.of("0", "1", "3"));
 
     // Case 16: filter flight on a boolean clause (OR)...result should look similar to the in clause
@@ -201,7 +213,7 @@ public class EnumerateFlightsTest {
             makeOr(
                 makePredicateInput("in0", FlightFilterOp.EQUAL, int1),
                 makePredicateInput("in0", FlightFilterOp.EQUAL, int2)));
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 16", flightList, List.of("1", "2", "3", "4"));
 
     // Case 17: filter flight on a boolean clause (AND)
@@ -210,7 +222,7 @@ public class EnumerateFlightsTest {
             makeAnd(
                 makePredicateInput("in0", FlightFilterOp.EQUAL, int1),
                 makePredicateInput("in1", FlightFilterOp.EQUAL, string1)));
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 17", flightList, List.of("1"));
 
     // Case 18: filter flight with nested a boolean clauses
@@ -224,7 +236,7 @@ public class EnumerateFlightsTest {
                     makePredicateInput("in0", FlightFilterOp.EQUAL, int2),
                     makePredicateInput("in1", FlightFilterOp.EQUAL, string2))));
 
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 18", flightList, List.of("1", "2"));
 
     // Case 19: filter flight with a boolean clause and an in clause
@@ -234,19 +246,19 @@ public class EnumerateFlightsTest {
                 makePredicateInput("in0", FlightFilterOp.EQUAL, int1),
                 makePredicateInput("in1", FlightFilterOp.IN, List.of(string1, string2))));
 
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 19", flightList, List.of("1", "3"));
 
     // Case 20: filter flight with a null check for a field that doesn't exist
     filter = new FlightFilter().addFilterInputParameter("in10000", FlightFilterOp.EQUAL, null);
 
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 20", flightList, List.of("0", "1", "2", "3", "4", "5"));
 
     // Case 21: filter input on an in clause with a POJO
     filter =
         new FlightFilter().addFilterInputParameter("in2", FlightFilterOp.IN, List.of(pojo1, pojo2));
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 21", flightList, List.of("1", "2", "3", "4"));
 
     // Case 22: mix of generic boolean with input filter (the two get ANDed)
@@ -257,7 +269,7 @@ public class EnumerateFlightsTest {
                     makePredicateInput("in1", FlightFilterOp.IN, List.of(string1, string2))))
             .addFilterInputParameter("in2", FlightFilterOp.EQUAL, pojo1);
 
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 22", flightList, List.of("1"));
 
     // Case 23: mix of flight and class input filters
@@ -267,7 +279,7 @@ public class EnumerateFlightsTest {
                 makePredicateInput("in2", FlightFilterOp.IN, List.of(pojo1, pojo2)),
                 makePredicateFlightClass(FlightFilterOp.EQUAL, class1)));
 
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 23", flightList, List.of("2"));
 
     // Case 24: flight predicates: status and flightid
@@ -277,7 +289,7 @@ public class EnumerateFlightsTest {
                 makePredicateFlightStatus(FlightFilterOp.EQUAL, FlightStatus.RUNNING),
                 makePredicateFlightIds(List.of("1", "3", "4"))));
 
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 24", flightList, List.of("3", "4"));
 
     // Case 25: flight predicates: submitted and completed time or'ed with flightid
@@ -289,10 +301,55 @@ public class EnumerateFlightsTest {
                     makePredicateCompletedTime(FlightFilterOp.LESS_EQUAL, lastCompleted)),
                 makePredicateFlightIds(List.of("5"))));
 
-    flightList = flightDao.getFlights(0, 100, filter);
+    flightList = flightStore.getFlights(0, 100, filter);
     checkResults("case 25", flightList, List.of("1", "2", "5"));
   }
 
+  @Test
+  public void enumMapsTest() throws Exception {
+    // Each flight gets its own input and working map values, so we can check that the maps loaded
+    // for a page are assigned to the right flights.
+    String className = TestFlightEnum1.class.getName();
+    int flightCount = 10;
+    for (int i = 0; i < flightCount; i++) {
+      FlightMap inputParams = new FlightMap();
+      inputParams.put("in", i);
+      Flight flight = FlightFactory.makeFlightFromName(className, inputParams, null);
+      FlightContextImpl flightContext =
+          new FlightContextImpl(stairway, flight, String.valueOf(i), null);
+      flightStore.create(flightContext);
+
+      // Even flights complete with a working map; odd flights stay running
+      if (i % 2 == 0) {
+        flightContext.getWorkingMap().put("out", i * 10);
+        flightStore.step(flightContext);
+        flightContext.setFlightStatus(FlightStatus.SUCCESS);
+        flightStore.exit(flightContext);
+      }
+    }
+
+    List<FlightState> flightList = flightStore.getFlights(0, 100, new FlightFilter());
+    assertThat("all flights returned", flightList.size(), equalTo(flightCount));
+    for (FlightState flightState : flightList) {
+      int i = Integer.parseInt(flightState.getFlightId());
+      assertThat(
+          "input matches flight " + i,
+          flightState.getInputParameters().get("in", Integer.class),
+          equalTo(i));
+      if (i % 2 == 0) {
+        assertThat(
+            "output matches flight " + i,
+            flightState.getResultMap().get().get("out", Integer.class),
+            equalTo(i * 10));
+      } else {
+        assertThat(
+            "no output for running flight " + i,
+            flightState.getResultMap().isPresent(),
+            equalTo(false));
+      }
+    }
+  }
+
   private void checkResults(String name, List<FlightState> resultlList, List<String> expectedIds) {
     List<String> actualIds =
         resultlList.stream().map(FlightState::getFlightId).collect(Collectors.toList());
@@ -315,14 +372,14 @@ public class EnumerateFlightsTest {
 
     FlightContextImpl flightContext = new FlightContextImpl(stairway, flight, flightId, null);
 
-    flightDao.create(flightContext);
+    flightStore.create(flightContext);
 
     // If status isn't "RUNNING" then we set the status and mark the flight complete
     if (status != FlightStatus.RUNNING) {
       flightContext.setFlightStatus(status);
-      flightDao.exit(flightContext);
+      flightStore.exit(flightContext);
     }
 
-    return flightDao.getFlightState(flightId);
+    return flightStore.getFlightState(flightId);
   }
 }
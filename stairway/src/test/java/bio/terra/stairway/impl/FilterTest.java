@@ -55,6 +55,31 @@ public class FilterTest {
     assertThat(inputSql, equalTo(inputCompareSql));
   }
 
+  @Test
+  public void indexedInputPredicateTest() throws Exception {
+    FlightFilter filter = new FlightFilter();
+    filter.addFilterInputParameter("afield", FlightFilterOp.EQUAL, "avalue");
+    filter.addFilterInputParameter("afield", FlightFilterOp.GREATER_THAN, "avalue");
+    FlightFilterAccess access = new FlightFilterAccess(filter, 0, 10, null, true);
+
+    String equalSql = access.makeInputPredicateSql(filter.getInputPredicates().get(0));
+    assertThat(
+        equalSql,
+        equalTo(
+            "((F.inputs @> jsonb_build_object('afield', CAST(:ff1 AS jsonb))"
+                + " AND F.inputs -> 'afield' = CAST(:ff1 AS jsonb))"
+                + " OR (F.inputs IS NULL AND EXISTS (SELECT 0 FROM flightinput I"
+                + " WHERE F.flightid = I.flightid AND I.key = 'afield' AND I.value = :ff1)))"));
+
+    // The index does not help range comparisons, so they still use the flightinput rows
+    String greaterSql = access.makeInputPredicateSql(filter.getInputPredicates().get(1));
+    assertThat(
+        greaterSql,
+        equalTo(
+            "EXISTS (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid "
+                + "AND I.key = 'afield' AND I.value > :ff2)"));
+  }
+
   @Test
   public void filterNoInputFilterNoFlightFiltersTest() throws Exception {
     String expect =
@@ -62,7 +87,7 @@ public class FilterTest {
             + " F.output_parameters, F.status, F.serialized_exception, F.class_name"
             + " FROM flight F"
             + " WHERE (1=1)"
-            + " ORDER BY submit_time ASC LIMIT :limit OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit OFFSET :offset";
 
     FlightFilter filter = new FlightFilter();
     String sql = new FlightFilterAccess(filter, 0, 10, null).makeSql();
@@ -76,7 +101,7 @@ public class FilterTest {
             + " F.output_parameters, F.status, F.serialized_exception, F.class_name"
             + " FROM flight F WHERE (1=1) AND"
             + " F.completed_time > :ff1 AND F.class_name = :ff2 AND F.status = :ff3 AND F.submit_time < :ff4"
-            + " ORDER BY submit_time ASC LIMIT :limit OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit OFFSET :offset";
 
     Instant submit = now();
     Instant complete = now();
@@ -99,7 +124,7 @@ public class FilterTest {
             + " WHERE (1=1)"
             + " AND EXISTS"
             + " (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = 'email' AND I.value = :ff1)"
-            + " ORDER BY submit_time ASC LIMIT :limit OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit OFFSET :offset";
 
     FlightFilter filter =
         new FlightFilter()
@@ -119,7 +144,7 @@ public class FilterTest {
             + " AND EXISTS"
             + " (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = 'email' AND I.value = :ff1)"
             + " AND F.class_name = :ff2"
-            + " ORDER BY submit_time ASC LIMIT :limit OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit OFFSET :offset";
 
     FlightFilter filter =
         new FlightFilter()
@@ -141,7 +166,7 @@ public class FilterTest {
             + " (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = 'email' AND I.value = :ff1)"
             + " AND EXISTS"
             + " (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = 'name' AND I.value = :ff2)"
-            + " ORDER BY submit_time ASC LIMIT :limit OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit OFFSET :offset";
 
     FlightFilter filter =
         new FlightFilter()
@@ -164,7 +189,7 @@ public class FilterTest {
             + " AND EXISTS"
             + " (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = 'name' AND I.value = :ff2)"
             + " AND F.class_name = :ff3"
-            + " ORDER BY submit_time ASC LIMIT :limit OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit OFFSET :offset";
 
     FlightFilter filter =
         new FlightFilter()
@@ -182,7 +207,7 @@ public class FilterTest {
         "SELECT F.flightid, F.stairway_id, F.submit_time, F.completed_time,"
             + " F.output_parameters, F.status, F.serialized_exception, F.class_name"
             + " FROM flight F WHERE (1=1)"
-            + " ORDER BY submit_time ASC OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC OFFSET :offset";
 
     FlightFilter filter = new FlightFilter();
     String sql = new FlightFilterAccess(filter, 0, null, null).makeSql();
@@ -195,7 +220,7 @@ public class FilterTest {
         "SELECT F.flightid, F.stairway_id, F.submit_time, F.completed_time,"
             + " F.output_parameters, F.status, F.serialized_exception, F.class_name"
             + " FROM flight F WHERE (1=1)"
-            + " ORDER BY submit_time ASC LIMIT :limit";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit";
 
     FlightFilter filter = new FlightFilter();
     String sql = new FlightFilterAccess(filter, null, 10, null).makeSql();
@@ -209,7 +234,7 @@ public class FilterTest {
             + " F.output_parameters, F.status, F.serialized_exception, F.class_name"
             + " FROM flight F"
             + " WHERE (1=1) AND F.submit_time > :pagetoken"
-            + " ORDER BY submit_time ASC LIMIT :limit";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit";
 
     PageToken pageToken = new PageToken(Instant.now());
 
@@ -218,6 +243,23 @@ public class FilterTest {
     assertThat(sql, equalTo(expect));
   }
 
+  @Test
+  public void filterNoInputFilterKeysetPageTokenTest() throws Exception {
+    String expect =
+        "SELECT F.flightid, F.stairway_id, F.submit_time, F.completed_time,"
+            + " F.output_parameters, F.status, F.serialized_exception, F.class_name"
+            + " FROM flight F"
+            + " WHERE (1=1) AND (F.submit_time, F.flightid) < (:pagetoken, :pagetokenid)"
+            + " ORDER BY submit_time DESC, flightid DESC LIMIT :limit";
+
+    PageToken pageToken = new PageToken(Instant.now(), "flight1");
+
+    FlightFilter filter =
+        new FlightFilter().submittedTimeSortDirection(FlightFilterSortDirection.DESC);
+    String sql = new FlightFilterAccess(filter, null, 10, pageToken.makeToken()).makeSql();
+    assertThat(sql, equalTo(expect));
+  }
+
   @Test
   public void filterNoInputFilterOrderTest() throws Exception {
     String expect =
@@ -225,7 +267,7 @@ public class FilterTest {
             + " F.output_parameters, F.status, F.serialized_exception, F.class_name"
             + " FROM flight F"
             + " WHERE (1=1) AND F.submit_time < :pagetoken"
-            + " ORDER BY submit_time DESC LIMIT :limit";
+            + " ORDER BY submit_time DESC, flightid DESC LIMIT :limit";
 
     PageToken pageToken = new PageToken(Instant.now());
 
@@ -251,7 +293,7 @@ public class FilterTest {
             + " AND"
             + " EXISTS"
             + " (SELECT 0 FROM flightinput I WHERE F.flightid = I.flightid AND I.key = 'resource' AND I.value = :ff4)))"
-            + " ORDER BY submit_time ASC LIMIT :limit OFFSET :offset";
+            + " ORDER BY submit_time ASC, flightid ASC LIMIT :limit OFFSET :offset";
 
     FlightFilter filter =
         new FlightFilter(
@@ -265,4 +307,30 @@ public class FilterTest {
     String sql = new FlightFilterAccess(filter, 0, 10, null).makeSql();
     assertThat(sql, equalTo(expect));
   }
+
+  @Test
+  public void countEstimateSqlTest() throws Exception {
+    FlightFilter filter =
+        new FlightFilter().addFilterFlightStatus(FlightFilterOp.EQUAL, FlightStatus.SUCCESS);
+    FlightFilterAccess access = new FlightFilterAccess(filter, null, null, null);
+
+    assertThat(
+        access.makeEstimateSql(),
+        equalTo("EXPLAIN (FORMAT JSON) SELECT 1 FROM flight F WHERE (1=1) AND F.status = :ff1"));
+  }
+
+  @Test
+  public void countKeyTest() throws Exception {
+    FlightFilter success =
+        new FlightFilter().addFilterFlightStatus(FlightFilterOp.EQUAL, FlightStatus.SUCCESS);
+    FlightFilter success2 =
+        new FlightFilter().addFilterFlightStatus(FlightFilterOp.EQUAL, FlightStatus.SUCCESS);
+    FlightFilter error =
+        new FlightFilter().addFilterFlightStatus(FlightFilterOp.EQUAL, FlightStatus.ERROR);
+
+    String key = new FlightFilterAccess(success, null, null, null).makeCountKey();
+    assertThat(new FlightFilterAccess(success2, null, null, null).makeCountKey(), equalTo(key));
+    assertThat(
+        new FlightFilterAccess(error, null, null, null).makeCountKey().equals(key), equalTo(false));
+  }
 }
@@ -0,0 +1,134 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.exception.FlightNotFoundException;
+import bio.terra.stairway.exception.FlightWaitTimedOutException;
+import bio.terra.stairway.exception.StairwayShutdownException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@Tag("unit")
+@ExtendWith(MockitoExtension.class)
+class FlightCompletionWaitersTest {
+  private static final String FLIGHT_ID = "awaitedFlight";
+  // Long enough that the periodic recheck does not run during a test
+  private static final Duration RECHECK_INTERVAL = Duration.ofHours(1);
+
+  @Mock private FlightStore flightStore;
+  private ScheduledExecutorService scheduledPool;
+  private FlightCompletionWaiters waiters;
+
+  @BeforeEach
+  void setup() {
+    scheduledPool = new ScheduledThreadPoolExecutor(2);
+    waiters = new FlightCompletionWaiters(flightStore, scheduledPool, RECHECK_INTERVAL);
+  }
+
+  @AfterEach
+  void teardown() {
+    scheduledPool.shutdownNow();
+  }
+
+  @Test
+  void completedFlightTest() throws Exception {
+    when(flightStore.getLatestFlightState(FLIGHT_ID)).thenReturn(makeState(FlightStatus.SUCCESS));
+
+    FlightState state = waiters.await(FLIGHT_ID, Duration.ofSeconds(10)).get(5, TimeUnit.SECONDS);
+    assertThat(state.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+  }
+
+  @Test
+  void completionSignalTest() throws Exception {
+    when(flightStore.getLatestFlightState(FLIGHT_ID))
+        .thenReturn(makeState(FlightStatus.RUNNING))
+        .thenReturn(makeState(FlightStatus.ERROR));
+
+    CompletableFuture<FlightState> future = waiters.await(FLIGHT_ID, Duration.ofSeconds(10));
+    verify(flightStore, timeout(5000)).getLatestFlightState(FLIGHT_ID);
+    assertThat("still running", future.isDone(), equalTo(false));
+
+    waiters.flightCompleted(FLIGHT_ID);
+    FlightState state = future.get(5, TimeUnit.SECONDS);
+    assertThat(state.getFlightStatus(), equalTo(FlightStatus.ERROR));
+  }
+
+  @Test
+  void replicaBehindTest() throws Exception {
+    // The replica does not have the flight yet; the primary does
+    when(flightStore.getLatestFlightState(FLIGHT_ID))
+        .thenReturn(makeState(FlightStatus.RUNNING))
+        .thenReturn(makeState(FlightStatus.FATAL));
+    when(flightStore.getFlightState(FLIGHT_ID))
+        .thenThrow(new FlightNotFoundException("Flight not found: " + FLIGHT_ID));
+
+    CompletableFuture<FlightState> future = waiters.await(FLIGHT_ID, Duration.ofSeconds(10));
+    verify(flightStore, timeout(5000)).getLatestFlightState(FLIGHT_ID);
+    waiters.recheckAll();
+    assertThat("still waiting", future.isDone(), equalTo(false));
+
+    waiters.flightCompleted(FLIGHT_ID);
+    FlightState state = future.get(5, TimeUnit.SECONDS);
+    assertThat(state.getFlightStatus(), equalTo(FlightStatus.FATAL));
+  }
+
+  @Test
+  void timeoutTest() throws Exception {
+    when(flightStore.getLatestFlightState(FLIGHT_ID)).thenReturn(makeState(FlightStatus.RUNNING));
+
+    CompletableFuture<FlightState> future = waiters.await(FLIGHT_ID, Duration.ofMillis(100));
+    ExecutionException ex =
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertThat(ex.getCause(), instanceOf(FlightWaitTimedOutException.class));
+  }
+
+  @Test
+  void flightNotFoundTest() throws Exception {
+    when(flightStore.getLatestFlightState(FLIGHT_ID))
+        .thenThrow(new FlightNotFoundException("Flight not found: " + FLIGHT_ID));
+
+    CompletableFuture<FlightState> future = waiters.await(FLIGHT_ID, Duration.ofSeconds(10));
+    ExecutionException ex =
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertThat(ex.getCause(), instanceOf(FlightNotFoundException.class));
+  }
+
+  @Test
+  void shutdownTest() throws Exception {
+    when(flightStore.getLatestFlightState(FLIGHT_ID)).thenReturn(makeState(FlightStatus.RUNNING));
+
+    CompletableFuture<FlightState> future = waiters.await(FLIGHT_ID, Duration.ofSeconds(10));
+    verify(flightStore, timeout(5000)).getLatestFlightState(FLIGHT_ID);
+    waiters.shutdown();
+
+    ExecutionException ex =
+        assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertThat(ex.getCause(), instanceOf(StairwayShutdownException.class));
+  }
+
+  private static FlightState makeState(FlightStatus status) {
+    FlightState state = new FlightState();
+    state.setFlightId(FLIGHT_ID);
+    state.setFlightStatus(status);
+    return state;
+  }
+}
@@ -0,0 +1,42 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class FlightCountCacheTest {
+
+  @Test
+  public void cachedCountTest() {
+    FlightCountCache cache = new FlightCountCache(Duration.ofHours(1));
+    assertThat(cache.get("a"), nullValue());
+    cache.put("a", 5);
+    cache.put("b", 6);
+    assertThat(cache.get("a"), equalTo(5));
+    assertThat(cache.get("b"), equalTo(6));
+  }
+
+  @Test
+  public void expiredCountTest() {
+    FlightCountCache cache = new FlightCountCache(Duration.ZERO);
+    cache.put("a", 5);
+    assertThat(cache.get("a"), nullValue());
+  }
+
+  @Test
+  public void boundedTest() {
+    FlightCountCache cache = new FlightCountCache(Duration.ofHours(1));
+    for (int i = 0; i <= FlightCountCache.MAX_ENTRIES; i++) {
+      cache.put("key" + i, i);
+    }
+    // Filling the cache cleared it before the last count was added
+    assertThat(cache.get("key0"), nullValue());
+    int last = FlightCountCache.MAX_ENTRIES;
+    assertThat(cache.get("key" + last), equalTo(last));
+  }
+}
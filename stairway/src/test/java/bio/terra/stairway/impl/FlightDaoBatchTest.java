@@ -0,0 +1,119 @@
+package bio.terra.stairway.impl;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.stairway.FlightMap;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Count the database round trips made when storing flight map rows. Each executeUpdate or
+ * executeBatch call on the prepared statement is one round trip.
+ */
+@Tag("unit")
+@Tag("postgres")
+@ExtendWith(MockitoExtension.class)
+class FlightDaoBatchTest {
+  @Mock private Connection connection;
+  @Mock private PreparedStatement preparedStatement;
+  @Mock private ResultSet resultSet;
+
+  private FlightDao flightDao;
+
+  @BeforeEach
+  void beforeEach() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+    flightDao = new FlightDao(null, null, null, null, "batchTestStairway", 1);
+  }
+
+  @Test
+  void storeWorkingParametersOneRoundTrip() throws Exception {
+    flightDao.storeWorkingParameters(connection, UUID.randomUUID(), makeFlightMap(40));
+
+    verify(preparedStatement, times(40)).addBatch();
+    verify(preparedStatement, times(1)).executeBatch();
+    verify(preparedStatement, never()).executeUpdate();
+  }
+
+  @Test
+  void storeInputParametersOneRoundTrip() throws Exception {
+    flightDao.storeInputParameters(connection, "batchTestFlight", makeFlightMap(40));
+
+    verify(preparedStatement, times(40)).addBatch();
+    verify(preparedStatement, times(1)).executeBatch();
+    verify(preparedStatement, never()).executeUpdate();
+  }
+
+  @Test
+  void storeInputParametersOfManyFlightsOneRoundTrip() throws Exception {
+    Map<String, FlightMap> inputsByFlight = new LinkedHashMap<>();
+    for (int i = 0; i < 10; i++) {
+      inputsByFlight.put("batchTestFlight" + i, makeFlightMap(4));
+    }
+    flightDao.storeInputParameters(connection, inputsByFlight);
+
+    verify(preparedStatement, times(40)).addBatch();
+    verify(preparedStatement, times(1)).executeBatch();
+    verify(preparedStatement, never()).executeUpdate();
+  }
+
+  @Test
+  void storeWorkingParametersChunked() throws Exception {
+    int rows = FlightDao.MAX_BATCH_ROWS * 2 + 1;
+    flightDao.storeWorkingParameters(connection, UUID.randomUUID(), makeFlightMap(rows));
+
+    verify(preparedStatement, times(rows)).addBatch();
+    verify(preparedStatement, times(3)).executeBatch();
+    verify(preparedStatement, never()).executeUpdate();
+  }
+
+  @Test
+  void storeOffloadedValueOnce() throws Exception {
+    when(preparedStatement.getConnection()).thenReturn(connection);
+    when(preparedStatement.executeQuery()).thenReturn(resultSet);
+    flightDao.setFlightMapCodec(new FlightMapCodec(Integer.MAX_VALUE, 100));
+
+    FlightMap flightMap = makeFlightMap(40);
+    String large = "x".repeat(1000);
+    flightMap.put("large1", large);
+    flightMap.put("large2", large);
+    flightMap.put("large3", large + "y");
+    flightDao.storeWorkingParameters(connection, UUID.randomUUID(), flightMap);
+
+    // One query for the stored values, one batch of the two new values, one batch of rows
+    verify(preparedStatement, times(1)).executeQuery();
+    verify(preparedStatement, times(2 + 43)).addBatch();
+    verify(preparedStatement, times(2)).executeBatch();
+  }
+
+  @Test
+  void storeEmptyMapNoRoundTrip() throws Exception {
+    flightDao.storeWorkingParameters(connection, UUID.randomUUID(), new FlightMap());
+
+    verify(preparedStatement, never()).addBatch();
+    verify(preparedStatement, never()).executeBatch();
+    verify(preparedStatement, never()).executeUpdate();
+  }
+
+  private FlightMap makeFlightMap(int size) {
+    FlightMap flightMap = new FlightMap();
+    for (int i = 0; i < size; i++) {
+      flightMap.put("key" + i, "value" + i);
+    }
+    return flightMap;
+  }
+}
@@ -0,0 +1,115 @@
+package bio.terra.stairway.impl;
+
+import static bio.terra.stairway.FlightFilter.FlightBooleanOperationExpression.makeOr;
+import static bio.terra.stairway.FlightFilter.FlightFilterPredicate.makePredicateFlightStatus;
+import static bio.terra.stairway.FlightFilter.FlightFilterPredicate.makePredicateInput;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import bio.terra.stairway.FlightFilter;
+import bio.terra.stairway.FlightFilterOp;
+import bio.terra.stairway.FlightFilterSortDirection;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.impl.InMemoryDatabase.FlightRecord;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class FlightFilterMatcherTest {
+  private static final Instant SUBMITTED = Instant.parse("2024-01-01T00:00:00Z");
+
+  private final FlightRecord running =
+      makeRecord(
+          "flight1",
+          FlightStatus.RUNNING,
+          SUBMITTED,
+          null,
+          Map.of("afield", "\"avalue\"", "n", "22"));
+  private final FlightRecord success =
+      makeRecord(
+          "flight2", FlightStatus.SUCCESS, SUBMITTED, SUBMITTED.plusSeconds(60), Map.of("n", "5"));
+
+  @Test
+  public void flightPredicateTest() {
+    FlightFilter filter =
+        new FlightFilter().addFilterFlightStatus(FlightFilterOp.EQUAL, FlightStatus.RUNNING);
+    assertMatches(filter, true, false);
+
+    filter = new FlightFilter().addFilterCompletedTime(FlightFilterOp.EQUAL, null);
+    assertMatches(filter, true, false);
+
+    // A null column never satisfies a comparison
+    filter = new FlightFilter().addFilterCompletedTime(FlightFilterOp.GREATER_THAN, SUBMITTED);
+    assertMatches(filter, false, true);
+
+    filter = new FlightFilter().addFilterFlightIds(List.of("flight2", "flight3"));
+    assertMatches(filter, false, true);
+  }
+
+  @Test
+  public void inputPredicateTest() {
+    FlightFilter filter =
+        new FlightFilter().addFilterInputParameter("afield", FlightFilterOp.EQUAL, "avalue");
+    assertMatches(filter, true, false);
+
+    filter = new FlightFilter().addFilterInputParameter("afield", FlightFilterOp.EQUAL, null);
+    assertMatches(filter, false, true);
+
+    filter = new FlightFilter().addFilterInputParameter("n", FlightFilterOp.IN, List.of(5, 6));
+    assertMatches(filter, false, true);
+
+    filter =
+        new FlightFilter(
+            makeOr(
+                makePredicateInput("afield", FlightFilterOp.EQUAL, "avalue"),
+                makePredicateFlightStatus(FlightFilterOp.EQUAL, FlightStatus.SUCCESS)));
+    assertMatches(filter, true, true);
+  }
+
+  @Test
+  public void pageTokenTest() {
+    String token = new PageToken(SUBMITTED).makeToken();
+    FlightRecord later =
+        makeRecord("flight3", FlightStatus.RUNNING, SUBMITTED.plusSeconds(1), null, Map.of());
+
+    var ascending = new FlightFilterMatcher(new FlightFilter(), token);
+    assertThat(ascending.matches(running), equalTo(false));
+    assertThat(ascending.matches(later), equalTo(true));
+
+    var descending =
+        new FlightFilterMatcher(
+            new FlightFilter().submittedTimeSortDirection(FlightFilterSortDirection.DESC), token);
+    assertThat(descending.matches(running), equalTo(false));
+    assertThat(descending.matches(later), equalTo(false));
+  }
+
+  private void assertMatches(FlightFilter filter, boolean matchRunning, boolean matchSuccess) {
+    var matcher = new FlightFilterMatcher(filter, null);
+    assertThat("running flight", matcher.matches(running), equalTo(matchRunning));
+    assertThat("success flight", matcher.matches(success), equalTo(matchSuccess));
+  }
+
+  private static FlightRecord makeRecord(
+      String flightId,
+      FlightStatus status,
+      Instant submitted,
+      Instant completed,
+      Map<String, String> inputs) {
+    return new FlightRecord(
+        flightId,
+        "bio.terra.stairway.flights.TestFlight",
+        status,
+        null,
+        submitted,
+        completed,
+        null,
+        null,
+        "{}",
+        inputs,
+        Map.of(),
+        null);
+  }
+}
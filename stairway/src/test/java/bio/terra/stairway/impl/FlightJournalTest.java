@@ -0,0 +1,209 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.stairway.Direction;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.impl.InMemoryDatabase.FlightRecord;
+import bio.terra.stairway.impl.InMemoryDatabase.LogRecord;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@Tag("unit")
+public class FlightJournalTest {
+  private static final int SEGMENT_BYTES = 4096;
+
+  @TempDir Path directory;
+
+  @Test
+  public void reopenRebuildsStateTest() {
+    FlightJournal journal = new FlightJournal(directory, SEGMENT_BYTES);
+    InMemoryDatabase database = journal.open(false);
+    database.findOrCreateStairway("stairway1");
+    submitAndStep(database, "flight1");
+    submitAndStep(database, "flight2");
+    database.update(
+        "flight2", r -> r.withCompletion(FlightStatus.ERROR, Instant.now(), "exception"));
+    database.update("flight1", r -> r.withPersisted(Map.of("key", "value")));
+    submitAndStep(database, "flight3");
+    database.delete("flight3");
+    journal.close();
+
+    journal = new FlightJournal(directory, SEGMENT_BYTES);
+    database = journal.open(false);
+    assertThat(database.getStairwayNames(), equalTo(List.of("stairway1")));
+    assertThat(database.getAll().size(), equalTo(2));
+
+    FlightRecord flight1 = database.get("flight1");
+    assertThat(flight1.status(), equalTo(FlightStatus.RUNNING));
+    assertThat(flight1.stairwayId(), equalTo("stairway1"));
+    assertThat(flight1.persisted(), equalTo(Map.of("key", "value")));
+    assertThat(flight1.latestLog().workingMap(), equalTo(Map.of("step", "flight1")));
+
+    FlightRecord flight2 = database.get("flight2");
+    assertThat(flight2.status(), equalTo(FlightStatus.ERROR));
+    assertThat(flight2.stairwayId(), nullValue());
+    assertThat(flight2.serializedException(), equalTo("exception"));
+    assertThat(database.get("flight3"), nullValue());
+
+    // Submit times keep increasing across restarts
+    assertThat(database.nextSubmitTime().isAfter(flight2.submitTime()), equalTo(true));
+    journal.close();
+  }
+
+  @Test
+  public void wakeTimeTest() {
+    // The journal keeps microseconds, like Postgres
+    Instant wakeTime = Instant.now().plusSeconds(60).truncatedTo(ChronoUnit.MICROS);
+    FlightJournal journal = new FlightJournal(directory, SEGMENT_BYTES);
+    InMemoryDatabase database = journal.open(false);
+    submitAndStep(database, "flight1");
+    submitAndStep(database, "flight2");
+    database.update("flight1", r -> r.withWaiting(wakeTime));
+    database.update("flight2", r -> r.withWaiting(wakeTime));
+    database.update("flight2", r -> r.withOwnership(FlightStatus.RUNNING, "stairway1"));
+    journal.close();
+
+    journal = new FlightJournal(directory, SEGMENT_BYTES);
+    database = journal.open(false);
+    FlightRecord flight1 = database.get("flight1");
+    assertThat(flight1.status(), equalTo(FlightStatus.WAITING));
+    assertThat(flight1.stairwayId(), nullValue());
+    assertThat(flight1.wakeTime(), equalTo(wakeTime));
+    // Claiming the flight clears its wake time
+    assertThat(database.get("flight2").wakeTime(), nullValue());
+    journal.close();
+  }
+
+  @Test
+  public void compactionKeepsStateTest() throws IOException {
+    FlightJournal journal = new FlightJournal(directory, SEGMENT_BYTES);
+    InMemoryDatabase database = journal.open(false);
+    database.findOrCreateStairway("stairway1");
+    for (int i = 0; i < 200; i++) {
+      String flightId = "flight" + i;
+      submitAndStep(database, flightId);
+      if (i % 2 == 0) {
+        database.delete(flightId);
+      }
+    }
+    journal.close();
+    // Many segments were filled; compaction keeps only the ones since the last compaction
+    assertThat(countSegments() < 10, equalTo(true));
+
+    journal = new FlightJournal(directory, SEGMENT_BYTES);
+    database = journal.open(false);
+    assertThat(database.getAll().size(), equalTo(100));
+    assertThat(database.get("flight199").latestLog().stepIndex(), equalTo(0));
+    assertThat(database.get("flight198"), nullValue());
+    journal.close();
+  }
+
+  @Test
+  public void tornTailTest() throws IOException {
+    FlightJournal journal = new FlightJournal(directory, SEGMENT_BYTES);
+    InMemoryDatabase database = journal.open(false);
+    submitAndStep(database, "flight1");
+    journal.close();
+
+    // Simulate a crash in the middle of an append: a length with no valid entry behind it
+    Path segment;
+    try (Stream<Path> files = Files.list(directory)) {
+      segment = files.filter(p -> p.toString().endsWith(".seg")).findFirst().orElseThrow();
+    }
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      long end = file.length() - 1;
+      while (end > 0) {
+        file.seek(end);
+        if (file.read() != 0) {
+          break;
+        }
+        end--;
+      }
+      file.seek(end + 1);
+      file.writeInt(100);
+      file.writeInt(12345);
+      file.write(new byte[] {1, 2, 3});
+    }
+
+    journal = new FlightJournal(directory, SEGMENT_BYTES);
+    database = journal.open(false);
+    assertThat(database.get("flight1").latestLog().stepIndex(), equalTo(0));
+    submitAndStep(database, "flight2");
+    journal.close();
+
+    journal = new FlightJournal(directory, SEGMENT_BYTES);
+    database = journal.open(false);
+    assertThat(database.getAll().size(), equalTo(2));
+    journal.close();
+  }
+
+  @Test
+  public void lockAndCleanStartTest() {
+    FlightJournal journal = new FlightJournal(directory, SEGMENT_BYTES);
+    InMemoryDatabase database = journal.open(false);
+    submitAndStep(database, "flight1");
+    assertThrows(
+        DatabaseOperationException.class,
+        () -> new FlightJournal(directory, SEGMENT_BYTES).open(false));
+    journal.close();
+    assertThrows(DatabaseOperationException.class, () -> submitAndStep(database, "flight2"));
+
+    journal = new FlightJournal(directory, SEGMENT_BYTES);
+    assertThat(journal.open(true).getAll().size(), equalTo(0));
+    journal.close();
+  }
+
+  private static void submitAndStep(InMemoryDatabase database, String flightId) {
+    database.insert(
+        new FlightRecord(
+            flightId,
+            "bio.terra.stairway.flights.TestFlight",
+            FlightStatus.RUNNING,
+            "stairway1",
+            database.nextSubmitTime(),
+            null,
+            null,
+            null,
+            "{}",
+            Map.of("input", "\"" + flightId + "\""),
+            Map.of(),
+            null));
+    database.update(
+        flightId,
+        r ->
+            r.withLatestLog(
+                new LogRecord(
+                    UUID.randomUUID(),
+                    Instant.now(),
+                    0,
+                    false,
+                    Direction.DO,
+                    true,
+                    null,
+                    FlightStatus.RUNNING,
+                    Map.of("step", flightId),
+                    r.latestLog())));
+  }
+
+  private long countSegments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(p -> p.toString().endsWith(".seg")).count();
+    }
+  }
+}
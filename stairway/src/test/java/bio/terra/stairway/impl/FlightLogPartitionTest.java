@@ -0,0 +1,84 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.Stairway;
+import bio.terra.stairway.fixtures.TestPauseController;
+import bio.terra.stairway.fixtures.TestStairwayBuilder;
+import bio.terra.stairway.fixtures.TestUtil;
+import bio.terra.stairway.flights.TestFlightRecovery;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.Instant;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/** Run flights on the partitioned flight log and drop the partitions once they are expired */
+@Tag("unit")
+@Tag("postgres")
+public class FlightLogPartitionTest {
+
+  @Test
+  public void partitionedFlightLogTest() throws Exception {
+    Stairway stairway = new TestStairwayBuilder().partitionedFlightLog(true).build();
+
+    FlightMap inputs = new FlightMap();
+    inputs.put("initialValue", 0);
+
+    TestPauseController.setControl(1);
+    String flightId = "partitionedFlightLogTest";
+    stairway.submit(flightId, TestFlightRecovery.class, inputs);
+    FlightState result = stairway.waitForFlight(flightId, null, null);
+    assertThat(result.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+    assertThat(result.getResultMap().get().get("value", Integer.class), equalTo(2));
+
+    DataSource dataSource = TestUtil.makeDataSource();
+    assertThat(
+        "log rows are in a day partition", logPartition(dataSource), startsWith("flightlog_p"));
+    assertThat("today and 3 days ahead", countDayPartitions(dataSource), equalTo(4));
+
+    // Only the empty partitions can be dropped while the flight still exists
+    FlightLogPartitionDao partitionDao = new FlightLogPartitionDao(dataSource);
+    Instant future = Instant.now().plus(Duration.ofDays(10));
+    assertThat(partitionDao.dropExpiredPartitions(future), equalTo(3));
+    assertThat(countDayPartitions(dataSource), equalTo(1));
+
+    stairway.deleteFlight(flightId, false);
+    assertThat(partitionDao.dropExpiredPartitions(future), equalTo(1));
+    assertThat(countDayPartitions(dataSource), equalTo(0));
+  }
+
+  private String logPartition(DataSource dataSource) throws Exception {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement =
+            connection.prepareStatement(
+                "SELECT DISTINCT CAST(tableoid AS regclass) AS partition FROM flightlog")) {
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        return rs.getString("partition");
+      }
+    }
+  }
+
+  private int countDayPartitions(DataSource dataSource) throws Exception {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement =
+            connection.prepareStatement(
+                "SELECT COUNT(*) AS total FROM pg_inherits I JOIN pg_class C ON C.oid = I.inhrelid"
+                    + " WHERE I.inhparent = to_regclass('flightlog')"
+                    + " AND C.relname LIKE 'flightlog_p%'")) {
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        return rs.getInt("total");
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.fixtures.FlightsTestPojo;
+import bio.terra.stairway.impl.FlightMapCodec.EncodedValue;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the flight map codec: stored size, encode time, and decode time of typical flight map
+ * values, with and without compression. Run with {@code ./gradlew benchmark}; the results are
+ * logged. The timings are a rough guide, not a rigorous microbenchmark.
+ */
+@Tag("benchmark")
+public class FlightMapCodecBenchmark {
+  private static final Logger logger = LoggerFactory.getLogger(FlightMapCodecBenchmark.class);
+  private static final int WARMUP_ITERATIONS = 2_000;
+  private static final int ITERATIONS = 10_000;
+  private static final int COMPRESSION_THRESHOLD = 1024;
+
+  @Test
+  public void codecBenchmark() {
+    Map<String, Object> values =
+        Map.of(
+            "string", "a flight map string value",
+            "pojo", makePojos(1).get(0),
+            "list10", makePojos(10),
+            "list100", makePojos(100),
+            "list1000", makePojos(1000));
+
+    FlightMapCodec compressing = new FlightMapCodec(COMPRESSION_THRESHOLD, Integer.MAX_VALUE);
+    logger.info(
+        String.format(
+            "%-10s %10s %10s %12s %12s",
+            "value", "json bytes", "stored", "encode ns", "decode ns"));
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      FlightMap flightMap = new FlightMap();
+      flightMap.put(entry.getKey(), entry.getValue());
+      String json = flightMap.getRaw(entry.getKey());
+
+      EncodedValue encoded = compressing.encode(json);
+      int storedBytes =
+          (encoded.bytes() == null)
+              ? encoded.text().getBytes(StandardCharsets.UTF_8).length
+              : encoded.bytes().length;
+      assertThat(decode(encoded), equalTo(json));
+
+      long encodeNanos = timeEncode(compressing, json);
+      long decodeNanos = timeDecode(encoded);
+      logger.info(
+          String.format(
+              "%-10s %10d %10d %12d %12d",
+              entry.getKey(),
+              json.getBytes(StandardCharsets.UTF_8).length,
+              storedBytes,
+              encodeNanos,
+              decodeNanos));
+    }
+  }
+
+  private static long timeEncode(FlightMapCodec codec, String json) {
+    long sink = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      sink += codec.encode(json).codec();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink += codec.encode(json).codec();
+    }
+    long elapsed = System.nanoTime() - start;
+    logger.debug("sink " + sink);
+    return elapsed / ITERATIONS;
+  }
+
+  private static long timeDecode(EncodedValue encoded) {
+    long sink = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      sink += decode(encoded).length();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink += decode(encoded).length();
+    }
+    long elapsed = System.nanoTime() - start;
+    logger.debug("sink " + sink);
+    return elapsed / ITERATIONS;
+  }
+
+  private static String decode(EncodedValue encoded) {
+    return FlightMapCodec.decode(encoded.codec(), encoded.text(), encoded.bytes());
+  }
+
+  private static List<FlightsTestPojo> makePojos(int count) {
+    List<FlightsTestPojo> pojos = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      pojos.add(new FlightsTestPojo().astring("value" + i).anint(i));
+    }
+    return pojos;
+  }
+}
@@ -0,0 +1,101 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.fixtures.FlightsTestPojo;
+import bio.terra.stairway.impl.FlightMapCodec.EncodedValue;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class FlightMapCodecTest {
+  private final FlightMapCodec codec = new FlightMapCodec(100, Integer.MAX_VALUE);
+
+  @Test
+  public void roundTripTest() {
+    List<FlightsTestPojo> pojos = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      pojos.add(new FlightsTestPojo().astring("value" + i).anint(i));
+    }
+    FlightMap flightMap = new FlightMap();
+    flightMap.put("pojos", pojos);
+    String json = flightMap.getRaw("pojos");
+
+    EncodedValue encoded = codec.encode(json);
+    assertThat(encoded.codec(), equalTo(FlightMapCodec.CODEC_DEFLATE));
+    assertThat(encoded.text(), nullValue());
+    assertThat(encoded.bytes().length < json.length() / 2, equalTo(true));
+
+    String decoded = FlightMapCodec.decode(encoded.codec(), encoded.text(), encoded.bytes());
+    assertThat(decoded, equalTo(json));
+    FlightMap readMap = new FlightMap();
+    readMap.putRaw("pojos", decoded);
+    assertThat(
+        readMap.get("pojos", new TypeReference<List<FlightsTestPojo>>() {}), equalTo(pojos));
+  }
+
+  @Test
+  public void jsonKeptTest() {
+    // Below the threshold
+    String small = "\"small\"";
+    EncodedValue encoded = codec.encode(small);
+    assertThat(encoded.codec(), equalTo(FlightMapCodec.CODEC_JSON));
+    assertThat(encoded.text(), equalTo(small));
+    assertThat(encoded.bytes(), nullValue());
+
+    // Compression disabled
+    String large = "\"" + "a".repeat(1000) + "\"";
+    assertThat(FlightMapCodec.JSON.encode(large).codec(), equalTo(FlightMapCodec.CODEC_JSON));
+
+    // Does not get smaller: short text with no repeats
+    Random random = new Random(42);
+    char[] chars = new char[100];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) ('!' + random.nextInt(90));
+    }
+    String noise = new String(chars);
+    encoded = codec.encode(noise);
+    assertThat(encoded.codec(), equalTo(FlightMapCodec.CODEC_JSON));
+    assertThat(encoded.text(), equalTo(noise));
+  }
+
+  @Test
+  public void offloadTest() {
+    var offloading = new FlightMapCodec(Integer.MAX_VALUE, 100);
+    String large = "\"" + "a".repeat(1000) + "\"";
+    assertThat(offloading.isOffloaded(large), equalTo(true));
+    assertThat(offloading.isOffloaded("\"small\""), equalTo(false));
+    assertThat(FlightMapCodec.JSON.isOffloaded(large), equalTo(false));
+
+    // The hash identifies the content
+    assertThat(FlightMapCodec.hash(large), equalTo(FlightMapCodec.hash(new String(large))));
+    assertThat(FlightMapCodec.hash(large).length(), equalTo(64));
+    assertThat(
+        FlightMapCodec.hash(large).equals(FlightMapCodec.hash(large + " ")), equalTo(false));
+
+    // A reference whose value was not joined in is an error
+    EncodedValue reference = EncodedValue.reference(FlightMapCodec.hash(large));
+    assertThrows(
+        DatabaseOperationException.class,
+        () -> FlightMapCodec.decode(reference.codec(), reference.text(), reference.bytes()));
+  }
+
+  @Test
+  public void decodeErrorTest() {
+    byte[] bytes = codec.encode("\"" + "a".repeat(1000) + "\"").bytes();
+    assertThrows(
+        DatabaseOperationException.class,
+        () -> FlightMapCodec.decode(FlightMapCodec.CODEC_DEFLATE, null, Arrays.copyOf(bytes, 4)));
+    assertThrows(DatabaseOperationException.class, () -> FlightMapCodec.decode(99, "x", null));
+  }
+}
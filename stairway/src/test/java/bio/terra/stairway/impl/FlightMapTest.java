@@ -227,6 +227,32 @@ public class FlightMapTest {
         () -> flightMap.get(key, new TypeReference<Map<UUID, FlightsTestPojo>>() {}));
   }
 
+  @Test
+  public void deltaInputListTest() {
+    FlightMap flightMap = new FlightMap();
+    loadMap(flightMap);
+    Map<String, String> previousMap = new HashMap<>(flightMap.getMap());
+
+    // No change gives an empty delta
+    Assertions.assertEquals(0, FlightMapUtils.makeDeltaInputList(previousMap, flightMap).size());
+
+    // Changed and added keys are in the delta; unchanged keys are not
+    flightMap.put(intKey, intIn + 1);
+    flightMap.put("newkey", "newvalue");
+    List<FlightInput> deltaList = FlightMapUtils.makeDeltaInputList(previousMap, flightMap);
+    Assertions.assertEquals(2, deltaList.size());
+
+    // Applying the delta to the previous map gives the current map
+    FlightMap rebuiltMap = new FlightMap();
+    previousMap.forEach(rebuiltMap::putRaw);
+    FlightMapUtils.fillInFlightMap(rebuiltMap, deltaList);
+    Assertions.assertEquals(flightMap.getMap(), rebuiltMap.getMap());
+
+    // A removed key cannot be expressed as a delta
+    previousMap.put("removedkey", "removedvalue");
+    Assertions.assertNull(FlightMapUtils.makeDeltaInputList(previousMap, flightMap));
+  }
+
   private enum MyEnum {
     FOO,
     BAR,
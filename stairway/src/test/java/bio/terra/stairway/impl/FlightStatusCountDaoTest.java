@@ -0,0 +1,93 @@
+package bio.terra.stairway.impl;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.stairway.FlightStatus;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@Tag("unit")
+@ExtendWith(MockitoExtension.class)
+class FlightStatusCountDaoTest {
+  // Parameter positions in the upsert
+  private static final int STATUS = 1;
+  private static final int CLASS_NAME = 2;
+  private static final int DELTA = 4;
+
+  @Mock private DataSource dataSource;
+  @Mock private Connection connection;
+  @Mock private PreparedStatement statement;
+  @Mock private ResultSet resultSet;
+
+  @Test
+  void recordSendsNetChangesInOrder() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    FlightStatusCountDao dao = new FlightStatusCountDao(dataSource);
+
+    FlightStatusCountDao.Changes changes =
+        new FlightStatusCountDao.Changes()
+            .add("classA", FlightStatus.RUNNING)
+            .move("classA", FlightStatus.RUNNING, FlightStatus.SUCCESS)
+            .move("classB", FlightStatus.READY, FlightStatus.QUEUED);
+    dao.record(connection, changes);
+
+    // RUNNING classA nets to zero and is not sent; the rest are sorted by status and class
+    InOrder order = inOrder(statement);
+    order.verify(statement).setString(STATUS, "QUEUED");
+    order.verify(statement).setString(CLASS_NAME, "classB");
+    order.verify(statement).setInt(DELTA, 1);
+    order.verify(statement).setString(STATUS, "READY");
+    order.verify(statement).setString(CLASS_NAME, "classB");
+    order.verify(statement).setInt(DELTA, -1);
+    order.verify(statement).setString(STATUS, "SUCCESS");
+    order.verify(statement).setString(CLASS_NAME, "classA");
+    order.verify(statement).setInt(DELTA, 1);
+    verify(statement, times(3)).addBatch();
+    verify(statement, times(1)).executeBatch();
+  }
+
+  @Test
+  void recordSkipsNoChange() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    FlightStatusCountDao dao = new FlightStatusCountDao(dataSource);
+
+    FlightStatusCountDao.Changes changes =
+        new FlightStatusCountDao.Changes()
+            .move("classA", FlightStatus.RUNNING, FlightStatus.RUNNING)
+            .add("classA", FlightStatus.READY)
+            .remove("classA", FlightStatus.READY);
+    dao.record(connection, changes);
+
+    verify(statement, never()).setInt(anyInt(), anyInt());
+    verify(statement, never()).executeBatch();
+  }
+
+  @Test
+  void reconcileSkipsWhileAnotherInstanceReconciles() throws Exception {
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true);
+    when(resultSet.getBoolean("locked")).thenReturn(false);
+    FlightStatusCountDao dao = new FlightStatusCountDao(dataSource);
+
+    dao.reconcile();
+
+    // Neither the flight table nor the counts are read
+    verify(connection, never()).createStatement();
+  }
+}
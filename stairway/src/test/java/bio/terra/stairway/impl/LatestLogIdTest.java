@@ -0,0 +1,66 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.Stairway;
+import bio.terra.stairway.fixtures.TestPauseController;
+import bio.terra.stairway.fixtures.TestStairwayBuilder;
+import bio.terra.stairway.fixtures.TestUtil;
+import bio.terra.stairway.flights.TestFlightRecovery;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/** Make sure the latest_log_id pointer on the flight row follows the flight log */
+@Tag("unit")
+@Tag("postgres")
+public class LatestLogIdTest {
+
+  @Test
+  public void latestLogIdTest() throws Exception {
+    Stairway stairway = new TestStairwayBuilder().build();
+
+    FlightMap inputs = new FlightMap();
+    inputs.put("initialValue", 0);
+
+    TestPauseController.setControl(1);
+    String flightId = "latestLogIdTest";
+    stairway.submit(flightId, TestFlightRecovery.class, inputs);
+    FlightState result = stairway.waitForFlight(flightId, null, null);
+    assertThat(result.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+    assertThat(result.getResultMap().get().get("value", Integer.class), equalTo(2));
+
+    DataSource dataSource = TestUtil.makeDataSource();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement pointerStatement =
+            connection.prepareStatement("SELECT latest_log_id FROM flight WHERE flightid = ?");
+        PreparedStatement lastLogStatement =
+            connection.prepareStatement(
+                "SELECT id FROM flightlog WHERE flightid = ? ORDER BY log_time DESC LIMIT 1")) {
+      pointerStatement.setString(1, flightId);
+      lastLogStatement.setString(1, flightId);
+
+      UUID latestLogId;
+      try (ResultSet rs = pointerStatement.executeQuery()) {
+        rs.next();
+        latestLogId = rs.getObject("latest_log_id", UUID.class);
+      }
+      UUID lastLogId;
+      try (ResultSet rs = lastLogStatement.executeQuery()) {
+        rs.next();
+        lastLogId = rs.getObject("id", UUID.class);
+      }
+      assertThat("pointer is set", latestLogId, notNullValue());
+      assertThat("pointer is the most recent log record", latestLogId, equalTo(lastLogId));
+    }
+  }
+}
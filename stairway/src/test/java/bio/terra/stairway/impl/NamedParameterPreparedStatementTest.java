@@ -0,0 +1,70 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import bio.terra.stairway.impl.NamedParameterPreparedStatement.SqlTemplate;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@Tag("unit")
+@ExtendWith(MockitoExtension.class)
+public class NamedParameterPreparedStatementTest {
+  @Mock private Connection connection;
+  @Mock private PreparedStatement preparedStatement;
+
+  @Test
+  public void parseReplacesNames() {
+    SqlTemplate template =
+        NamedParameterPreparedStatement.parse(
+            "SELECT * FROM flight WHERE flightid = :flightId AND status IN (:s1,:s2)");
+    assertThat(
+        template.sql(), equalTo("SELECT * FROM flight WHERE flightid = ? AND status IN (?,?)"));
+    assertThat(template.nameIndexMap().get("flightId"), equalTo(new int[] {1}));
+    assertThat(template.nameIndexMap().get("s1"), equalTo(new int[] {2}));
+    assertThat(template.nameIndexMap().get("s2"), equalTo(new int[] {3}));
+  }
+
+  @Test
+  public void parseRepeatedNameAndCast() {
+    SqlTemplate template =
+        NamedParameterPreparedStatement.parse(
+            "UPDATE flightpersisted SET value = :value WHERE key = :key::text OR value = :value");
+    assertThat(
+        template.sql(),
+        equalTo("UPDATE flightpersisted SET value = ? WHERE key = ?::text OR value = ?"));
+    assertThat(template.nameIndexMap().get("value"), equalTo(new int[] {1, 3}));
+    assertThat(template.nameIndexMap().get("key"), equalTo(new int[] {2}));
+  }
+
+  @Test
+  public void templatesAreCached() {
+    String sql = "SELECT flightid FROM flight WHERE status = :status";
+    assertThat(
+        NamedParameterPreparedStatement.getTemplate(sql),
+        sameInstance(NamedParameterPreparedStatement.getTemplate(sql)));
+  }
+
+  @Test
+  public void setterSetsEveryOccurrence() throws Exception {
+    when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+    try (NamedParameterPreparedStatement statement =
+        new NamedParameterPreparedStatement(
+            connection, "SELECT :flightId, :other WHERE x = :flightId")) {
+      statement.setString("flightId", "abc");
+      verify(preparedStatement).setString(1, "abc");
+      verify(preparedStatement).setString(3, "abc");
+      assertThrows(IllegalArgumentException.class, () -> statement.setString("missing", "abc"));
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package bio.terra.stairway.impl;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import bio.terra.stairway.exception.InvalidPageToken;
@@ -25,6 +26,18 @@ public class PageTokenTest {
     PageToken validate = new PageToken(externalToken);
     assertThat(validate.getTimestamp(), equalTo(token.getTimestamp()));
 
+    // Version 2 tokens carry the flight id, which may contain the separator
+    PageToken keysetToken = new PageToken(testInstant, "flight 1");
+    String keysetExternal = keysetToken.makeToken();
+    assertThat(keysetExternal.startsWith(PageToken.PAGE_TOKEN_VERSION), equalTo(true));
+    PageToken keysetValidate = new PageToken(keysetExternal);
+    assertThat(keysetValidate.getTimestamp(), equalTo(testInstant));
+    assertThat(keysetValidate.getFlightId(), equalTo("flight 1"));
+
+    // Version 1 tokens have no flight id
+    assertThat(externalToken.startsWith(PageToken.PAGE_TOKEN_VERSION_1), equalTo(true));
+    assertThat(validate.getFlightId(), nullValue());
+
     // Bad version
     String badVersion =
         "vxx" + StringUtils.removeStart(externalToken, PageToken.PAGE_TOKEN_VERSION);
@@ -35,7 +35,7 @@ public class ProgressTest {
   @Test
   public void progressValidMeterName() throws Exception {
     ProgressMetersImpl progressMeters =
-        new ProgressMetersImpl(stairway.getFlightDao(), stairway.createFlightId());
+        new ProgressMetersImpl(stairway.getFlightStore(), stairway.createFlightId());
     String badMeter = STAIRWAY_RESERVED_METER_PREFIX + "_bad_bad_bad";
 
     Assertions.assertThrows(
@@ -0,0 +1,136 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@Tag("unit")
+@ExtendWith(MockitoExtension.class)
+class ReadReplicaRouterTest {
+  private static final Duration MAX_LAG = Duration.ofSeconds(10);
+  private static final Duration CHECK_INTERVAL = Duration.ofHours(1);
+
+  @Mock private DataSource primary;
+  @Mock private DataSource replica;
+  @Mock private Connection primaryConnection;
+  @Mock private Connection replicaConnection;
+  @Mock private Statement statement;
+  @Mock private ResultSet resultSet;
+
+  @Test
+  void freshReplicaServesReads() throws Exception {
+    stubLag(0.5);
+    ReadReplicaRouter router = new ReadReplicaRouter(primary, replica, MAX_LAG, CHECK_INTERVAL);
+
+    assertThat(router.getReadConnection(), sameInstance(replicaConnection));
+    assertThat(router.getReadConnection(), sameInstance(replicaConnection));
+    // The lag check is remembered for the check interval
+    verify(statement, times(1)).executeQuery(anyString());
+  }
+
+  @Test
+  void laggingReplicaFallsBackToPrimary() throws Exception {
+    stubLag(30.0);
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    ReadReplicaRouter router = new ReadReplicaRouter(primary, replica, MAX_LAG, CHECK_INTERVAL);
+
+    assertThat(router.getReadConnection(), sameInstance(primaryConnection));
+  }
+
+  @Test
+  void noReplicaReadsPrimary() throws Exception {
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    ReadReplicaRouter router = new ReadReplicaRouter(primary, null, MAX_LAG, CHECK_INTERVAL);
+
+    assertThat(router.getReadConnection(), sameInstance(primaryConnection));
+  }
+
+  @Test
+  void failedLagCheckFallsBackToPrimary() throws Exception {
+    when(replica.getConnection()).thenReturn(replicaConnection);
+    when(replicaConnection.createStatement()).thenThrow(new SQLException("down", "08006"));
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    ReadReplicaRouter router = new ReadReplicaRouter(primary, replica, MAX_LAG, CHECK_INTERVAL);
+
+    assertThat(router.getReadConnection(), sameInstance(primaryConnection));
+  }
+
+  @Test
+  void failedReplicaConnectionFallsBackToPrimary() throws Exception {
+    // The lag check connects, but the read does not
+    when(replica.getConnection())
+        .thenReturn(replicaConnection)
+        .thenThrow(new SQLException("down", "08006"));
+    stubLagQuery(0.0);
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    ReadReplicaRouter router = new ReadReplicaRouter(primary, replica, MAX_LAG, CHECK_INTERVAL);
+
+    assertThat(router.getReadConnection(), sameInstance(primaryConnection));
+    // The replica stays out of use until the next check
+    assertThat(router.getReadConnection(), sameInstance(primaryConnection));
+    verify(replica, times(2)).getConnection();
+  }
+
+  @Test
+  void readsDoNotWaitForRunningLagCheck() throws Exception {
+    CountDownLatch checkStarted = new CountDownLatch(1);
+    CountDownLatch replicaAnswers = new CountDownLatch(1);
+    when(replica.getConnection())
+        .thenAnswer(
+            invocation -> {
+              checkStarted.countDown();
+              replicaAnswers.await();
+              return replicaConnection;
+            });
+    stubLagQuery(0.0);
+    when(primary.getConnection()).thenReturn(primaryConnection);
+    ReadReplicaRouter router = new ReadReplicaRouter(primary, replica, MAX_LAG, CHECK_INTERVAL);
+
+    CompletableFuture<Connection> checkingRead =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return router.getReadConnection();
+              } catch (SQLException ex) {
+                throw new RuntimeException(ex);
+              }
+            });
+    assertThat(checkStarted.await(5, TimeUnit.SECONDS), equalTo(true));
+    // The replica is slow to connect; other reads use the previous result
+    assertThat(router.getReadConnection(), sameInstance(primaryConnection));
+
+    replicaAnswers.countDown();
+    assertThat(checkingRead.get(5, TimeUnit.SECONDS), sameInstance(replicaConnection));
+  }
+
+  private void stubLag(double lagSeconds) throws SQLException {
+    when(replica.getConnection()).thenReturn(replicaConnection);
+    stubLagQuery(lagSeconds);
+  }
+
+  private void stubLagQuery(double lagSeconds) throws SQLException {
+    when(replicaConnection.createStatement()).thenReturn(statement);
+    when(statement.executeQuery(anyString())).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true);
+    when(resultSet.getDouble("lag_seconds")).thenReturn(lagSeconds);
+  }
+}
@@ -0,0 +1,141 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.Stairway;
+import bio.terra.stairway.fixtures.MapKey;
+import bio.terra.stairway.fixtures.TestStairwayBuilder;
+import bio.terra.stairway.fixtures.TestUtil;
+import bio.terra.stairway.flights.TestFlightWait;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Several Stairway instances sharing one database race to resume the same waiting flights. Exactly
+ * one instance must win each flight, and the losers should not spend time in database retries. A
+ * resume that races another write to the flight row must wait for it rather than give up.
+ */
+@Tag("unit")
+public class ResumeContentionTest {
+  private static final Logger logger = LoggerFactory.getLogger(ResumeContentionTest.class);
+  private static final int STAIRWAY_COUNT = 4;
+  private static final int FLIGHT_COUNT = 5;
+
+  @Test
+  public void resumeContentionTest() throws Exception {
+    List<Stairway> stairways = new ArrayList<>();
+    stairways.add(new TestStairwayBuilder().name("contention0").build());
+    for (int i = 1; i < STAIRWAY_COUNT; i++) {
+      stairways.add(
+          new TestStairwayBuilder()
+              .name("contention" + i)
+              .continuing(true)
+              .existingStairwaysAreAlive(true)
+              .build());
+    }
+
+    List<String> flightIds = new ArrayList<>();
+    for (int i = 0; i < FLIGHT_COUNT; i++) {
+      FlightMap inputParameters = new FlightMap();
+      inputParameters.put(MapKey.RESULT, "contention");
+      String flightId = stairways.get(0).createFlightId();
+      stairways.get(0).submit(flightId, TestFlightWait.class, inputParameters);
+      flightIds.add(flightId);
+    }
+    // Allow time for the flights to start up and yield
+    TimeUnit.SECONDS.sleep(5);
+
+    ExecutorService executor = Executors.newFixedThreadPool(STAIRWAY_COUNT);
+    try {
+      for (String flightId : flightIds) {
+        FlightState state = stairways.get(0).getFlightState(flightId);
+        assertThat("State is waiting", state.getFlightStatus(), equalTo(FlightStatus.WAITING));
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Stairway stairway : stairways) {
+          Callable<Boolean> resume =
+              () -> {
+                startLatch.await();
+                return stairway.resume(flightId);
+              };
+          results.add(executor.submit(resume));
+        }
+
+        long startNanos = System.nanoTime();
+        startLatch.countDown();
+        int winners = 0;
+        for (Future<Boolean> result : results) {
+          if (result.get()) {
+            winners++;
+          }
+        }
+        logger.info(
+            "Resume race for {} settled in {} ms",
+            flightId,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        assertThat("exactly one stairway resumes the flight", winners, equalTo(1));
+
+        state = stairways.get(0).waitForFlight(flightId, 1, 30);
+        assertThat("State is success", state.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  @Tag("postgres")
+  public void resumeRacingFlightWriteTest() throws Exception {
+    Stairway stairway = new TestStairwayBuilder().name("resumeRacingWrite").build();
+    FlightMap inputParameters = new FlightMap();
+    inputParameters.put(MapKey.RESULT, "racingWrite");
+    String flightId = stairway.createFlightId();
+    stairway.submit(flightId, TestFlightWait.class, inputParameters);
+    // Allow time for the flight to start up and yield
+    TimeUnit.SECONDS.sleep(5);
+    FlightState state = stairway.getFlightState(flightId);
+    assertThat("State is waiting", state.getFlightStatus(), equalTo(FlightStatus.WAITING));
+
+    // Hold the flight row the way a disown or queued write does while it commits
+    DataSource dataSource = TestUtil.makeDataSource();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement disownStatement =
+            connection.prepareStatement(
+                "UPDATE flight SET status = 'WAITING', stairway_id = NULL WHERE flightid = ?")) {
+      connection.setAutoCommit(false);
+      disownStatement.setString(1, flightId);
+      disownStatement.executeUpdate();
+
+      Future<Boolean> resumed = executor.submit(() -> stairway.resume(flightId));
+      TimeUnit.SECONDS.sleep(1);
+      assertThat("resume waits for the write", resumed.isDone(), equalTo(false));
+      connection.commit();
+
+      assertThat("resume claims the flight", resumed.get(30, TimeUnit.SECONDS), equalTo(true));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    state = stairway.waitForFlight(flightId, 1, 30);
+    assertThat("State is success", state.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+  }
+}
@@ -0,0 +1,183 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.Stairway;
+import bio.terra.stairway.exception.DatabaseOperationException;
+import bio.terra.stairway.exception.StairwayException;
+import bio.terra.stairway.fixtures.TestPauseController;
+import bio.terra.stairway.fixtures.TestStairwayBuilder;
+import bio.terra.stairway.flights.TestFlightRecovery;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class StepCheckpointWriterTest {
+  private static final int BATCH_SIZE = 5;
+
+  @Test
+  public void groupCommitTest() throws Exception {
+    RecordingFlightDao flightDao = new RecordingFlightDao(null);
+    // Long linger so the batch is closed by reaching the batch size
+    StepCheckpointWriter writer =
+        new StepCheckpointWriter(flightDao, BATCH_SIZE, Duration.ofSeconds(30));
+    writer.start();
+
+    List<Future<?>> futures = writeConcurrently(writer, BATCH_SIZE);
+    for (Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    writer.shutdown();
+
+    assertThat("one transaction", flightDao.batchSizes, equalTo(List.of(BATCH_SIZE)));
+    assertThat(writer.getBatchCount(), equalTo(1L));
+    assertThat(writer.getRecordCount(), equalTo((long) BATCH_SIZE));
+    assertThat(writer.getLargestBatch(), equalTo(BATCH_SIZE));
+  }
+
+  @Test
+  public void fallbackTest() throws Exception {
+    RecordingFlightDao flightDao = new RecordingFlightDao("badFlight");
+    StepCheckpointWriter writer =
+        new StepCheckpointWriter(flightDao, BATCH_SIZE, Duration.ofSeconds(30));
+    writer.start();
+
+    // The batch containing the bad flight fails; the good flights are written one at a time
+    List<Future<?>> futures = writeConcurrently(writer, BATCH_SIZE - 1);
+    Future<?> badFuture =
+        Executors.newSingleThreadExecutor()
+            .submit(
+                () -> {
+                  writer.write(makeFlightContext("badFlight"));
+                  return null;
+                });
+    for (Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    Exception ex = assertThrows(Exception.class, () -> badFuture.get(10, TimeUnit.SECONDS));
+    assertThat(ex.getCause().getClass(), equalTo(DatabaseOperationException.class));
+    writer.shutdown();
+
+    assertThat(writer.getFallbackBatchCount(), equalTo(1L));
+    assertThat(writer.getRecordCount(), equalTo((long) BATCH_SIZE - 1));
+  }
+
+  @Test
+  public void uncheckedFailureTest() throws Exception {
+    RecordingFlightDao flightDao =
+        new RecordingFlightDao(null) {
+          @Override
+          void stepBatch(List<FlightContextImpl> flightContexts) throws StairwayException {
+            if (flightContexts.get(0).getFlightId().equals("brokenFlight")) {
+              throw new IllegalStateException("Broken flight in batch");
+            }
+            super.stepBatch(flightContexts);
+          }
+        };
+    StepCheckpointWriter writer = new StepCheckpointWriter(flightDao, BATCH_SIZE, Duration.ZERO);
+    writer.start();
+
+    // An unchecked exception fails the flight instead of leaving it waiting on the writer
+    StairwayException ex =
+        assertThrows(
+            StairwayException.class, () -> writer.write(makeFlightContext("brokenFlight")));
+    assertThat(ex.getCause().getClass(), equalTo(IllegalStateException.class));
+
+    // The writer is still running
+    writer.write(makeFlightContext("nextFlight"));
+    writer.shutdown();
+    assertThat(flightDao.batchSizes, equalTo(List.of(1)));
+  }
+
+  @Test
+  public void writeAfterShutdownTest() throws Exception {
+    RecordingFlightDao flightDao = new RecordingFlightDao(null);
+    StepCheckpointWriter writer = new StepCheckpointWriter(flightDao, BATCH_SIZE, Duration.ZERO);
+    writer.start();
+    writer.shutdown();
+
+    // Once shut down, writes go straight to the DAO
+    writer.write(makeFlightContext("lateFlight"));
+    assertThat(flightDao.batchSizes, equalTo(List.of(1)));
+  }
+
+  @Test
+  public void groupCommitFlightsTest() throws Exception {
+    Stairway stairway = new TestStairwayBuilder().stepCheckpointBatchSize(BATCH_SIZE).build();
+    TestPauseController.setControl(1);
+
+    List<String> flightIds = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      FlightMap inputs = new FlightMap();
+      inputs.put("initialValue", i);
+      String flightId = stairway.createFlightId();
+      stairway.submit(flightId, TestFlightRecovery.class, inputs);
+      flightIds.add(flightId);
+    }
+
+    for (int i = 0; i < flightIds.size(); i++) {
+      FlightState result = stairway.waitForFlight(flightIds.get(i), null, null);
+      assertThat(result.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+      assertThat(result.getResultMap().get().get("value", Integer.class), equalTo(i + 2));
+    }
+  }
+
+  private List<Future<?>> writeConcurrently(StepCheckpointWriter writer, int count) {
+    ExecutorService executor = Executors.newFixedThreadPool(count);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String flightId = "flight" + i;
+      futures.add(
+          executor.submit(
+              () -> {
+                writer.write(makeFlightContext(flightId));
+                return null;
+              }));
+    }
+    executor.shutdown();
+    return futures;
+  }
+
+  private static FlightContextImpl makeFlightContext(String flightId) {
+    return new FlightContextImpl(
+        flightId,
+        TestFlightRecovery.class.getName(),
+        new FlightMap(),
+        null,
+        FlightStatus.RUNNING,
+        new FlightContextLogState(true),
+        null);
+  }
+
+  /** FlightDao that records the size of each step batch instead of writing to the database */
+  private static class RecordingFlightDao extends FlightDao {
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final String badFlightId;
+
+    RecordingFlightDao(String badFlightId) {
+      super(null, null, null, null, "checkpointTestStairway", 1);
+      this.badFlightId = badFlightId;
+    }
+
+    @Override
+    void stepBatch(List<FlightContextImpl> flightContexts) throws StairwayException {
+      if (flightContexts.stream().anyMatch(c -> c.getFlightId().equals(badFlightId))) {
+        throw new DatabaseOperationException("Bad flight in batch");
+      }
+      batchSizes.add(flightContexts.size());
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import bio.terra.stairway.exception.StairwayExecutionException;
+import bio.terra.stairway.fixtures.TestFlightContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.MDC;
+
+@Tag("unit")
+class VirtualThreadPoolTest {
+  private static final int MAX_PARALLEL_FLIGHTS = 2;
+
+  @Test
+  @EnabledForJreRange(max = JRE.JAVA_20)
+  void requiresVirtualThreadsTest() {
+    assertThrows(
+        StairwayExecutionException.class, () -> new VirtualThreadPool(MAX_PARALLEL_FLIGHTS));
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_21)
+  void admissionTest() throws Exception {
+    VirtualThreadPool threadPool = new VirtualThreadPool(MAX_PARALLEL_FLIGHTS);
+    CountDownLatch started = new CountDownLatch(MAX_PARALLEL_FLIGHTS);
+    CountDownLatch release = new CountDownLatch(1);
+    Runnable blockingFlight =
+        () -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        };
+
+    List<Future<?>> futures =
+        List.of(
+            submit(threadPool, blockingFlight, "flight1"),
+            submit(threadPool, blockingFlight, "flight2"),
+            submit(threadPool, blockingFlight, "flight3"));
+    assertThat("admitted flights started", started.await(5, TimeUnit.SECONDS), equalTo(true));
+    assertThat("running flights", threadPool.getActiveCount(), equalTo(MAX_PARALLEL_FLIGHTS));
+    assertThat("waiting flights", threadPool.getQueueSize(), equalTo(1));
+
+    release.countDown();
+    for (Future<?> future : futures) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    assertThat("no running flights", threadPool.getActiveCount(), equalTo(0));
+    assertThat("no waiting flights", threadPool.getQueueSize(), equalTo(0));
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_21)
+  void flightMdcTest() throws Exception {
+    VirtualThreadPool threadPool = new VirtualThreadPool(MAX_PARALLEL_FLIGHTS);
+    MDC.setContextMap(Map.of("foo", "bar"));
+    try {
+      AtomicReference<Map<String, String>> flightMdc = new AtomicReference<>();
+      submit(threadPool, () -> flightMdc.set(MDC.getCopyOfContextMap()), "mdcFlight")
+          .get(5, TimeUnit.SECONDS);
+
+      assertThat("calling thread's context", flightMdc.get().get("foo"), equalTo("bar"));
+      assertThat(
+          "flight context", flightMdc.get().get(MdcUtils.FLIGHT_ID_KEY), equalTo("mdcFlight"));
+    } finally {
+      MDC.clear();
+    }
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_21)
+  void shutdownNowReturnsWaitingFlightsTest() throws Exception {
+    VirtualThreadPool threadPool = new VirtualThreadPool(1);
+    CountDownLatch started = new CountDownLatch(1);
+    Runnable blockingFlight =
+        () -> {
+          started.countDown();
+          try {
+            TimeUnit.MINUTES.sleep(1);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        };
+    Runnable waitingFlight = () -> {};
+
+    submit(threadPool, blockingFlight, "runningFlight");
+    assertThat(started.await(5, TimeUnit.SECONDS), equalTo(true));
+    submit(threadPool, waitingFlight, "waitingFlight");
+
+    assertThat("waiting flight handed back", threadPool.shutdownNow(), contains(waitingFlight));
+    assertThat(threadPool.awaitTermination(5, TimeUnit.SECONDS), equalTo(true));
+  }
+
+  private Future<?> submit(VirtualThreadPool threadPool, Runnable flight, String flightId) {
+    return threadPool.submitWithMdcAndFlightContext(
+        flight, new TestFlightContext().flightId(flightId).flightClassName("flightClass"));
+  }
+}
@@ -0,0 +1,146 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import bio.terra.stairway.QueueInterface;
+import bio.terra.stairway.QueueProcessFunction;
+import bio.terra.stairway.exception.StairwayException;
+import bio.terra.stairway.queue.WorkQueueManager;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+public class WorkQueueOutboxRelayTest {
+
+  @Test
+  public void relayDrainsInBatchesTest() throws Exception {
+    int flightCount = 2 * WorkQueueOutboxRelay.BATCH_SIZE + 10;
+    OutboxFlightDao flightDao = new OutboxFlightDao();
+    RecordingQueue queue = new RecordingQueue();
+    WorkQueueOutboxRelay relay =
+        new WorkQueueOutboxRelay(flightDao, new WorkQueueManager(null, queue));
+    relay.start();
+
+    flightDao.addToOutbox(flightCount);
+    relay.wakeUp();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (relay.getFlightCount() < flightCount && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    relay.shutdown();
+
+    assertThat("all flights queued", queue.messages.size(), equalTo(flightCount));
+    assertThat("outbox drained", flightDao.outboxSize(), equalTo(0));
+    assertThat(relay.getFlightCount(), equalTo((long) flightCount));
+    assertThat("full batches then the rest", relay.getBatchCount(), equalTo(3L));
+    assertThat("one publish per batch", queue.publishCount, equalTo(3));
+  }
+
+  @Test
+  public void shutdownDrainsOutboxTest() throws Exception {
+    OutboxFlightDao flightDao = new OutboxFlightDao();
+    RecordingQueue queue = new RecordingQueue();
+    WorkQueueOutboxRelay relay =
+        new WorkQueueOutboxRelay(flightDao, new WorkQueueManager(null, queue));
+    relay.start();
+
+    // Not woken; the last pass at shutdown still relays the flights
+    flightDao.addToOutbox(3);
+    relay.shutdown();
+
+    assertThat(queue.messages.size(), equalTo(3));
+    assertThat(flightDao.outboxSize(), equalTo(0));
+  }
+
+  @Test
+  public void relaySurvivesUncheckedFailureTest() throws Exception {
+    OutboxFlightDao flightDao = new OutboxFlightDao();
+    RecordingQueue queue = new RecordingQueue();
+    WorkQueueOutboxRelay relay =
+        new WorkQueueOutboxRelay(flightDao, new WorkQueueManager(null, queue));
+    relay.start();
+
+    // The first pass fails with an unchecked exception; the relay keeps going
+    flightDao.failNextRelay = true;
+    flightDao.addToOutbox(3);
+    relay.wakeUp();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (relay.getFlightCount() < 3 && System.nanoTime() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+      relay.wakeUp();
+    }
+    relay.shutdown();
+
+    assertThat(queue.messages.size(), equalTo(3));
+    assertThat(flightDao.outboxSize(), equalTo(0));
+  }
+
+  // Keeps the outbox in memory
+  private static class OutboxFlightDao extends FlightDao {
+    private final Deque<String> outbox = new ArrayDeque<>();
+    private int nextId;
+    private volatile boolean failNextRelay;
+
+    OutboxFlightDao() {
+      super(null, null, null, null, "outboxTestStairway", 1);
+    }
+
+    synchronized void addToOutbox(int count) {
+      for (int i = 0; i < count; i++) {
+        outbox.add("flight" + nextId++);
+      }
+    }
+
+    synchronized int outboxSize() {
+      return outbox.size();
+    }
+
+    @Override
+    synchronized int relayOutbox(int batchSize, OutboxPublisher publisher)
+        throws StairwayException, InterruptedException {
+      if (failNextRelay) {
+        failNextRelay = false;
+        throw new IllegalStateException("Relay failure");
+      }
+      List<String> batch = new ArrayList<>();
+      while (batch.size() < batchSize && !outbox.isEmpty()) {
+        batch.add(outbox.remove());
+      }
+      if (!batch.isEmpty()) {
+        publisher.publish(batch);
+      }
+      return batch.size();
+    }
+  }
+
+  private static class RecordingQueue implements QueueInterface {
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+    private volatile int publishCount;
+
+    @Override
+    public void dispatchMessages(int maxMessages, QueueProcessFunction processFunction) {}
+
+    @Override
+    public void enqueueMessage(String message) {
+      messages.add(message);
+    }
+
+    @Override
+    public void enqueueMessages(List<String> batch) {
+      messages.addAll(batch);
+      publishCount++;
+    }
+
+    @Override
+    public void purgeQueueForTesting() {
+      messages.clear();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package bio.terra.stairway.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import bio.terra.stairway.FlightMap;
+import bio.terra.stairway.FlightState;
+import bio.terra.stairway.FlightStatus;
+import bio.terra.stairway.Stairway;
+import bio.terra.stairway.fixtures.TestPauseController;
+import bio.terra.stairway.fixtures.TestStairwayBuilder;
+import bio.terra.stairway.fixtures.TestUtil;
+import bio.terra.stairway.flights.TestFlightRecovery;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Run flights with working map deltas enabled and make sure the working map is rebuilt correctly
+ * both for the flight result and when a flight is recovered from a delta log record.
+ */
+@Tag("unit")
+@Tag("postgres")
+public class WorkingMapDeltaTest {
+  private static final int SNAPSHOT_INTERVAL = 3;
+
+  @Test
+  public void deltaResultTest() throws Exception {
+    Stairway stairway =
+        new TestStairwayBuilder().workingMapSnapshotInterval(SNAPSHOT_INTERVAL).build();
+
+    FlightMap inputs = new FlightMap();
+    inputs.put("initialValue", 0);
+
+    TestPauseController.setControl(1);
+    String flightId = "deltaResultTest";
+    stairway.submit(flightId, TestFlightRecovery.class, inputs);
+    stairway.waitForFlight(flightId, null, null);
+
+    FlightState result = stairway.getFlightState(flightId);
+    assertThat(result.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+    assertTrue(result.getResultMap().isPresent());
+    assertThat(result.getResultMap().get().get("value", Integer.class), equalTo(2));
+    assertThat("delta records were written", countDeltaRecords(flightId), greaterThan(0));
+  }
+
+  @Test
+  public void deltaRecoveryTest() throws Exception {
+    final String stairwayName = "deltaRecoveryTest";
+    Stairway stairway1 =
+        new TestStairwayBuilder()
+            .name(stairwayName)
+            .workingMapSnapshotInterval(SNAPSHOT_INTERVAL)
+            .build();
+
+    FlightMap inputs = new FlightMap();
+    inputs.put("initialValue", 0);
+
+    TestPauseController.setControl(0);
+    String flightId = "deltaRecoveryTest";
+    stairway1.submit(flightId, TestFlightRecovery.class, inputs);
+
+    // Allow time for the flight thread to go to sleep
+    TimeUnit.SECONDS.sleep(5);
+    assertThat(TestUtil.isDone(stairway1, flightId), equalTo(false));
+    assertThat("delta records were written", countDeltaRecords(flightId), greaterThan(0));
+
+    // Recover the flight in a new stairway. The latest log record is a delta, so the working map
+    // must be rebuilt from the snapshot and the deltas.
+    TestPauseController.setControl(1);
+    Stairway stairway2 =
+        new TestStairwayBuilder()
+            .name(stairwayName)
+            .workingMapSnapshotInterval(SNAPSHOT_INTERVAL)
+            .continuing(true)
+            .doRecoveryCheck(true)
+            .build();
+
+    stairway2.waitForFlight(flightId, null, null);
+    FlightState result = stairway2.getFlightState(flightId);
+    assertThat(result.getFlightStatus(), equalTo(FlightStatus.SUCCESS));
+    assertTrue(result.getResultMap().isPresent());
+    assertThat(result.getResultMap().get().get("value", Integer.class), equalTo(2));
+  }
+
+  private int countDeltaRecords(String flightId) throws Exception {
+    DataSource dataSource = TestUtil.makeDataSource();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement =
+            connection.prepareStatement(
+                "SELECT COUNT(*) FROM flightlog WHERE flightid = ? AND working_delta")) {
+      statement.setString(1, flightId);
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    }
+  }
+}